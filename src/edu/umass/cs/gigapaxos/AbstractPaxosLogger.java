@@ -20,6 +20,7 @@ import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.channels.FileLock;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
@@ -35,6 +36,7 @@ import edu.umass.cs.gigapaxos.PaxosConfig.PC;
 import edu.umass.cs.gigapaxos.paxospackets.PValuePacket;
 import edu.umass.cs.gigapaxos.paxospackets.PaxosPacket;
 import edu.umass.cs.gigapaxos.paxospackets.PreparePacket;
+import edu.umass.cs.gigapaxos.paxospackets.RequestPacket;
 import edu.umass.cs.gigapaxos.paxospackets.StatePacket;
 import edu.umass.cs.gigapaxos.paxosutil.Ballot;
 import edu.umass.cs.gigapaxos.paxosutil.ConsumerBatchTask;
@@ -43,11 +45,12 @@ import edu.umass.cs.gigapaxos.paxosutil.LogMessagingTask;
 import edu.umass.cs.gigapaxos.paxosutil.MessagingTask;
 import edu.umass.cs.gigapaxos.paxosutil.PaxosMessenger;
 import edu.umass.cs.gigapaxos.paxosutil.RecoveryInfo;
+import edu.umass.cs.gigapaxos.paxosutil.RequestTracer;
 import edu.umass.cs.gigapaxos.paxosutil.SlotBallotState;
 import edu.umass.cs.gigapaxos.paxosutil.StringContainer;
 import edu.umass.cs.utils.Config;
-import edu.umass.cs.utils.DelayProfiler;
-import edu.umass.cs.utils.Util;
+import edu.umass.cs.utils.Histogram;
+import edu.umass.cs.utils.Metrics;
 
 /**
  * @author V. Arun
@@ -444,6 +447,25 @@ public abstract class AbstractPaxosLogger {
 	 */
 	public abstract Integer getEpochFinalCheckpointVersion(String paxosID);
 
+	/**
+	 * Bulk version of {@link #getEpochFinalCheckpointVersion(String)}. Loggers
+	 * that can look up many paxosIDs in one go should override this method.
+	 * 
+	 * @param paxosIDs
+	 * @return Map of paxosID to the most recent final state version for
+	 *         paxosIDs that have one.
+	 */
+	public Map<String, Integer> getEpochFinalCheckpointVersions(
+			Set<String> paxosIDs) {
+		Map<String, Integer> versions = new HashMap<String, Integer>();
+		for (String paxosID : paxosIDs) {
+			Integer version = this.getEpochFinalCheckpointVersion(paxosID);
+			if (version != null)
+				versions.put(paxosID, version);
+		}
+		return versions;
+	}
+
 	/**
 	 * 
 	 * @param paxosID
@@ -590,6 +612,23 @@ public abstract class AbstractPaxosLogger {
 
 	protected abstract HotRestoreInfo unpause(String paxosID);
 
+	/**
+	 * Bulk version of {@link #unpause(String)}. Loggers that can read paused
+	 * state for many paxosIDs in one go should override this method.
+	 * 
+	 * @param paxosIDs
+	 * @return Map of paxosID to unpaused state for paxosIDs that were paused.
+	 */
+	protected Map<String, HotRestoreInfo> unpause(Set<String> paxosIDs) {
+		Map<String, HotRestoreInfo> hris = new HashMap<String, HotRestoreInfo>();
+		for (String paxosID : paxosIDs) {
+			HotRestoreInfo hri = this.unpause(paxosID);
+			if (hri != null)
+				hris.put(paxosID, hri);
+		}
+		return hris;
+	}
+
 	/**************** End of extensible methods ***********************/
 
 	/**
@@ -653,6 +692,8 @@ public abstract class AbstractPaxosLogger {
 	/******************* Private utility classes below *********************/
 	// Makes sure that message logging batches as much as possible.
 
+	private static final Histogram logLatency = Metrics.histogram("paxos.log");
+
 	private class BatchedLogger extends ConsumerBatchTask<LogMessagingTask> {
 
 		private final AbstractPaxosLogger logger;
@@ -694,14 +735,19 @@ public abstract class AbstractPaxosLogger {
 				packets[i] = lmTasks[i].logMsg;
 
 			// first log
-			long t = System.currentTimeMillis();
+			long t = System.nanoTime();
 			boolean logged = this.logger.logBatch(lmTasks);
 			this.setProcessing(false);
 			if (!logged)
 				return;
 			if (!DISABLE_LOGGING && lmTasks.length > 0)
-				if (Util.oneIn(10))
-					DelayProfiler.updateDelay("log", t);// , packets.length);
+				logLatency.recordNanosSince(t);
+			if (RequestTracer.ENABLED)
+				for (PaxosPacket packet : packets)
+					if (packet.getType() == PaxosPacket.PaxosPacketType.ACCEPT)
+						RequestTracer.record((RequestPacket) packet,
+								RequestTracer.Event.ACCEPT_LOGGED,
+								this.logger.myID);
 
 			// then message if successfully logged
 			{
@@ -247,15 +247,26 @@ public class PaxosConfig {
 		DISABLE_CHECKPOINTING(false),
 
 		/**
-		 * 
+		 * Whether messages above {@link #COMPRESSION_THRESHOLD} may be
+		 * compressed on the wire. Compression is never used with SSL.
 		 */
 		ENABLE_COMPRESSION(true),
 
 		/**
-		 * 
+		 * Minimum message size in bytes for compression to be considered. The
+		 * default (the maximum payload size) effectively disables compression.
+		 * Messages above the threshold are compressed only if the measured
+		 * compression ratio and cost pay off.
 		 */
 		COMPRESSION_THRESHOLD(4 * 1024 * 1024),
 
+		/**
+		 * ID of the codec used to compress outgoing messages, 1 for deflate
+		 * and 2 for the faster LZ4-style codec. The codec used is carried in
+		 * each message, so receivers can decompress any registered codec.
+		 */
+		COMPRESSION_CODEC(2),
+
 		/**
 		 * The default size of the {@link MultiArrayMap} used to store paxos
 		 * instances.
@@ -299,6 +310,23 @@ public class PaxosConfig {
 		 */
 		PAUSE_RATE_LIMIT(1000), // /s
 
+		/**
+		 * The {@link edu.umass.cs.utils.EvictionPolicy.Type} used to pick
+		 * which active paxos instances, or logIndexes in the message log's
+		 * {@link edu.umass.cs.utils.DiskMap}, to pause when over capacity
+		 * beyond those that are long idle anyway. SWEEP is the older behavior
+		 * of pausing instances in iteration order irrespective of recency.
+		 * 
+		 * <p>
+		 * Note that the default S3FIFO changes pausing behavior compared to
+		 * earlier versions: the deactivation sweep now pauses only long idle
+		 * instances, and instances forcibly paused because the node is over
+		 * capacity are those picked by the policy, i.e., recently created or
+		 * one-off instances are paused before ones that are repeatedly
+		 * accessed. Set this to SWEEP to restore the older behavior.
+		 */
+		EVICTION_POLICY("S3FIFO"),
+
 		/**
 		 * Refer to documentation in {@link SQLPaxosLogger}.
 		 */
@@ -421,6 +449,21 @@ public class PaxosConfig {
 		 */
 		PACKET_DEMULTIPLEXER_THREADS(4),
 
+		/**
+		 * If true, demultiplexed packet handlers run one per virtual thread
+		 * (or on a bounded platform thread pool on JDKs without virtual
+		 * threads) instead of on the {@link #PACKET_DEMULTIPLEXER_THREADS}
+		 * pool, so that blocking handlers do not starve other packets.
+		 */
+		DEMULTIPLEXER_VIRTUAL_THREADS(false),
+
+		/**
+		 * Maximum number of concurrently executing handlers per packet type
+		 * when {@link #DEMULTIPLEXER_VIRTUAL_THREADS} is enabled. 0 means
+		 * unbounded.
+		 */
+		DEMULTIPLEXER_MAX_CONCURRENCY_PER_TYPE(0),
+
 		/**
 		 * Whether request order is preserved for requests sent by the same
 		 * replica and committed by the same coordinator.
@@ -486,6 +529,19 @@ public class PaxosConfig {
 		 */
 		DELAY_PROFILER(true),
 
+		/**
+		 * One in this many requests is traced across replicas by
+		 * {@link edu.umass.cs.gigapaxos.paxosutil.RequestTracer}. 0 disables
+		 * tracing altogether.
+		 */
+		TRACE_SAMPLING(0),
+
+		/**
+		 * Number of trace events retained per JVM, rounded up to a power of
+		 * two. Older events are overwritten.
+		 */
+		TRACE_BUFFER_SIZE(65536),
+
 		/**
 		 * 
 		 */
@@ -552,6 +608,17 @@ public class PaxosConfig {
 		 */
 		SERVER_SSL_MODE(SSLDataProcessingWorker.SSL_MODES.CLEAR),
 
+		/**
+		 * Maximum number of cached TLS sessions per SSL context. Cached
+		 * sessions allow abbreviated handshakes upon reconnects.
+		 */
+		SSL_SESSION_CACHE_SIZE(SSLDataProcessingWorker.SESSION_CACHE_SIZE),
+
+		/**
+		 * Seconds for which a cached TLS session remains resumable.
+		 */
+		SSL_SESSION_TIMEOUT(SSLDataProcessingWorker.SESSION_TIMEOUT),
+
 		/**
 		 * Number of additional sending connections used by paxos. We need this
 		 * because the sending throughput of a single TCP connection is limited
@@ -708,6 +775,25 @@ public class PaxosConfig {
 		 */
 		PAUSE_BATCH_SIZE(1000),
 
+		/**
+		 * If true, paxos packets for paused instances are queued and the
+		 * instances are unpaused in bulk by a separate thread instead of one
+		 * at a time by the thread that received the packet.
+		 */
+		ASYNC_UNPAUSE(true),
+
+		/**
+		 * Maximum number of paused instances unpaused together by
+		 * {@link #ASYNC_UNPAUSE}.
+		 */
+		UNPAUSE_BATCH_SIZE(1000),
+
+		/**
+		 * Number of threads reading and restoring a batch of
+		 * {@link #ASYNC_UNPAUSE} instances in parallel.
+		 */
+		UNPAUSE_THREADS(4),
+
 		/**
 		 * 
 		 */
@@ -856,6 +942,41 @@ public class PaxosConfig {
 		 */
 		LOG_DISKMAP_CAPACITY(Config.getGlobalInt(PINSTANCES_CAPACITY)),
 
+		/**
+		 * If true, logIndexes paused by the message log's
+		 * {@link edu.umass.cs.utils.DiskMap} are stored in a
+		 * {@link edu.umass.cs.utils.MappedDiskable}, i.e., an off-heap hot tier
+		 * and memory-mapped segment files under the log directory, instead of
+		 * the pause table, so unpausing a logIndex is a single mapped read
+		 * instead of a SQL query.
+		 */
+		MAPPED_LOG_INDEX_STORE(false),
+
+		/**
+		 * Size in bytes of the off-heap hot tier of
+		 * {@link #MAPPED_LOG_INDEX_STORE}.
+		 */
+		MAPPED_STORE_HOT_BYTES(32 * 1024 * 1024),
+
+		/**
+		 * Size in bytes of each memory-mapped segment file of
+		 * {@link #MAPPED_LOG_INDEX_STORE}.
+		 */
+		MAPPED_STORE_SEGMENT_BYTES(64 * 1024 * 1024),
+
+		/**
+		 * If true, paused instance state is stored in the binary form of
+		 * {@link edu.umass.cs.gigapaxos.paxosutil.HotRestoreInfo} in an
+		 * append-only {@link edu.umass.cs.utils.MappedDiskable} pause file
+		 * under the log directory instead of as text in the pause table, so
+		 * that pausing and unpausing need no SQL round trips. As the pause
+		 * file is not durable, it is cleared upon a restart and instances
+		 * paused to it are recovered from checkpoints like unpaused ones.
+		 * Requires {@link #USE_DISK_MAP} as logIndexes are not paused along
+		 * with the instance state.
+		 */
+		PAUSE_FILE(false),
+
 		/**
 		 * 
 		 */
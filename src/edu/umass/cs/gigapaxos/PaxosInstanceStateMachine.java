@@ -53,6 +53,7 @@ import edu.umass.cs.gigapaxos.paxosutil.MessagingTask;
 import edu.umass.cs.gigapaxos.paxosutil.PaxosInstanceCreationException;
 import edu.umass.cs.gigapaxos.paxosutil.PrepareReplyAssembler;
 import edu.umass.cs.gigapaxos.paxosutil.RequestInstrumenter;
+import edu.umass.cs.gigapaxos.paxosutil.RequestTracer;
 import edu.umass.cs.gigapaxos.paxosutil.SlotBallotState;
 import edu.umass.cs.gigapaxos.testing.TESTPaxosApp;
 import edu.umass.cs.gigapaxos.testing.TESTPaxosConfig.TC;
@@ -61,7 +62,9 @@ import edu.umass.cs.nio.nioutils.RTTEstimator;
 import edu.umass.cs.reconfiguration.reconfigurationutils.RequestParseException;
 import edu.umass.cs.utils.Config;
 import edu.umass.cs.utils.DelayProfiler;
+import edu.umass.cs.utils.Histogram;
 import edu.umass.cs.utils.Keyable;
+import edu.umass.cs.utils.Metrics;
 import edu.umass.cs.utils.Pausable;
 import edu.umass.cs.utils.Util;
 
@@ -147,16 +150,6 @@ public class PaxosInstanceStateMachine implements Keyable<String>, Pausable {
 		return ENABLE_INSTRUMENTATION && Util.oneIn(n);
 	}
 
-	private static final void instrumentDelay(toLog field, long startTime) {
-		if (field.log())
-			DelayProfiler.updateDelay(field.toString(), startTime);
-	}
-
-	private static final void instrumentDelay(toLog field, long startTime, int n) {
-		if (field.log())
-			DelayProfiler.updateDelay(field.toString(), startTime, n);
-	}
-
 	private static enum SyncMode {
 		DEFAULT_SYNC, FORCE_SYNC, SYNC_TO_PAUSE
 	};
@@ -415,7 +408,7 @@ public class PaxosInstanceStateMachine implements Keyable<String>, Pausable {
 	 */
 	private void handlePaxosMessage(PaxosPacket pp, SyncMode mode)
 			throws JSONException {
-		long methodEntryTime = System.currentTimeMillis();
+		long methodEntryTime = System.nanoTime();
 		assert (pp != null || !mode.equals(SyncMode.DEFAULT_SYNC));
 
 		PaxosPacket.PaxosPacketType msgType = pp != null ? pp.getType()
@@ -557,7 +550,8 @@ public class PaxosInstanceStateMachine implements Keyable<String>, Pausable {
 			mtasks = MessagingTask.combine(mtasks, batchedTasks);
 		}
 
-		instrumentDelay(toLog.handlePaxosMessage, methodEntryTime);
+		if (ENABLE_INSTRUMENTATION)
+			handlePaxosMessageLatency.recordNanosSince(methodEntryTime);
 
 		this.checkIfTrapped(pp, mtasks[1]); // just to print a warning
 		if (!recovery) {
@@ -827,6 +821,8 @@ public class PaxosInstanceStateMachine implements Keyable<String>, Pausable {
 				mtasks[0] = multicastAccept != null ? new MessagingTask(
 						this.groupMembers, multicastAccept) : null; // multicast
 				RequestInstrumenter.sent(multicastAccept, this.getMyID(), -1);
+				RequestTracer.record(multicastAccept,
+						RequestTracer.Event.PROPOSE, this.getMyID());
 				log.log(Level.FINER,
 						"{0} issuing accept {1} ",
 						new Object[] {
@@ -1198,6 +1194,8 @@ public class PaxosInstanceStateMachine implements Keyable<String>, Pausable {
 		// could also call handleCommittedRequest below
 		if (committedPValue.getType() == PaxosPacket.PaxosPacketType.DECISION) {
 			committedPValue.addDebugInfo("d");
+			RequestTracer.record(committedPValue, RequestTracer.Event.DECIDE,
+					this.getMyID());
 			// this.handleCommittedRequest(committedPValue);
 			multicastDecision = new MessagingTask(this.groupMembers,
 					committedPValue); // inform everyone of the decision
@@ -1479,23 +1477,15 @@ public class PaxosInstanceStateMachine implements Keyable<String>, Pausable {
 		return false;
 	}
 
-	private static enum toLog {
-		EEC(false, 100), handlePaxosMessage(false, 100);
-		final boolean log;
-		final int sampleInt;
-
-		toLog(boolean log, int sampleInt) {
-			this.log = log;
-			this.sampleInt = sampleInt;
-		}
-
-		boolean log() {
-			return this.log && instrument(sampleInt);
-		}
-	};
-
-	private static final int AGREEMENT_LATENCY_SAMPLING = 100;
-	private static final int EXECUTION_LATENCY_SAMPLING = 100;
+	private static final Histogram agreementLatency = Metrics
+			.histogram("paxos.agreement");
+	private static final Histogram executionLatency = Metrics
+			.histogram("paxos.execute");
+	// per executed decision, amortized over each call
+	private static final Histogram eecLatency = Metrics
+			.histogram("paxos.extractExecuteAndCheckpoint");
+	private static final Histogram handlePaxosMessageLatency = Metrics
+			.histogram("paxos.handlePaxosMessage");
 
 	/* The three actions--(1) extracting the next slot request from the
 	 * acceptor, (2) having the app execute the request, and (3) checkpoint if
@@ -1510,7 +1500,7 @@ public class PaxosInstanceStateMachine implements Keyable<String>, Pausable {
 	 * logger call this method is only space-efficient design alternative. */
 	protected/* synchronized */MessagingTask extractExecuteAndCheckpoint(
 			PValuePacket loggedDecision) {
-		long methodEntryTime = System.currentTimeMillis();
+		long methodEntryTime = System.nanoTime();
 		int execCount = 0;
 		PValuePacket inorderDecision = null;
 		synchronized (this) {
@@ -1526,12 +1516,15 @@ public class PaxosInstanceStateMachine implements Keyable<String>, Pausable {
 				String pid = this.getPaxosID();
 
 				if (inorderDecision.getEntryReplica() == this.getMyID()
-						&& instrument(AGREEMENT_LATENCY_SAMPLING))
-					DelayProfiler.updateDelay("agreement",
-							inorderDecision.getEntryTime());
+						&& ENABLE_INSTRUMENTATION)
+					agreementLatency.recordMillisSince(inorderDecision
+							.getEntryTime());
 				updateRequestBatcher(inorderDecision, loggedDecision == null);
+				if (!inorderDecision.isRecovery())
+					RequestTracer.record(inorderDecision,
+							RequestTracer.Event.COMMIT, this.getMyID());
 
-				long t = System.currentTimeMillis();
+				long t = System.nanoTime();
 				/* Execute it until successful, we are *by design* stuck
 				 * otherwise. Execution must be atomic with extraction and
 				 * possible checkpointing below. */
@@ -1545,9 +1538,11 @@ public class PaxosInstanceStateMachine implements Keyable<String>, Pausable {
 					else if (this.forceStop())
 						break;
 
-				if (instrument(EXECUTION_LATENCY_SAMPLING))
-					DelayProfiler.updateDelay(AbstractPaxosLogger.appName
-							+ ".execute", t, inorderDecision.batchSize() + 1);
+				if (ENABLE_INSTRUMENTATION)
+					executionLatency.recordNanosSince(t);
+				if (!inorderDecision.isRecovery())
+					RequestTracer.record(inorderDecision,
+							RequestTracer.Event.EXECUTE, this.getMyID());
 
 				// getState must be atomic with the execution
 				if (shouldCheckpoint(inorderDecision)
@@ -1586,8 +1581,10 @@ public class PaxosInstanceStateMachine implements Keyable<String>, Pausable {
 				&& this.isStopped())
 			this.paxosManager.kill(this, true);
 
-		if (loggedDecision != null && !loggedDecision.isRecovery())
-			instrumentDelay(toLog.EEC, methodEntryTime, execCount);
+		if (loggedDecision != null && !loggedDecision.isRecovery()
+				&& execCount > 0 && ENABLE_INSTRUMENTATION)
+			eecLatency.record((System.nanoTime() - methodEntryTime)
+					/ execCount);
 		return loggedDecision != null && !loggedDecision.isRecovery() ? this
 				.syncLongDecisionGaps(loggedDecision) : null;
 	}
@@ -21,15 +21,22 @@ import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
 import java.security.MessageDigest;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ThreadFactory;
@@ -69,15 +76,18 @@ import edu.umass.cs.gigapaxos.paxosutil.PendingDigests;
 import edu.umass.cs.gigapaxos.paxosutil.RateLimiter;
 import edu.umass.cs.gigapaxos.paxosutil.RecoveryInfo;
 import edu.umass.cs.gigapaxos.paxosutil.RequestInstrumenter;
+import edu.umass.cs.gigapaxos.paxosutil.RequestTracer;
 import edu.umass.cs.gigapaxos.paxosutil.StringContainer;
 import edu.umass.cs.gigapaxos.testing.TESTPaxosApp;
 import edu.umass.cs.gigapaxos.testing.TESTPaxosConfig;
 import edu.umass.cs.nio.AbstractJSONPacketDemultiplexer;
+import edu.umass.cs.nio.AbstractPacketDemultiplexer;
 import edu.umass.cs.nio.JSONMessenger;
 import edu.umass.cs.nio.JSONNIOTransport;
 import edu.umass.cs.nio.JSONPacket;
 import edu.umass.cs.nio.MessageExtractor;
 import edu.umass.cs.nio.MessageNIOTransport;
+import edu.umass.cs.nio.NIOTransport;
 import edu.umass.cs.nio.SSLDataProcessingWorker;
 import edu.umass.cs.nio.SSLDataProcessingWorker.SSL_MODES;
 import edu.umass.cs.nio.interfaces.InterfaceNIOTransport;
@@ -91,8 +101,10 @@ import edu.umass.cs.nio.nioutils.SampleNodeConfig;
 import edu.umass.cs.utils.Config;
 import edu.umass.cs.utils.DelayProfiler;
 import edu.umass.cs.utils.Diskable;
+import edu.umass.cs.utils.EvictionPolicy;
 import edu.umass.cs.utils.GCConcurrentHashMap;
 import edu.umass.cs.utils.GCConcurrentHashMapCallback;
+import edu.umass.cs.utils.Metrics;
 import edu.umass.cs.utils.MultiArrayMap;
 import edu.umass.cs.utils.StringLocker;
 import edu.umass.cs.utils.Util;
@@ -136,6 +148,9 @@ public class PaxosManager<NodeIDType> {
 	private final Stringifiable<NodeIDType> unstringer;
 	private final RequestBatcher requestBatcher;
 	private final PaxosPacketBatcher ppBatcher;
+	// null if async unpause is disabled
+	private final Unpauser unpauser;
+	private final ExecutorService unpauseExecutor;
 
 	private int outOfOrderLimit = PaxosInstanceStateMachine.SYNC_THRESHOLD;
 	private int interCheckpointInterval = PaxosInstanceStateMachine.INTER_CHECKPOINT_INTERVAL;
@@ -393,6 +408,7 @@ public class PaxosManager<NodeIDType> {
 			InterfaceNIOTransport<NodeIDType, JSONObject> niot, Replicable pi,
 			String paxosLogFolder, boolean enableNullCheckpoints) {
 		this.myID = this.integerMap.put(id);// id.hashCode();
+		RequestTracer.registerNode(this.myID, id);
 		this.executor = Executors.newScheduledThreadPool(1,
 				new ThreadFactory() {
 					@Override
@@ -422,6 +438,18 @@ public class PaxosManager<NodeIDType> {
 					});
 		
 		
+		this.unpauseExecutor = Executors.newFixedThreadPool(
+				Config.getGlobalInt(PC.UNPAUSE_THREADS), new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread thread = Executors.defaultThreadFactory()
+								.newThread(r);
+						thread.setName(PaxosManager.class.getSimpleName()
+								+ myID + "unpause" + thread.getId());
+						return thread;
+					}
+				});
+
 		this.unstringer = unstringer;
 		this.largeCheckpointer = new LargeCheckpointer(paxosLogFolder,
 				this.myID + "");
@@ -432,6 +460,9 @@ public class PaxosManager<NodeIDType> {
 		this.corpses = new HashMap<String, PaxosInstanceStateMachine>();
 		// this.activePaxii = new HashMap<String, ActivePaxosState>();
 		this.messenger = (new PaxosMessenger<NodeIDType>(niot, this.integerMap));
+		this.hits = Metrics.counter(this.getMetricName(Counters.hits));
+		this.pauses = Metrics.counter(this.getMetricName(Counters.pauses));
+		this.unpauses = Metrics.counter(this.getMetricName(Counters.unpauses));
 		this.paxosLogger = new SQLPaxosLogger(this.myID, id.toString(),
 				paxosLogFolder, this.wrapMessenger(this.messenger));
 		this.nullCheckpointsEnabled = enableNullCheckpoints;
@@ -449,9 +480,17 @@ public class PaxosManager<NodeIDType> {
 		this.initOutstandingMonitor();
 		(this.requestBatcher = new RequestBatcher(this)).start();
 		(this.ppBatcher = new PaxosPacketBatcher(this)).start();
+		if ((this.unpauser = Config.getGlobalBoolean(PC.ASYNC_UNPAUSE)
+				&& isPauseEnabled() ? new Unpauser(this) : null) != null)
+			this.unpauser.start();
+		this.initMetrics();
 		testingInitialization();
 		// needed to unclose when testing multiple runs of open and close
 		open();
+		AbstractPacketDemultiplexer.setVirtualThreads(Config
+				.getGlobalBoolean(PC.DEMULTIPLEXER_VIRTUAL_THREADS));
+		AbstractPacketDemultiplexer.setDefaultMaxConcurrencyPerType(Config
+				.getGlobalInt(PC.DEMULTIPLEXER_MAX_CONCURRENCY_PER_TYPE));
 		// so paxos packets will come to me before anyone else
 		niot.precedePacketDemultiplexer(Config.getGlobalString(PC.JSON_LIBRARY)
 				.equals("org.json") ? new JSONDemultiplexer()
@@ -459,6 +498,90 @@ public class PaxosManager<NodeIDType> {
 		initiateRecovery(id);
 		if (!Config.getGlobalBoolean(PC.DELAY_PROFILER))
 			DelayProfiler.disable();
+		NIOTransport.setCompression(Config
+				.getGlobalBoolean(PC.ENABLE_COMPRESSION));
+		NIOTransport.setCompressionCodec(Config
+				.getGlobalInt(PC.COMPRESSION_CODEC));
+		NIOTransport.setCompressionThreshold(Config
+				.getGlobalInt(PC.COMPRESSION_THRESHOLD));
+		SSLDataProcessingWorker.setSessionCacheSize(Config
+				.getGlobalInt(PC.SSL_SESSION_CACHE_SIZE));
+		SSLDataProcessingWorker.setSessionTimeout(Config
+				.getGlobalInt(PC.SSL_SESSION_TIMEOUT));
+	}
+
+	private static enum Gauges {
+		outstanding, batcherQueue, active, paused, hitRatioPercent, unpauseQueue
+	};
+
+	/* hits are accesses to already active instances and unpauses are the
+	 * misses, so their rates give the hit ratio and unpause rate. */
+	private static enum Counters {
+		hits, pauses, unpauses
+	};
+
+	private final Metrics.Counter hits;
+	private final Metrics.Counter pauses;
+	private final Metrics.Counter unpauses;
+
+	/* Picks instances to pause beyond the long idle ones when over capacity;
+	 * null means SWEEP, i.e., pause in iteration order. */
+	private final EvictionPolicy<String> evictionPolicy = EvictionPolicy.Type
+			.valueOf(Config.getGlobalString(PC.EVICTION_POLICY))
+			.<String> newInstance();
+
+	private String getMetricName(Enum<?> metric) {
+		return Metrics.getName("paxos." + metric, this.getNodeID());
+	}
+
+	// queue depths sampled by metrics snapshots
+	private void initMetrics() {
+		Metrics.gauge(this.getMetricName(Gauges.outstanding),
+				new Metrics.Gauge() {
+					@Override
+					public long getValue() {
+						return PaxosManager.this.outstanding.requests.size();
+					}
+				});
+		Metrics.gauge(this.getMetricName(Gauges.batcherQueue),
+				new Metrics.Gauge() {
+					@Override
+					public long getValue() {
+						return PaxosManager.this.requestBatcher.getQueueSize();
+					}
+				});
+		Metrics.gauge(this.getMetricName(Gauges.active), new Metrics.Gauge() {
+			@Override
+			public long getValue() {
+				return PaxosManager.this.pinstances.sizeEstimate();
+			}
+		});
+		// paused since startup net of unpauses
+		Metrics.gauge(this.getMetricName(Gauges.paused), new Metrics.Gauge() {
+			@Override
+			public long getValue() {
+				return PaxosManager.this.pauses.get()
+						- PaxosManager.this.unpauses.get();
+			}
+		});
+		Metrics.gauge(this.getMetricName(Gauges.unpauseQueue),
+				new Metrics.Gauge() {
+					@Override
+					public long getValue() {
+						return PaxosManager.this.unpauser != null ? PaxosManager.this.unpauser
+								.getQueueSize() : 0;
+					}
+				});
+		// since startup
+		Metrics.gauge(this.getMetricName(Gauges.hitRatioPercent),
+				new Metrics.Gauge() {
+					@Override
+					public long getValue() {
+						long hits = PaxosManager.this.hits.get(), total = hits
+								+ PaxosManager.this.unpauses.get();
+						return total > 0 ? hits * 100 / total : 100;
+					}
+				});
 	}
 
 	private void initOutstandingMonitor() {
@@ -491,7 +614,9 @@ public class PaxosManager<NodeIDType> {
 												PaxosManager.this.pinstances
 														.size(),
 												PaxosManager.this.pendingDigests,
-												DelayProfiler.getStats() });
+												DelayProfiler.getStats()
+														+ "\n"
+														+ Metrics.getStats() });
 								if (!PaxosManager.this.outstanding.requests
 										.isEmpty()
 										&& PaxosManager.this.outstanding.requests instanceof GCConcurrentHashMap)
@@ -670,26 +795,82 @@ public class PaxosManager<NodeIDType> {
 					"{0} batch-inserting initial checkpoints for {1} names: {2}",
 					new Object[] { this, nameStates.size(),
 							Util.truncatedLog(nameStates.entrySet(), 8) });
-			if (SNEAKY_BATCH_CREATION)
+			if (SNEAKY_BATCH_CREATION) {
 				this.paxosLogger.insertInitialCheckpoints(nameStates,
 						Util.setToStringSet(gms), members);
+				return this.createPaxosInstancesFinal(nameStates, gms, members);
+			}
 			boolean created = true;
 			for (String name : nameStates.keySet()) {
 				assert (nameStates.get(name) != null);
 				created = created
-						&& (SNEAKY_BATCH_CREATION ? this.createPaxosInstance(
-								name, 0, gms, this.myApp, nameStates.get(name),
-								HotRestoreInfo.createHRI(name, members,
-										PaxosInstanceStateMachine
-												.roundRobinCoordinator(name,
-														members, 0)), false)
-								: this.createPaxosInstance(name, gms,
-										nameStates.get(name))) != null;
+						&& this.createPaxosInstance(name, gms,
+								nameStates.get(name));
 			}
 			return created;
 		}
 	}
 
+	/* Batched counterpart of createPaxosInstanceFinal for version 0 instances
+	 * with the same group and initial checkpoints already inserted. Previously
+	 * stopped versions are looked up with one bulk query instead of one query
+	 * per name, and per-group work like keepalives is done once per batch. */
+	private synchronized boolean createPaxosInstancesFinal(
+			Map<String, String> nameStates, Set<NodeIDType> gms, int[] members) {
+		if (this.isClosed())
+			return false;
+		if (!gms.contains(this.getNodeID()))
+			throw new PaxosInstanceCreationException(this.getNodeID()
+					+ " can not create a paxos instance for group " + gms
+					+ " to which it does not belong");
+		assert (hasRecovered());
+
+		Map<String, Integer> stopped = this.paxosLogger
+				.getEpochFinalCheckpointVersions(nameStates.keySet());
+		Set<Integer> intGMS = this.integerMap.put(gms);
+		boolean createdAll = true;
+		int created = 0;
+		for (Map.Entry<String, String> nameState : nameStates.entrySet()) {
+			String paxosID = nameState.getKey();
+			assert (nameState.getValue() != null);
+			// any existing or previously stopped version precludes version 0
+			if (this.getInstance(paxosID, false, false) != null
+					|| (stopped.containsKey(paxosID) && stopped.get(paxosID) >= 0)) {
+				PaxosConfig.log.log(Level.INFO,
+						"{0} can not batch-create {1}:0 as it or a higher version exists or was stopped",
+						new Object[] { this, paxosID });
+				createdAll = false;
+				continue;
+			}
+			this.waitPinstancesSize();
+			PaxosInstanceStateMachine pism = null;
+			try {
+				pism = new PaxosInstanceStateMachine(paxosID, 0, myID, intGMS,
+						this.myApp, nameState.getValue(), this,
+						HotRestoreInfo.createHRI(paxosID, members,
+								PaxosInstanceStateMachine
+										.roundRobinCoordinator(paxosID,
+												members, 0)), false);
+			} catch (Exception e) {
+				e.printStackTrace();
+				throw new PaxosInstanceCreationException(e.getMessage());
+			}
+			this.pinstances.put(paxosID, pism);
+			if (this.evictionPolicy != null)
+				this.evictionPolicy.admitted(paxosID);
+			incrCreated();
+			this.syncPaxosInstance(pism, false);
+			created++;
+		}
+		this.notifyUponCreation();
+		this.FD.sendKeepAlive(gms);
+		this.addServers(gms);
+		PaxosConfig.log.log(Level.FINE,
+				"{0} batch-created {1}/{2} paxos instances with members {3}",
+				new Object[] { this, created, nameStates.size(), gms });
+		return createdAll;
+	}
+
 	private PaxosInstanceStateMachine createPaxosInstance(String paxosID,
 			int version, Set<NodeIDType> gms, Replicable app,
 			String initialState, HotRestoreInfo hri, boolean tryRestore,
@@ -786,9 +967,12 @@ public class PaxosManager<NodeIDType> {
 		}
 
 		pinstances.put(paxosID, pism);
+		if (this.evictionPolicy != null)
+			this.evictionPolicy.admitted(paxosID);
 		incrCreated();
 		this.notifyUponCreation();
-		assert (this.getInstance(paxosID, false, false) != null);
+		// not getInstance as that would count as a reference
+		assert (this.pinstances.get(paxosID) != null);
 		PaxosConfig.log.log(Level.FINE,
 				"{0} successfully {1} paxos instance {2}",
 				new Object[] { this, hri != null ? "unpaused" : "created",
@@ -1065,7 +1249,9 @@ public class PaxosManager<NodeIDType> {
 		if (ENABLE_RESPONSE_CACHING && pp.getType() == PaxosPacketType.REQUEST
 				&& this.retransmittedRequest(((RequestPacket) pp)))
 			return;
-		else if (pp.getType() == PaxosPacketType.BATCHED_PAXOS_PACKET)
+		if (pp.getType() == PaxosPacketType.REQUEST)
+			RequestTracer.receive((RequestPacket) pp, this.myID);
+		if (pp.getType() == PaxosPacketType.BATCHED_PAXOS_PACKET)
 			for (PaxosPacket packet : ((BatchedPaxosPacket) pp)
 					.getPaxosPackets())
 				this.handleIncomingPacket(packet);
@@ -1103,8 +1289,30 @@ public class PaxosManager<NodeIDType> {
 				+ req.getSummary());
 	}
 
-	@SuppressWarnings("unchecked")
 	private void handlePaxosPacket(PaxosPacket request) {
+		this.handlePaxosPacket(request, this.unpauser != null);
+	}
+
+	/* Unpauses in bulk the instances for which packets were queued by
+	 * handlePaxosPacket and then handles the packets. */
+	protected void unpauseAndHandle(PaxosPacket[] batch) {
+		Set<String> paxosIDs = new LinkedHashSet<String>();
+		for (PaxosPacket packet : batch)
+			if (this.pinstances.get(packet.getPaxosID()) == null)
+				paxosIDs.add(packet.getPaxosID());
+		this.unpause(paxosIDs);
+		// not queued again even if still not unpaused
+		for (PaxosPacket packet : batch)
+			try {
+				this.handlePaxosPacket(packet, false);
+			} catch (Exception e) {
+				// must continue running despite any exceptions
+				e.printStackTrace();
+			}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void handlePaxosPacket(PaxosPacket request, boolean queueIfPaused) {
 		if (this.isClosed())
 			return;
 		else if (emulateUnreplicated(request)
@@ -1132,8 +1340,14 @@ public class PaxosManager<NodeIDType> {
 				if (request instanceof RequestPacket) // base and super types
 					((RequestPacket) request).addDebugInfo("i", myID);
 
-				PaxosInstanceStateMachine pism = this.getInstance(request
-						.getPaxosID());
+				PaxosInstanceStateMachine pism = queueIfPaused ? this
+						.getInstance(request.getPaxosID(), false, false) : this
+						.getInstance(request.getPaxosID());
+				if (pism == null && queueIfPaused && this.hasRecovered()) {
+					// unpause asynchronously with other paused instances
+					this.unpauser.enqueue(new PaxosPacket[] { request });
+					break;
+				}
 
 				level = pism!=null ? level : Level.FINE;
 				PaxosConfig.log.log(level, "{0} received paxos message for {1} : {2}",
@@ -1222,6 +1436,73 @@ public class PaxosManager<NodeIDType> {
 		return matched ? pism.getPaxosIDVersion() : null;
 	}
 
+	/**
+	 * Proposes {@code requests} to paxosID as batched request packets
+	 * bypassing the request batcher, so that the requests are decided in as
+	 * few slots as the batch size limits allow and are executed back to back
+	 * in the given order. Useful for internal retransmissions of many small
+	 * requests to the same group that would otherwise each take a separate
+	 * agreement round.
+	 * 
+	 * @param paxosID
+	 * @param requests
+	 * @param callback
+	 * @return Refer {@link #propose(String, String,ExecutedCallback)}. If
+	 *         paxosID does not exist locally, none of the requests are
+	 *         proposed.
+	 */
+	public String proposeBatch(String paxosID, Request[] requests,
+			ExecutedCallback callback) {
+		if (this.isClosed() || requests.length == 0)
+			return null;
+		PaxosInstanceStateMachine pism = this.getInstance(paxosID);
+		if (pism == null) {
+			PaxosConfig.log.log(Level.INFO,
+					"{0} could not find paxos instance {1} for batch of {2} requests; "
+							+ " last known version was [{3}]",
+					new Object[] { this, paxosID, requests.length,
+							this.getVersion(paxosID) });
+			return null;
+		}
+
+		RequestPacket first = null;
+		ArrayList<RequestPacket> batch = new ArrayList<RequestPacket>();
+		int totalByteLength = 0, totalBatchSize = 0;
+		for (Request request : requests) {
+			RequestPacket requestPacket = this.getRequestPacket(request);
+			requestPacket.putPaxosID(paxosID, pism.getVersion());
+			this.outstanding.enqueue(new RequestAndCallback(requestPacket,
+					callback));
+			if (first != null
+					&& RequestBatcher.exceedsBatchLimits(
+							totalByteLength += requestPacket.lengthEstimate(),
+							totalBatchSize += requestPacket.batchSize() + 1)) {
+				this.proposeBatched(first, batch);
+				first = null;
+				batch.clear();
+			}
+			if (first == null) {
+				first = requestPacket;
+				totalByteLength = first.lengthEstimate();
+				totalBatchSize = first.batchSize() + 1;
+			} else
+				batch.add(requestPacket);
+		}
+		this.proposeBatched(first, batch);
+		PaxosConfig.log.log(Level.FINE,
+				"{0} proposed batch of {1} requests to {2}", new Object[] {
+						this, requests.length, pism.getPaxosIDVersion() });
+		return pism.getPaxosIDVersion();
+	}
+
+	private void proposeBatched(RequestPacket first,
+			ArrayList<RequestPacket> batch) {
+		if (!batch.isEmpty())
+			first.latchToBatch(batch.toArray(new RequestPacket[0]));
+		RequestTracer.receive(first, this.myID);
+		this.proposeBatched(first);
+	}
+
 	// used (only) by RequestBatcher for already batched RequestPackets
 	protected void proposeBatched(RequestPacket requestPacket) {
 		if (requestPacket != null)
@@ -1695,8 +1976,15 @@ public class PaxosManager<NodeIDType> {
 		this.messenger.stop();
 		this.requestBatcher.stop();
 		this.ppBatcher.stop();
+		if (this.unpauser != null)
+			this.unpauser.stop();
+		this.unpauseExecutor.shutdownNow();
 		this.largeCheckpointer.close();
 		this.executor.shutdownNow();
+		for (Gauges gauge : Gauges.values())
+			Metrics.unregister(this.getMetricName(gauge));
+		for (Counters counter : Counters.values())
+			Metrics.unregister(this.getMetricName(counter));
 		if(this.myApp instanceof GigapaxosShutdownable) ((GigapaxosShutdownable)this.myApp).shutdown();
 
 		for (Iterator<PaxosInstanceStateMachine> pismIter = this.pinstances
@@ -1802,6 +2090,11 @@ public class PaxosManager<NodeIDType> {
 			if ((pism = pinstances.get(paxosID)) != null)
 				pism.markActive();
 		}
+		if (pism != null) {
+			this.hits.incr();
+			if (this.evictionPolicy != null)
+				this.evictionPolicy.referenced(paxosID);
+		}
 		if (pism == null
 				&& ((tryHotRestore && (pism = this.unpause(paxosID)) != null) || (tryRestore && (pism = this
 						.restore(paxosID)) != null)))
@@ -2189,6 +2482,8 @@ public class PaxosManager<NodeIDType> {
 		assert (pism != null);
 		pism.forceStop();
 		this.pinstances.remove(pism.getPaxosID());
+		if (this.evictionPolicy != null)
+			this.evictionPolicy.removed(pism.getPaxosID());
 	}
 
 	/* For testing. Similar to hibernate but without forcing a checkpoint and
@@ -2341,11 +2636,108 @@ public class PaxosManager<NodeIDType> {
 						new Object[] { this, hri.paxosID });
 		}
 		DelayProfiler.updateDelay("pause", t, pausedHRIMap.size());
+		this.pauses.add(pausedHRIMap.size());
 		return pausedHRIMap.keySet();
 	}
 
 	private StringLocker stringLocker = new StringLocker();
 
+	/* Paused state of a slice of paxosIDs being unpaused in bulk. The state
+	 * is available once the bulk read is done. */
+	private static class BulkUnpause {
+		final CountDownLatch read = new CountDownLatch(1);
+		Map<String, HotRestoreInfo> hris = Collections.emptyMap();
+	}
+
+	// paxosIDs being unpaused in bulk
+	private final ConcurrentHashMap<String, BulkUnpause> unpausing = new ConcurrentHashMap<String, BulkUnpause>();
+
+	/* Bulk version of unpause(String). The paxosIDs are split into up to
+	 * UNPAUSE_THREADS slices and each slice's paused state is read in bulk and
+	 * its instances created by a separate thread, so the reads of one slice
+	 * overlap with instance creation, which is synchronized, for another.
+	 * 
+	 * A concurrent unpause(String) of the same paxosID, e.g., through the
+	 * DiskMap or for a packet not queued in the unpauser, could otherwise find
+	 * no paused state after the bulk read has removed it but before the
+	 * instance has been created, and drop its packet. So each paxosID is
+	 * marked before the bulk read, and unpause(String) upon finding no paused
+	 * state for a marked paxosID waits for the bulk read and uses its state.
+	 * The instance is created, as in unpause(String), under the paxosID's
+	 * stringLocker lock by whichever of the two removes the mark. Waiting only
+	 * for the read, not for instance creation, ensures that unpause(String)
+	 * does not wait for locks that its caller may hold. */
+	protected Set<String> unpause(Set<String> paxosIDs) {
+		final Set<String> restored = Collections
+				.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+		if (this.isClosed() || !this.hasRecovered() || !this.isPauseEnabled()
+				|| paxosIDs.isEmpty())
+			return restored;
+
+		long unpauseInitTime = System.currentTimeMillis();
+		String[] ids = paxosIDs.toArray(new String[0]);
+		int sliceSize = (ids.length + UNPAUSE_THREADS - 1) / UNPAUSE_THREADS;
+		ArrayList<Future<?>> futures = new ArrayList<Future<?>>();
+		for (int i = 0; i < ids.length; i += sliceSize) {
+			final Set<String> slice = new HashSet<String>(Arrays.asList(Arrays
+					.copyOfRange(ids, i, Math.min(i + sliceSize, ids.length))));
+			futures.add(this.unpauseExecutor.submit(new Runnable() {
+				@Override
+				public void run() {
+					BulkUnpause bulk = new BulkUnpause();
+					try {
+						for (String paxosID : slice)
+							PaxosManager.this.unpausing.put(paxosID, bulk);
+						try {
+							bulk.hris = PaxosManager.this.paxosLogger
+									.unpause(slice);
+						} finally {
+							bulk.read.countDown();
+						}
+						for (HotRestoreInfo hri : bulk.hris.values())
+							if (PaxosManager.this.unpause(hri, bulk) != null)
+								restored.add(hri.paxosID);
+					} finally {
+						for (String paxosID : slice)
+							PaxosManager.this.unpausing.remove(paxosID, bulk);
+					}
+				}
+			}));
+		}
+		for (Future<?> future : futures)
+			try {
+				future.get();
+			} catch (InterruptedException | ExecutionException e) {
+				e.printStackTrace();
+			}
+		PaxosConfig.log.log(Level.FINE, "{0} unpaused {1} of {2} instances {3}",
+				new Object[] { this, restored.size(), paxosIDs.size(),
+						Util.truncatedLog(restored, PRINT_LOG_SIZE) });
+		if (!restored.isEmpty()) {
+			DelayProfiler.updateDelay("unpause", unpauseInitTime,
+					restored.size());
+			this.unpauses.add(restored.size());
+		}
+		return restored;
+	}
+
+	// creates hri's instance unless unpause(String) has taken it over
+	private PaxosInstanceStateMachine unpause(HotRestoreInfo hri,
+			BulkUnpause bulk) {
+		PaxosInstanceStateMachine restored = null;
+		synchronized (this.stringLocker.get(hri.paxosID)) {
+			if (this.unpausing.remove(hri.paxosID, bulk))
+				restored = this.createPaxosInstance(hri.paxosID, hri.version,
+						this.integerMap.get(Util.arrayToIntSet(hri.members)),
+						this.myApp, null, hri, false);
+		}
+		this.stringLocker.remove(hri.paxosID);
+		return restored;
+	}
+
+	private static final int UNPAUSE_THREADS = Config
+			.getGlobalInt(PC.UNPAUSE_THREADS);
+
 	// Hot restores from disk, i.e., restores quickly without need for rollback
 	private/* synchronized */PaxosInstanceStateMachine unpause(String paxosID) {
 		if (this.isClosed() || !this.hasRecovered() || !this.isPauseEnabled())
@@ -2370,6 +2762,18 @@ public class PaxosManager<NodeIDType> {
 
 			HotRestoreInfo hri = this.paxosLogger.unpause(paxosID);
 
+			// paused state may have been read by a bulk unpause, refer unpause(Set)
+			BulkUnpause bulk = hri == null ? this.unpausing.get(paxosID) : null;
+			if (bulk != null) {
+				try {
+					bulk.read.await();
+				} catch (InterruptedException e) {
+					e.printStackTrace();
+				}
+				if (this.unpausing.remove(paxosID, bulk))
+					hri = bulk.hris.get(paxosID);
+			}
+
 			if (hri != null) {
 				PaxosConfig.log.log(Level.FINE,
 						"{0} successfully unpaused paused instance {1}",
@@ -2386,8 +2790,10 @@ public class PaxosManager<NodeIDType> {
 
 		if (restored != null)
 			assert (restored.isActive());
-		if (restored != null)
+		if (restored != null) {
 			DelayProfiler.updateDelay("unpause", unpauseInitTime);
+			this.unpauses.incr();
+		}
 		return restored;
 	}
 
@@ -2796,6 +3202,9 @@ public class PaxosManager<NodeIDType> {
 				new Object[] { this, this.pinstances.size() });
 		int numPaused = 0;
 		Map<String, PaxosInstanceStateMachine> batch = new HashMap<String, PaxosInstanceStateMachine>();
+		/* With an eviction policy, the sweep pauses only long idle instances
+		 * and the policy picks the forced ones afterwards. */
+		boolean forceInSweep = this.evictionPolicy == null;
 
 		// cuckoo hashmap now supports an efficient iterator
 		for (Iterator<PaxosInstanceStateMachine> pismIter = this.pinstances
@@ -2805,9 +3214,7 @@ public class PaxosManager<NodeIDType> {
 			String paxosID = pism.getPaxosID();
 
 			if (pism.isLongIdle()
-			// if size > capacity/2, pause 1/FORCE_PAUSE_FACTOR fraction
-					|| (this.pinstances.size() > this.pinstances.capacity() / 2 && numPaused < this.pinstances
-							.capacity() / FORCE_PAUSE_FACTOR)) {
+					|| (forceInSweep && this.needsForcedPause(numPaused))) {
 				PaxosConfig.log.log(Level.FINER, "{0} trying to pause {1} [{2}]",
 						new Object[] { this, paxosID, pism });
 				/* The sync below ensures that, at least once every deactivation
@@ -2857,29 +3264,64 @@ public class PaxosManager<NodeIDType> {
 				 * commits) at this replica, a ~15% overhead. But with such a
 				 * low outOfOrder threshold, we should not be having a large
 				 * number of paxos instances in the first place. */
-				this.syncPaxosInstance(pism, false);
-				// rate limit if well under capacity
-				if (this.pinstances.size() < this.pinstances.capacity()
-						/ FORCE_PAUSE_FACTOR)
-					rateLimiter.record();
-				batch.put(pism.getPaxosID(), pism);
-				if (batch.size() >= PAUSE_BATCH_SIZE) {
-					Set<String> batchPaused = pause(batch, true);
-					if (batchPaused != null)
-						numPaused += batchPaused.size();
-					PaxosConfig.log.log(Level.FINE, "{0} paused {1}", new Object[] { this,
-							batchPaused });
-					this.printPauseLog(batchPaused);
-					batch.clear();
-				}
+				numPaused += this.syncAndBatchPause(pism, batch, rateLimiter);
 			}
 		}
 		if (!batch.isEmpty()) {
-			this.printPauseLog(this.pause(batch, true));
+			Set<String> batchPaused = this.pause(batch, true);
+			if (batchPaused != null)
+				numPaused += batchPaused.size();
+			this.printPauseLog(batchPaused);
+			batch.clear();
+		}
+
+		if (!forceInSweep) {
+			// at most one pass over the policy's entries
+			for (int i = this.evictionPolicy.size(); i >= 0
+					&& this.needsForcedPause(numPaused + batch.size()); i--) {
+				String paxosID = this.evictionPolicy.victim();
+				if (paxosID == null)
+					break;
+				PaxosInstanceStateMachine pism = this.pinstances.get(paxosID);
+				if (pism == null)
+					this.evictionPolicy.removed(paxosID);
+				else if (!batch.containsKey(paxosID))
+					numPaused += this.syncAndBatchPause(pism, batch,
+							rateLimiter);
+			}
+			if (!batch.isEmpty())
+				this.printPauseLog(this.pause(batch, true));
 		}
 		DelayProfiler.updateDelay("deactivation", t0);
 	}
 
+	// if size > capacity/2, pause 1/FORCE_PAUSE_FACTOR fraction
+	private boolean needsForcedPause(int numPaused) {
+		return this.pinstances.size() > this.pinstances.capacity() / 2
+				&& numPaused < this.pinstances.capacity() / FORCE_PAUSE_FACTOR;
+	}
+
+	/* Adds pism to batch after syncing it and pauses the batch if full.
+	 * Returns the number of instances paused. */
+	private int syncAndBatchPause(PaxosInstanceStateMachine pism,
+			Map<String, PaxosInstanceStateMachine> batch,
+			RateLimiter rateLimiter) {
+		this.syncPaxosInstance(pism, false);
+		// rate limit if well under capacity
+		if (this.pinstances.size() < this.pinstances.capacity()
+				/ FORCE_PAUSE_FACTOR)
+			rateLimiter.record();
+		batch.put(pism.getPaxosID(), pism);
+		if (batch.size() < PAUSE_BATCH_SIZE)
+			return 0;
+		Set<String> batchPaused = pause(batch, true);
+		PaxosConfig.log.log(Level.FINE, "{0} paused {1}", new Object[] { this,
+				batchPaused });
+		this.printPauseLog(batchPaused);
+		batch.clear();
+		return batchPaused != null ? batchPaused.size() : 0;
+	}
+
 	private void printPauseLog(Collection<String> paused) {
 		if(this.isClosed() || !this.isPauseEnabled() || paused==null) return;
 		
@@ -0,0 +1,400 @@
+/* Copyright (c) 2015 University of Massachusetts
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * Initial developer(s): V. Arun */
+package edu.umass.cs.gigapaxos;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import edu.umass.cs.gigapaxos.paxospackets.AcceptPacket;
+import edu.umass.cs.gigapaxos.paxospackets.PValuePacket;
+import edu.umass.cs.gigapaxos.paxospackets.ProposalPacket;
+import edu.umass.cs.gigapaxos.paxospackets.RequestPacket;
+import edu.umass.cs.gigapaxos.paxospackets.PaxosPacket.PaxosPacketType;
+import edu.umass.cs.gigapaxos.paxosutil.Ballot;
+import edu.umass.cs.gigapaxos.paxosutil.LogIndex;
+import edu.umass.cs.gigapaxos.paxosutil.LogMessagingTask;
+import edu.umass.cs.gigapaxos.paxosutil.PaxosPacketDemultiplexerFast;
+import edu.umass.cs.nio.MessageNIOTransport;
+import edu.umass.cs.nio.nioutils.NIOHeader;
+import edu.umass.cs.reconfiguration.reconfigurationutils.ConsistentHashing;
+import edu.umass.cs.utils.DiskMap;
+import edu.umass.cs.utils.Keyable;
+import edu.umass.cs.utils.MappedDiskable;
+import edu.umass.cs.utils.MicroBenchmark;
+import edu.umass.cs.utils.MicroBenchmark.Benchmark;
+import edu.umass.cs.utils.MultiArrayMap;
+import edu.umass.cs.utils.Util;
+
+/**
+ * @author arun
+ *
+ *         Microbenchmarks for gigapaxos hot paths run in isolation, i.e.,
+ *         without any networking or other nodes, as opposed to the end-to-end
+ *         throughput tests in {@link edu.umass.cs.gigapaxos.testing}. Usage:
+ *
+ *         <p>
+ *         {@code PaxosMicroBenchmarks [-w warmupIterations] [-i iterations]
+ *         [-t iterationMillis] [-o results.json] [regex]}
+ *
+ *         <p>
+ *         Only benchmarks whose names match regex, if specified, are run.
+ *         Results are written in JMH's JSON format to the output file, or to
+ *         standard output if none is specified. This class is in this package
+ *         only so that it can access the acceptor and logger directly.
+ */
+public class PaxosMicroBenchmarks {
+
+	private static final String PAXOS_ID = "paxos0";
+	private static final int NUM_KEYS = 64 * 1024;
+	private static final int LOG_BATCH_SIZE = 32;
+
+	private static final InetSocketAddress SENDER = new InetSocketAddress(
+			InetAddress.getLoopbackAddress(), 2000);
+	private static final InetSocketAddress RECEIVER = new InetSocketAddress(
+			InetAddress.getLoopbackAddress(), 2100);
+
+	private static class KeyedValue implements Keyable<String> {
+		final String key;
+
+		KeyedValue(String key) {
+			this.key = key;
+		}
+
+		@Override
+		public String getKey() {
+			return this.key;
+		}
+	}
+
+	private static RequestPacket getRequest(int i) {
+		return (RequestPacket) new RequestPacket(i, "request_value:" + i, false)
+				.putPaxosID(PAXOS_ID, 0);
+	}
+
+	private static AcceptPacket getAccept(int slot, RequestPacket request) {
+		AcceptPacket accept = new AcceptPacket(1, new PValuePacket(new Ballot(
+				1, 1), new ProposalPacket(slot, request)), slot - 1);
+		accept.putPaxosID(PAXOS_ID, 0);
+		return accept;
+	}
+
+	private static String[] getKeys() {
+		String[] keys = new String[NUM_KEYS];
+		for (int i = 0; i < keys.length; i++)
+			keys[i] = "name" + i;
+		return keys;
+	}
+
+	private static List<Benchmark> getBenchmarks() throws JSONException,
+			UnsupportedEncodingException {
+		final List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+		final RequestPacket request = getRequest(0);
+		final AcceptPacket accept = getAccept(0, request);
+		final String acceptJSON = accept.toJSONObject().toString();
+		final String[] keys = getKeys();
+
+		// packet encoding includes construction as encodings are cached
+		benchmarks.add(new Benchmark("RequestPacket.toBytes") {
+			protected Object run(int i) {
+				return getRequest(i).toBytes();
+			}
+		});
+		benchmarks.add(new Benchmark("RequestPacket.fromBytes") {
+			final byte[] bytes = request.toBytes();
+
+			protected Object run(int i) throws Exception {
+				return new RequestPacket(bytes);
+			}
+		});
+		benchmarks.add(new Benchmark("RequestPacket.toJSON") {
+			protected Object run(int i) {
+				return getRequest(i).toString();
+			}
+		});
+		benchmarks.add(new Benchmark("RequestPacket.fromJSON") {
+			final String json = request.toString();
+
+			protected Object run(int i) throws Exception {
+				return new RequestPacket(new JSONObject(json));
+			}
+		});
+		benchmarks.add(new Benchmark("AcceptPacket.toBytes") {
+			protected Object run(int i) {
+				return getAccept(i, request).toBytes();
+			}
+		});
+		benchmarks.add(new Benchmark("AcceptPacket.fromBytes") {
+			final byte[] bytes = accept.toBytes();
+
+			protected Object run(int i) throws Exception {
+				return new AcceptPacket(bytes);
+			}
+		});
+		benchmarks.add(new Benchmark("AcceptPacket.toJSON") {
+			protected Object run(int i) throws Exception {
+				return getAccept(i, request).toJSONObject().toString();
+			}
+		});
+		benchmarks.add(new Benchmark("AcceptPacket.fromJSON") {
+			protected Object run(int i) throws Exception {
+				return new AcceptPacket(new JSONObject(acceptJSON));
+			}
+		});
+		// decodes the bytes as received off the wire including the header
+		benchmarks.add(new Benchmark(
+				"PaxosPacketDemultiplexerFast.processHeaderUtil.bytes") {
+			final byte[] bytes = accept.toBytes();
+
+			protected Object run(int i) {
+				return PaxosPacketDemultiplexerFast.processHeaderUtil(bytes,
+						new NIOHeader(SENDER, RECEIVER));
+			}
+		});
+		/* Parses the json string as received off the wire, which also inserts
+		 * the stringified self, and then converts it to a packet as the
+		 * demultiplexer does before handing it to paxos. */
+		benchmarks.add(new Benchmark(
+				"PaxosPacketDemultiplexerFast.processHeaderUtil.json") {
+			// as stringified by the messenger for sending
+			final byte[] bytes = getAccept(0, request).toString().getBytes(
+					MessageNIOTransport.NIO_CHARSET_ENCODING);
+
+			protected Object run(int i) throws Exception {
+				return PaxosPacketDemultiplexerFast.toPaxosPacket(
+						(net.minidev.json.JSONObject) PaxosPacketDemultiplexerFast
+								.processHeaderUtil(bytes, new NIOHeader(
+										SENDER, RECEIVER)), null);
+			}
+		});
+		benchmarks.add(new Benchmark("MultiArrayMap.put") {
+			MultiArrayMap<String, KeyedValue> map;
+
+			protected void setup() {
+				map = new MultiArrayMap<String, KeyedValue>(NUM_KEYS);
+			}
+
+			protected Object run(int i) {
+				String key = keys[i & (NUM_KEYS - 1)];
+				return map.put(key, new KeyedValue(key));
+			}
+		});
+		benchmarks.add(new Benchmark("MultiArrayMap.get") {
+			MultiArrayMap<String, KeyedValue> map;
+
+			protected void setup() {
+				map = new MultiArrayMap<String, KeyedValue>(NUM_KEYS);
+				for (String key : keys)
+					map.put(key, new KeyedValue(key));
+			}
+
+			protected Object run(int i) {
+				return map.get(keys[i & (NUM_KEYS - 1)]);
+			}
+		});
+		benchmarks.add(new DiskMapBenchmark("DiskMap.put") {
+			protected Object run(int i) {
+				String key = keys[i & (NUM_KEYS - 1)];
+				return map.put(key, new KeyedValue(key));
+			}
+		});
+		benchmarks.add(new DiskMapBenchmark("DiskMap.get") {
+			protected void setup() {
+				super.setup();
+				for (String key : keys)
+					map.put(key, new KeyedValue(key));
+			}
+
+			protected Object run(int i) {
+				return map.get(keys[i & (NUM_KEYS - 1)]);
+			}
+		});
+		// also commits the accepted slot so that the acceptor's state stays
+		// bounded as in steady state
+		benchmarks.add(new Benchmark("PaxosAcceptor.acceptAndUpdateBallot") {
+			PaxosAcceptor acceptor;
+
+			protected void setup() {
+				acceptor = new PaxosAcceptor(1, 1, 0, null);
+			}
+
+			protected Object run(int i) {
+				AcceptPacket accept = getAccept(i, request);
+				Ballot ballot = acceptor.acceptAndUpdateBallot(accept, 2);
+				acceptor.putAndRemoveNextExecutable(accept.makeDecision(i - 1));
+				return ballot;
+			}
+		});
+		benchmarks.add(new Benchmark("SQLPaxosLogger.logBatch") {
+			SQLPaxosLogger logger;
+			File dir;
+
+			protected void setup() throws IOException {
+				dir = Files.createTempDirectory(
+						PaxosMicroBenchmarks.class.getSimpleName()).toFile();
+				logger = new SQLPaxosLogger(0, "benchmark",
+						dir.getAbsolutePath(), null);
+			}
+
+			protected Object run(int i) {
+				LogMessagingTask[] batch = new LogMessagingTask[LOG_BATCH_SIZE];
+				for (int j = 0; j < batch.length; j++)
+					batch[j] = new LogMessagingTask(getAccept(i
+							* LOG_BATCH_SIZE + j, request));
+				return logger.logBatch(batch);
+			}
+
+			protected void teardown() {
+				logger.close();
+				Util.recursiveRemove(dir);
+			}
+		});
+		// restores logIndexes with ten entries each from the cold tier
+		benchmarks.add(new Benchmark("MappedDiskable.restore") {
+			MappedDiskable<String, LogIndex> store;
+			File dir;
+
+			protected void setup() throws IOException {
+				dir = Files.createTempDirectory(
+						PaxosMicroBenchmarks.class.getSimpleName()).toFile();
+				store = new MappedDiskable<String, LogIndex>(
+						dir.getAbsolutePath(), LogIndex.SERIALIZER,
+						1024 * 1024, 16 * 1024 * 1024);
+				Map<String, LogIndex> logIndexes = new HashMap<String, LogIndex>();
+				for (String key : keys) {
+					LogIndex logIndex = new LogIndex(key, 0);
+					for (int j = 1; j <= 10; j++)
+						logIndex.add(j, 1, 0, PaxosPacketType.ACCEPT.getInt(),
+								"logfile", j * 1000, 1000);
+					logIndexes.put(key, logIndex);
+				}
+				store.commit(logIndexes);
+				store.compact();
+			}
+
+			protected Object run(int i) throws IOException {
+				return store.restore(keys[i & (NUM_KEYS - 1)]);
+			}
+
+			protected void teardown() throws IOException {
+				store.close();
+				Util.recursiveRemove(dir);
+			}
+		});
+		benchmarks.add(new ConsistentHashingBenchmark(
+				ConsistentHashing.HashFunction.MD5, keys));
+		benchmarks.add(new ConsistentHashingBenchmark(
+				ConsistentHashing.HashFunction.MURMUR3, keys));
+		return benchmarks;
+	}
+
+	private static abstract class DiskMapBenchmark extends Benchmark {
+		DiskMap<String, KeyedValue> map;
+
+		DiskMapBenchmark(String name) {
+			super(name);
+		}
+
+		// in-memory backing store as only the map itself is benchmarked
+		protected void setup() {
+			final Map<String, KeyedValue> db = new ConcurrentHashMap<String, KeyedValue>();
+			map = new DiskMap<String, KeyedValue>(NUM_KEYS) {
+				@Override
+				public Set<String> commit(Map<String, KeyedValue> toCommit)
+						throws IOException {
+					db.putAll(toCommit);
+					return new HashSet<String>(toCommit.keySet());
+				}
+
+				@Override
+				public KeyedValue restore(String key) throws IOException {
+					return db.get(key);
+				}
+			};
+		}
+
+		protected void teardown() {
+			map.close(false);
+		}
+	}
+
+	private static class ConsistentHashingBenchmark extends Benchmark {
+		final ConsistentHashing.HashFunction hashFunction;
+		final String[] keys;
+		ConsistentHashing<String> ring;
+
+		ConsistentHashingBenchmark(ConsistentHashing.HashFunction hashFunction,
+				String[] keys) {
+			super("ConsistentHashing.getReplicatedServers." + hashFunction);
+			this.hashFunction = hashFunction;
+			this.keys = keys;
+		}
+
+		protected void setup() {
+			Set<String> servers = new HashSet<String>();
+			for (int i = 0; i < 16; i++)
+				servers.add("AR" + i);
+			ring = new ConsistentHashing<String>(servers, 3, false,
+					hashFunction, 1, 0);
+		}
+
+		protected Object run(int i) {
+			return ring.getReplicatedServers(keys[i & (NUM_KEYS - 1)]);
+		}
+	}
+
+	/**
+	 * @param args
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception {
+		Map<String, String> options = new HashMap<String, String>();
+		String regex = null;
+		for (int i = 0; i < args.length; i++)
+			if (args[i].startsWith("-") && i + 1 < args.length)
+				options.put(args[i], args[++i]);
+			else
+				regex = args[i];
+		PaxosConfig.load();
+		Logger.getLogger("").setLevel(Level.WARNING);
+
+		MicroBenchmark harness = new MicroBenchmark(
+				options.containsKey("-w") ? Integer.valueOf(options.get("-w"))
+						: 3,
+				options.containsKey("-i") ? Integer.valueOf(options.get("-i"))
+						: 5,
+				options.containsKey("-t") ? Long.valueOf(options.get("-t"))
+						: 1000);
+		MicroBenchmark.write(harness.runAll(getBenchmarks(), regex),
+				options.get("-o"));
+		System.exit(0);
+	}
+}
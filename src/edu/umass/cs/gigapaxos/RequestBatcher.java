@@ -27,6 +27,7 @@ import java.util.logging.Logger;
 import edu.umass.cs.gigapaxos.PaxosConfig.PC;
 import edu.umass.cs.gigapaxos.paxospackets.RequestPacket;
 import edu.umass.cs.gigapaxos.paxosutil.ConsumerTask;
+import edu.umass.cs.gigapaxos.paxosutil.RequestTracer;
 import edu.umass.cs.nio.NIOTransport;
 import edu.umass.cs.utils.Config;
 import edu.umass.cs.utils.DelayProfiler;
@@ -162,6 +163,25 @@ public class RequestBatcher extends ConsumerTask<RequestPacket> {
 	private static final boolean ENABLE_INSTRUMENTATION = Config.getGlobalBoolean(PC.ENABLE_INSTRUMENTATION);
 
 
+	/**
+	 * @param totalByteLength
+	 * @param totalBatchSize
+	 * @return True if a batch with the given estimated length and number of
+	 *         requests would exceed the log message or network payload size
+	 *         limit or the batch size limit.
+	 */
+	protected static boolean exceedsBatchLimits(int totalByteLength,
+			int totalBatchSize) {
+		return
+		// log message or network payload size limit would be reached
+		totalByteLength > (SQLPaxosLogger.isLoggingEnabled() ? Math.min(
+				NIOTransport.MAX_PAYLOAD_SIZE,
+				SQLPaxosLogger.MAX_LOG_MESSAGE_SIZE)
+				: NIOTransport.MAX_PAYLOAD_SIZE)
+		// batch size limit would be reached
+				|| totalBatchSize > MAX_BATCH_SIZE;
+	}
+
 	/* This method extracts a batched request from enqueued requests of batch
 	 * size at most MAX_BATCH_SIZE. */
 	@Override
@@ -200,14 +220,8 @@ public class RequestBatcher extends ConsumerTask<RequestPacket> {
 		while (reqPktIter.hasNext()) {
 			RequestPacket next = reqPktIter.next();
 			// break if not within size limits
-			if (// log message or network payload size limit would be reached
-			((totalByteLength += next.lengthEstimate()) > (SQLPaxosLogger
-					.isLoggingEnabled() ? Math.min(
-					NIOTransport.MAX_PAYLOAD_SIZE,
-					SQLPaxosLogger.MAX_LOG_MESSAGE_SIZE)
-					: NIOTransport.MAX_PAYLOAD_SIZE))
-					// batch size limit would be reached
-					|| ((totalBatchSize += next.batchSize() + 1) > MAX_BATCH_SIZE))
+			if (exceedsBatchLimits(totalByteLength += next.lengthEstimate(),
+					totalBatchSize += next.batchSize() + 1))
 				break;
 			// else add to batch and remove
 			batch.add(next);
@@ -217,6 +231,8 @@ public class RequestBatcher extends ConsumerTask<RequestPacket> {
 		// latch plucked sub-list above to the first request
 		if (!batch.isEmpty())
 			first.latchToBatch(batch.toArray(new RequestPacket[0]));
+		RequestTracer.record(first, RequestTracer.Event.BATCH,
+				this.paxosManager.getMyID());
 
 		// remove first list if all plucked
 		if (firstEntry.getValue().isEmpty())// !reqPktIter.hasNext())
@@ -17,7 +17,6 @@ package edu.umass.cs.gigapaxos;
 
 import java.beans.PropertyVetoException;
 import java.io.BufferedReader;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileFilter;
 import java.io.FileNotFoundException;
@@ -58,14 +57,13 @@ import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.zip.DataFormatException;
 import java.util.zip.Deflater;
-import java.util.zip.Inflater;
 
 import javax.sql.DataSource;
 
 import org.json.JSONArray;
 import org.json.JSONException;
+import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.JUnitCore;
 import org.junit.runner.Result;
@@ -74,6 +72,7 @@ import org.junit.runner.notification.Failure;
 import com.mchange.v2.c3p0.ComboPooledDataSource;
 
 import edu.umass.cs.gigapaxos.PaxosConfig.PC;
+import edu.umass.cs.gigapaxos.examples.noop.NoopPaxosApp;
 import edu.umass.cs.gigapaxos.paxospackets.AcceptPacket;
 import edu.umass.cs.gigapaxos.paxospackets.PValuePacket;
 import edu.umass.cs.gigapaxos.paxospackets.PaxosPacket;
@@ -94,10 +93,18 @@ import edu.umass.cs.gigapaxos.paxosutil.RecoveryInfo;
 import edu.umass.cs.gigapaxos.paxosutil.SQL;
 import edu.umass.cs.gigapaxos.paxosutil.SlotBallotState;
 import edu.umass.cs.gigapaxos.paxosutil.StringContainer;
+import edu.umass.cs.nio.JSONNIOTransport;
+import edu.umass.cs.nio.nioutils.DeflateCodec;
+import edu.umass.cs.nio.nioutils.PacketDemultiplexerDefault;
+import edu.umass.cs.nio.nioutils.SampleNodeConfig;
 import edu.umass.cs.utils.Config;
 import edu.umass.cs.utils.DelayProfiler;
 import edu.umass.cs.utils.DiskMap;
+import edu.umass.cs.utils.EvictionPolicy;
 import edu.umass.cs.utils.Diskable;
+import edu.umass.cs.utils.MappedDiskable;
+import edu.umass.cs.utils.Histogram;
+import edu.umass.cs.utils.Metrics;
 import edu.umass.cs.utils.MultiArrayMap;
 import edu.umass.cs.utils.Util;
 
@@ -252,6 +259,8 @@ public class SQLPaxosLogger extends AbstractPaxosLogger {
 
 	private final ScheduledExecutorService GC;
 	private final MessageLogDiskMap messageLog;
+	private final MappedDiskable<String, LogIndex> mappedLogIndexes;
+	private final MappedDiskable<String, HotRestoreInfo> pauseFile;
 
 	private static Logger log = Logger.getLogger(PaxosManager.class.getName());;
 
@@ -272,7 +281,30 @@ public class SQLPaxosLogger extends AbstractPaxosLogger {
 		this.journaler = new Journaler(this.logDirectory, this.strID/* this.myID */);
 		this.deleteTmpJournalFiles();
 
-		Diskable<String, LogIndex> disk = new Diskable<String, LogIndex>() {
+		try {
+			this.mappedLogIndexes = MAPPED_LOG_INDEX_STORE ? new MappedDiskable<String, LogIndex>(
+					this.getLogIndexDBPrefix() + ".mapped",
+					LogIndex.SERIALIZER,
+					Config.getGlobalInt(PC.MAPPED_STORE_HOT_BYTES),
+					Config.getGlobalInt(PC.MAPPED_STORE_SEGMENT_BYTES))
+					: null;
+			if (PAUSE_FILE && !USE_DISK_MAP)
+				log.log(Level.WARNING,
+						"{0} not using a pause file as it requires {1}",
+						new Object[] { this, PC.USE_DISK_MAP });
+			// not durable, so instances paused to it get recovered instead
+			if (PAUSE_FILE && USE_DISK_MAP)
+				Util.recursiveRemove(new File(this.getPauseFileDir()));
+			this.pauseFile = PAUSE_FILE && USE_DISK_MAP ? new MappedDiskable<String, HotRestoreInfo>(
+					this.getPauseFileDir(), HotRestoreInfo.SERIALIZER,
+					Config.getGlobalInt(PC.MAPPED_STORE_HOT_BYTES),
+					Config.getGlobalInt(PC.MAPPED_STORE_SEGMENT_BYTES))
+					: null;
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		Diskable<String, LogIndex> disk = this.mappedLogIndexes != null ? this.mappedLogIndexes
+				: new Diskable<String, LogIndex>() {
 
 			@Override
 			public Set<String> commit(Map<String, LogIndex> toCommit)
@@ -306,6 +338,8 @@ public class SQLPaxosLogger extends AbstractPaxosLogger {
 		super(IntegerMap.NULL_INT_NODE, null, null);
 		this.strID = strID;
 		this.messageLog = null;
+		this.mappedLogIndexes = null;
+		this.pauseFile = null;
 		this.journaler = null;
 		this.GC = null;
 		this.initialize(false);
@@ -351,6 +385,10 @@ public class SQLPaxosLogger extends AbstractPaxosLogger {
 		return getLogIndexDBPrefix(this.logDirectory, this.strID /* this.myID */);
 	}
 
+	private String getPauseFileDir() {
+		return this.getLogIndexDBPrefix() + ".paused";
+	}
+
 	/**
 	 * @param id
 	 * @param dbPath
@@ -373,6 +411,9 @@ public class SQLPaxosLogger extends AbstractPaxosLogger {
 			// LogIndex>(Config.getGlobalInt(PC.PINSTANCES_CAPACITY)));
 			super(Config.getGlobalInt(PC.LOG_DISKMAP_CAPACITY));
 			this.disk = disk;
+			this.setEvictionPolicy(EvictionPolicy.Type.valueOf(
+					Config.getGlobalString(PC.EVICTION_POLICY))
+					.<String> newInstance());
 		}
 
 		synchronized LogIndex getOrCreateIfNotExistsOrLower(String paxosID,
@@ -682,6 +723,69 @@ public class SQLPaxosLogger extends AbstractPaxosLogger {
 		return null;
 	}
 
+	/**
+	 * Bulk version of {@link #getEpochFinalCheckpointVersion(String)} with one
+	 * query per {@link #MAX_UNPAUSE_IN_LIST} paxosIDs.
+	 */
+	@Override
+	public Map<String, Integer> getEpochFinalCheckpointVersions(
+			Set<String> paxosIDs) {
+		Map<String, Integer> versions = new HashMap<String, Integer>();
+		if (isClosed() || paxosIDs.isEmpty())
+			return versions;
+		String[] ids = paxosIDs.toArray(new String[0]);
+		for (int i = 0; i < ids.length; i += MAX_UNPAUSE_IN_LIST)
+			this.getEpochFinalCheckpointVersions(
+					Arrays.copyOfRange(ids, i,
+							Math.min(i + MAX_UNPAUSE_IN_LIST, ids.length)),
+					versions);
+		return versions;
+	}
+
+	private void getEpochFinalCheckpointVersions(String[] paxosIDs,
+			Map<String, Integer> versions) {
+		StringBuilder inList = new StringBuilder();
+		for (int i = 0; i < paxosIDs.length; i++)
+			inList.append(i == 0 ? "?" : ",?");
+		Map<String, Integer> expired = new HashMap<String, Integer>();
+		PreparedStatement pstmt = null;
+		ResultSet rset = null;
+		Connection conn = null;
+		try {
+			conn = this.getDefaultConn();
+			pstmt = conn.prepareStatement("select paxos_id, version, create_time from "
+					+ getPCTable() + " where paxos_id in (" + inList + ")");
+			for (int i = 0; i < paxosIDs.length; i++)
+				pstmt.setString(i + 1, paxosIDs[i]);
+			rset = pstmt.executeQuery();
+			while (rset.next())
+				if (System.currentTimeMillis() - rset.getLong(3) < MAX_FINAL_STATE_AGE)
+					versions.put(rset.getString(1), rset.getInt(2));
+				else
+					expired.put(rset.getString(1), rset.getInt(2));
+		} catch (SQLException e) {
+			log.severe(this + " failed to get epoch final checkpoint versions for "
+					+ Util.truncatedLog(Arrays.asList(paxosIDs), 10));
+			e.printStackTrace();
+			// fall back to individual lookups
+			for (String paxosID : paxosIDs) {
+				Integer version = this.getEpochFinalCheckpointVersion(paxosID);
+				if (version != null)
+					versions.put(paxosID, version);
+			}
+		} finally {
+			cleanup(pstmt, rset);
+			cleanup(conn);
+		}
+		for (Map.Entry<String, Integer> entry : expired.entrySet()) {
+			log.log(Level.INFO,
+					"{0} garbage collecting expired epoch final checkpoint state for {1}:{2}",
+					new Object[] { this, entry.getKey(), entry.getValue() });
+			this.garbageCollectEpochFinalCheckpointState(entry.getKey(),
+					entry.getValue());
+		}
+	}
+
 	static class Journaler {
 		private static final String SUBDIR = "paxos_journal.";
 		private static final String PREFIX = "log.";
@@ -698,8 +802,12 @@ public class SQLPaxosLogger extends AbstractPaxosLogger {
 
 		private FileIDMap fidMap = new FileIDMap();
 
+		private final Metrics.Counter journaledBytes;
+
 		Journaler(String logdir, Object myID) {
 			this.myID = myID;
+			this.journaledBytes = Metrics.counter(Metrics.getName(
+					"paxos.journal.bytes", myID));
 			this.logdir = getJournalLogDir(logdir, myID) + "/";
 			// logdir + SUBDIR + myID + "/";
 			this.logfilePrefix = PREFIX + myID + POSTPREFIX;
@@ -821,6 +929,7 @@ public class SQLPaxosLogger extends AbstractPaxosLogger {
 				if (SYNC)
 					fos.getFD().sync();
 				curLogfileSize += bytes.length;
+				this.journaledBytes.add(bytes.length);
 				this.fidMap.add(this.curLogfile, paxosID);
 			}
 		}
@@ -962,6 +1071,9 @@ public class SQLPaxosLogger extends AbstractPaxosLogger {
 			testBytes[i] = (byte) (-256 + (int) (Math.random() * 256));
 	}
 
+	private static final Histogram rollLogLatency = Metrics
+			.histogram("paxos.rolllog");
+
 	private PendingLogTask[] journal(LogMessagingTask[] packets) {
 		if (!ENABLE_JOURNALING)
 			return new PendingLogTask[0]; // no error
@@ -1044,9 +1156,9 @@ public class SQLPaxosLogger extends AbstractPaxosLogger {
 			// this.pendingLogMessages.size());
 			// first sync, then roll log file
 			SQLPaxosLogger.this.syncLogMessagesIndex();
-			long t = System.currentTimeMillis();
+			long t = System.nanoTime();
 			SQLPaxosLogger.this.journaler.rollLogFile();
-			DelayProfiler.updateDelay("rolllog", t, 1.0);
+			rollLogLatency.recordNanosSince(t);
 
 			if (this.journaler.shouldGC()) {
 				this.GC.submit(new TimerTask() {
@@ -1147,6 +1259,10 @@ public class SQLPaxosLogger extends AbstractPaxosLogger {
 			.getGlobalBoolean(PC.DISABLE_GET_LOGGED_MESSAGES);
 	private static final boolean USE_DISK_MAP = Config
 			.getGlobalBoolean(PC.USE_DISK_MAP);
+	private static final boolean MAPPED_LOG_INDEX_STORE = Config
+			.getGlobalBoolean(PC.MAPPED_LOG_INDEX_STORE);
+	private static final boolean PAUSE_FILE = Config
+			.getGlobalBoolean(PC.PAUSE_FILE);
 	private static final boolean DISABLE_CHECKPOINTING = Config
 			.getGlobalBoolean(PC.DISABLE_CHECKPOINTING);
 	/**
@@ -1323,18 +1439,8 @@ public class SQLPaxosLogger extends AbstractPaxosLogger {
 	public static final byte[] deflate(byte[] data) throws IOException {
 		if (!DB_COMPRESSION)
 			return data;
-		byte[] compressed = null;
-		double inflation = 1;
-		int compressedLength = data.length;
-		do {
-			Deflater deflator = new Deflater();
-			compressed = new byte[(int) ((inflation *= 1.1) * data.length + 16)];
-			deflator.setInput(data);
-			deflator.finish();
-			compressedLength = deflator.deflate(compressed);
-			deflator.end();
-		} while (compressedLength == compressed.length);
-		return Arrays.copyOf(compressed, compressedLength);
+		// reuses a per-thread deflater; format unchanged from before
+		return DeflateCodec.deflate(data, Deflater.DEFAULT_COMPRESSION);
 	}
 
 	/**
@@ -1343,29 +1449,18 @@ public class SQLPaxosLogger extends AbstractPaxosLogger {
 	 * @throws IOException
 	 */
 	public static final byte[] inflate(byte[] buf) throws IOException {
-		if (!DB_COMPRESSION)
+		// empty message blobs are written when journaling is enabled
+		if (!DB_COMPRESSION || buf.length == 0)
 			return buf;
-		Inflater inflator = new Inflater();
-		inflator.setInput(buf);
-		byte[] decompressed = new byte[buf.length];
-		ByteArrayOutputStream baos = new ByteArrayOutputStream(buf.length);
 		try {
-			while (!inflator.finished()) {
-				int count = inflator.inflate(decompressed);
-				if (count == 0)
-					break;
-				baos.write(decompressed, 0, count);
-			}
-			baos.close();
-			inflator.end();
-		} catch (DataFormatException e) {
+			return DeflateCodec.inflate(buf, 0, buf.length);
+		} catch (IOException e) {
 			PaxosConfig.getLogger().severe(
 					"DataFormatException while decompressing buffer of length "
 							+ buf.length);
 			e.printStackTrace();
 			return buf;
 		}
-		return baos.toByteArray();
 	}
 
 	private Object checkpointLock = new Object();
@@ -1919,6 +2014,8 @@ public class SQLPaxosLogger extends AbstractPaxosLogger {
 			Map<String, HotRestoreInfo> hriMap) {
 		if (isClosed())
 			return null;
+		if (this.pauseFile != null)
+			return this.pauseToFile(hriMap);
 		if (!USE_CHECKPOINTS_AS_PAUSE_TABLE)
 			return pauseBatchIndividually(hriMap);
 
@@ -1970,6 +2067,49 @@ public class SQLPaxosLogger extends AbstractPaxosLogger {
 		return paused;
 	}
 
+	/* The logIndex is left to the message log's DiskMap to pause, so unlike
+	 * pause(String, String), only the instance state is written here. */
+	private Map<String, HotRestoreInfo> pauseToFile(
+			Map<String, HotRestoreInfo> hriMap) {
+		try {
+			this.pauseFile.commit(hriMap);
+			log.log(Level.FINE, "{0} paused [{1}] to {2}", new Object[] {
+					this, Util.truncatedLog(hriMap.keySet(), 16),
+					this.pauseFile });
+			return new HashMap<String, HotRestoreInfo>(hriMap);
+		} catch (IOException e) {
+			log.severe(this + " failed to pause batch "
+					+ Util.truncatedLog(hriMap.keySet(), 10) + " to "
+					+ this.pauseFile);
+			e.printStackTrace();
+			return new HashMap<String, HotRestoreInfo>();
+		}
+	}
+
+	// restores and deletes paused state in the pause file
+	private Map<String, HotRestoreInfo> unpauseFromFile(Set<String> paxosIDs) {
+		Map<String, HotRestoreInfo> hris = new HashMap<String, HotRestoreInfo>();
+		try {
+			for (String paxosID : paxosIDs) {
+				HotRestoreInfo hri = this.pauseFile.restore(paxosID);
+				if (hri != null)
+					hris.put(paxosID, hri);
+			}
+			// null values are deleted
+			Map<String, HotRestoreInfo> deletes = new HashMap<String, HotRestoreInfo>();
+			for (String paxosID : hris.keySet())
+				deletes.put(paxosID, null);
+			this.pauseFile.commit(deletes);
+		} catch (IOException e) {
+			log.severe(this + " failed to unpause "
+					+ Util.truncatedLog(paxosIDs, 10) + " from "
+					+ this.pauseFile);
+			e.printStackTrace();
+			hris.clear();
+		}
+		return hris;
+	}
+
 	private Map<String, HotRestoreInfo> diffHRI(
 			Map<String, HotRestoreInfo> map1, Map<String, HotRestoreInfo> map2) {
 		Map<String, HotRestoreInfo> diffEntries = new HashMap<String, HotRestoreInfo>();
@@ -1997,6 +2137,11 @@ public class SQLPaxosLogger extends AbstractPaxosLogger {
 	public/* synchronized */boolean pause(String paxosID, String serializedState) {
 		if (isClosed() /* || !isLoggingEnabled() */)
 			return false;
+		if (this.pauseFile != null) {
+			Map<String, HotRestoreInfo> hriMap = new HashMap<String, HotRestoreInfo>();
+			hriMap.put(paxosID, new HotRestoreInfo(serializedState));
+			return this.pauseToFile(hriMap).containsKey(paxosID);
+		}
 
 		boolean paused = false;
 		String insertCmd = "insert into "
@@ -2076,6 +2221,13 @@ public class SQLPaxosLogger extends AbstractPaxosLogger {
 	public/* synchronized */HotRestoreInfo unpause(String paxosID) {
 		if (isClosed() /* || !isLoggingEnabled() */)
 			return null;
+		// fall back to the pause table for state paused without the file
+		if (this.pauseFile != null) {
+			HotRestoreInfo hri = this.unpauseFromFile(
+					new HashSet<String>(Arrays.asList(paxosID))).get(paxosID);
+			if (hri != null)
+				return hri;
+		}
 
 		HotRestoreInfo hri = null;
 		PreparedStatement pstmt = null;
@@ -2122,6 +2274,100 @@ public class SQLPaxosLogger extends AbstractPaxosLogger {
 		return hri;
 	}
 
+	/* Derby compiles each in-list element into the statement, so very long
+	 * lists can exceed class file limits. */
+	private static final int MAX_UNPAUSE_IN_LIST = 512;
+
+	/**
+	 * Bulk version of {@link #unpause(String)} that reads paused state with one
+	 * query and deletes it with one batched update per
+	 * {@link #MAX_UNPAUSE_IN_LIST} paxosIDs instead of two round trips per
+	 * paxosID.
+	 */
+	@Override
+	public/* synchronized */Map<String, HotRestoreInfo> unpause(
+			Set<String> paxosIDs) {
+		Map<String, HotRestoreInfo> hris = new HashMap<String, HotRestoreInfo>();
+		if (isClosed() || paxosIDs.isEmpty())
+			return hris;
+		if (this.pauseFile != null) {
+			hris.putAll(this.unpauseFromFile(paxosIDs));
+			if (hris.size() == paxosIDs.size())
+				return hris;
+			paxosIDs = new HashSet<String>(paxosIDs);
+			paxosIDs.removeAll(hris.keySet());
+		}
+		String[] ids = paxosIDs.toArray(new String[0]);
+		for (int i = 0; i < ids.length; i += MAX_UNPAUSE_IN_LIST)
+			hris.putAll(this.unpause(Arrays.copyOfRange(ids, i,
+					Math.min(i + MAX_UNPAUSE_IN_LIST, ids.length))));
+		return hris;
+	}
+
+	private Map<String, HotRestoreInfo> unpause(String[] paxosIDs) {
+		Map<String, HotRestoreInfo> hris = new HashMap<String, HotRestoreInfo>();
+		StringBuilder inList = new StringBuilder();
+		for (int i = 0; i < paxosIDs.length; i++)
+			inList.append(i == 0 ? "?" : ",?");
+		String table = USE_CHECKPOINTS_AS_PAUSE_TABLE ? getCTable()
+				: getPTable();
+		PreparedStatement pstmt = null;
+		ResultSet rset = null;
+		Connection conn = null;
+		String paxosID = null, logIndexString = null;
+		try {
+			conn = this.getDefaultConn();
+			pstmt = conn.prepareStatement("select paxos_id, serialized, logindex from "
+					+ table + " where paxos_id in (" + inList + ")");
+			for (int i = 0; i < paxosIDs.length; i++)
+				pstmt.setString(i + 1, paxosIDs[i]);
+			rset = pstmt.executeQuery();
+			while (rset.next()) {
+				paxosID = rset.getString(1);
+				String serialized = rset.getString(2);
+				if (serialized != null)
+					hris.put(paxosID, new HotRestoreInfo(serialized));
+				Blob logIndexBlob = rset.getBlob(3);
+				logIndexString = lobToString(logIndexBlob);
+				if (logIndexBlob != null)
+					this.messageLog.restore(new LogIndex(new JSONArray(
+							logIndexString)));
+			}
+			cleanup(pstmt, rset);
+			rset = null;
+
+			if (!hris.isEmpty()) {
+				// same as deletePaused but batched
+				conn.setAutoCommit(false);
+				pstmt = conn.prepareStatement("update " + table
+						+ " set serialized=null"
+						+ (USE_CHECKPOINTS_AS_PAUSE_TABLE ? ", has_serialized=false"
+								: "") + " where paxos_id=?");
+				for (String id : hris.keySet()) {
+					pstmt.setString(1, id);
+					pstmt.addBatch();
+				}
+				pstmt.executeBatch();
+				conn.commit();
+				conn.setAutoCommit(true);
+			}
+		} catch (SQLException | JSONException | IOException e) {
+			log.severe(this + " failed to unpause batch "
+					+ Util.truncatedLog(Arrays.asList(paxosIDs), 10)
+					+ " at instance " + paxosID + "; logIndex = "
+					+ logIndexString);
+			e.printStackTrace();
+			// individual unpause will retry whatever is still paused
+			hris.clear();
+		} finally {
+			cleanup(pstmt, rset);
+			cleanup(conn);
+		}
+		log.log(Level.FINE, "{0} unpaused [{1}]", new Object[] { this,
+				Util.truncatedLog(hris.keySet(), 16) });
+		return hris;
+	}
+
 	private void deletePaused(String paxosID) {
 		if (isClosed() /* || !isLoggingEnabled() */)
 			return;
@@ -3776,6 +4022,20 @@ public class SQLPaxosLogger extends AbstractPaxosLogger {
 						+ " or "
 						+ SQLPaxosLogger.getIntegerLTConstraint("version",
 								version) + ")" : " where true");
+		if (this.pauseFile != null)
+			try {
+				if (paxosID == null)
+					this.pauseFile.clear();
+				else {
+					Map<String, HotRestoreInfo> delete = new HashMap<String, HotRestoreInfo>();
+					delete.put(paxosID, null);
+					this.pauseFile.commit(delete);
+				}
+			} catch (IOException e) {
+				log.log(Level.WARNING,
+						"{0} unable to remove pause state for {1} from {2}: {3}",
+						new Object[] { this, paxosID, this.pauseFile, e });
+			}
 		synchronized (this.messageLog) {
 			if (paxosID == null)
 				this.messageLog.clear();
@@ -3856,6 +4116,22 @@ public class SQLPaxosLogger extends AbstractPaxosLogger {
 		// messageLog should be closed before DB
 		if (this.messageLog != null)
 			this.messageLog.close();
+		if (this.mappedLogIndexes != null)
+			try {
+				this.mappedLogIndexes.close();
+			} catch (IOException e) {
+				log.log(Level.WARNING, "{0} unable to close {1}: {2}",
+						new Object[] { this, this.mappedLogIndexes, e });
+			}
+		if (this.pauseFile != null)
+			try {
+				log.log(Level.FINE, "{0} closing {1} {2}", new Object[] {
+						this, this.pauseFile, this.pauseFile.getStats() });
+				this.pauseFile.close();
+			} catch (IOException e) {
+				log.log(Level.WARNING, "{0} unable to close {1}: {2}",
+						new Object[] { this, this.pauseFile, e });
+			}
 		this.setClosed(true);
 		// can not close derby until all instances are done
 		if (allClosed() || !isEmbeddedDB())
@@ -5069,6 +5345,112 @@ public class SQLPaxosLogger extends AbstractPaxosLogger {
 		}
 	}
 
+	/* Pauses size groups at a single node through its logger and then
+	 * reactivates them through PaxosManager, i.e., including instance
+	 * creation, a sample one at a time and the rest in batches as the
+	 * unpauser would. */
+	private static void testBulkUnpause(int id, int size) throws IOException {
+		// offset to not clash with nodes started with the default ports
+		SampleNodeConfig<Integer> nc = new SampleNodeConfig<Integer>(
+				SampleNodeConfig.DEFAULT_START_PORT + 1000);
+		nc.addLocal(id);
+		JSONNIOTransport<Integer> niot = new JSONNIOTransport<Integer>(id, nc,
+				new PacketDemultiplexerDefault(), true);
+		PaxosManager.startWithCleanDB(true);
+		PaxosManager<Integer> pm = new PaxosManager<Integer>(id, nc, niot,
+				new NoopPaxosApp());
+		SQLPaxosLogger logger = (SQLPaxosLogger) pm.getPaxosLogger();
+		logger.createCheckpoints(size, true);
+
+		int[] group = { id };
+		Map<String, HotRestoreInfo> hris = new HashMap<String, HotRestoreInfo>();
+		Map<String, HotRestoreInfo> batch = new HashMap<String, HotRestoreInfo>();
+		long t = System.currentTimeMillis();
+		for (int i = 0; i < size; i++) {
+			HotRestoreInfo hri = new HotRestoreInfo("paxos" + i, 0, group, i,
+					new Ballot(i, id), i / 2, new Ballot(i, id), i + 1,
+					new int[group.length]);
+			hris.put(hri.paxosID, hri);
+			batch.put(hri.paxosID, hri);
+			if (batch.size() == Config.getGlobalInt(PC.PAUSE_BATCH_SIZE)
+					|| i == size - 1) {
+				Map<String, HotRestoreInfo> paused = logger.pause(batch);
+				Assert.assertEquals(batch.size(), paused.size());
+				batch.clear();
+			}
+		}
+		System.out.println("Paused " + size + " groups in "
+				+ (System.currentTimeMillis() - t) + "ms");
+		long textBytes = 0, binaryBytes = 0;
+		for (HotRestoreInfo hri : hris.values()) {
+			textBytes += hri.toString().length();
+			binaryBytes += hri.toBytes().length;
+		}
+		System.out.println("Bytes per paused group: text=" + textBytes / size
+				+ " binary=" + binaryBytes / size
+				+ (logger.pauseFile != null ? " " + logger.pauseFile.getStats()
+						: ""));
+
+		// one at a time for a sample through getInstance
+		int sample = size / 100;
+		t = System.currentTimeMillis();
+		for (int i = 0; i < sample; i++)
+			Assert.assertEquals("paxos" + i,
+					Util.arrayToIntSet(group).toString(),
+					pm.getReplicaGroup("paxos" + i).toString());
+		double individualRate = sample * 1000.0
+				/ Math.max(System.currentTimeMillis() - t, 1);
+
+		// half of the rest in bulk in the unpauser's batch size
+		int batchSize = Config.getGlobalInt(PC.UNPAUSE_BATCH_SIZE), unpaused = 0;
+		int half = sample + (size - sample) / 2;
+		t = System.currentTimeMillis();
+		for (int i = sample; i < half; i += batchSize) {
+			Set<String> paxosIDs = new HashSet<String>();
+			for (int j = i; j < Math.min(i + batchSize, half); j++)
+				paxosIDs.add("paxos" + j);
+			unpaused += pm.unpause(paxosIDs).size();
+		}
+		long bulkTime = System.currentTimeMillis() - t;
+		Assert.assertEquals(half - sample, unpaused);
+
+		/* The other half through requests received over the transport, which
+		 * find their instances paused and are queued on the unpauser. */
+		Metrics.Counter unpauses = Metrics.counter(Metrics.getName(
+				"paxos.unpauses", id));
+		long before = unpauses.get();
+		t = System.currentTimeMillis();
+		try {
+			for (int i = half; i < size; i++)
+				niot.sendToID(id, new RequestPacket(i, "unpause" + i, false)
+						.putPaxosID("paxos" + i, 0).toJSONObject());
+		} catch (JSONException e) {
+			throw new IOException(e);
+		}
+		while (unpauses.get() - before < size - half
+				&& System.currentTimeMillis() - t < 60 * 1000)
+			try {
+				Thread.sleep(10);
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+				break;
+			}
+		long queuedTime = System.currentTimeMillis() - t;
+		Assert.assertEquals(size - half, unpauses.get() - before);
+		// paused state must have been deleted
+		Assert.assertTrue(logger.unpause(hris.keySet()).isEmpty());
+		System.out.println("Reactivated " + (half - sample) + " groups in "
+				+ bulkTime + "ms = "
+				+ Util.df((half - sample) * 1000.0 / Math.max(bulkTime, 1))
+				+ "/s in bulk and " + (size - half) + " in " + queuedTime
+				+ "ms = "
+				+ Util.df((size - half) * 1000.0 / Math.max(queuedTime, 1))
+				+ "/s through the unpauser vs " + Util.df(individualRate)
+				+ "/s one at a time");
+		pm.close();
+		niot.stop();
+	}
+
 	/**
 	 * For testing SQLPaxosLogger.
 	 */
@@ -5081,6 +5463,18 @@ public class SQLPaxosLogger extends AbstractPaxosLogger {
 		public void testPerformance() {
 			SQLPaxosLogger.testPerformance(new SQLPaxosLogger(23, null, null));
 		}
+
+		/**
+		 * Time to reactivate 100K paused groups including instance creation
+		 * in bulk, directly and through requests queued on the unpauser,
+		 * compared to one at a time.
+		 * 
+		 * @throws IOException
+		 */
+		@Test
+		public void testBulkUnpause() throws IOException {
+			SQLPaxosLogger.testBulkUnpause(24, 100 * 1000);
+		}
 	}
 
 	/**
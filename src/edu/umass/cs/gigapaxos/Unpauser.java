@@ -0,0 +1,116 @@
+/* Copyright (c) 2015 University of Massachusetts
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * Initial developer(s): V. Arun */
+package edu.umass.cs.gigapaxos;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+
+import edu.umass.cs.gigapaxos.PaxosConfig.PC;
+import edu.umass.cs.gigapaxos.paxospackets.PaxosPacket;
+import edu.umass.cs.gigapaxos.paxosutil.ConsumerTask;
+import edu.umass.cs.utils.Config;
+
+/**
+ * @author arun
+ *
+ *         A utility class to queue paxos packets for paused instances so that
+ *         the instances can be unpaused in bulk. Packets are queued by paxosID
+ *         and each dequeued task consists of all packets queued for up to
+ *         {@link PC#UNPAUSE_BATCH_SIZE} paxosIDs.
+ */
+public class Unpauser extends ConsumerTask<PaxosPacket[]> {
+
+	private static final int UNPAUSE_BATCH_SIZE = Config
+			.getGlobalInt(PC.UNPAUSE_BATCH_SIZE);
+
+	private final LinkedHashMap<String, ArrayList<PaxosPacket>> queued;
+	private final PaxosManager<?> paxosManager;
+	private int queueSize = 0;
+
+	/**
+	 * @param lock
+	 *            Used for synchronization by abstract ConsumerTask<TaskType>.
+	 * @param paxosManager
+	 *            Needed to unpause instances and then handle the queued
+	 *            packets.
+	 */
+	private Unpauser(LinkedHashMap<String, ArrayList<PaxosPacket>> lock,
+			PaxosManager<?> paxosManager) {
+		super(lock);
+		this.queued = lock;
+		this.paxosManager = paxosManager;
+	}
+
+	/**
+	 * @param paxosManager
+	 */
+	public Unpauser(PaxosManager<?> paxosManager) {
+		this(new LinkedHashMap<String, ArrayList<PaxosPacket>>(), paxosManager);
+	}
+
+	@Override
+	public void enqueueImpl(PaxosPacket[] packets) {
+		for (PaxosPacket packet : packets) {
+			ArrayList<PaxosPacket> list = this.queued.get(packet.getPaxosID());
+			if (list == null)
+				this.queued.put(packet.getPaxosID(),
+						list = new ArrayList<PaxosPacket>());
+			list.add(packet);
+			this.queueSize++;
+		}
+	}
+
+	/* Plucks all packets for the first UNPAUSE_BATCH_SIZE queued paxosIDs in
+	 * the order in which the paxosIDs were first queued. */
+	@Override
+	public PaxosPacket[] dequeueImpl() {
+		ArrayList<PaxosPacket> batch = new ArrayList<PaxosPacket>();
+		int numGroups = 0;
+		for (Iterator<Entry<String, ArrayList<PaxosPacket>>> entryIter = this.queued
+				.entrySet().iterator(); entryIter.hasNext()
+				&& numGroups < UNPAUSE_BATCH_SIZE; numGroups++) {
+			batch.addAll(entryIter.next().getValue());
+			entryIter.remove();
+		}
+		this.queueSize -= batch.size();
+		return batch.toArray(new PaxosPacket[0]);
+	}
+
+	@Override
+	public void process(PaxosPacket[] batch) {
+		this.paxosManager.unpauseAndHandle(batch);
+	}
+
+	protected int getQueueSize() {
+		synchronized (this.lock) {
+			return this.queueSize;
+		}
+	}
+
+	// just to name the thread, otherwise super suffices
+	public void start() {
+		Thread me = (new Thread(this));
+		me.setName(Unpauser.class.getSimpleName()
+				+ this.paxosManager.getMyID());
+		me.start();
+	}
+
+	public String toString() {
+		return Unpauser.class.getSimpleName() + ":" + this.paxosManager;
+	}
+}
@@ -101,6 +101,11 @@ public class RequestPacket extends PaxosPacket implements Request,
 		 */
 		NFWDS,
 
+		/**
+		 * Trace ID if this request is sampled for tracing.
+		 */
+		TID,
+
 		/**
 		 * Most recent forwarder.
 		 */
@@ -219,6 +224,11 @@ public class RequestPacket extends PaxosPacket implements Request,
 	private boolean broadcasted = false;
 	protected byte[] digest = null;
 
+	/* Nonzero if sampled by RequestTracer. Serialized only if nonzero so that
+	 * unsampled requests have the same byte[] form as before this field was
+	 * introduced. */
+	private long traceID = 0;
+
 	/**
 	 * The actual request body. The client will get back this string if that is
 	 * what it sent to paxos. If it issued a RequestPacket, then it will get
@@ -260,6 +270,9 @@ public class RequestPacket extends PaxosPacket implements Request,
 		// digest related fields
 		broadcasted(boolean.class), digest((new byte[0]).getClass()),
 
+		// optional fields
+		traceID(long.class),
+
 		// highly variable length fields
 		requestValue(String.class), responseValue(String.class), batched(
 				(new RequestPacket[0]).getClass());
@@ -347,6 +360,7 @@ public class RequestPacket extends PaxosPacket implements Request,
 		// debug/testing fields
 		this.entryTime = req.entryTime;
 		this.forwardCount = req.forwardCount;
+		this.traceID = req.traceID;
 		this.forwarderID = req.forwarderID;
 		this.debugInfo = req.debugInfo;
 		this.batched = req.batched;
@@ -521,6 +535,7 @@ public class RequestPacket extends PaxosPacket implements Request,
 		this.entryTime = json.getLong(Keys.ET.toString());
 		this.forwardCount = (json.has(Keys.NFWDS.toString()) ? json
 				.getInt(Keys.NFWDS.toString()) : 0);
+		this.traceID = json.optLong(Keys.TID.toString());
 		this.forwarderID = (json.has(RequestPacket.Keys.FWDR.toString()) ? json
 				.getInt(RequestPacket.Keys.FWDR.toString())
 				: IntegerMap.NULL_INT_NODE);
@@ -596,6 +611,8 @@ public class RequestPacket extends PaxosPacket implements Request,
 		this.entryTime = Util.toLong(json.get(Keys.ET.toString()));
 		this.forwardCount = (json.containsKey(Keys.NFWDS.toString()) ? (Integer) json
 				.get(Keys.NFWDS.toString()) : 0);
+		this.traceID = (json.containsKey(Keys.TID.toString()) ? Util
+				.toLong(json.get(Keys.TID.toString())) : 0);
 		this.forwarderID = (json
 				.containsKey(RequestPacket.Keys.FWDR.toString()) ? (Integer) json
 				.get(RequestPacket.Keys.FWDR.toString())
@@ -658,6 +675,8 @@ public class RequestPacket extends PaxosPacket implements Request,
 		json.put(Keys.ET.toString(), this.entryTime);
 		if (forwardCount > 0)
 			json.put(Keys.NFWDS.toString(), this.forwardCount);
+		if (this.traceID != 0)
+			json.put(Keys.TID.toString(), this.traceID);
 		if (this.stop)
 			json.put(Keys.STOP.toString(), this.stop);
 		if (DEBUG) {
@@ -704,6 +723,8 @@ public class RequestPacket extends PaxosPacket implements Request,
 		json.put(Keys.ET.toString(), this.entryTime);
 		if (forwardCount > 0)
 			json.put(Keys.NFWDS.toString(), this.forwardCount);
+		if (this.traceID != 0)
+			json.put(Keys.TID.toString(), this.traceID);
 		if (this.stop)
 			json.put(Keys.STOP.toString(), this.stop);
 		if (DEBUG) {
@@ -789,7 +810,7 @@ public class RequestPacket extends PaxosPacket implements Request,
 			+ 1 // boolean shouldReturnRequestValue
 			+ Integer.BYTES // int forwardCount
 
-			+ 1 // boolean broadcasted
+			+ 1 // boolean broadcasted and flags
 			+ Integer.BYTES // int digest length
 
 			+ Integer.BYTES // int requestValue length
@@ -797,6 +818,12 @@ public class RequestPacket extends PaxosPacket implements Request,
 			+ Integer.BYTES // int batchSize
 	;
 
+	/* Bits of the broadcasted byte other than the lowest one flag optional
+	 * fields. Older versions compare the whole byte with 1, so an older
+	 * byte[] form has none of these bits set. */
+	private static final byte BROADCASTED_FLAG = 1;
+	private static final byte TRACE_ID_FLAG = 2;
+
 	/**
 	 * The weird constant above is to try to avoid mistakes in the painful (but
 	 * totally worth it) byte'ification method below. Using bytes as opposed to
@@ -887,7 +914,10 @@ public class RequestPacket extends PaxosPacket implements Request,
 
 			// digest related fields: broadcasted, digest
 			// whether this request was already broadcasted
-			bbuf.put(this.broadcasted ? (byte) 1 : (byte) 0);
+			byte flags = this.broadcasted ? BROADCASTED_FLAG : 0;
+			if (this.traceID != 0)
+				flags |= TRACE_ID_FLAG;
+			bbuf.put(flags);
 			exactLength += 1;
 			assert (exactLength ==
 			// where parent left us off
@@ -904,6 +934,12 @@ public class RequestPacket extends PaxosPacket implements Request,
 			exactLength += (this.digest != null ? this.digest.length : 0);
 			// /////////// end of digest related fields //////////
 
+			// optional fields flagged above
+			if (this.traceID != 0) {
+				bbuf.putLong(this.traceID);
+				exactLength += Long.BYTES;
+			}
+
 			// highly variable length fields
 			// requestValue
 			byte[] reqValBytes = this.requestValue != null ? this.requestValue
@@ -985,11 +1021,16 @@ public class RequestPacket extends PaxosPacket implements Request,
 		exactLength += (4 + 8 + 1 + 4);
 
 		// digest related fields
-		this.broadcasted = bbuf.get() == (byte) 1;
+		byte flags = bbuf.get();
+		this.broadcasted = (flags & BROADCASTED_FLAG) != 0;
 		int digestLength = bbuf.getInt();
 		if (digestLength > 0)
 			bbuf.get(this.digest = new byte[digestLength]);
 
+		// optional fields
+		if ((flags & TRACE_ID_FLAG) != 0)
+			this.traceID = bbuf.getLong();
+
 		// highly variable length fields
 
 		// requestValue
@@ -1083,6 +1124,22 @@ public class RequestPacket extends PaxosPacket implements Request,
 		return this.entryTime;
 	}
 
+	/**
+	 * @return Nonzero trace ID if this request is sampled for tracing.
+	 */
+	public long getTraceID() {
+		return this.traceID;
+	}
+
+	/**
+	 * @param traceID
+	 * @return this
+	 */
+	public RequestPacket setTraceID(long traceID) {
+		this.traceID = traceID;
+		return this;
+	}
+
 	private boolean isBatched() {
 		return this.batchSize() > 0;
 	}
@@ -1,8 +1,25 @@
+/* Copyright (c) 2015 University of Massachusetts
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License. */
 package edu.umass.cs.gigapaxos.paxospackets;
 
 import edu.umass.cs.utils.DefaultTest;
+import org.junit.Assert;
 import org.junit.Test;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
 /**
  * Created by kanantharamu on 2/20/17.
  */
@@ -20,4 +37,74 @@ public class RequestPacketTest extends DefaultTest {
     public void testCheckFields() {
         RequestPacket.doubleCheckFields();
     }
+
+    /**
+     * Trace IDs of a request and its batched requests survive binary and
+     * JSON serialization.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testTraceID() throws Exception {
+        RequestPacket request = new RequestPacket("value", false)
+                .setTraceID(-42);
+        request.latchToBatch(new RequestPacket[] { new RequestPacket(
+                "batched", false).setTraceID(Long.MAX_VALUE) });
+        for (RequestPacket recovered : new RequestPacket[] {
+                new RequestPacket(request.toBytesInstrument()),
+                new RequestPacket(request.toJSONObject()),
+                new RequestPacket(request.toJSONSmart()) }) {
+            Assert.assertEquals(-42, recovered.getTraceID());
+            Assert.assertEquals(Long.MAX_VALUE,
+                    recovered.getBatched()[0].getTraceID());
+        }
+        Assert.assertEquals(0, new RequestPacket("untraced", false)
+                .getTraceID());
+        Assert.assertEquals(
+                new RequestPacket("value", false).toBytesInstrument().length
+                        + Long.BYTES, new RequestPacket("value", false)
+                        .setTraceID(1).toBytesInstrument().length);
+    }
+
+    /**
+     * Bytes in the layout used before trace IDs, e.g., as journaled by an
+     * older version, are still decoded, and an untraced request is still
+     * encoded in that layout.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testOldLayout() throws Exception {
+        RequestPacket request = new RequestPacket(42, "value", false)
+                .setReturnRequestValue().setEntryReplica(5).setBroadcasted();
+        request.putPaxosID("paxos0", 3);
+
+        ByteBuffer bbuf = ByteBuffer.allocate(1024);
+        request.toBytes(bbuf); // paxos packet header
+        bbuf.putLong(42); // requestID
+        bbuf.put((byte) 0); // stop
+        bbuf.put(new byte[4]).putShort((short) 0); // clientAddress
+        bbuf.put(new byte[4]).putShort((short) 0); // listenAddress
+        bbuf.putInt(5); // entryReplica
+        bbuf.putLong(request.getEntryTime());
+        bbuf.put((byte) 1); // shouldReturnRequestValue
+        bbuf.putInt(0); // forwardCount
+        bbuf.put((byte) 1); // broadcasted
+        bbuf.putInt(0); // digest length
+        bbuf.putInt(5).put("value".getBytes(PaxosPacket.CHARSET));
+        bbuf.putInt(0); // responseValue length
+        bbuf.putInt(0); // batchSize
+        byte[] old = Arrays.copyOf(bbuf.array(), bbuf.position());
+
+        RequestPacket decoded = new RequestPacket(old);
+        Assert.assertEquals(42, decoded.requestID);
+        Assert.assertEquals("value", decoded.requestValue);
+        Assert.assertEquals("paxos0", decoded.getPaxosID());
+        Assert.assertEquals(3, decoded.getVersion());
+        Assert.assertEquals(5, decoded.getEntryReplica());
+        Assert.assertTrue(decoded.shouldReturnRequestValue());
+        Assert.assertTrue(decoded.isBroadcasted());
+        Assert.assertEquals(0, decoded.getTraceID());
+        Assert.assertArrayEquals(old, request.toBytesInstrument());
+    }
 }
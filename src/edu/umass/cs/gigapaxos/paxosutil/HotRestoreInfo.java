@@ -15,10 +15,15 @@
  * Initial developer(s): V. Arun */
 package edu.umass.cs.gigapaxos.paxosutil;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
 import org.junit.Assert;
 import org.junit.Test;
 
 import edu.umass.cs.utils.DefaultTest;
+import edu.umass.cs.utils.Diskable;
 import edu.umass.cs.utils.Util;
 
 /**
@@ -121,6 +126,128 @@ public class HotRestoreInfo {
 						: "null");
 	}
 
+	private static final byte HAS_COORD_BALLOT = 1, HAS_NODE_SLOTS = 2;
+
+	/**
+	 * Compact binary form of {@link #toString()}: the varint-length-prefixed
+	 * UTF-8 paxosID, a flags byte for the nullable coordinator state, and
+	 * every other field as a zigzag varint. Slots other than accSlot are
+	 * stored as deltas from accSlot, as slots of the same group are close to
+	 * each other, so a slot typically takes 1-2 bytes regardless of how far
+	 * the group is into its slot space. Small node IDs take a byte each.
+	 * 
+	 * @return Serialized bytes.
+	 */
+	public byte[] toBytes() {
+		byte[] paxosIDBytes = this.paxosID.getBytes(StandardCharsets.UTF_8);
+		// upper bound with every varint at its maximum of 5 bytes
+		ByteBuffer buf = ByteBuffer.allocate(5 + paxosIDBytes.length + 1
+				+ 5 * (2 + this.members.length + 1 + 2 + 1 + 2 + 1)
+				+ (this.nodeSlots != null ? 5 * (1 + this.nodeSlots.length)
+						: 0));
+		putVarint(buf, paxosIDBytes.length);
+		buf.put(paxosIDBytes);
+		buf.put((byte) ((this.coordBallot != null ? HAS_COORD_BALLOT : 0) | (this.nodeSlots != null ? HAS_NODE_SLOTS
+				: 0)));
+		putVarint(buf, this.version);
+		putVarints(buf, this.members, 0);
+		putVarint(buf, this.accSlot);
+		putBallot(buf, this.accBallot);
+		putVarint(buf, this.accGCSlot - this.accSlot);
+		if (this.coordBallot != null)
+			putBallot(buf, this.coordBallot);
+		putVarint(buf, this.nextProposalSlot - this.accSlot);
+		if (this.nodeSlots != null)
+			putVarints(buf, this.nodeSlots, this.accSlot);
+		return Arrays.copyOf(buf.array(), buf.position());
+	}
+
+	/**
+	 * @param buf
+	 *            Positioned at bytes returned by {@link #toBytes()}.
+	 */
+	public HotRestoreInfo(ByteBuffer buf) {
+		byte[] paxosIDBytes = new byte[getVarint(buf)];
+		buf.get(paxosIDBytes);
+		this.paxosID = new String(paxosIDBytes, StandardCharsets.UTF_8);
+		byte flags = buf.get();
+		this.version = getVarint(buf);
+		this.members = getVarints(buf, 0);
+		this.accSlot = getVarint(buf);
+		this.accBallot = getBallot(buf);
+		this.accGCSlot = this.accSlot + getVarint(buf);
+		this.coordBallot = (flags & HAS_COORD_BALLOT) != 0 ? getBallot(buf)
+				: null;
+		this.nextProposalSlot = this.accSlot + getVarint(buf);
+		this.nodeSlots = (flags & HAS_NODE_SLOTS) != 0 ? getVarints(buf,
+				this.accSlot) : null;
+	}
+
+	private static void putBallot(ByteBuffer buf, Ballot ballot) {
+		putVarint(buf, ballot.ballotNumber);
+		putVarint(buf, ballot.coordinatorID);
+	}
+
+	private static Ballot getBallot(ByteBuffer buf) {
+		return new Ballot(getVarint(buf), getVarint(buf));
+	}
+
+	// zigzag so that small negative values like -1 also take a byte
+	private static void putVarint(ByteBuffer buf, int value) {
+		int zigzag = (value << 1) ^ (value >> 31);
+		while ((zigzag & ~0x7f) != 0) {
+			buf.put((byte) ((zigzag & 0x7f) | 0x80));
+			zigzag >>>= 7;
+		}
+		buf.put((byte) zigzag);
+	}
+
+	private static int getVarint(ByteBuffer buf) {
+		int zigzag = 0;
+		for (int shift = 0;; shift += 7) {
+			byte b = buf.get();
+			zigzag |= (b & 0x7f) << shift;
+			if (b >= 0)
+				break;
+		}
+		return (zigzag >>> 1) ^ -(zigzag & 1);
+	}
+
+	private static void putVarints(ByteBuffer buf, int[] array, int base) {
+		putVarint(buf, array.length);
+		for (int i : array)
+			putVarint(buf, i - base);
+	}
+
+	private static int[] getVarints(ByteBuffer buf, int base) {
+		int[] array = new int[getVarint(buf)];
+		for (int i = 0; i < array.length; i++)
+			array[i] = base + getVarint(buf);
+		return array;
+	}
+
+	/**
+	 * {@link Diskable.Serializer} for storing paused state keyed by paxosID
+	 * in the binary form.
+	 */
+	public static final Diskable.Serializer<String, HotRestoreInfo> SERIALIZER = new Diskable.Serializer<String, HotRestoreInfo>() {
+
+		@Override
+		public byte[] keyToBytes(String key) {
+			return key.getBytes(StandardCharsets.UTF_8);
+		}
+
+		@Override
+		public byte[] valueToBytes(HotRestoreInfo value) {
+			return value.toBytes();
+		}
+
+		@Override
+		public HotRestoreInfo bytesToValue(ByteBuffer buf) {
+			return new HotRestoreInfo(buf);
+		}
+	};
+
 	public boolean isCreateHRI() {
 		/**
 		 * Revert to Original coz FIX below is bad. We do need accSlot=1 as that
@@ -170,5 +297,54 @@ public class HotRestoreInfo {
 			System.out.println(str2);
 			Assert.assertEquals(str1, str2);
 		}
+
+		@Test
+		public void testToBytesAndBack() {
+			HotRestoreInfo[] hris = {
+					new HotRestoreInfo("paxos0", 2, new int[] { 1, 4, 67 }, 5,
+							new Ballot(3, 4), 3, new Ballot(45, 67), 34,
+							new int[] { 1, 3, 5 }),
+					new HotRestoreInfo("paxos1", 0, new int[] { -1, 4 }, 1,
+							new Ballot(0, -1), -1, null, 1, null),
+					createHRI("paxos2", new int[] { 100, 101, 102 }, 101),
+					new HotRestoreInfo("paxos3", Integer.MAX_VALUE, new int[] {
+							Integer.MIN_VALUE, Integer.MAX_VALUE }, Integer.MIN_VALUE,
+							new Ballot(Integer.MAX_VALUE, Integer.MIN_VALUE),
+							Integer.MAX_VALUE, new Ballot(-1, 0),
+							Integer.MAX_VALUE, new int[] { Integer.MIN_VALUE,
+									-1, 0, Integer.MAX_VALUE }) };
+			for (HotRestoreInfo hri1 : hris) {
+				HotRestoreInfo hri2 = new HotRestoreInfo(ByteBuffer.wrap(hri1
+						.toBytes()));
+				Assert.assertEquals(hri1.toString(), hri2.toString());
+				Assert.assertArrayEquals(hri1.toBytes(), hri2.toBytes());
+			}
+		}
+
+		/* Typical paused groups: a 3-replica group with node IDs that are
+		 * hash codes of node names, as with IntegerMap, well into its slot
+		 * space, and a group as in SQLPaxosLogger's bulk unpause test. */
+		@Test
+		public void testBytesPerGroup() {
+			int[] members = { "ActiveReplica0".hashCode(),
+					"ActiveReplica1".hashCode(), "ActiveReplica2".hashCode() };
+			int slot = 12345678;
+			assertSmaller(new HotRestoreInfo("service_name_1234567", 3,
+					members, slot, new Ballot(12, members[1]), slot - 3,
+					new Ballot(12, members[1]), slot + 1, new int[] {
+							slot - 3, slot - 2, slot - 1 }));
+			int i = 99999, id = 24;
+			assertSmaller(new HotRestoreInfo("paxos" + i, 0, new int[] { id },
+					i, new Ballot(i, id), i / 2, new Ballot(i, id), i + 1,
+					new int[1]));
+		}
+
+		private static void assertSmaller(HotRestoreInfo hri) {
+			int text = hri.toString().getBytes(StandardCharsets.UTF_8).length;
+			int binary = hri.toBytes().length;
+			System.out.println("bytes per paused group " + hri.paxosID
+					+ ": text=" + text + " binary=" + binary);
+			Assert.assertTrue(binary < text);
+		}
 	}
 }
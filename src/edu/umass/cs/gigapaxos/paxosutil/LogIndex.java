@@ -2,13 +2,18 @@ package edu.umass.cs.gigapaxos.paxosutil;
 
 import java.io.IOException;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
 
 import org.json.JSONArray;
 import org.json.JSONException;
+import org.junit.Assert;
 import org.junit.Test;
 
 import edu.umass.cs.gigapaxos.PaxosConfig.PC;
@@ -16,6 +21,7 @@ import edu.umass.cs.gigapaxos.SQLPaxosLogger;
 import edu.umass.cs.gigapaxos.paxospackets.PaxosPacket.PaxosPacketType;
 import edu.umass.cs.utils.Config;
 import edu.umass.cs.utils.DefaultTest;
+import edu.umass.cs.utils.Diskable;
 import edu.umass.cs.utils.Keyable;
 import edu.umass.cs.utils.Pausable;
 
@@ -312,6 +318,112 @@ public class LogIndex implements Keyable<String>, Serializable, Pausable {
 		}
 	}
 
+	/**
+	 * Compact binary form of the same fields as {@link #toString()}. Log
+	 * filenames, usually shared by many entries, are written once each and
+	 * referred to by index.
+	 * 
+	 * @return Serialized bytes.
+	 */
+	public byte[] toBytes() {
+		Map<String, Integer> logfiles = new LinkedHashMap<String, Integer>();
+		ArrayList<LogIndexEntry> entries = new ArrayList<LogIndexEntry>();
+		if (this.log != null)
+			synchronized (this.log) {
+				entries.addAll(this.log);
+			}
+		for (LogIndexEntry entry : entries)
+			if (!logfiles.containsKey(entry.logfile))
+				logfiles.put(entry.logfile, logfiles.size());
+
+		byte[] paxosIDBytes = toBytes(this.paxosID);
+		byte[] minLogfileBytes = toBytes(this.minLogfile);
+		int size = paxosIDBytes.length + 4 * 3 + minLogfileBytes.length + 8
+				+ 4 + entries.size() * (4 * 6 + 8);
+		byte[][] logfileBytes = new byte[logfiles.size()][];
+		int i = 0;
+		for (String logfile : logfiles.keySet())
+			size += (logfileBytes[i++] = toBytes(logfile)).length;
+
+		ByteBuffer buf = ByteBuffer.allocate(size);
+		buf.put(paxosIDBytes).putInt(this.version).putInt(this.gcSlot)
+				.put(minLogfileBytes).putLong(this.lastActive);
+		buf.putInt(logfileBytes.length);
+		for (byte[] bytes : logfileBytes)
+			buf.put(bytes);
+		buf.putInt(entries.size());
+		for (LogIndexEntry entry : entries)
+			buf.putInt(entry.slot).putInt(entry.ballotNum)
+					.putInt(entry.ballotCoord).putInt(entry.type)
+					.putInt(logfiles.get(entry.logfile)).putLong(entry.offset)
+					.putInt(entry.length);
+		assert (!buf.hasRemaining());
+		return buf.array();
+	}
+
+	/**
+	 * @param buf
+	 *            Positioned at bytes returned by {@link #toBytes()}.
+	 */
+	public LogIndex(ByteBuffer buf) {
+		this.paxosID = getString(buf);
+		this.version = buf.getInt();
+		this.gcSlot = buf.getInt();
+		this.minLogfile = getString(buf);
+		this.lastActive = buf.getLong();
+		String[] logfiles = new String[buf.getInt()];
+		for (int i = 0; i < logfiles.length; i++)
+			logfiles[i] = getString(buf);
+		int numEntries = buf.getInt();
+		if (numEntries > 0)
+			this.log = new ArrayList<LogIndexEntry>(numEntries);
+		for (int i = 0; i < numEntries; i++)
+			this.log.add(new LogIndexEntry(buf.getInt(), buf.getInt(), buf
+					.getInt(), buf.getInt(), logfiles[buf.getInt()], buf
+					.getLong(), buf.getInt()));
+	}
+
+	// length-prefixed UTF-8 with length -1 for null
+	private static byte[] toBytes(String s) {
+		byte[] bytes = s != null ? s.getBytes(StandardCharsets.UTF_8) : null;
+		ByteBuffer buf = ByteBuffer.allocate(4 + (bytes != null ? bytes.length
+				: 0));
+		buf.putInt(bytes != null ? bytes.length : -1);
+		if (bytes != null)
+			buf.put(bytes);
+		return buf.array();
+	}
+
+	private static String getString(ByteBuffer buf) {
+		int length = buf.getInt();
+		if (length < 0)
+			return null;
+		byte[] bytes = new byte[length];
+		buf.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * {@link Diskable.Serializer} for storing logIndexes keyed by paxosID.
+	 */
+	public static final Diskable.Serializer<String, LogIndex> SERIALIZER = new Diskable.Serializer<String, LogIndex>() {
+
+		@Override
+		public byte[] keyToBytes(String key) {
+			return key.getBytes(StandardCharsets.UTF_8);
+		}
+
+		@Override
+		public byte[] valueToBytes(LogIndex value) {
+			return value.toBytes();
+		}
+
+		@Override
+		public LogIndex bytesToValue(ByteBuffer buf) {
+			return new LogIndex(buf);
+		}
+	};
+
 	/**
 	 * @return Oldest log file containing an entry for this paxosID after the
 	 *         last commit to disk.
@@ -397,5 +509,24 @@ public class LogIndex implements Keyable<String>, Serializable, Pausable {
 					"ISO-8859-1"));
 		}
 
+		/**
+		 * @throws JSONException
+		 */
+		@Test
+		public void testToBytes() throws JSONException {
+			LogIndex logIndex = new LogIndex("paxos0", 3);
+			Assert.assertEquals(logIndex.toString(), new LogIndex(ByteBuffer
+					.wrap(logIndex.toBytes())).toString());
+			for (int i = 1; i <= 100; i++)
+				logIndex.add(i, 2, 101, PaxosPacketType.ACCEPT.getInt(),
+						"logfile" + i / 30, i * 1000, 200);
+			logIndex.setGCSlot(10);
+			byte[] bytes = logIndex.toBytes();
+			Assert.assertEquals(logIndex.toString(), new LogIndex(ByteBuffer
+					.wrap(bytes)).toString());
+			System.out.println("binary=" + bytes.length + "B; json="
+					+ logIndex.toString().length() + "B");
+		}
+
 	}
 }
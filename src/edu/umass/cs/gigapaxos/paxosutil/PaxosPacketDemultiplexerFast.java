@@ -234,10 +234,6 @@ public abstract class PaxosPacketDemultiplexerFast extends
 			long t = System.nanoTime();
 			if (PaxosPacket.getType(bytes) == PaxosPacketType.REQUEST) {
 				// affix header info only for request packets
-				byte[] caddress = header.sndr.getAddress().getAddress();
-				short cport = (short) header.sndr.getPort();
-				byte[] laddress = header.rcvr.getAddress().getAddress();
-				short lport = (short) header.rcvr.getPort();
 				ByteBuffer bbuf = ByteBuffer.wrap(bytes);
 				for (int i = 0; i < 3; i++)
 					bbuf.getInt();
@@ -255,12 +251,13 @@ public abstract class PaxosPacketDemultiplexerFast extends
 				boolean noLA = bytes[offset + 6 + 4] == 0
 						&& bytes[offset + 6 + 5] == 0;
 				try {
+					// cached per-connection binary addresses
 					if (noCA)
-						bbuf.put(caddress).putShort(cport);
+						header.putSender(bbuf);
 					else
 						bbuf.position(bbuf.position() + 6);
 					if (noLA)
-						bbuf.put(laddress).putShort(lport);
+						header.putReceiver(bbuf);
 					else
 						bbuf.position(bbuf.position() + 6);
 
@@ -298,7 +295,7 @@ public abstract class PaxosPacketDemultiplexerFast extends
 				.parseJSONSmart(message);
 		assert (json != null) : message;
 		net.minidev.json.JSONObject retval = MessageExtractor
-				.stampAddressIntoJSONObject(header.sndr, header.rcvr,
+				.stampAddressIntoJSONObject(header,
 						insertStringifiedSelf(json, message));
 		assert (retval != null) : message + " " + header;
 		try {
@@ -344,6 +341,21 @@ public abstract class PaxosPacketDemultiplexerFast extends
 				.equals(PaxosPacket.PaxosPacketType.REQUEST));
 	}
 
+	/* Requests from the same sender to the same paxos group stay in order,
+	 * which is all that ORDER_PRESERVING_REQUESTS promises, so requests for
+	 * different groups can be handled in parallel. The key is a hash of the
+	 * sender and paxosID as a collision only serializes requests that could
+	 * have been handled in parallel. */
+	@Override
+	protected Object getOrderingKey(Object msg, NIOHeader header) {
+		Object paxosID = msg instanceof PaxosPacket ? ((PaxosPacket) msg)
+				.getPaxosID()
+				: msg instanceof net.minidev.json.JSONObject ? ((net.minidev.json.JSONObject) msg)
+						.get(PaxosPacket.Keys.ID.toString()) : null;
+		return paxosID != null && header != null ? header.sndr.hashCode()
+				* 31 + paxosID.hashCode() : super.getOrderingKey(msg, header);
+	}
+
 	private static net.minidev.json.JSONObject insertStringifiedSelf(
 			net.minidev.json.JSONObject json, String message) {
 		// sigh: we need the string to avoid restringification overhead
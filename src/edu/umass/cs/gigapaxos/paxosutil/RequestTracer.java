@@ -0,0 +1,294 @@
+/* Copyright (c) 2015 University of Massachusetts
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License. */
+package edu.umass.cs.gigapaxos.paxosutil;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import edu.umass.cs.gigapaxos.PaxosConfig.PC;
+import edu.umass.cs.gigapaxos.paxospackets.ProposalPacket;
+import edu.umass.cs.gigapaxos.paxospackets.RequestPacket;
+import edu.umass.cs.utils.Config;
+
+/**
+ * @author arun
+ *
+ *         Sampled per-request tracing. One in {@link PC#TRACE_SAMPLING}
+ *         requests is assigned a nonzero trace ID by the entry replica. The ID
+ *         travels in binary form inside the {@link RequestPacket} and hence
+ *         inside every proposal, accept, and decision carrying it, so each
+ *         replica can record the events below against the same ID.
+ *
+ *         <p>
+ *         Events are written to a fixed-size ring buffer without locks;
+ *         writers claim a slot with a single atomic increment and older events
+ *         are overwritten. Timestamps are wall-clock microseconds derived from
+ *         {@link System#nanoTime()}, so events at the same node are accurate
+ *         to a microsecond and events across nodes are as accurate as their
+ *         clocks are synchronized. {@link #getTraces()} rebuilds each sampled
+ *         request's path from whatever is in the buffer.
+ *
+ *         <p>
+ *         This class is a no-op unless {@link PC#TRACE_SAMPLING} is positive.
+ */
+public class RequestTracer {
+
+	/**
+	 * Points on a request's path at which events are recorded.
+	 */
+	public static enum Event {
+		/**
+		 * Received from a client or forwarded by another replica.
+		 */
+		RECEIVE,
+
+		/**
+		 * Dequeued by the request batcher.
+		 */
+		BATCH,
+
+		/**
+		 * Assigned a slot and multicast in an accept by the coordinator.
+		 */
+		PROPOSE,
+
+		/**
+		 * Accept logged by an acceptor.
+		 */
+		ACCEPT_LOGGED,
+
+		/**
+		 * Decided by the coordinator upon a majority of accept replies.
+		 */
+		DECIDE,
+
+		/**
+		 * Decision received in slot order by a replica.
+		 */
+		COMMIT,
+
+		/**
+		 * Executed by a replica.
+		 */
+		EXECUTE,
+	};
+
+	/**
+	 * True if tracing is enabled.
+	 */
+	public static final boolean ENABLED = Config
+			.getGlobalInt(PC.TRACE_SAMPLING) > 0;
+
+	private static final int SAMPLING = Math.max(1,
+			Config.getGlobalInt(PC.TRACE_SAMPLING));
+
+	// each event occupies these many longs
+	private static final int SEQ = 0, TRACE = 1, TIME = 2, NODE_SLOT = 3,
+			EVENT = 4, WIDTH = 5;
+
+	private static final int CAPACITY = ENABLED ? Integer
+			.highestOneBit(Math.max(1,
+					Config.getGlobalInt(PC.TRACE_BUFFER_SIZE) * 2 - 1)) : 1;
+
+	private static final AtomicLongArray events = new AtomicLongArray(CAPACITY
+			* WIDTH);
+	private static final AtomicReferenceArray<String> paxosIDs = new AtomicReferenceArray<String>(
+			CAPACITY);
+	private static final AtomicLong cursor = new AtomicLong();
+
+	private static final ConcurrentHashMap<Integer, String> nodes = new ConcurrentHashMap<Integer, String>();
+
+	private static final long BASE_MICROS = System.currentTimeMillis() * 1000;
+	private static final long BASE_NANOS = System.nanoTime();
+
+	/**
+	 * @param id
+	 * @param node
+	 *            The printable node ID corresponding to the integer {@code id}.
+	 */
+	public static void registerNode(int id, Object node) {
+		if (ENABLED)
+			nodes.put(id, node.toString());
+	}
+
+	/**
+	 * Assigns a trace ID to {@code request} and its batched requests if they
+	 * are new and sampled, and records {@link Event#RECEIVE} for any that are
+	 * traced.
+	 *
+	 * @param request
+	 * @param node
+	 */
+	public static void receive(RequestPacket request, int node) {
+		if (!ENABLED)
+			return;
+		sample(request);
+		if (request.batchSize() > 0)
+			for (RequestPacket req : request.getBatched())
+				sample(req);
+		record(request, Event.RECEIVE, node);
+	}
+
+	private static void sample(RequestPacket request) {
+		// only the entry replica samples
+		if (request.getTraceID() == 0
+				&& request.getEntryReplica() == IntegerMap.NULL_INT_NODE
+				&& ThreadLocalRandom.current().nextInt(SAMPLING) == 0) {
+			long traceID;
+			while ((traceID = ThreadLocalRandom.current().nextLong()) == 0)
+				;
+			request.setTraceID(traceID);
+		}
+	}
+
+	/**
+	 * Records {@code event} for {@code request} and its batched requests if
+	 * they are traced. The slot is recorded if {@code request} is a
+	 * {@link ProposalPacket}.
+	 *
+	 * @param request
+	 * @param event
+	 * @param node
+	 */
+	public static void record(RequestPacket request, Event event, int node) {
+		if (!ENABLED)
+			return;
+		int slot = request instanceof ProposalPacket ? ((ProposalPacket) request).slot
+				: -1;
+		record(request.getTraceID(), event, node, request.getPaxosID(), slot);
+		if (request.batchSize() > 0)
+			for (RequestPacket req : request.getBatched())
+				record(req.getTraceID(), event, node, request.getPaxosID(),
+						slot);
+	}
+
+	private static void record(long traceID, Event event, int node,
+			String paxosID, int slot) {
+		if (traceID == 0)
+			return;
+		long seq = cursor.getAndIncrement();
+		int i = (int) (seq & (CAPACITY - 1));
+		int base = i * WIDTH;
+		// readers discard the entry while it is being overwritten
+		events.set(base + SEQ, 0);
+		events.lazySet(base + TRACE, traceID);
+		events.lazySet(base + TIME, now());
+		events.lazySet(base + NODE_SLOT, ((long) node << 32)
+				| (slot & 0xffffffffL));
+		events.lazySet(base + EVENT, event.ordinal());
+		paxosIDs.lazySet(i, paxosID);
+		events.lazySet(base + SEQ, seq + 1);
+	}
+
+	private static long now() {
+		return BASE_MICROS + (System.nanoTime() - BASE_NANOS) / 1000;
+	}
+
+	private static class Entry {
+		final long traceID;
+		final long time;
+		final int node;
+		final int slot;
+		final Event event;
+		final String paxosID;
+
+		Entry(long traceID, long time, int node, int slot, Event event,
+				String paxosID) {
+			this.traceID = traceID;
+			this.time = time;
+			this.node = node;
+			this.slot = slot;
+			this.event = event;
+			this.paxosID = paxosID;
+		}
+	}
+
+	private static List<Entry> getEntries() {
+		List<Entry> entries = new ArrayList<Entry>();
+		for (int i = 0; i < CAPACITY; i++) {
+			int base = i * WIDTH;
+			long seq = events.get(base + SEQ);
+			if (seq == 0)
+				continue;
+			Entry entry = new Entry(events.get(base + TRACE), events.get(base
+					+ TIME), (int) (events.get(base + NODE_SLOT) >> 32),
+					(int) events.get(base + NODE_SLOT), Event.values()[(int) events
+							.get(base + EVENT)], paxosIDs.get(i));
+			// torn by a concurrent writer
+			if (events.get(base + SEQ) != seq)
+				continue;
+			entries.add(entry);
+		}
+		Collections.sort(entries, new Comparator<Entry>() {
+			@Override
+			public int compare(Entry e1, Entry e2) {
+				return Long.compare(e1.time, e2.time);
+			}
+		});
+		return entries;
+	}
+
+	/**
+	 * @return Events grouped by trace in the order in which the traces
+	 *         started, each with its offset in microseconds from the first
+	 *         event of that trace. Traces whose early events have been
+	 *         overwritten appear truncated.
+	 */
+	public static String getTraces() {
+		if (!ENABLED)
+			return "Tracing disabled; set " + PC.TRACE_SAMPLING
+					+ " to a positive value\n";
+		Map<Long, List<Entry>> traces = new LinkedHashMap<Long, List<Entry>>();
+		for (Entry entry : getEntries()) {
+			if (!traces.containsKey(entry.traceID))
+				traces.put(entry.traceID, new ArrayList<Entry>());
+			traces.get(entry.traceID).add(entry);
+		}
+		StringBuilder sb = new StringBuilder();
+		for (Map.Entry<Long, List<Entry>> trace : traces.entrySet()) {
+			List<Entry> entries = trace.getValue();
+			long start = entries.get(0).time;
+			sb.append(String.format("trace %016x %s total=%dus\n",
+					trace.getKey(), entries.get(0).paxosID,
+					entries.get(entries.size() - 1).time - start));
+			for (Entry entry : entries)
+				sb.append(String.format("  +%-9d %-14s %s%s\n", entry.time
+						- start, entry.event, getNode(entry.node),
+						entry.slot >= 0 ? " slot=" + entry.slot : ""));
+		}
+		return sb.toString();
+	}
+
+	private static String getNode(int id) {
+		String node = nodes.get(id);
+		return node != null ? node : Integer.toString(id);
+	}
+
+	/**
+	 * Discards all recorded events.
+	 */
+	public static void clear() {
+		for (int i = 0; i < CAPACITY; i++)
+			events.set(i * WIDTH + SEQ, 0);
+	}
+}
@@ -0,0 +1,66 @@
+package edu.umass.cs.gigapaxos.paxosutil;
+
+import edu.umass.cs.gigapaxos.PaxosConfig.PC;
+import edu.umass.cs.gigapaxos.paxospackets.RequestPacket;
+import edu.umass.cs.utils.Config;
+import edu.umass.cs.utils.DefaultTest;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests for {@link RequestTracer} sampling and trace reconstruction.
+ */
+public class RequestTracerTest extends DefaultTest {
+
+    /**
+     * Trace every request; must run before {@link RequestTracer} is loaded.
+     */
+    @BeforeClass
+    public static void enableTracing() {
+        Config.register(new String[] { PC.TRACE_SAMPLING + "=1",
+                PC.TRACE_BUFFER_SIZE + "=100" });
+    }
+
+    /**
+     * Requests received at their entry replica are sampled, requests
+     * forwarded by another replica are not resampled, and events show up
+     * grouped by trace in time order.
+     */
+    @Test
+    public void testTraces() {
+        Assert.assertTrue(RequestTracer.ENABLED);
+        RequestTracer.clear();
+        RequestTracer.registerNode(7, "AR7");
+
+        RequestPacket request = new RequestPacket("value", false);
+        RequestTracer.receive(request, 7);
+        long traceID = request.getTraceID();
+        Assert.assertTrue(traceID != 0);
+        RequestTracer.receive(request, 7);
+        Assert.assertEquals(traceID, request.getTraceID());
+
+        RequestPacket forwarded = new RequestPacket("value", false)
+                .setEntryReplica(3);
+        RequestTracer.receive(forwarded, 7);
+        Assert.assertEquals(0, forwarded.getTraceID());
+
+        RequestTracer.record(request, RequestTracer.Event.BATCH, 7);
+        RequestTracer.record(request, RequestTracer.Event.EXECUTE, 8);
+        String traces = RequestTracer.getTraces();
+        Assert.assertTrue(traces,
+                traces.startsWith(String.format("trace %016x", traceID)));
+        Assert.assertTrue(traces, traces.indexOf("RECEIVE") < traces
+                .indexOf("BATCH"));
+        Assert.assertTrue(traces, traces.indexOf("BATCH") < traces
+                .indexOf("EXECUTE"));
+        Assert.assertTrue(traces, traces.contains("AR7"));
+
+        // wrap around the buffer
+        for (int i = 0; i < 200; i++)
+            RequestTracer.record(request, RequestTracer.Event.COMMIT, 7);
+        Assert.assertFalse(RequestTracer.getTraces().contains("RECEIVE"));
+        RequestTracer.clear();
+        Assert.assertEquals("", RequestTracer.getTraces());
+    }
+}
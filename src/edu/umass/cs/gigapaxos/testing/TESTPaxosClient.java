@@ -15,11 +15,15 @@
  * Initial developer(s): V. Arun */
 package edu.umass.cs.gigapaxos.testing;
 
+import java.io.FileWriter;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.Random;
 import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
@@ -29,6 +33,8 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.LockSupport;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -51,6 +57,7 @@ import edu.umass.cs.nio.interfaces.NodeConfig;
 import edu.umass.cs.nio.nioutils.NIOHeader;
 import edu.umass.cs.utils.Config;
 import edu.umass.cs.utils.DelayProfiler;
+import edu.umass.cs.utils.Histogram;
 import edu.umass.cs.utils.Util;
 
 /**
@@ -240,6 +247,9 @@ public class TESTPaxosClient {
 					// DelayProfiler.updateRate("response_rate2", 1000, 10);
 
 					updateLatency(latency);
+					if (sentRequest.latency != null)
+						sentRequest.latency
+								.recordNanosSince(sentRequest.intendedTime);
 					synchronized (client) {
 						client.notify();
 					}
@@ -368,12 +378,18 @@ public class TESTPaxosClient {
 
 	private boolean sendRequest(RequestPacket req) throws IOException,
 			JSONException {
+		return this.sendRequest(new RequestAndCreateTime(req));
+	}
+
+	private boolean sendRequest(RequestAndCreateTime reqCT)
+			throws IOException, JSONException {
+		RequestPacket req = reqCT.request;
 		int[] group = TESTPaxosConfig.getGroup(req.getPaxosID());
 		int index = !PIN_CLIENT ? (int) (req.requestID % group.length)
 				: (int) ((myID + 0) % group.length);
 		assert (!(index < 0 || index >= group.length || TESTPaxosConfig
 				.isCrashed(group[index])));
-		return this.sendRequest(group[index], req);
+		return this.sendRequest(group[index], reqCT);
 	}
 
 	private static final boolean ENABLE_REQUEST_COUNTS = false;
@@ -389,10 +405,21 @@ public class TESTPaxosClient {
 	class RequestAndCreateTime {
 		final long createTime = System.currentTimeMillis();
 		final RequestPacket request;
+		// open-loop scheduled send time in nanoseconds
+		final long intendedTime;
+		// open-loop latency histogram, null otherwise
+		final Histogram latency;
 
 		RequestAndCreateTime(RequestPacket request) {
+			this(request, 0, null);
+		}
+
+		RequestAndCreateTime(RequestPacket request, long intendedTime,
+				Histogram latency) {
 			// super(request);
 			this.request = request;
+			this.intendedTime = intendedTime;
+			this.latency = latency;
 		}
 	}
 
@@ -408,6 +435,12 @@ public class TESTPaxosClient {
 
 	protected boolean sendRequest(int id, RequestPacket req)
 			throws IOException, JSONException {
+		return this.sendRequest(id, new RequestAndCreateTime(req));
+	}
+
+	private boolean sendRequest(int id, RequestAndCreateTime reqCT)
+			throws IOException, JSONException {
+		RequestPacket req = reqCT.request;
 		InetAddress address = nc.getNodeAddress(id);
 		assert (address != null) : id;
 		Level level = Level.FINE;
@@ -416,7 +449,7 @@ public class TESTPaxosClient {
 					this.myID + " sending request to node {0}:{1}:{2} {2}",
 					new Object[] { id, address, nc.getNodePort(id),
 							req.getSummary(log.isLoggable(level)) });
-		if (this.requests.put(req.requestID, new RequestAndCreateTime(req)) != null)
+		if (this.requests.put(req.requestID, reqCT) != null)
 			return false; // collision in integer space
 		this.incrReqCount();
 
@@ -489,16 +522,15 @@ public class TESTPaxosClient {
 		return gibberish;
 	}
 
-	private RequestPacket makeRequest() {
+	private RequestPacket makeRequest(String paxosID) {
+		return this.makeRequest(paxosID, gibberish);
+	}
+
+	private RequestPacket makeRequest(String paxosID, String value) {
 		long reqID = ((long) (Math.random() * Long.MAX_VALUE));
 		RequestPacket req = new RequestPacket(reqID,
 		// createGibberish(), // randomly create each string
-				gibberish, false);
-		return req;
-	}
-
-	private RequestPacket makeRequest(String paxosID) {
-		RequestPacket req = this.makeRequest();
+				value, false);
 		req.putPaxosID(paxosID != null ? paxosID : TEST_GUID, 0);
 		return req;
 	}
@@ -642,10 +674,7 @@ public class TESTPaxosClient {
 		RateLimiter rateLimiter = new RateLimiter(rate);
 		// long initTime = System.currentTimeMillis();
 		for (int i = 0; i < numReqs; i++) {
-			while (!clients[i % NUM_CLIENTS]
-					.makeAndSendRequest(TEST_GUID_PREFIX
-							+ (Util.oneIn(WORKLOAD_SKEW) ? ((RANDOM_REPLAY + i) % (NUM_GROUPS_CLIENT))
-									: 0)))
+			while (!clients[i % NUM_CLIENTS].makeAndSendRequest(pickGroup(i)))
 				;
 			rateLimiter.record();
 		}
@@ -937,6 +966,207 @@ public class TESTPaxosClient {
 		// end second run
 	}
 
+	/* Open-loop test below. Each client sends on its own schedule of intended
+	 * send times irrespective of responses. A request sent late because the
+	 * sender fell behind is still timed from its intended send time, so the
+	 * reported latencies include the queueing delay that a closed-loop or
+	 * rate-limited client would silently omit (coordinated omission). Requests
+	 * with no response by the end of the run are likewise recorded, not
+	 * dropped. */
+
+	private static final String READ_VALUE = "read";
+
+	private static enum SizeDistribution {
+		FIXED, UNIFORM, EXPONENTIAL
+	};
+
+	protected static void openLoopTest(TESTPaxosClient[] clients)
+			throws InterruptedException, ExecutionException, IOException {
+		final double load = Config.getGlobalDouble(TC.TOTAL_LOAD);
+		int numReqs = (int) (load * Config
+				.getGlobalLong(TC.OPEN_LOOP_DURATION));
+		System.out.print("\nOpen-loop testing [#requests=" + numReqs
+				+ ", mean_request_size=" + gibberish.length() + "B ("
+				+ SIZE_DISTRIBUTION + "), read_fraction=" + READ_FRACTION
+				+ ", #clients=" + clients.length + ", #groups="
+				+ NUM_GROUPS_CLIENT + (zipf != null ? ", zipf_exponent="
+				+ Config.getGlobalDouble(TC.ZIPF_EXPONENT) : "") + ", load="
+				+ Util.df(load) + "/s" + (OPEN_LOOP_POISSON ? " (poisson)" : "")
+				+ "]...");
+
+		clearOutstanding(clients);
+		resetLatencyComputation(clients);
+		final Histogram writes = new Histogram("write");
+		final Histogram reads = new Histogram("read");
+
+		// all clients start on a common schedule slightly in the future
+		final long startTime = System.nanoTime() + 100 * 1000 * 1000;
+		ArrayList<Future<Long>> futures = new ArrayList<Future<Long>>();
+		for (int i = 0; i < clients.length; i++) {
+			final TESTPaxosClient client = clients[i];
+			// to account for integer division
+			final int clientReqs = i < clients.length - 1 ? numReqs
+					/ clients.length : numReqs - numReqs / clients.length
+					* (clients.length - 1);
+			futures.add(executor.submit(new Callable<Long>() {
+				public Long call() throws IOException, JSONException {
+					return client.sendOpenLoop(clientReqs, load
+							/ clients.length, startTime, writes, reads);
+				}
+			}));
+		}
+		long maxLag = 0;
+		for (Future<Long> future : futures)
+			maxLag = Math.max(maxLag, future.get());
+		mostRecentSentRate = numReqs * 1000.0 * 1000 * 1000
+				/ (System.nanoTime() - startTime);
+		System.out.println("done; max_send_lag = " + Util.df(maxLag / 1000.0 / 1000)
+				+ "ms");
+
+		long waitStart = System.currentTimeMillis();
+		while (getNumOutstanding(clients) > 0
+				&& System.currentTimeMillis() - waitStart < Config
+						.getGlobalInt(TC.MAX_RESPONSE_WAIT_TIME))
+			Thread.sleep(100);
+		int missing = recordMissing(clients);
+		clearOutstanding(clients);
+
+		System.out.println("\n[open-loop]\n  average_sent_rate = "
+				+ Util.df(mostRecentSentRate) + "/s"
+				+ "\n  missing_responses = " + missing
+				+ " (included in percentiles at the time given up on)"
+				+ "\n  average_response_time_from_actual_send = "
+				+ Util.df(TESTPaxosClient.getAvgLatency()) + "ms"
+				+ getLatencySummary(writes) + getLatencySummary(reads));
+		String file = Config.getGlobalString(TC.LATENCY_HISTOGRAM_FILE);
+		try (FileWriter writer = new FileWriter(file)) {
+			writer.write("# " + writes.getName() + " latency (ms)\n"
+					+ writes.getDistribution(1000 * 1000) + "\n# "
+					+ reads.getName() + " latency (ms)\n"
+					+ reads.getDistribution(1000 * 1000));
+		}
+		System.out.println("  latency histograms written to " + file);
+	}
+
+	/**
+	 * @return The maximum lag in nanoseconds by which a send fell behind its
+	 *         intended send time.
+	 */
+	private long sendOpenLoop(int numReqs, double rate, long startTime,
+			Histogram writes, Histogram reads) throws IOException,
+			JSONException {
+		Random random = new Random();
+		double interval = 1000.0 * 1000 * 1000 / rate, intended = startTime;
+		long maxLag = 0;
+		for (int i = 0; i < numReqs; i++) {
+			intended += OPEN_LOOP_POISSON ? -Math.log(1 - random.nextDouble())
+					* interval : interval;
+			long wait;
+			while ((wait = (long) intended - System.nanoTime()) > 0)
+				LockSupport.parkNanos(wait);
+			maxLag = Math.max(maxLag, -wait);
+			boolean read = random.nextDouble() < READ_FRACTION;
+			String paxosID = pickGroup(i);
+			while (!this.sendRequest(new RequestAndCreateTime(this.makeRequest(
+					paxosID, read ? READ_VALUE : getBaggage(random)),
+					(long) intended, read ? reads : writes)))
+				;
+		}
+		return maxLag;
+	}
+
+	/**
+	 * Records each open-loop request still outstanding in its latency
+	 * histogram as if it completed now. Otherwise requests that time out
+	 * would be dropped from the percentiles, understating the tail exactly
+	 * when the system is overloaded. A response arriving after this is
+	 * ignored as the request is removed first.
+	 *
+	 * @return The number of outstanding requests recorded.
+	 */
+	private static int recordMissing(TESTPaxosClient[] clients) {
+		int missing = 0;
+		for (TESTPaxosClient client : clients)
+			for (Long id : client.requests.keySet()) {
+				RequestAndCreateTime reqCT = client.requests.remove(id);
+				if (reqCT == null)
+					continue;
+				missing++;
+				if (reqCT.latency != null)
+					reqCT.latency.recordNanosSince(reqCT.intendedTime);
+			}
+		return missing;
+	}
+
+	private static int getNumOutstanding(TESTPaxosClient[] clients) {
+		int total = 0;
+		for (TESTPaxosClient client : clients)
+			total += client.requests.size();
+		return total;
+	}
+
+	private static String getLatencySummary(Histogram histogram) {
+		String name = histogram.getName();
+		return "\n  " + name + "_count = " + histogram.getCount() + "\n  "
+				+ name + "_response_time (ms) = [p50="
+				+ Util.df(histogram.getPercentile(50) / 1000.0 / 1000)
+				+ ", p90=" + Util.df(histogram.getPercentile(90) / 1000.0 / 1000)
+				+ ", p99=" + Util.df(histogram.getPercentile(99) / 1000.0 / 1000)
+				+ ", p99.9="
+				+ Util.df(histogram.getPercentile(99.9) / 1000.0 / 1000)
+				+ ", max="
+				+ Util.df(histogram.getPercentile(100) / 1000.0 / 1000) + "]";
+	}
+
+	private static String pickGroup(int i) {
+		if (zipf != null)
+			return TEST_GUID_PREFIX
+					+ ((RANDOM_REPLAY + zipf.next()) % NUM_GROUPS_CLIENT);
+		return TEST_GUID_PREFIX
+				+ (Util.oneIn(WORKLOAD_SKEW) ? ((RANDOM_REPLAY + i) % (NUM_GROUPS_CLIENT))
+						: 0);
+	}
+
+	private static String getBaggage(Random random) {
+		int mean = gibberish.length();
+		if (mean == 0)
+			return gibberish;
+		switch (SIZE_DISTRIBUTION) {
+		case UNIFORM:
+			return maxGibberish.substring(0, 1 + random.nextInt(2 * mean));
+		case EXPONENTIAL:
+			return maxGibberish.substring(0, (int) Math.min(
+					maxGibberish.length(),
+					1 - Math.log(1 - random.nextDouble()) * mean));
+		default:
+			return gibberish;
+		}
+	}
+
+	/**
+	 * Samples ranks from 0 to n-1 with probability proportional to
+	 * 1/(rank+1)^exponent by binary search over the cumulative distribution.
+	 */
+	private static class ZipfSampler {
+		private final double[] cdf;
+
+		ZipfSampler(int n, double exponent) {
+			this.cdf = new double[n];
+			double sum = 0;
+			for (int i = 0; i < n; i++)
+				this.cdf[i] = (sum += 1 / Math.pow(i + 1, exponent));
+			for (int i = 0; i < n; i++)
+				this.cdf[i] /= sum;
+		}
+
+		int next() {
+			int index = Arrays.binarySearch(this.cdf, ThreadLocalRandom
+					.current().nextDouble());
+			return Math.min(index >= 0 ? index : -index - 1,
+					this.cdf.length - 1);
+		}
+	}
+
 	/**
 	 * @param args
 	 */
@@ -965,7 +1195,9 @@ public class TESTPaxosClient {
 
 			resetLatencyComputation(clients);
 
-			if (Config.getGlobalBoolean(TC.PROBE_CAPACITY))
+			if (Config.getGlobalBoolean(TC.OPEN_LOOP))
+				TESTPaxosClient.openLoopTest(clients);
+			else if (Config.getGlobalBoolean(TC.PROBE_CAPACITY))
 				TESTPaxosClient.probeCapacity(
 						Config.getGlobalDouble(TC.PROBE_INIT_LOAD), clients);
 			else
@@ -987,6 +1219,11 @@ public class TESTPaxosClient {
 	private static long MAX_WAIT_TIME;
 	private static boolean PIN_CLIENT;
 	private static String TEST_GUID;
+	private static ZipfSampler zipf;
+	private static boolean OPEN_LOOP_POISSON;
+	private static double READ_FRACTION;
+	private static SizeDistribution SIZE_DISTRIBUTION;
+	private static String maxGibberish;
 
 	// need a method like this to support command-line initialization
 	private static void initStaticParams() {
@@ -1002,5 +1239,16 @@ public class TESTPaxosClient {
 				.getGlobalDouble(TC.TOTAL_LOAD))
 				+ Config.getGlobalInt(TC.MAX_RESPONSE_WAIT_TIME);
 		createGibberish();
+		zipf = Config.getGlobalDouble(TC.ZIPF_EXPONENT) > 0 ? new ZipfSampler(
+				NUM_GROUPS_CLIENT, Config.getGlobalDouble(TC.ZIPF_EXPONENT))
+				: null;
+		OPEN_LOOP_POISSON = Config.getGlobalBoolean(TC.OPEN_LOOP_POISSON);
+		READ_FRACTION = Config.getGlobalDouble(TC.READ_FRACTION);
+		SIZE_DISTRIBUTION = SizeDistribution.valueOf(Config.getGlobalString(
+				TC.REQUEST_SIZE_DISTRIBUTION).toUpperCase());
+		StringBuilder sb = new StringBuilder(gibberish);
+		while (sb.length() > 0 && sb.length() < 8 * gibberish.length())
+			sb.append(gibberish);
+		maxGibberish = sb.substring(0, 8 * gibberish.length());
 	}
 }
@@ -240,6 +240,53 @@ public class TESTPaxosConfig {
 		 */
 		WORKLOAD_SKEW(1),
 
+		/**
+		 * If true, the client runs a single open-loop test instead of a
+		 * capacity probe or two-phase test. Requests are sent at
+		 * {@link #TOTAL_LOAD} on a fixed schedule regardless of responses, and
+		 * latency is measured from when each request was supposed to be sent,
+		 * so queueing delay at an overloaded client or server is not hidden.
+		 */
+		OPEN_LOOP(false),
+
+		/**
+		 * Duration of the open-loop test in seconds.
+		 */
+		OPEN_LOOP_DURATION(30),
+
+		/**
+		 * If true, open-loop inter-arrival times are exponentially distributed
+		 * (Poisson arrivals); otherwise they are constant.
+		 */
+		OPEN_LOOP_POISSON(true),
+
+		/**
+		 * If positive, groups are picked with a Zipfian distribution with this
+		 * exponent over {@link #NUM_GROUPS_CLIENT} groups instead of using
+		 * {@link #WORKLOAD_SKEW}.
+		 */
+		ZIPF_EXPONENT(0.0),
+
+		/**
+		 * Fraction of open-loop requests that are reads. Reads carry no
+		 * baggage and their latencies are reported separately. They are still
+		 * agreed upon like writes as the test app has no local read path.
+		 */
+		READ_FRACTION(0.0),
+
+		/**
+		 * Distribution of write baggage sizes with mean
+		 * {@link #REQUEST_BAGGAGE_SIZE}: FIXED, UNIFORM (up to twice the mean),
+		 * or EXPONENTIAL (capped at eight times the mean).
+		 */
+		REQUEST_SIZE_DISTRIBUTION("FIXED"),
+
+		/**
+		 * File to which the full open-loop latency histograms (in
+		 * milliseconds) are written.
+		 */
+		LATENCY_HISTOGRAM_FILE("TESTPaxosClient.hgrm"),
+
 		/**
 		 * The size of a batch for creating group at test initiation time.
 		 */
@@ -81,8 +81,8 @@ public abstract class AbstractJSONPacketDemultiplexer extends
 			boolean cacheStringified) {
 		try {
 			if (JSONPacket.couldBeJSON(message, offset)) // quick reject if not
-				return MessageExtractor.stampAddressIntoJSONObject(header.sndr,
-						header.rcvr, MessageExtractor.parseJSON(
+				return MessageExtractor.stampAddressIntoJSONObject(header,
+						MessageExtractor.parseJSON(
 								MessageExtractor.decode(message, offset, message.length-offset),
 								cacheStringified));
 		} catch (UnsupportedEncodingException e) {
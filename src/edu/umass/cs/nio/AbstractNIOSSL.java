@@ -19,7 +19,9 @@ import java.lang.reflect.Field;
 import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -48,9 +50,22 @@ public abstract class AbstractNIOSSL implements Runnable {
 	private final static int MAX_DST_BUFFER_SIZE = MAX_FACTOR
 			* NIOTransport.WRITE_BUFFER_SIZE;
 
+	/**
+	 * Maximum number of direct net/app buffers retained across connections.
+	 * Allocating and freeing 256KB direct buffers for every new SSL connection
+	 * is expensive and reconnects are common, so buffers released by closed
+	 * connections are recycled up to this limit instead of being cleaned.
+	 */
+	private final static int MAX_POOLED_BUFFERS = 64;
+	private final static ConcurrentLinkedQueue<ByteBuffer> bufferPool = new ConcurrentLinkedQueue<ByteBuffer>();
+	private final static AtomicInteger pooledCount = new AtomicInteger(0);
+
 	ByteBuffer wrapSrc, unwrapSrc;
 	ByteBuffer wrapDst, unwrapDst;
 
+	// set upon clean() so that lingering tasks don't touch recycled buffers
+	private boolean closed = false;
+
 	final SSLEngine engine;
 	final Executor taskWorkers;
 	
@@ -68,10 +83,10 @@ public abstract class AbstractNIOSSL implements Runnable {
 	 */
 	public AbstractNIOSSL(SelectionKey key, SSLEngine engine,
 			Executor taskWorkers, String myID) {
-		this.wrapSrc = ByteBuffer.allocateDirect(DEFAULT_BUFFER_SIZE);
-		this.wrapDst = ByteBuffer.allocateDirect(DEFAULT_BUFFER_SIZE);
-		this.unwrapSrc = ByteBuffer.allocateDirect(DEFAULT_BUFFER_SIZE);
-		this.unwrapDst = ByteBuffer.allocateDirect(DEFAULT_BUFFER_SIZE);
+		this.wrapSrc = getBuffer();
+		this.wrapDst = getBuffer();
+		this.unwrapSrc = getBuffer();
+		this.unwrapDst = getBuffer();
 		this.engine = engine;
 		this.taskWorkers = taskWorkers;
 		this.key = key;
@@ -111,6 +126,8 @@ public abstract class AbstractNIOSSL implements Runnable {
 	 * @param unencrypted
 	 */
 	public synchronized void nioSend(final ByteBuffer unencrypted) {
+		if (this.closed)
+			return;
 		try {
 			Util.put(wrapSrc, unencrypted);
 			// wrapSrc.put(unencrypted);
@@ -123,13 +140,56 @@ public abstract class AbstractNIOSSL implements Runnable {
 		run();
 	}
 
+	/**
+	 * To encrypt-and-send several queued outgoing buffers at once. If there is
+	 * no previously buffered plaintext and the handshake is done, the buffers
+	 * are handed directly to a gathering {@link SSLEngine#wrap(ByteBuffer[],
+	 * int, int, ByteBuffer)} so that many small application messages get
+	 * packed into as few TLS records as possible without first being copied
+	 * into wrapSrc. Whatever can not be wrapped right away is copied into
+	 * wrapSrc as space permits and the rest is left in {@code srcs} for the
+	 * caller to retry later.
+	 * 
+	 * @param srcs
+	 * @param offset
+	 * @param length
+	 * @return Number of plaintext bytes consumed from {@code srcs}.
+	 */
+	public synchronized int nioSend(ByteBuffer[] srcs, int offset, int length) {
+		if (this.closed)
+			return 0;
+		long original = remaining(srcs, offset, length);
+		// previously buffered plaintext must go out first to preserve order
+		if (wrapSrc.position() == 0
+				&& engine.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING)
+			this.wrap(srcs, offset, length);
+		for (int i = offset; i < offset + length && wrapSrc.hasRemaining(); i++)
+			if (srcs[i].hasRemaining())
+				Util.put(wrapSrc, srcs[i]);
+		run();
+		return (int) (original - remaining(srcs, offset, length));
+	}
+
+	private static long remaining(ByteBuffer[] srcs, int offset, int length) {
+		long total = 0;
+		for (int i = offset; i < offset + length; i++)
+			total += srcs[i].remaining();
+		return total;
+	}
+
 	/**
 	 * To unwrap (decrypt) data received from the network.
 	 * 
 	 * @param encrypted
 	 */
 	public synchronized void notifyReceived(ByteBuffer encrypted) {
+		if (this.closed)
+			return;
 		int original = encrypted.remaining();
+		// unwrap straight from the network buffer if nothing is pending
+		if (unwrapSrc.position() == 0
+				&& engine.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING)
+			this.unwrap(encrypted);
 		try {
 			Util.put(unwrapSrc, encrypted);
 			// unwrapSrc.put(encrypted);
@@ -180,7 +240,7 @@ public abstract class AbstractNIOSSL implements Runnable {
 
 	public synchronized void run() {
 		// executes non-blocking tasks on the IO-Worker
-		while (this.step())
+		while (!this.closed && this.step())
 			continue;
 	}
 
@@ -242,6 +302,36 @@ public abstract class AbstractNIOSSL implements Runnable {
 		return true;
 	}
 
+	/* Gathering wrap directly from application buffers. Invoked only when
+	 * wrapSrc is empty and the handshake is complete. Packs as many TLS records
+	 * into wrapDst as fit before pushing them out in a single channel write,
+	 * and stops consuming plaintext if the channel is not keeping up. */
+	private void wrap(ByteBuffer[] srcs, int offset, int length) {
+		while (remaining(srcs, offset, length) > 0) {
+			SSLEngineResult wrapResult;
+			try {
+				wrapResult = engine.wrap(srcs, offset, length, wrapDst);
+			} catch (SSLException exc) {
+				this.onHandshakeFailure(exc);
+				return;
+			}
+			if (wrapResult.getStatus() == SSLEngineResult.Status.CLOSED) {
+				this.onClosed();
+				return;
+			}
+			if (wrapResult.getStatus() == SSLEngineResult.Status.OK
+					&& wrapResult.bytesConsumed() > 0)
+				continue;
+			if (wrapResult.getStatus() != SSLEngineResult.Status.BUFFER_OVERFLOW)
+				break;
+			// wrapDst full, so push out and continue only if fully pushed
+			this.pushOutbound();
+			if (wrapDst.position() > 0)
+				break;
+		}
+		this.drainOutbound();
+	}
+
 	private synchronized boolean wrap() {
 		SSLEngineResult wrapResult;
 
@@ -319,6 +409,8 @@ public abstract class AbstractNIOSSL implements Runnable {
 					while (wrapDst.position() > 0) {
 						int prev = wrapDst.position();
 						synchronized (AbstractNIOSSL.this) {
+							if (AbstractNIOSSL.this.closed)
+								return;
 							wrapDst.flip();
 							AbstractNIOSSL.this.onOutboundData(wrapDst);
 							wrapDst.compact();
@@ -344,6 +436,32 @@ public abstract class AbstractNIOSSL implements Runnable {
 		unwrapDst.compact();
 	}
 
+	/* Unwraps directly from the network read buffer without first copying it
+	 * into unwrapSrc. Any trailing partial record, or anything following a
+	 * handshake message, is left in src for the caller to buffer. */
+	private void unwrap(ByteBuffer src) {
+		while (src.hasRemaining()) {
+			SSLEngineResult unwrapResult;
+			try {
+				unwrapResult = engine.unwrap(src, unwrapDst);
+			} catch (SSLException exc) {
+				this.onHandshakeFailure(exc);
+				return;
+			}
+			if (unwrapResult.getStatus() == SSLEngineResult.Status.CLOSED) {
+				this.onClosed();
+				return;
+			}
+			if (unwrapDst.position() > 0)
+				this.pullInbound();
+			if (unwrapResult.getStatus() != SSLEngineResult.Status.OK
+					&& unwrapResult.getStatus() != SSLEngineResult.Status.BUFFER_OVERFLOW
+					|| unwrapResult.getHandshakeStatus() != SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING
+					|| unwrapDst.position() > 0)
+				break;
+		}
+	}
+
 	private synchronized boolean unwrap() {
 		SSLEngineResult unwrapResult;
 
@@ -424,11 +542,36 @@ public abstract class AbstractNIOSSL implements Runnable {
 	 * memory. This default behavior doesn't seem to affect performance, but
 	 * makes the server look like a memory hog if many ssl connections get
 	 * created over time. */
-	protected void clean() {
-		clean(this.unwrapDst);
-		clean(this.unwrapSrc);
-		clean(this.wrapDst);
-		clean(this.wrapSrc);
+	protected synchronized void clean() {
+		if (this.closed)
+			return;
+		this.closed = true;
+		release(this.unwrapDst);
+		release(this.unwrapSrc);
+		release(this.wrapDst);
+		release(this.wrapSrc);
+	}
+
+	private static ByteBuffer getBuffer() {
+		ByteBuffer buf = bufferPool.poll();
+		if (buf == null)
+			return ByteBuffer.allocateDirect(DEFAULT_BUFFER_SIZE);
+		pooledCount.decrementAndGet();
+		return buf;
+	}
+
+	// recycle default-sized direct buffers, else clean them
+	private static void release(ByteBuffer bbuf) {
+		if (bbuf.isDirect() && bbuf.capacity() == DEFAULT_BUFFER_SIZE
+				&& pooledCount.incrementAndGet() <= MAX_POOLED_BUFFERS) {
+			bbuf.clear();
+			bufferPool.offer(bbuf);
+			return;
+		}
+		if (bbuf.isDirect() && bbuf.capacity() == DEFAULT_BUFFER_SIZE)
+			pooledCount.decrementAndGet();
+		if (bbuf.isDirect())
+			clean(bbuf);
 	}
 
 	private static void clean(ByteBuffer bbuf) {
@@ -15,17 +15,24 @@
  * Initial developer(s): V. Arun */
 package edu.umass.cs.nio;
 
+import java.lang.reflect.Method;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -33,6 +40,7 @@ import org.json.JSONException;
 
 import edu.umass.cs.nio.interfaces.IntegerPacketType;
 import edu.umass.cs.nio.interfaces.PacketDemultiplexer;
+import edu.umass.cs.nio.nioutils.KeyedSerialExecutor;
 import edu.umass.cs.nio.nioutils.NIOHeader;
 import edu.umass.cs.nio.nioutils.NIOInstrumenter;
 import edu.umass.cs.utils.Stringer;
@@ -92,9 +100,113 @@ public abstract class AbstractPacketDemultiplexer<MessageType> implements
 		return threadPoolSize;
 	}
 
+	private static boolean virtualThreads = false;
+	private static int defaultMaxConcurrencyPerType = 0;
+
+	/**
+	 * Maximum number of platform threads used by the virtual thread mode when
+	 * the JVM does not support virtual threads (pre-21 JDKs).
+	 */
+	public static final int MAX_FALLBACK_THREADS = 256;
+
+	/**
+	 * @param enable
+	 *            If true, demultiplexed handlers are run one per virtual
+	 *            thread instead of on the fixed-size demultiplexer thread
+	 *            pool, so handlers that block (app execute, checkpoint
+	 *            fetches, blocking sends) do not starve other packet types.
+	 *            On JDKs without virtual threads, a bounded pool of up to
+	 *            {@link #MAX_FALLBACK_THREADS} daemon platform threads is used
+	 *            instead. The mode is picked up by each demultiplexer when it
+	 *            dispatches its first message, so this should be set before
+	 *            any traffic is received.
+	 */
+	public static synchronized void setVirtualThreads(boolean enable) {
+		virtualThreads = enable;
+	}
+
+	/**
+	 * @return True if virtual thread execution mode is enabled.
+	 */
+	public static synchronized boolean isVirtualThreads() {
+		return virtualThreads;
+	}
+
+	/**
+	 * @param permits
+	 *            The default maximum number of concurrently executing
+	 *            handlers per packet type in virtual thread mode. 0 or less
+	 *            means unbounded. Per-type limits set using
+	 *            {@link #setMaxConcurrency(IntegerPacketType, int)} take
+	 *            precedence.
+	 */
+	public static synchronized void setDefaultMaxConcurrencyPerType(int permits) {
+		defaultMaxConcurrencyPerType = permits;
+	}
+
+	private static synchronized int getDefaultMaxConcurrencyPerType() {
+		return defaultMaxConcurrencyPerType;
+	}
+
+	private static ExecutorService handlerExecutor = null;
+
+	/* Shared across all demultiplexers as virtual threads are cheap and the
+	 * fallback pool is bounded globally anyway. */
+	private static synchronized ExecutorService getHandlerExecutor() {
+		if (handlerExecutor == null)
+			handlerExecutor = createVirtualThreadExecutor();
+		if (handlerExecutor == null) {
+			final AtomicInteger count = new AtomicInteger(0);
+			ThreadPoolExecutor pool = new ThreadPoolExecutor(
+					MAX_FALLBACK_THREADS, MAX_FALLBACK_THREADS, 60,
+					TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+					new ThreadFactory() {
+						@Override
+						public Thread newThread(Runnable r) {
+							Thread thread = Executors.defaultThreadFactory()
+									.newThread(r);
+							thread.setName(DEFAULT_THREAD_NAME + ":handler"
+									+ count.getAndIncrement());
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+			pool.allowCoreThreadTimeOut(true);
+			handlerExecutor = pool;
+			log.log(Level.INFO,
+					"{0} virtual threads unsupported by this JVM; falling back to up to {1} platform handler threads",
+					new Object[] { DEFAULT_THREAD_NAME, MAX_FALLBACK_THREADS });
+		}
+		return handlerExecutor;
+	}
+
+	/* Reflection so that this class still compiles and runs on JDK 8. Uses
+	 * Thread.ofVirtual().name(prefix, 0).factory() and
+	 * Executors.newThreadPerTaskExecutor(factory) when available. */
+	private static ExecutorService createVirtualThreadExecutor() {
+		try {
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			Class<?> builderClass = Class
+					.forName("java.lang.Thread$Builder");
+			builder = builderClass.getMethod("name", String.class, long.class)
+					.invoke(builder, DEFAULT_THREAD_NAME + ":virtual", 0L);
+			ThreadFactory factory = (ThreadFactory) builderClass.getMethod(
+					"factory").invoke(builder);
+			Method newExecutor = Executors.class.getMethod(
+					"newThreadPerTaskExecutor", ThreadFactory.class);
+			return (ExecutorService) newExecutor.invoke(null, factory);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			return null;
+		}
+	}
+
 	private final ScheduledThreadPoolExecutor executor;
 	private final HashMap<Integer, PacketDemultiplexer<MessageType>> demuxMap = new HashMap<Integer, PacketDemultiplexer<MessageType>>();
 	private final Set<Integer> orderPreservingTypes = new HashSet<Integer>();
+	private final ConcurrentHashMap<Integer, Semaphore> typeLimits = new ConcurrentHashMap<Integer, Semaphore>();
+	private ExecutorService virtualExecutor = null;
+	private boolean virtualChecked = false;
+	private KeyedSerialExecutor orderedExecutor = null;
 	protected static final Logger log = NIOTransport.getLogger();
 
 	abstract protected Integer getPacketType(MessageType message);
@@ -147,6 +259,55 @@ public abstract class AbstractPacketDemultiplexer<MessageType> implements
 		this(getThreadPoolSize());
 	}
 
+	/**
+	 * Bounds the number of concurrently executing handlers for {@code type}
+	 * in virtual thread mode (see {@link #setVirtualThreads(boolean)}).
+	 * Handlers beyond the limit wait on their own (virtual) thread, not on
+	 * the NIO selector thread.
+	 * 
+	 * @param type
+	 * @param permits
+	 *            0 or less means unbounded.
+	 * @return {@code this}
+	 */
+	public AbstractPacketDemultiplexer<MessageType> setMaxConcurrency(
+			IntegerPacketType type, int permits) {
+		if (permits > 0)
+			this.typeLimits.put(type.getInt(), new Semaphore(permits));
+		else
+			this.typeLimits.remove(type.getInt());
+		return this;
+	}
+
+	private Semaphore getTypeLimit(Integer type) {
+		Semaphore limit = this.typeLimits.get(type);
+		if (limit != null || getDefaultMaxConcurrencyPerType() <= 0)
+			return limit;
+		this.typeLimits.putIfAbsent(type, new Semaphore(
+				getDefaultMaxConcurrencyPerType()));
+		return this.typeLimits.get(type);
+	}
+
+	/* Decided once per demultiplexer at its first dispatch so that the
+	 * static mode can be set after construction but before traffic. */
+	private synchronized ExecutorService getVirtualExecutor() {
+		if (!this.virtualChecked) {
+			this.virtualExecutor = isVirtualThreads() ? getHandlerExecutor()
+					: null;
+			this.virtualChecked = true;
+		}
+		return this.virtualExecutor;
+	}
+
+	private synchronized KeyedSerialExecutor getOrderedExecutor() {
+		if (this.orderedExecutor == null) {
+			ExecutorService virtual = this.getVirtualExecutor();
+			this.orderedExecutor = new KeyedSerialExecutor(
+					virtual != null ? virtual : this.executor);
+		}
+		return this.orderedExecutor;
+	}
+
 	protected AbstractPacketDemultiplexer<MessageType> setThreadName(String name) {
 		this.threadName = DEFAULT_THREAD_NAME + "[" + myThreadPoolSize + "]"
 				+ (name != null ? ":" + name : "");
@@ -198,14 +359,35 @@ public abstract class AbstractPacketDemultiplexer<MessageType> implements
 			return false;
 		}
 		Tasker tasker = new Tasker(message, this.demuxMap.get(type), header);
-		if (this.myThreadPoolSize == 0 || isOrderPreserving(message)) {
+		ExecutorService virtual = null;
+		if (this.myThreadPoolSize == 0) {
 			log.log(Level.FINER,
 					"{0} handling message type {1} in selector thread; this can cause "
 							+ "deadlocks if the handler involves blocking operations",
 					new Object[] { this, type });
 			// task better be lightning quick
 			tasker.run();
-		} else
+		} else if (isOrderPreserving(message))
+			try {
+				// serial per key, parallel across keys, off the selector
+				this.getOrderedExecutor().execute(
+						this.getOrderingKey(message, header), tasker);
+			} catch (RejectedExecutionException ree) {
+				if (!executor.isShutdown())
+					ree.printStackTrace();
+				return false;
+			}
+		else if ((virtual = this.getVirtualExecutor()) != null)
+			try {
+				// task may block, but only its own thread
+				virtual.execute(new BoundedTasker(tasker, this
+						.getTypeLimit(type)));
+			} catch (RejectedExecutionException ree) {
+				if (!virtual.isShutdown())
+					ree.printStackTrace();
+				return false;
+			}
+		else
 			try {
 				log.log(level = Level.FINER,
 						"{0} invoking {1}.handleMessage({2})",
@@ -257,6 +439,20 @@ public abstract class AbstractPacketDemultiplexer<MessageType> implements
 		return false;
 	}
 
+	/**
+	 * Order-preserving messages (see {@link #isOrderPreserving(Object)}) with
+	 * equal keys are handled one at a time in arrival order; those with
+	 * different keys may be handled in parallel. The default key is the
+	 * sending socket address, i.e., order is preserved per connection.
+	 * 
+	 * @param msg
+	 * @param header
+	 * @return The key whose order must be preserved.
+	 */
+	protected Object getOrderingKey(MessageType msg, NIOHeader header) {
+		return header != null ? header.sndr : null;
+	}
+
 	/**
 	 * Registers {@code type} with {@code this}.
 	 * 
@@ -389,6 +585,36 @@ public abstract class AbstractPacketDemultiplexer<MessageType> implements
 		}
 	}
 
+	/* Wrapper used in virtual thread mode to emulate delays and enforce the
+	 * per-type concurrency limit on the handler's own thread. */
+	private class BoundedTasker implements Runnable {
+		private final Tasker tasker;
+		private final Semaphore limit;
+
+		BoundedTasker(Tasker tasker, Semaphore limit) {
+			this.tasker = tasker;
+			this.limit = limit;
+		}
+
+		public void run() {
+			try {
+				if (emulateDelays)
+					Thread.sleep(JSONDelayEmulator.getEmulatedDelay());
+				if (this.limit != null)
+					this.limit.acquire();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+			try {
+				this.tasker.run();
+			} finally {
+				if (this.limit != null)
+					this.limit.release();
+			}
+		}
+	}
+
 	private static TreeMap<Long, Object> handleMessageStats = new TreeMap<Long, Object>();
 
 	/**
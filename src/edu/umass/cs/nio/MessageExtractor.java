@@ -21,7 +21,9 @@ import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -64,6 +66,12 @@ public class MessageExtractor implements InterfaceMessageExtractor {
 
 	private static final Logger log = NIOTransport.getLogger();
 
+	/* Headers are immutable and a connected channel's addresses never change,
+	 * so one header per connection is reused for all messages on it. */
+	private final ConcurrentHashMap<SocketChannel, NIOHeader> headers = new ConcurrentHashMap<SocketChannel, NIOHeader>();
+	private static final int MIN_HEADER_PURGE_SIZE = 1024;
+	private int headerPurgeSize = MIN_HEADER_PURGE_SIZE;
+
 	protected MessageExtractor(AbstractPacketDemultiplexer<?> pd) {
 		packetDemuxes = new ArrayList<AbstractPacketDemultiplexer<?>>();
 		packetDemuxes.add(pd);
@@ -205,11 +213,42 @@ public class MessageExtractor implements InterfaceMessageExtractor {
 						TimeUnit.MILLISECONDS);
 		} else
 			// run it immediately
-			this.demultiplexMessage(
-					new NIOHeader(
-							(InetSocketAddress) socket.getRemoteAddress(),
-							(InetSocketAddress) socket.getLocalAddress()),
-					incoming);
+			this.demultiplexMessage(this.getHeader(socket), incoming);
+	}
+
+	private NIOHeader getHeader(SocketChannel socket) throws IOException {
+		NIOHeader header = this.headers.get(socket);
+		if (header != null) {
+			NIOInstrumenter.incrHeadersReused();
+			return header;
+		}
+		header = new NIOHeader((InetSocketAddress) socket.getRemoteAddress(),
+				(InetSocketAddress) socket.getLocalAddress());
+		NIOInstrumenter.incrHeadersCreated();
+		NIOHeader prev = this.headers.putIfAbsent(socket, header);
+		if (this.headers.size() > this.headerPurgeSize)
+			this.purgeHeaders();
+		return prev != null ? prev : header;
+	}
+
+	// safety net in case closed channels were not forgotten
+	private synchronized void purgeHeaders() {
+		for (Iterator<SocketChannel> iter = this.headers.keySet().iterator(); iter
+				.hasNext();)
+			if (!iter.next().isOpen())
+				iter.remove();
+		this.headerPurgeSize = Math.max(MIN_HEADER_PURGE_SIZE,
+				2 * this.headers.size());
+	}
+
+	/**
+	 * Drops the cached header for {@code socket}. Invoked by NIOTransport when
+	 * a connection is closed.
+	 * 
+	 * @param socket
+	 */
+	protected void forget(SocketChannel socket) {
+		this.headers.remove(socket);
 	}
 
 	/**
@@ -326,9 +365,8 @@ public class MessageExtractor implements InterfaceMessageExtractor {
 		@Override
 		public void run() {
 			try {
-				MessageExtractor.this.demultiplexLocalMessage(new NIOHeader(
-						(InetSocketAddress) socket.getRemoteAddress(),
-						(InetSocketAddress) socket.getLocalAddress()), msg);
+				MessageExtractor.this.demultiplexLocalMessage(
+						MessageExtractor.this.getHeader(socket), msg);
 			} catch (UnsupportedEncodingException e) {
 				fatalExit(e);
 			} catch (IOException e) {
@@ -343,30 +381,45 @@ public class MessageExtractor implements InterfaceMessageExtractor {
 	 * @param json
 	 * @return JSONObject with addresses stamped.
 	 */
-	@SuppressWarnings("deprecation")
-	// for backwards compatibility
 	public static final JSONObject stampAddressIntoJSONObject(
 			InetSocketAddress sndrAddress, InetSocketAddress rcvrAddress,
 			JSONObject json) {
+		return stampAddressIntoJSONObject(new NIOHeader(sndrAddress,
+				rcvrAddress), json);
+	}
+
+	/**
+	 * Same as {@link #stampAddressIntoJSONObject(InetSocketAddress, InetSocketAddress, JSONObject)}
+	 * but uses the address strings cached in the per-connection
+	 * {@code header}.
+	 * 
+	 * @param header
+	 * @param json
+	 * @return JSONObject with addresses stamped.
+	 */
+	@SuppressWarnings("deprecation")
+	// for backwards compatibility
+	public static final JSONObject stampAddressIntoJSONObject(
+			NIOHeader header, JSONObject json) {
 		// only put the IP field in if it doesn't exist already
 		try {
 			// put sender address
 			if (!json.has(MessageNIOTransport.SNDR_ADDRESS_FIELD))
 				json.put(MessageNIOTransport.SNDR_ADDRESS_FIELD,
-						sndrAddress.getAddress().getHostAddress()+":"+sndrAddress.getPort());
+						header.getSenderHostPort());
 
 			// TODO: remove the deprecated lines bel
 			if (!json.has(JSONNIOTransport.SNDR_IP_FIELD))
-				json.put(JSONNIOTransport.SNDR_IP_FIELD, sndrAddress
+				json.put(JSONNIOTransport.SNDR_IP_FIELD, header.sndr
 						.getAddress().getHostAddress());
 			if (!json.has(JSONNIOTransport.SNDR_PORT_FIELD))
 				json.put(JSONNIOTransport.SNDR_PORT_FIELD,
-						sndrAddress.getPort());
+						header.sndr.getPort());
 
 			// put receiver address
 			if (!json.has(MessageNIOTransport.RCVR_ADDRESS_FIELD))
 				json.put(MessageNIOTransport.RCVR_ADDRESS_FIELD,
-						rcvrAddress.getAddress().getHostAddress()+":"+rcvrAddress.getPort());
+						header.getReceiverHostPort());
 
 		} catch (JSONException e) {
 			log.severe("Encountered JSONException while stamping sender address and port at receiver: ");
@@ -386,17 +439,33 @@ public class MessageExtractor implements InterfaceMessageExtractor {
 	public static final net.minidev.json.JSONObject stampAddressIntoJSONObject(
 			InetSocketAddress sndrAddress, InetSocketAddress rcvrAddress,
 			net.minidev.json.JSONObject json) {
+		return stampAddressIntoJSONObject(new NIOHeader(sndrAddress,
+				rcvrAddress), json);
+	}
+
+	/**
+	 * Same as
+	 * {@link #stampAddressIntoJSONObject(InetSocketAddress, InetSocketAddress, net.minidev.json.JSONObject)}
+	 * but uses the address strings cached in the per-connection
+	 * {@code header}.
+	 * 
+	 * @param header
+	 * @param json
+	 * @return Parsed JSON object.
+	 */
+	public static final net.minidev.json.JSONObject stampAddressIntoJSONObject(
+			NIOHeader header, net.minidev.json.JSONObject json) {
 		// only put the IP field in if it doesn't exist already
 		try {
 			// put sender address
 			if (!json.containsKey(MessageNIOTransport.SNDR_ADDRESS_FIELD))
 				json.put(MessageNIOTransport.SNDR_ADDRESS_FIELD,
-						sndrAddress.toString());
+						header.getSenderString());
 
 			// put receiver socket address
 			if (!json.containsKey(MessageNIOTransport.RCVR_ADDRESS_FIELD))
 				json.put(MessageNIOTransport.RCVR_ADDRESS_FIELD,
-						rcvrAddress.toString());
+						header.getReceiverString());
 
 		} catch (Exception e) {
 			log.severe("Encountered JSONException while stamping sender address and port at receiver: ");
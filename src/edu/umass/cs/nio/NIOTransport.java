@@ -15,7 +15,6 @@
  * Initial developer(s): V. Arun */
 package edu.umass.cs.nio;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.net.BindException;
 import java.net.InetAddress;
@@ -30,6 +29,7 @@ import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -44,18 +44,20 @@ import java.util.concurrent.TimeUnit;
 import java.util.logging.ConsoleHandler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.zip.DataFormatException;
-import java.util.zip.Deflater;
-import java.util.zip.Inflater;
 
 import edu.umass.cs.nio.SSLDataProcessingWorker.SSL_MODES;
+import edu.umass.cs.nio.interfaces.CompressionCodec;
 import edu.umass.cs.nio.interfaces.DataProcessingWorker;
 import edu.umass.cs.nio.interfaces.HandshakeCallback;
 import edu.umass.cs.nio.interfaces.NodeConfig;
+import edu.umass.cs.nio.nioutils.AdaptiveCompressor;
 import edu.umass.cs.nio.nioutils.DataProcessingWorkerDefault;
+import edu.umass.cs.nio.nioutils.DeflateCodec;
+import edu.umass.cs.nio.nioutils.LZ4Codec;
 import edu.umass.cs.nio.nioutils.NIOInstrumenter;
 import edu.umass.cs.nio.nioutils.RTTEstimator;
 import edu.umass.cs.nio.nioutils.SampleNodeConfig;
+import edu.umass.cs.utils.Metrics;
 import edu.umass.cs.utils.Stringer;
 import edu.umass.cs.utils.Util;
 
@@ -266,6 +268,13 @@ public class NIOTransport<NodeIDType> implements Runnable, HandshakeCallback {
 		synchronized(NIOTransport.class) {
 			instanceCount++;
 		}
+		if (this.myID != null)
+			Metrics.gauge(this.getPendingMetricName(), new Metrics.Gauge() {
+				@Override
+				public long getValue() {
+					return NIOTransport.this.getPendingSizeEstimate();
+				}
+			});
 		log.log(Level.FINE, "{0} created new instance {1}: {2}", new Object[] {
 				NIOTransport.class.getSimpleName(), instanceCount, this, });
 
@@ -440,7 +449,7 @@ public class NIOTransport<NodeIDType> implements Runnable, HandshakeCallback {
 					+ MAX_PAYLOAD_SIZE);
 		testAndIntiateConnection(isa);
 		// we put length header in *all* messages
-		ByteBuffer bbuf = getHeaderedByteBuffer(data = this.deflate(data));
+		ByteBuffer bbuf = this.getCompressedHeaderedByteBuffer(data);
 		int written = this.canEnqueueSend(isa) ? this.enqueueSend(isa, bbuf)
 				: 0;
 		if(written > 0)
@@ -448,22 +457,14 @@ public class NIOTransport<NodeIDType> implements Runnable, HandshakeCallback {
 		return written > 0 ? written - HEADER_SIZE : written;
 	}
 
-	private byte[] deflate(byte[] data) {
-		if (isSSL() || !getCompression()
-				|| data.length < getCompressionThreshold())
-			return data;
-
-		Deflater deflator = new Deflater();
-		byte[] compressed = new byte[data.length];
-		int compressedLength = data.length;
-		deflator.setInput(data);
-		deflator.finish();
-		compressedLength = deflator.deflate(compressed);
-		deflator.end();
-		data = new byte[compressedLength];
-		for (int i = 0; i < data.length; i++)
-			data[i] = compressed[i];
-		return data;
+	private ByteBuffer getCompressedHeaderedByteBuffer(byte[] data) {
+		AdaptiveCompressor compressor = NIOTransport.compressor;
+		byte[] compressed = null;
+		if (!isSSL() && getCompression() && compressor != null
+				&& (compressed = compressor.compress(data)) != null)
+			return getHeaderedByteBuffer(compressed, compressor.getCodec()
+					.getCodecID());
+		return getHeaderedByteBuffer(data, 0);
 	}
 
 	/**
@@ -489,26 +490,45 @@ public class NIOTransport<NodeIDType> implements Runnable, HandshakeCallback {
 		return written > 0 ? written - batchSize * HEADER_SIZE : written;
 	}
 
-	private static ByteBuffer getHeaderedByteBuffer(byte[] data) {
+	private static ByteBuffer getHeaderedByteBuffer(byte[] data, int codecID) {
 		ByteBuffer bbuf = ByteBuffer.allocate(HEADER_SIZE + data.length);
-		putHeaderLength(bbuf, data.length).put(data);
+		putHeaderLength(bbuf, data.length, codecID).put(data);
 		assert (!bbuf.hasRemaining() && bbuf.capacity() == (HEADER_SIZE + data.length));
 		bbuf.flip();
 		return bbuf;
 	}
 
 	private static ByteBuffer putHeaderLength(ByteBuffer buf, int length) {
-		return (USE_PREAMBLE ? buf.putInt(PREAMBLE) : buf).putInt(length);
+		return putHeaderLength(buf, length, 0);
+	}
+
+	/* The payload length is at most MAX_PAYLOAD_SIZE, so the high-order byte
+	 * of the length field is free to carry the compression codec ID. Frames
+	 * with codec ID 0 are identical to legacy uncompressed frames. */
+	private static final int CODEC_SHIFT = 24;
+	private static final int LENGTH_MASK = (1 << CODEC_SHIFT) - 1;
+
+	private static ByteBuffer putHeaderLength(ByteBuffer buf, int length,
+			int codecID) {
+		return (USE_PREAMBLE ? buf.putInt(PREAMBLE) : buf)
+				.putInt((codecID << CODEC_SHIFT) | length);
 	}
 
 	protected static final int getPayloadLength(ByteBuffer buf) throws IOException {
+		return getPayloadLengthWord(buf) & LENGTH_MASK;
+	}
+
+	// returns the length field including the codec ID in the high-order byte
+	private static final int getPayloadLengthWord(ByteBuffer buf)
+			throws IOException {
 		assert (buf.capacity() == HEADER_SIZE);
 		int preamble = -1;
 		if (!USE_PREAMBLE || (preamble = buf.getInt()) == PREAMBLE) {
-			int length = buf.getInt();
-			if (outOfRange(length))
-				throw new IOException("Out-of-range payload length " + length);
-			return length;
+			int word = buf.getInt();
+			if (outOfRange(word & LENGTH_MASK)
+					|| (word >>> CODEC_SHIFT) > MAX_CODEC_ID)
+				throw new IOException("Out-of-range payload length " + word);
+			return word;
 		}
 		// error: empty out buf
 		byte[] b = new byte[buf.remaining()];
@@ -596,6 +616,8 @@ public class NIOTransport<NodeIDType> implements Runnable, HandshakeCallback {
 	 */
 	public synchronized void stop() {
 		this.stopped = true;
+		if (this.myID != null)
+			Metrics.unregister(this.getPendingMetricName());
 		if (this.senderTask != null)
 			this.senderTask.close();
 		this.selector.wakeup();
@@ -782,6 +804,7 @@ public class NIOTransport<NodeIDType> implements Runnable, HandshakeCallback {
 	protected static final class AlternatingByteBuffer {
 		final ByteBuffer headerBuf;
 		ByteBuffer bodyBuf = null;
+		int codecID = 0;
 
 		AlternatingByteBuffer() {
 			headerBuf = ByteBuffer.allocate(HEADER_SIZE);
@@ -791,6 +814,7 @@ public class NIOTransport<NodeIDType> implements Runnable, HandshakeCallback {
 		void clear() {
 			this.headerBuf.clear();
 			this.bodyBuf = null;
+			this.codecID = 0;
 		}
 		
 		void readHeader(ByteBuffer incoming) {
@@ -810,7 +834,7 @@ public class NIOTransport<NodeIDType> implements Runnable, HandshakeCallback {
 					// if first four bytes are preamble
 					if (firstInt != PREAMBLE) {
 						// first four bytes must be length
-						assert (!outOfRange(firstInt));
+						assert (!outOfRange(firstInt & LENGTH_MASK));
 						((ByteBuffer) this.headerBuf.clear()).putInt(PREAMBLE)
 								.putInt(firstInt);
 					}
@@ -829,9 +853,11 @@ public class NIOTransport<NodeIDType> implements Runnable, HandshakeCallback {
 
 		// if SSL, simply pass any bytes to SSL worker
 		if (isSSL() && !IS_IOS) {
-			this.readBuffers.putIfAbsent(key,
-					ByteBuffer.allocate(READ_BUFFER_SIZE));
-			ByteBuffer bbuf = this.readBuffers.get(key); // this.readBuffer;
+			// per-connection net buffer allocated once and reused across reads
+			ByteBuffer bbuf = this.readBuffers.get(key);
+			if (bbuf == null)
+				this.readBuffers.put(key,
+						bbuf = ByteBuffer.allocate(READ_BUFFER_SIZE));
 			int numRead = socketChannel.read(bbuf);
 
 			// socket closed by remote end
@@ -878,13 +904,14 @@ public class NIOTransport<NodeIDType> implements Runnable, HandshakeCallback {
 			bbuf.flip();
 			int length = -1;
 			try {
-				length = getPayloadLength(bbuf);
+				length = getPayloadLengthWord(bbuf);
 			} catch (IOException ioe) {
 				throw new IOException(myID + ":" + ioe.getMessage()
 						+ " on channel " + socketChannel);
 			}
+			abbuf.codecID = length >>> CODEC_SHIFT;
 			// allocate new buffer and read payload
-			bbuf = (abbuf.bodyBuf = ByteBuffer.allocate(length));
+			bbuf = (abbuf.bodyBuf = ByteBuffer.allocate(length & LENGTH_MASK));
 			socketChannel.read(bbuf);
 		}
 
@@ -899,7 +926,12 @@ public class NIOTransport<NodeIDType> implements Runnable, HandshakeCallback {
 							socketChannel,
 							log.isLoggable(level) ? new Stringer(bbuf.array(),
 									bbuf.position(), bbuf.remaining()) : "" });
-			this.worker.processData(socketChannel, this.inflate(bbuf));
+			ByteBuffer data = this.decompress(bbuf, abbuf.codecID);
+			this.worker.processData(socketChannel, data);
+			/* A compressed frame is consumed only once its decompressed copy
+			 * is, else it is decompressed again when retried as congested. */
+			if (data != bbuf && !data.hasRemaining())
+				bbuf.position(bbuf.limit());
 			// clear header to prepare to read the next message
 			if (!bbuf.hasRemaining()) {
 				abbuf.clear();
@@ -934,6 +966,37 @@ public class NIOTransport<NodeIDType> implements Runnable, HandshakeCallback {
 
 	private static boolean enableCompression = true;
 
+	/**
+	 * Maximum codec ID that fits in a frame header.
+	 */
+	public static final int MAX_CODEC_ID = 127;
+
+	private static final CompressionCodec[] codecs = new CompressionCodec[MAX_CODEC_ID + 1];
+	static {
+		registerCompressionCodec(new DeflateCodec());
+		registerCompressionCodec(new LZ4Codec());
+	}
+
+	/**
+	 * Registers a codec so that frames compressed with it can be decompressed.
+	 * Built-in codecs are {@link DeflateCodec} and {@link LZ4Codec}.
+	 * 
+	 * @param codec
+	 */
+	public static final synchronized void registerCompressionCodec(
+			CompressionCodec codec) {
+		int id = codec.getCodecID();
+		if (id <= 0 || id > MAX_CODEC_ID)
+			throw new IllegalArgumentException("Codec ID " + id
+					+ " not in [1, " + MAX_CODEC_ID + "]");
+		if (codecs[id] != null
+				&& !codecs[id].getClass().equals(codec.getClass()))
+			throw new IllegalArgumentException("Codec ID " + id
+					+ " already registered to "
+					+ codecs[id].getClass().getName());
+		codecs[id] = codec;
+	}
+
 	/**
 	 * @param b
 	 */
@@ -951,12 +1014,22 @@ public class NIOTransport<NodeIDType> implements Runnable, HandshakeCallback {
 	// default effectively disables compression
 	private static int compressionThreshold = MAX_PAYLOAD_SIZE;
 
+	private static CompressionCodec compressionCodec = codecs[LZ4Codec.CODEC_ID];
+
+	private static AdaptiveCompressor compressor = null;
+
 	/**
+	 * Messages at least this big are considered for compression. Whether a
+	 * message actually gets compressed depends on the measured compression
+	 * ratio and cost as decided by {@link AdaptiveCompressor}. The codec used
+	 * is carried in the frame header, so receivers need not be configured
+	 * identically, but they must run a version that understands codec IDs.
+	 * 
 	 * @param t
 	 */
-	public static final void setCompressionThreshold(int t) {
-		// FIXME: compression is disabled
-		// compressionThreshold = t;
+	public static final synchronized void setCompressionThreshold(int t) {
+		compressionThreshold = t;
+		compressor = new AdaptiveCompressor(compressionCodec, t);
 	}
 
 	/**
@@ -966,33 +1039,40 @@ public class NIOTransport<NodeIDType> implements Runnable, HandshakeCallback {
 		return compressionThreshold;
 	}
 
-	private ByteBuffer inflate(ByteBuffer bbuf) throws IOException {
-		if (isSSL() || !getCompression())
-			return bbuf;
+	/**
+	 * @param codec
+	 *            The codec used for outgoing messages. It is also registered
+	 *            for incoming messages if not already registered.
+	 */
+	public static final synchronized void setCompressionCodec(
+			CompressionCodec codec) {
+		registerCompressionCodec(codec);
+		compressionCodec = codec;
+		compressor = new AdaptiveCompressor(codec, compressionThreshold);
+	}
 
-		Inflater inflator = new Inflater();
-		inflator.setInput(bbuf.array(), 0, bbuf.capacity());
-		byte[] decompressed = new byte[bbuf.capacity()];
-		ByteArrayOutputStream baos = new ByteArrayOutputStream(bbuf.capacity());
-		try {
-			while (!inflator.finished()) {
-				int count = inflator.inflate(decompressed);
-				if (count == 0)
-					break;
-				baos.write(decompressed, 0, count);
-			}
-			baos.close();
-			inflator.end();
-		} catch (DataFormatException e) {
-			// possible for exception to be legitimate even if below threshold
-			if (bbuf.capacity() > getCompressionThreshold()) {
-				log.severe(this + " incurred DataFormatException ");
-				e.printStackTrace();
-			}
+	/**
+	 * @param codecID
+	 *            ID of a registered codec.
+	 */
+	public static final synchronized void setCompressionCodec(int codecID) {
+		if (codecID <= 0 || codecID > MAX_CODEC_ID || codecs[codecID] == null)
+			throw new IllegalArgumentException("No codec registered for ID "
+					+ codecID);
+		setCompressionCodec(codecs[codecID]);
+	}
+
+	private ByteBuffer decompress(ByteBuffer bbuf, int codecID)
+			throws IOException {
+		if (codecID == 0)
 			return bbuf;
-		}
-		bbuf = ByteBuffer.wrap(baos.toByteArray());
-		return bbuf;
+		CompressionCodec codec = codecs[codecID];
+		if (codec == null)
+			throw new IOException(this + " received frame compressed with "
+					+ "unregistered codec " + codecID);
+		// leaves bbuf unconsumed until the worker consumes the result
+		return ByteBuffer.wrap(codec.decompress(bbuf.array(),
+				bbuf.arrayOffset() + bbuf.position(), bbuf.remaining()));
 	}
 
 	/* Invoked only by the selector thread. If a write encounters an exception,
@@ -1157,6 +1237,10 @@ public class NIOTransport<NodeIDType> implements Runnable, HandshakeCallback {
 	// use a large bytebuffer to batch and send
 	private void sendBatched(LinkedBlockingQueue<ByteBuffer> sendQueue,
 			SocketChannel socketChannel) throws IOException {
+		if (this.isSSL() && !IS_IOS) {
+			this.sendBatchedSSL(sendQueue, socketChannel);
+			return;
+		}
 		// copy as much as possible into writeBuffer
 		this.writeBuffer.clear();
 		for (ByteBuffer buf : sendQueue) {
@@ -1194,6 +1278,36 @@ public class NIOTransport<NodeIDType> implements Runnable, HandshakeCallback {
 		}
 	}
 
+	// reused by the selector thread to gather queued buffers for SSL wrap
+	private ByteBuffer[] gatherBuffers = new ByteBuffer[64];
+
+	/* With SSL, copying queued buffers into writeBuffer only for them to be
+	 * copied again into the SSL engine's source buffer is wasteful. Instead,
+	 * we gather up to WRITE_BUFFER_SIZE bytes worth of queued buffers and
+	 * hand them to a single gathering wrap that encrypts them together. */
+	private void sendBatchedSSL(LinkedBlockingQueue<ByteBuffer> sendQueue,
+			SocketChannel socketChannel) throws IOException {
+		int count = 0, gathered = 0;
+		for (ByteBuffer buf : sendQueue) {
+			if (count == this.gatherBuffers.length)
+				this.gatherBuffers = Arrays.copyOf(this.gatherBuffers,
+						2 * count);
+			this.gatherBuffers[count++] = buf;
+			if ((gathered += buf.remaining()) >= WRITE_BUFFER_SIZE)
+				break;
+		}
+		int written = ((SSLDataProcessingWorker) this.worker).wrap(
+				socketChannel, this.gatherBuffers, 0, count);
+		Arrays.fill(this.gatherBuffers, 0, count, null);
+		NIOInstrumenter.incrBytesSent(written);
+		log.log(Level.FINEST, "{0} wrapped {1} batched bytes from {2} buffers to {3}",
+				new Object[] { this, written, count, socketChannel });
+
+		// the wrap consumes buffers in place, so remove fully consumed ones
+		while (!sendQueue.isEmpty() && !sendQueue.peek().hasRemaining())
+			sendQueue.remove();
+	}
+
 	private void dequeueSendQueueIfEmpty(InetSocketAddress isa,
 			LinkedBlockingQueue<ByteBuffer> sendQueue) {
 		synchronized (this.sendQueues) {
@@ -1440,6 +1554,11 @@ public class NIOTransport<NodeIDType> implements Runnable, HandshakeCallback {
 	private void cleanupSSL(SelectionKey key) {
           if (key != null) {
 				cleanup(key);
+				this.readBuffers.remove(key);
+				if (this.worker instanceof MessageExtractor
+						&& key.channel() instanceof SocketChannel)
+					((MessageExtractor) this.worker).forget((SocketChannel) key
+							.channel());
 				if (isSSL()){
 					if (IS_IOS) {
 						((IOSSSLDataProcessingWorker) this.worker).remove(key);
@@ -1947,6 +2066,20 @@ public class NIOTransport<NodeIDType> implements Runnable, HandshakeCallback {
 		}
 	}
 
+	private String getPendingMetricName() {
+		return Metrics.getName("nio.pending", this.myID + ":"
+				+ this.listeningPort);
+	}
+
+	// lock-free, so it may miss concurrently added or removed queues
+	private int getPendingSizeEstimate() {
+		int numPending = 0;
+		for (LinkedBlockingQueue<ByteBuffer> sendQueue : this.sendQueues
+				.values())
+			numPending += sendQueue.size();
+		return numPending;
+	}
+
 	/* ********* Testing methods below ********************* */
 
 	/* Used only for testing to print pending messages if any at the end of
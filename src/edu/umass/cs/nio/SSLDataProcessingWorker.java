@@ -27,12 +27,14 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLEngine;
 import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSessionContext;
 
 import edu.umass.cs.nio.interfaces.DataProcessingWorker;
 import edu.umass.cs.nio.interfaces.HandshakeCallback;
@@ -78,7 +80,73 @@ public class SSLDataProcessingWorker implements InterfaceMessageExtractor {
 	// to handle incoming decrypted data
 	private final DataProcessingWorker decryptedWorker;
 
-	private final ExecutorService taskWorkers = Executors.newFixedThreadPool(4);
+	/**
+	 * Delegated handshake tasks (mostly key agreement and certificate
+	 * verification) are CPU-bound, so we size the pool to the number of cores
+	 * so that a burst of (re-)connects does not queue behind a few threads.
+	 */
+	private final ExecutorService taskWorkers = Executors.newFixedThreadPool(
+			Math.max(4, Runtime.getRuntime().availableProcessors()),
+			new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = Executors.defaultThreadFactory()
+							.newThread(r);
+					thread.setName(SSLDataProcessingWorker.class
+							.getSimpleName() + "-" + thread.getName());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+	/**
+	 * Maximum number of cached TLS sessions per context. Cached sessions allow
+	 * abbreviated handshakes when a connection to a peer is re-established.
+	 */
+	public static final int SESSION_CACHE_SIZE = 4096;
+	/**
+	 * Seconds for which a cached TLS session remains resumable.
+	 */
+	public static final int SESSION_TIMEOUT = 24 * 3600;
+
+	private static int sessionCacheSize = SESSION_CACHE_SIZE;
+	private static int sessionTimeout = SESSION_TIMEOUT;
+
+	/**
+	 * Also applies to SSL contexts already in use as they are all the default
+	 * context.
+	 * 
+	 * @param size
+	 *            Refer {@link #SESSION_CACHE_SIZE}.
+	 */
+	public static void setSessionCacheSize(int size) {
+		sessionCacheSize = size;
+		configureDefaultContext();
+	}
+
+	/**
+	 * Also applies to SSL contexts already in use as they are all the default
+	 * context.
+	 * 
+	 * @param seconds
+	 *            Refer {@link #SESSION_TIMEOUT}.
+	 */
+	public static void setSessionTimeout(int seconds) {
+		sessionTimeout = seconds;
+		configureDefaultContext();
+	}
+
+	private static void configureDefaultContext() {
+		try {
+			initSSLContext();
+		} catch (NoSuchAlgorithmException e) {
+			log.log(Level.WARNING,
+					"Unable to configure TLS session caching: {0}",
+					new Object[] { e });
+		}
+	}
+
+	private final SSLContext sslContext;
 
 	private ConcurrentHashMap<SelectableChannel, AbstractNIOSSL> sslMap = new ConcurrentHashMap<SelectableChannel, AbstractNIOSSL>();
 
@@ -102,6 +170,19 @@ public class SSLDataProcessingWorker implements InterfaceMessageExtractor {
 		this.decryptedWorker = worker;
 		this.sslMode = sslMode;
 		this.myID = myID;
+		this.sslContext = initSSLContext();
+	}
+
+	private static SSLContext initSSLContext() throws NoSuchAlgorithmException {
+		SSLContext context = SSLContext.getDefault();
+		for (SSLSessionContext sessionContext : new SSLSessionContext[] {
+				context.getClientSessionContext(),
+				context.getServerSessionContext() })
+			if (sessionContext != null) {
+				sessionContext.setSessionCacheSize(sessionCacheSize);
+				sessionContext.setSessionTimeout(sessionTimeout);
+			}
+		return context;
 	}
 
 	protected SSLDataProcessingWorker setHandshakeCallback(
@@ -140,6 +221,20 @@ public class SSLDataProcessingWorker implements InterfaceMessageExtractor {
 		return originalSize - unencrypted.remaining();
 	}
 
+	// invoke SSL wrap on several buffers at once
+	protected int wrap(SocketChannel channel, ByteBuffer[] unencrypted,
+			int offset, int length) {
+		AbstractNIOSSL nioSSL = this.sslMap.get(channel);
+		assert (nioSSL != null);
+		try {
+			return nioSSL.nioSend(unencrypted, offset, length);
+		} catch (BufferOverflowException | IllegalStateException e) {
+			// do nothing, sender will automatically slow down
+			e.printStackTrace();
+		}
+		return 0;
+	}
+
 	protected boolean isHandshakeComplete(SocketChannel socketChannel) {
 		AbstractNIOSSL nioSSL = this.sslMap.get(socketChannel);
 		// socketChannel may be unmapped yet or under exception
@@ -150,12 +245,15 @@ public class SSLDataProcessingWorker implements InterfaceMessageExtractor {
 	protected boolean register(SelectionKey key, boolean isClient)
 			throws IOException {
 		assert (!this.sslMap.containsKey(key.channel()));
-		SSLEngine engine;
-		try {
-			engine = SSLContext.getDefault().createSSLEngine();
-		} catch (NoSuchAlgorithmException e) {
-			throw new IOException(e.getMessage());
-		}
+		/* Creating the engine with the peer's host and port lets the client
+		 * side look up a cached session for that peer and resume it with an
+		 * abbreviated handshake upon reconnects. The server side resumes
+		 * sessions by session ID irrespective of the hint. */
+		InetSocketAddress peer = (InetSocketAddress) ((SocketChannel) key
+				.channel()).socket().getRemoteSocketAddress();
+		SSLEngine engine = peer != null ? this.sslContext.createSSLEngine(
+				peer.getHostString(), peer.getPort()) : this.sslContext
+				.createSSLEngine();
 		engine.setUseClientMode(isClient);
 		if (this.sslMode.equals(SSLDataProcessingWorker.SSL_MODES.MUTUAL_AUTH))
 			engine.setNeedClientAuth(true);
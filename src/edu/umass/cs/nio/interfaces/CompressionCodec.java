@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2015 University of Massachusetts
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * 
+ * Initial developer(s): V. Arun
+ */
+package edu.umass.cs.nio.interfaces;
+
+import java.io.IOException;
+
+/**
+ * @author arun
+ * 
+ *         A codec used by NIOTransport to compress message payloads. The codec
+ *         ID is carried in the frame header of each compressed message so that
+ *         the receiver knows how, or whether, to decompress it. Codecs must be
+ *         registered with the same ID at all communicating peers.
+ */
+public interface CompressionCodec {
+	/**
+	 * @return Codec ID in [1, 127]. 0 is reserved for uncompressed frames.
+	 */
+	public int getCodecID();
+
+	/**
+	 * @param data
+	 * @return Compressed form of {@code data}. The returned array may be
+	 *         larger than {@code data} if {@code data} is incompressible.
+	 */
+	public byte[] compress(byte[] data);
+
+	/**
+	 * @param data
+	 * @param offset
+	 * @param length
+	 * @return Decompressed form of the {@code length} bytes at {@code offset}.
+	 * @throws IOException
+	 *             If the input is not in this codec's format.
+	 */
+	public byte[] decompress(byte[] data, int offset, int length)
+			throws IOException;
+}
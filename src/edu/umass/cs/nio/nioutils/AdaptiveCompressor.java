@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2015 University of Massachusetts
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * 
+ * Initial developer(s): V. Arun
+ */
+package edu.umass.cs.nio.nioutils;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.umass.cs.nio.interfaces.CompressionCodec;
+import edu.umass.cs.utils.Util;
+
+/**
+ * @author arun
+ * 
+ *         Decides per message whether compressing with a given codec pays off.
+ *         It maintains moving averages of the compression ratio and the
+ *         compression cost in nanoseconds per byte, and compresses a message
+ *         only if the transmission time saved on a link of the configured
+ *         bandwidth exceeds the CPU time spent compressing. Every
+ *         {@link #PROBE_INTERVAL}'th eligible message is compressed anyway so
+ *         that the estimates track changes in the payload mix.
+ */
+public class AdaptiveCompressor {
+
+	/**
+	 * Default assumed link bandwidth in bytes/sec (1 Gbps).
+	 */
+	public static final double DEFAULT_LINK_BANDWIDTH = 125 * 1000 * 1000;
+
+	/**
+	 * Messages between forced compression attempts used to refresh the
+	 * estimates when compression is not paying off.
+	 */
+	public static final int PROBE_INTERVAL = 64;
+
+	private final CompressionCodec codec;
+	private final int threshold;
+	private final double linkBytesPerNano;
+	private final AtomicLong eligible = new AtomicLong(0);
+
+	// racy updates are fine as these are just estimates
+	private double ratio = 0.5;
+	private double nanosPerByte = 0;
+
+	/**
+	 * @param codec
+	 * @param threshold
+	 *            Minimum message size in bytes to consider for compression.
+	 * @param linkBandwidth
+	 *            Assumed link bandwidth in bytes/sec.
+	 */
+	public AdaptiveCompressor(CompressionCodec codec, int threshold,
+			double linkBandwidth) {
+		this.codec = codec;
+		this.threshold = threshold;
+		this.linkBytesPerNano = linkBandwidth / 1000 / 1000 / 1000;
+	}
+
+	/**
+	 * @param codec
+	 * @param threshold
+	 */
+	public AdaptiveCompressor(CompressionCodec codec, int threshold) {
+		this(codec, threshold, DEFAULT_LINK_BANDWIDTH);
+	}
+
+	/**
+	 * @return The codec used.
+	 */
+	public CompressionCodec getCodec() {
+		return this.codec;
+	}
+
+	/**
+	 * @return Minimum message size considered for compression.
+	 */
+	public int getThreshold() {
+		return this.threshold;
+	}
+
+	/**
+	 * @return Whether compressing is currently estimated to pay off.
+	 */
+	public boolean paysOff() {
+		// network nanos saved per byte versus compression nanos per byte
+		return (1 - this.ratio) / this.linkBytesPerNano > this.nanosPerByte;
+	}
+
+	/**
+	 * @param data
+	 * @return Compressed bytes, or null if {@code data} should be sent as is.
+	 */
+	public byte[] compress(byte[] data) {
+		if (data.length < this.threshold)
+			return null;
+		if (!this.paysOff() && this.eligible.incrementAndGet() % PROBE_INTERVAL != 0)
+			return null;
+		long t = System.nanoTime();
+		byte[] compressed = this.codec.compress(data);
+		this.ratio = Util.movingAverage(compressed.length
+				/ (double) data.length, this.ratio);
+		this.nanosPerByte = Util.movingAverage((System.nanoTime() - t)
+				/ (double) data.length, this.nanosPerByte);
+		return compressed.length < data.length ? compressed : null;
+	}
+
+	public String toString() {
+		return this.getClass().getSimpleName() + ":"
+				+ this.codec.getClass().getSimpleName() + "[ratio="
+				+ Util.df(this.ratio) + ", ns/B=" + Util.df(this.nanosPerByte)
+				+ "]";
+	}
+}
@@ -0,0 +1,136 @@
+package edu.umass.cs.nio.nioutils;
+
+import edu.umass.cs.nio.interfaces.CompressionCodec;
+import edu.umass.cs.utils.DefaultTest;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Round-trip tests for {@link CompressionCodec} implementations.
+ */
+public class CompressionCodecTest extends DefaultTest {
+
+    private static final CompressionCodec[] CODECS = {new DeflateCodec(),
+            new LZ4Codec()};
+
+    private static byte[] repetitive(int size) {
+        StringBuilder sb = new StringBuilder();
+        Random r = new Random(size);
+        while (sb.length() < size)
+            sb.append("{\"type\":" + r.nextInt(4) + ",\"paxosID\":\"name"
+                    + r.nextInt(100) + "\",\"slot\":" + r.nextInt(1000) + "}");
+        return Arrays.copyOf(sb.toString().getBytes(), size);
+    }
+
+    private static byte[] random(int size) {
+        byte[] buf = new byte[size];
+        new Random(size).nextBytes(buf);
+        return buf;
+    }
+
+    /**
+     * @throws IOException
+     */
+    @Test
+    public void testRoundTrip() throws IOException {
+        for (CompressionCodec codec : CODECS)
+            for (int size : new int[]{0, 1, 12, 13, 17, 100, 4096, 65537,
+                    1024 * 1024})
+                for (byte[] data : new byte[][]{repetitive(size),
+                        random(size), new byte[size]}) {
+                    byte[] compressed = codec.compress(data);
+                    Assert.assertArrayEquals(codec + ":" + size, data,
+                            codec.decompress(compressed, 0, compressed.length));
+                    // decompress from an offset within a larger array
+                    byte[] padded = new byte[compressed.length + 8];
+                    System.arraycopy(compressed, 0, padded, 5,
+                            compressed.length);
+                    Assert.assertArrayEquals(data, codec.decompress(padded, 5,
+                            compressed.length));
+                }
+    }
+
+    /**
+     */
+    @Test
+    public void testCompresses() {
+        byte[] data = repetitive(64 * 1024);
+        for (CompressionCodec codec : CODECS)
+            Assert.assertTrue(codec.getClass().getSimpleName(),
+                    codec.compress(data).length < data.length / 2);
+    }
+
+    /**
+     */
+    @Test
+    public void testTruncated() {
+        byte[] data = repetitive(4096);
+        for (CompressionCodec codec : CODECS) {
+            byte[] compressed = codec.compress(data);
+            try {
+                codec.decompress(compressed, 0, compressed.length / 2);
+                Assert.fail(codec.getClass().getSimpleName()
+                        + " decompressed truncated input");
+            } catch (IOException e) {
+                // expected
+            }
+        }
+    }
+
+    /**
+     */
+    @Test
+    public void testOversizedLength() {
+        byte[] data = repetitive(4096);
+        for (CompressionCodec codec : CODECS) {
+            byte[] compressed = codec.compress(data);
+            // corrupt the length prefix to claim a 2GB original
+            compressed[0] = 0x7f;
+            try {
+                codec.decompress(compressed, 0, compressed.length);
+                Assert.fail(codec.getClass().getSimpleName()
+                        + " accepted an oversized length");
+            } catch (IOException e) {
+                // expected
+            }
+        }
+    }
+
+    /**
+     */
+    @Test
+    public void testUnderstatedLength() {
+        byte[] data = new byte[1024 * 1024];
+        for (CompressionCodec codec : CODECS) {
+            byte[] compressed = codec.compress(data);
+            // claim a 16-byte original for a stream that inflates to 1MB
+            ByteBuffer.wrap(compressed).putInt(16);
+            try {
+                codec.decompress(compressed, 0, compressed.length);
+                Assert.fail(codec.getClass().getSimpleName()
+                        + " inflated past the declared length");
+            } catch (IOException e) {
+                // expected
+            }
+        }
+    }
+
+    /**
+     */
+    @Test
+    public void testAdaptive() {
+        AdaptiveCompressor compressor = new AdaptiveCompressor(new LZ4Codec(),
+                1024);
+        Assert.assertNull(compressor.compress(repetitive(100)));
+        Assert.assertNotNull(compressor.compress(repetitive(8192)));
+        // incompressible data is never sent compressed
+        for (int i = 0; i < 10 * AdaptiveCompressor.PROBE_INTERVAL; i++)
+            Assert.assertNull(compressor.compress(random(8192)));
+        Assert.assertFalse(compressor.paysOff());
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2015 University of Massachusetts
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * 
+ * Initial developer(s): V. Arun
+ */
+package edu.umass.cs.nio.nioutils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import edu.umass.cs.nio.NIOTransport;
+import edu.umass.cs.nio.interfaces.CompressionCodec;
+
+/**
+ * @author arun
+ * 
+ *         Deflate codec using one reusable {@link Deflater} and {@link Inflater}
+ *         per thread. Creating and ending a new deflater for every message is
+ *         far costlier than compressing a few KB with one, and each instance
+ *         also holds native memory until finalized.
+ * 
+ *         The wire format is a 4-byte uncompressed length followed by a zlib
+ *         stream. The static {@link #deflate(byte[], int)} and
+ *         {@link #inflate(byte[], int, int)} methods produce and consume a bare
+ *         zlib stream so that they remain compatible with previously stored
+ *         data.
+ */
+public class DeflateCodec implements CompressionCodec {
+
+	/**
+	 * Codec ID for {@link DeflateCodec}.
+	 */
+	public static final int CODEC_ID = 1;
+
+	private static final ThreadLocal<Deflater[]> deflaters = new ThreadLocal<Deflater[]>() {
+		@Override
+		protected Deflater[] initialValue() {
+			// index 0 is Deflater.DEFAULT_COMPRESSION (-1)
+			return new Deflater[Deflater.BEST_COMPRESSION + 2];
+		}
+	};
+
+	private static final ThreadLocal<Inflater> inflaters = new ThreadLocal<Inflater>() {
+		@Override
+		protected Inflater initialValue() {
+			return new Inflater();
+		}
+	};
+
+	private final int level;
+
+	/**
+	 * @param level
+	 *            Deflate compression level in [0, 9] or
+	 *            {@link Deflater#DEFAULT_COMPRESSION}.
+	 */
+	public DeflateCodec(int level) {
+		if (level < Deflater.DEFAULT_COMPRESSION
+				|| level > Deflater.BEST_COMPRESSION)
+			throw new IllegalArgumentException("Invalid deflate level " + level);
+		this.level = level;
+	}
+
+	/**
+	 * Uses {@link Deflater#BEST_SPEED} as messages are compressed on the send
+	 * path.
+	 */
+	public DeflateCodec() {
+		this(Deflater.BEST_SPEED);
+	}
+
+	@Override
+	public int getCodecID() {
+		return CODEC_ID;
+	}
+
+	@Override
+	public byte[] compress(byte[] data) {
+		byte[] compressed = deflate(data, this.level, 4);
+		ByteBuffer.wrap(compressed).putInt(data.length);
+		return compressed;
+	}
+
+	@Override
+	public byte[] decompress(byte[] data, int offset, int length)
+			throws IOException {
+		if (length < 4)
+			throw new IOException("Truncated deflate frame of length "
+					+ length);
+		int originalLength = ByteBuffer.wrap(data, offset, 4).getInt();
+		// the length is from the wire, so bound it before allocating
+		if (originalLength < 0
+				|| originalLength > NIOTransport.MAX_PAYLOAD_SIZE)
+			throw new IOException("Invalid deflate frame length "
+					+ originalLength);
+		byte[] decompressed = inflate(data, offset + 4, length - 4,
+				originalLength);
+		if (decompressed.length != originalLength)
+			throw new IOException("Inflated " + decompressed.length
+					+ " bytes instead of " + originalLength);
+		return decompressed;
+	}
+
+	private static Deflater getDeflater(int level) {
+		Deflater[] cached = deflaters.get();
+		if (cached[level + 1] == null)
+			cached[level + 1] = new Deflater(level);
+		else
+			cached[level + 1].reset();
+		return cached[level + 1];
+	}
+
+	/**
+	 * @param data
+	 * @param level
+	 * @return Bare zlib stream of {@code data} compressed at {@code level}.
+	 */
+	public static byte[] deflate(byte[] data, int level) {
+		return deflate(data, level, 0);
+	}
+
+	// compressed bytes start at headroom
+	private static byte[] deflate(byte[] data, int level, int headroom) {
+		Deflater deflater = getDeflater(level);
+		deflater.setInput(data);
+		deflater.finish();
+		// worst case zlib expansion is small, so one resize is typical
+		byte[] compressed = new byte[headroom + data.length / 2 + 64];
+		int length = headroom;
+		while (!deflater.finished()) {
+			if (length == compressed.length)
+				compressed = Arrays.copyOf(compressed,
+						compressed.length * 2 + 64);
+			length += deflater.deflate(compressed, length, compressed.length
+					- length);
+		}
+		return length == compressed.length ? compressed : Arrays.copyOf(
+				compressed, length);
+	}
+
+	/**
+	 * @param data
+	 * @param offset
+	 * @param length
+	 * @return Bytes inflated from the bare zlib stream in {@code data}.
+	 * @throws IOException
+	 */
+	public static byte[] inflate(byte[] data, int offset, int length)
+			throws IOException {
+		return inflate(data, offset, length, -1);
+	}
+
+	/*
+	 * A non-negative limit bounds the output, so a stream that inflates past
+	 * it fails without growing the buffer further. The one byte of slack lets
+	 * the inflater reach the end of a stream of exactly limit bytes. Stored
+	 * data is trusted and inflated without a limit.
+	 */
+	private static byte[] inflate(byte[] data, int offset, int length,
+			int limit) throws IOException {
+		Inflater inflater = inflaters.get();
+		inflater.reset();
+		inflater.setInput(data, offset, length);
+		int cap = limit >= 0 ? limit + 1 : Integer.MAX_VALUE - 8;
+		byte[] decompressed = new byte[Math.min(cap, Math.max(2 * length + 64,
+				16))];
+		int count = 0;
+		try {
+			while (!inflater.finished()) {
+				if (count == decompressed.length)
+					decompressed = Arrays.copyOf(decompressed,
+							(int) Math.min(cap, 2L * decompressed.length));
+				int n = inflater.inflate(decompressed, count,
+						decompressed.length - count);
+				if (n == 0 && !inflater.finished()
+						&& (inflater.needsInput() || inflater.needsDictionary()))
+					throw new IOException("Truncated zlib stream");
+				if ((count += n) == cap && limit >= 0)
+					throw new IOException("Inflated stream exceeds " + limit
+							+ " bytes");
+			}
+		} catch (DataFormatException e) {
+			throw new IOException(e.getMessage());
+		}
+		return count == decompressed.length ? decompressed : Arrays.copyOf(
+				decompressed, count);
+	}
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2015 University of Massachusetts
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * 
+ * Initial developer(s): V. Arun
+ */
+package edu.umass.cs.nio.nioutils;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import edu.umass.cs.nio.AbstractPacketDemultiplexer;
+import edu.umass.cs.nio.interfaces.IntegerPacketType;
+import edu.umass.cs.utils.Util;
+
+/**
+ * @author arun
+ * 
+ *         Benchmark for {@link AbstractPacketDemultiplexer} execution modes
+ *         with a mix of blocking and non-blocking handlers. Every message is
+ *         dispatched as if received by NIO; a configurable fraction of them
+ *         invoke a handler that sleeps (emulating an app execute or a blocking
+ *         send) and the rest return immediately. The benchmark reports the
+ *         total completion time and the latency of the non-blocking messages,
+ *         first with the default fixed thread pool and then in virtual thread
+ *         mode.
+ * 
+ *         Usage: DemultiplexerBenchmark [numMsgs] [blockingPercent]
+ *         [blockMillis] [poolSize]
+ */
+public class DemultiplexerBenchmark {
+
+	private static enum BenchType implements IntegerPacketType {
+		BLOCKING(1), FAST(2);
+
+		private final int number;
+
+		BenchType(int t) {
+			this.number = t;
+		}
+
+		public int getInt() {
+			return number;
+		}
+	}
+
+	private static class BenchDemultiplexer extends
+			AbstractPacketDemultiplexer<byte[]> {
+		private final long blockMillis;
+		private final long[] sent;
+		private final long[] fastLatencies;
+		private final AtomicInteger numFast = new AtomicInteger(0);
+		private final CountDownLatch done;
+
+		BenchDemultiplexer(int poolSize, int numMsgs, long blockMillis) {
+			super(poolSize);
+			this.blockMillis = blockMillis;
+			this.sent = new long[numMsgs];
+			this.fastLatencies = new long[numMsgs];
+			this.done = new CountDownLatch(numMsgs);
+			this.register(BenchType.values());
+		}
+
+		@Override
+		public boolean handleMessage(byte[] message, NIOHeader header) {
+			int index = ByteBuffer.wrap(message, 1, 4).getInt();
+			if (message[0] == BenchType.BLOCKING.getInt())
+				try {
+					Thread.sleep(this.blockMillis);
+				} catch (InterruptedException e) {
+					e.printStackTrace();
+				}
+			else
+				this.fastLatencies[this.numFast.getAndIncrement()] = System
+						.nanoTime() - this.sent[index];
+			this.done.countDown();
+			return true;
+		}
+
+		@Override
+		protected Integer getPacketType(byte[] message) {
+			return (int) message[0];
+		}
+
+		@Override
+		protected byte[] processHeader(byte[] message, NIOHeader header) {
+			return message;
+		}
+
+		@Override
+		protected boolean matchesType(Object message) {
+			return message instanceof byte[];
+		}
+
+		void dispatch(int index, byte[] message, NIOHeader header)
+				throws org.json.JSONException {
+			this.sent[index] = System.nanoTime();
+			this.handleMessageSuper(message, header);
+		}
+	}
+
+	private static String run(boolean virtual, int numMsgs,
+			int blockingPercent, long blockMillis, int poolSize)
+			throws Exception {
+		AbstractPacketDemultiplexer.setVirtualThreads(virtual);
+		BenchDemultiplexer demux = new BenchDemultiplexer(poolSize, numMsgs,
+				blockMillis);
+		NIOHeader header = new NIOHeader(new InetSocketAddress(
+				"localhost", 2000), new InetSocketAddress("localhost", 2001));
+		long t = System.nanoTime();
+		for (int i = 0; i < numMsgs; i++) {
+			byte[] msg = ByteBuffer
+					.allocate(5)
+					.put((byte) ((i % 100) < blockingPercent ? BenchType.BLOCKING
+							.getInt() : BenchType.FAST.getInt())).putInt(i)
+					.array();
+			demux.dispatch(i, msg, header);
+		}
+		demux.done.await();
+		long total = System.nanoTime() - t;
+		demux.stop();
+
+		long[] latencies = Arrays.copyOf(demux.fastLatencies,
+				demux.numFast.get());
+		Arrays.sort(latencies);
+		return (virtual ? "virtual" : "pool[" + poolSize + "]")
+				+ ": total="
+				+ Util.df(total / 1000.0 / 1000)
+				+ "ms; rate="
+				+ Util.df(numMsgs * 1000.0 * 1000 * 1000 / total)
+				+ "/s; fast median="
+				+ (latencies.length > 0 ? Util.df(latencies[latencies.length / 2]
+						/ 1000.0 / 1000)
+						+ "ms; fast p99="
+						+ Util.df(latencies[(int) (latencies.length * 0.99)]
+								/ 1000.0 / 1000) + "ms" : "n/a");
+	}
+
+	/**
+	 * @param args
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception {
+		int numMsgs = args.length > 0 ? Integer.valueOf(args[0]) : 20000;
+		int blockingPercent = args.length > 1 ? Integer.valueOf(args[1]) : 5;
+		long blockMillis = args.length > 2 ? Long.valueOf(args[2]) : 10;
+		int poolSize = args.length > 3 ? Integer.valueOf(args[3])
+				: AbstractPacketDemultiplexer.DEFAULT_THREAD_POOL_SIZE;
+
+		// warm up both modes
+		run(false, numMsgs / 10, blockingPercent, blockMillis, poolSize);
+		run(true, numMsgs / 10, blockingPercent, blockMillis, poolSize);
+
+		System.out.println(run(false, numMsgs, blockingPercent, blockMillis,
+				poolSize));
+		System.out.println(run(true, numMsgs, blockingPercent, blockMillis,
+				poolSize));
+		System.exit(0);
+	}
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2015 University of Massachusetts
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * 
+ * Initial developer(s): V. Arun
+ */
+package edu.umass.cs.nio.nioutils;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Level;
+
+import edu.umass.cs.nio.NIOTransport;
+
+/**
+ * @author arun
+ * 
+ *         Runs tasks submitted with the same key one at a time in submission
+ *         order while tasks with different keys run in parallel on the
+ *         underlying executor. Each key with pending tasks occupies at most
+ *         one executor thread at a time, and it yields the thread after
+ *         {@link #MAX_BATCH} tasks so that a busy key cannot monopolize it.
+ *         Idle keys are removed, so the key space can be unbounded, e.g.,
+ *         per-connection or per-paxosID.
+ */
+public class KeyedSerialExecutor {
+
+	/**
+	 * Maximum number of tasks run for a key before its thread is yielded back
+	 * to the underlying executor.
+	 */
+	public static final int MAX_BATCH = 32;
+
+	private final Executor executor;
+	private final ConcurrentHashMap<Object, SerialQueue> queues = new ConcurrentHashMap<Object, SerialQueue>();
+
+	/**
+	 * @param executor
+	 *            The executor on which tasks are run.
+	 */
+	public KeyedSerialExecutor(Executor executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * Runs {@code task} after all previously submitted tasks with the same
+	 * {@code key} have completed.
+	 * 
+	 * @param key
+	 *            Must have consistent equals and hashCode; null is treated as
+	 *            a single key of its own.
+	 * @param task
+	 * @throws RejectedExecutionException
+	 *             if the underlying executor rejects the task.
+	 */
+	public void execute(Object key, Runnable task) {
+		if (key == null)
+			key = this;
+		while (true) {
+			SerialQueue queue = this.queues.get(key);
+			if (queue == null) {
+				SerialQueue created = new SerialQueue(key);
+				if ((queue = this.queues.putIfAbsent(key, created)) == null)
+					queue = created;
+			}
+			boolean schedule = false;
+			synchronized (queue) {
+				// lost race with removal of an idle queue
+				if (queue.retired)
+					continue;
+				queue.tasks.add(task);
+				if (!queue.scheduled)
+					schedule = queue.scheduled = true;
+			}
+			if (schedule)
+				try {
+					this.executor.execute(queue);
+				} catch (RejectedExecutionException ree) {
+					// the caller sees the failure, so the task must not run
+					synchronized (queue) {
+						queue.scheduled = false;
+						queue.tasks.removeLast();
+						if (queue.tasks.isEmpty()) {
+							queue.retired = true;
+							this.queues.remove(key, queue);
+						}
+					}
+					throw ree;
+				}
+			return;
+		}
+	}
+
+	/**
+	 * @return The number of keys with pending or running tasks.
+	 */
+	public int size() {
+		return this.queues.size();
+	}
+
+	private class SerialQueue implements Runnable {
+		private final Object key;
+		private final ArrayDeque<Runnable> tasks = new ArrayDeque<Runnable>();
+		private boolean scheduled = false;
+		private boolean retired = false;
+
+		SerialQueue(Object key) {
+			this.key = key;
+		}
+
+		public void run() {
+			for (int i = 0; i < MAX_BATCH; i++) {
+				Runnable task = null;
+				synchronized (this) {
+					if ((task = this.tasks.poll()) == null) {
+						this.retired = true;
+						queues.remove(this.key, this);
+						return;
+					}
+				}
+				try {
+					task.run();
+				} catch (Exception | Error e) {
+					NIOTransport.getLogger().log(Level.WARNING,
+							"{0} task for key {1} threw {2}",
+							new Object[] { KeyedSerialExecutor.this, this.key, e });
+					e.printStackTrace();
+				}
+			}
+			// more tasks may be pending, so requeue behind other keys
+			try {
+				executor.execute(this);
+			} catch (RejectedExecutionException ree) {
+				// executor shutting down; pending tasks are dropped
+			}
+		}
+	}
+}
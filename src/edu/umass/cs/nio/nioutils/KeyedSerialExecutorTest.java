@@ -0,0 +1,120 @@
+package edu.umass.cs.nio.nioutils;
+
+import edu.umass.cs.utils.DefaultTest;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Ordering and parallelism tests for {@link KeyedSerialExecutor}.
+ */
+public class KeyedSerialExecutorTest extends DefaultTest {
+
+    /**
+     * Tasks with the same key run in submission order even when many keys
+     * share a multi-threaded executor.
+     *
+     * @throws InterruptedException
+     */
+    @Test
+    public void testPerKeyOrder() throws InterruptedException {
+        final int numKeys = 16, perKey = 2000;
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        KeyedSerialExecutor serial = new KeyedSerialExecutor(pool);
+        final List<List<Integer>> seen = new ArrayList<List<Integer>>();
+        for (int k = 0; k < numKeys; k++)
+            seen.add(Collections.synchronizedList(new ArrayList<Integer>()));
+        final CountDownLatch done = new CountDownLatch(numKeys * perKey);
+        for (int i = 0; i < perKey; i++)
+            for (int k = 0; k < numKeys; k++) {
+                final int key = k, value = i;
+                serial.execute(key, new Runnable() {
+                    public void run() {
+                        seen.get(key).add(value);
+                        done.countDown();
+                    }
+                });
+            }
+        Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+        for (int k = 0; k < numKeys; k++)
+            for (int i = 0; i < perKey; i++)
+                Assert.assertEquals(i, (int) seen.get(k).get(i));
+        pool.shutdown();
+    }
+
+    /**
+     * A blocked key does not hold up other keys, and idle keys are removed.
+     *
+     * @throws InterruptedException
+     */
+    @Test
+    public void testKeysIndependent() throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        KeyedSerialExecutor serial = new KeyedSerialExecutor(pool);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch other = new CountDownLatch(1);
+        serial.execute("slow", new Runnable() {
+            public void run() {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+        serial.execute("fast", new Runnable() {
+            public void run() {
+                other.countDown();
+            }
+        });
+        Assert.assertTrue(other.await(5, TimeUnit.SECONDS));
+        release.countDown();
+        pool.shutdown();
+        Assert.assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+        Assert.assertEquals(0, serial.size());
+    }
+
+    /**
+     * A task whose scheduling is rejected is never run later.
+     */
+    @Test
+    public void testRejectedNotRun() {
+        final AtomicBoolean reject = new AtomicBoolean(true);
+        KeyedSerialExecutor serial = new KeyedSerialExecutor(new Executor() {
+            public void execute(Runnable command) {
+                if (reject.getAndSet(false))
+                    throw new RejectedExecutionException();
+                command.run();
+            }
+        });
+        final List<String> ran = new ArrayList<String>();
+        try {
+            serial.execute("key", new Runnable() {
+                public void run() {
+                    ran.add("rejected");
+                }
+            });
+            Assert.fail("rejection not propagated");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+        Assert.assertEquals(0, serial.size());
+        serial.execute("key", new Runnable() {
+            public void run() {
+                ran.add("retried");
+            }
+        });
+        Assert.assertEquals(Collections.singletonList("retried"), ran);
+        Assert.assertEquals(0, serial.size());
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright (c) 2015 University of Massachusetts
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * 
+ * Initial developer(s): V. Arun
+ */
+package edu.umass.cs.nio.nioutils;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import edu.umass.cs.nio.NIOTransport;
+import edu.umass.cs.nio.interfaces.CompressionCodec;
+
+/**
+ * @author arun
+ * 
+ *         A pure-Java LZ77 codec using the LZ4 block format. It trades
+ *         compression ratio for speed: a single hash probe per position, no
+ *         entropy coding, and a decoder that is little more than array copies.
+ *         That makes it cheap enough to use on multi-KB batched messages where
+ *         deflate costs more CPU than it saves in bandwidth.
+ * 
+ *         The wire format is a 4-byte big-endian uncompressed length followed
+ *         by an LZ4 block.
+ */
+public class LZ4Codec implements CompressionCodec {
+
+	/**
+	 * Codec ID for {@link LZ4Codec}.
+	 */
+	public static final int CODEC_ID = 2;
+
+	private static final int MIN_MATCH = 4;
+	// the last match must start at least this far before the end
+	private static final int MF_LIMIT = 12;
+	// the last bytes are always literals
+	private static final int LAST_LITERALS = 5;
+	private static final int MAX_DISTANCE = 65535;
+	private static final int HASH_LOG = 12;
+	// skip faster through incompressible data
+	private static final int SKIP_TRIGGER = 6;
+
+	private static final ThreadLocal<int[]> hashTables = new ThreadLocal<int[]>() {
+		@Override
+		protected int[] initialValue() {
+			return new int[1 << HASH_LOG];
+		}
+	};
+
+	@Override
+	public int getCodecID() {
+		return CODEC_ID;
+	}
+
+	@Override
+	public byte[] compress(byte[] src) {
+		// worst case expansion of LZ4 is len/255 + 16
+		byte[] dst = new byte[4 + src.length + src.length / 255 + 16];
+		writeIntBE(dst, 0, src.length);
+		int length = compress(src, 0, src.length, dst, 4);
+		return Arrays.copyOf(dst, length);
+	}
+
+	@Override
+	public byte[] decompress(byte[] src, int offset, int length)
+			throws IOException {
+		if (length < 4)
+			throw new IOException("Truncated LZ4 frame of length " + length);
+		int originalLength = readIntBE(src, offset);
+		// the length is from the wire, so bound it before allocating
+		if (originalLength < 0
+				|| originalLength > NIOTransport.MAX_PAYLOAD_SIZE)
+			throw new IOException("Invalid LZ4 frame length " + originalLength);
+		byte[] dst = new byte[originalLength];
+		decompress(src, offset + 4, offset + length, dst);
+		return dst;
+	}
+
+	/* Compresses src[srcOff, srcOff+srcLen) into dst starting at dstOff and
+	 * returns the end offset in dst. */
+	private static int compress(byte[] src, int srcOff, int srcLen,
+			byte[] dst, int dstOff) {
+		final int srcEnd = srcOff + srcLen;
+		final int mfLimit = srcEnd - MF_LIMIT;
+		final int matchLimit = srcEnd - LAST_LITERALS;
+		int ip = srcOff, anchor = srcOff, op = dstOff;
+
+		if (srcLen >= MF_LIMIT + 1) {
+			int[] table = hashTables.get();
+			Arrays.fill(table, -1);
+			table[hash(readInt(src, ip))] = ip;
+			ip++;
+
+			outer: while (true) {
+				// find a match
+				int ref, searchCount = 1 << SKIP_TRIGGER;
+				while (true) {
+					if (ip > mfLimit)
+						break outer;
+					int h = hash(readInt(src, ip));
+					ref = table[h];
+					table[h] = ip;
+					if (ref >= 0 && ip - ref <= MAX_DISTANCE
+							&& readInt(src, ref) == readInt(src, ip))
+						break;
+					ip += searchCount++ >>> SKIP_TRIGGER;
+				}
+
+				// extend match backwards
+				while (ip > anchor && ref > srcOff
+						&& src[ip - 1] == src[ref - 1]) {
+					ip--;
+					ref--;
+				}
+
+				// literals
+				int literalLength = ip - anchor;
+				int token = op++;
+				op = writeLength(dst, op, literalLength);
+				System.arraycopy(src, anchor, dst, op, literalLength);
+				op += literalLength;
+
+				// offset
+				int distance = ip - ref;
+				dst[op++] = (byte) distance;
+				dst[op++] = (byte) (distance >>> 8);
+
+				// match length
+				ip += MIN_MATCH;
+				ref += MIN_MATCH;
+				int matchStart = ip;
+				while (ip < matchLimit && src[ip] == src[ref]) {
+					ip++;
+					ref++;
+				}
+				int matchLength = ip - matchStart;
+				op = writeLength(dst, op, matchLength);
+				dst[token] = (byte) ((Math.min(literalLength, 15) << 4) | Math
+						.min(matchLength, 15));
+				anchor = ip;
+
+				if (ip > mfLimit)
+					break;
+				table[hash(readInt(src, ip - 2))] = ip - 2;
+			}
+		}
+
+		// last literals
+		int literalLength = srcEnd - anchor;
+		int token = op++;
+		op = writeLength(dst, op, literalLength);
+		dst[token] = (byte) (Math.min(literalLength, 15) << 4);
+		System.arraycopy(src, anchor, dst, op, literalLength);
+		return op + literalLength;
+	}
+
+	// writes the extension bytes for a length whose token nibble is 15
+	private static int writeLength(byte[] dst, int op, int length) {
+		if (length >= 15) {
+			length -= 15;
+			while (length >= 255) {
+				dst[op++] = (byte) 255;
+				length -= 255;
+			}
+			dst[op++] = (byte) length;
+		}
+		return op;
+	}
+
+	private static void decompress(byte[] src, int ip, int srcEnd, byte[] dst)
+			throws IOException {
+		int op = 0;
+		try {
+			while (true) {
+				if (ip >= srcEnd)
+					throw new IOException("Truncated LZ4 block");
+				int token = src[ip++] & 0xFF;
+
+				// literals
+				int literalLength = token >>> 4;
+				if (literalLength == 15) {
+					int b;
+					do {
+						literalLength += (b = src[ip++] & 0xFF);
+					} while (b == 255);
+				}
+				if (literalLength > srcEnd - ip
+						|| literalLength > dst.length - op)
+					throw new IOException("LZ4 literal overrun");
+				System.arraycopy(src, ip, dst, op, literalLength);
+				ip += literalLength;
+				op += literalLength;
+				if (ip >= srcEnd)
+					break;
+
+				// match
+				if (ip + 2 > srcEnd)
+					throw new IOException("Truncated LZ4 block");
+				int distance = (src[ip] & 0xFF) | ((src[ip + 1] & 0xFF) << 8);
+				ip += 2;
+				int ref = op - distance;
+				if (distance == 0 || ref < 0)
+					throw new IOException("Invalid LZ4 match offset "
+							+ distance);
+				int matchLength = token & 0x0F;
+				if (matchLength == 15) {
+					int b;
+					do {
+						matchLength += (b = src[ip++] & 0xFF);
+					} while (b == 255);
+				}
+				matchLength += MIN_MATCH;
+				if (matchLength > dst.length - op)
+					throw new IOException("LZ4 match overrun");
+				if (distance >= matchLength)
+					System.arraycopy(dst, ref, dst, op, matchLength);
+				else
+					// overlapping copy must go byte by byte
+					for (int i = 0; i < matchLength; i++)
+						dst[op + i] = dst[ref + i];
+				op += matchLength;
+			}
+		} catch (ArrayIndexOutOfBoundsException e) {
+			throw new IOException("Truncated LZ4 block");
+		}
+		if (op != dst.length)
+			throw new IOException("Decompressed " + op + " bytes instead of "
+					+ dst.length);
+	}
+
+	private static int hash(int i) {
+		return (i * -1640531535) >>> (32 - HASH_LOG);
+	}
+
+	private static int readInt(byte[] buf, int i) {
+		return (buf[i] & 0xFF) | ((buf[i + 1] & 0xFF) << 8)
+				| ((buf[i + 2] & 0xFF) << 16) | ((buf[i + 3] & 0xFF) << 24);
+	}
+
+	private static int readIntBE(byte[] buf, int i) {
+		return ((buf[i] & 0xFF) << 24) | ((buf[i + 1] & 0xFF) << 16)
+				| ((buf[i + 2] & 0xFF) << 8) | (buf[i + 3] & 0xFF);
+	}
+
+	private static void writeIntBE(byte[] buf, int i, int value) {
+		buf[i] = (byte) (value >>> 24);
+		buf[i + 1] = (byte) (value >>> 16);
+		buf[i + 2] = (byte) (value >>> 8);
+		buf[i + 3] = (byte) value;
+	}
+}
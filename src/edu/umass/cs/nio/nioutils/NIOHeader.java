@@ -67,6 +67,93 @@ public class NIOHeader {
 		return sndr + "->" + rcvr;
 	}
 
+	/* Lazily computed and cached as headers are created once per connection
+	 * and reused for every message received on it. Races are benign as the
+	 * cached values are immutable functions of the final address fields. */
+	private byte[] bytes = null;
+	private String sndrString = null;
+	private String rcvrString = null;
+	private String sndrHostPort = null;
+	private String rcvrHostPort = null;
+
+	private byte[] getBytes() {
+		byte[] cached = this.bytes;
+		return cached != null ? cached : (this.bytes = this.toBytes());
+	}
+
+	/**
+	 * Puts the 6-byte binary form (IP, port) of {@link #sndr} into
+	 * {@code bbuf} without allocating.
+	 * 
+	 * @param bbuf
+	 * @return {@code bbuf}
+	 */
+	public ByteBuffer putSender(ByteBuffer bbuf) {
+		return bbuf.put(this.getBytes(), 0, BYTES / 2);
+	}
+
+	/**
+	 * Puts the 6-byte binary form (IP, port) of {@link #rcvr} into
+	 * {@code bbuf} without allocating.
+	 * 
+	 * @param bbuf
+	 * @return {@code bbuf}
+	 */
+	public ByteBuffer putReceiver(ByteBuffer bbuf) {
+		return bbuf.put(this.getBytes(), BYTES / 2, BYTES / 2);
+	}
+
+	/**
+	 * Same as putting {@link #toBytes()} into {@code bbuf} but without
+	 * allocating.
+	 * 
+	 * @param bbuf
+	 * @return {@code bbuf}
+	 */
+	public ByteBuffer putBytes(ByteBuffer bbuf) {
+		return bbuf.put(this.getBytes());
+	}
+
+	/**
+	 * @return Cached {@code sndr.toString()}.
+	 */
+	public String getSenderString() {
+		String cached = this.sndrString;
+		return cached != null ? cached
+				: (this.sndrString = String.valueOf(this.sndr));
+	}
+
+	/**
+	 * @return Cached {@code rcvr.toString()}.
+	 */
+	public String getReceiverString() {
+		String cached = this.rcvrString;
+		return cached != null ? cached
+				: (this.rcvrString = String.valueOf(this.rcvr));
+	}
+
+	/**
+	 * @return Cached "IP:port" form of {@link #sndr}.
+	 */
+	public String getSenderHostPort() {
+		String cached = this.sndrHostPort;
+		return cached != null ? cached
+				: (this.sndrHostPort = toHostPort(this.sndr));
+	}
+
+	/**
+	 * @return Cached "IP:port" form of {@link #rcvr}.
+	 */
+	public String getReceiverHostPort() {
+		String cached = this.rcvrHostPort;
+		return cached != null ? cached
+				: (this.rcvrHostPort = toHostPort(this.rcvr));
+	}
+
+	private static String toHostPort(InetSocketAddress isa) {
+		return isa.getAddress().getHostAddress() + ":" + isa.getPort();
+	}
+
 	/**
 	 * @return {@code this} as a 12 byte array with 6 bytes for each IP, port
 	 *         pair.
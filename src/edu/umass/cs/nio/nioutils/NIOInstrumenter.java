@@ -49,6 +49,8 @@ public class NIOInstrumenter {
 	private static int totalConnAccepted = 0;
 	private static int totalConnInitiated = 0;
 	private static int totalJSONRcvd = 0;
+	private static int totalHeadersCreated = 0;
+	private static int totalHeadersReused = 0;
 	private static double averageDelay = 0;
 	private static boolean enabled = false;
 
@@ -186,6 +188,26 @@ public class NIOInstrumenter {
 			}
 	}
 
+	/**
+	 * A received message needed a new {@link NIOHeader}.
+	 */
+	public static void incrHeadersCreated() {
+		if (enabled)
+			synchronized (NIOInstrumenter.class) {
+				totalHeadersCreated++;
+			}
+	}
+
+	/**
+	 * A received message reused its connection's cached {@link NIOHeader}.
+	 */
+	public static void incrHeadersReused() {
+		if (enabled)
+			synchronized (NIOInstrumenter.class) {
+				totalHeadersReused++;
+			}
+	}
+
 	/**
 	 * @param msg
 	 * @throws JSONException
@@ -274,7 +296,9 @@ public class NIOInstrumenter {
 						+ totalRcvd + " | bytesSent=" + totalBytesSent
 						+ " | bytesRcvd=" + totalBytesRcvd
 						+ " | totalEncrBytesSent=" + totalEncrBytesSent
-						+ " | totalEncrBytesRcvd=" + totalEncrBytesRcvd + "]]";
+						+ " | totalEncrBytesRcvd=" + totalEncrBytesRcvd
+						+ " | headersCreated=" + totalHeadersCreated
+						+ " | headersReused=" + totalHeadersReused + "]]";
 			}
 		return null;
 	}
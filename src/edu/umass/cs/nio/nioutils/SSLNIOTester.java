@@ -17,8 +17,13 @@
  */
 package edu.umass.cs.nio.nioutils;
 
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicLong;
+
 import edu.umass.cs.nio.NIOTransport;
 import edu.umass.cs.nio.SSLDataProcessingWorker.SSL_MODES;
+import edu.umass.cs.nio.interfaces.DataProcessingWorker;
 import edu.umass.cs.utils.Util;
 
 /**
@@ -28,13 +33,106 @@ import edu.umass.cs.utils.Util;
  *         terminals, one with argument 100, and the other with argument 101.
  *         You also need to configure SSL parameters like keyStore, trustStore
  *         and their passwords for the JVM.
+ * 
+ *         With "bench" as the first argument, it instead runs a throughput
+ *         benchmark within a single JVM that reports the message rate and
+ *         bandwidth in CLEAR mode next to that in the SSL mode specified by the
+ *         optional second argument (default MUTUAL_AUTH). The optional third
+ *         and fourth arguments are the number and size of messages.
  */
 public class SSLNIOTester {
 
+	private static class CountingWorker implements DataProcessingWorker {
+		final AtomicLong msgs = new AtomicLong(0);
+		final AtomicLong bytes = new AtomicLong(0);
+
+		@Override
+		public void processData(SocketChannel socket, ByteBuffer incoming) {
+			bytes.addAndGet(incoming.remaining());
+			incoming.position(incoming.limit());
+			synchronized (this) {
+				if (msgs.incrementAndGet() % 1000 == 0)
+					this.notifyAll();
+			}
+		}
+
+		@Override
+		public void demultiplexMessage(Object message) {
+		}
+
+		synchronized void waitFor(long count, long timeout)
+				throws InterruptedException {
+			long t = System.currentTimeMillis();
+			while (msgs.get() < count
+					&& System.currentTimeMillis() - t < timeout)
+				this.wait(100);
+		}
+	}
+
+	private static int basePort = 2100;
+
+	/**
+	 * Sends {@code numMessages} messages of {@code size} bytes from one
+	 * transport to another and returns the receive rate in messages/sec.
+	 */
+	private static double benchmark(SSL_MODES sslMode, int numMessages,
+			int size) throws Exception {
+		SampleNodeConfig<Integer> snc = new SampleNodeConfig<Integer>(
+				basePort += 10);
+		snc.addLocal(100);
+		snc.addLocal(101);
+		CountingWorker receiver = new CountingWorker();
+		NIOTransport<Integer> sender = new NIOTransport<Integer>(101, snc,
+				new CountingWorker(), sslMode);
+		NIOTransport<Integer> rcvr = new NIOTransport<Integer>(100, snc,
+				receiver, sslMode);
+		byte[] msg = new byte[size];
+		try {
+			// warm up connection and handshake
+			while (sender.send(100, msg) <= 0)
+				Thread.sleep(10);
+			receiver.waitFor(1, 10000);
+			long t = System.currentTimeMillis();
+			for (int i = 0; i < numMessages; i++)
+				while (sender.send(100, msg) <= 0)
+					Thread.yield();
+			receiver.waitFor(numMessages + 1, 60000);
+			long elapsed = Math.max(1, System.currentTimeMillis() - t);
+			double rate = (receiver.msgs.get() - 1) * 1000.0 / elapsed;
+			System.out.println(sslMode + ": received " + (receiver.msgs.get() - 1)
+					+ "/" + numMessages + " messages of size " + size
+					+ "B in " + elapsed + "ms => " + Util.df(rate) + "/s = "
+					+ Util.df(rate * size / 1024 / 1024) + "MB/s");
+			return rate;
+		} finally {
+			sender.stop();
+			rcvr.stop();
+		}
+	}
+
+	private static void benchmark(String[] args) throws Exception {
+		SSL_MODES sslMode = args.length > 1 ? SSL_MODES.valueOf(args[1])
+				: SSL_MODES.MUTUAL_AUTH;
+		int numMessages = args.length > 2 ? Integer.parseInt(args[2]) : 200000;
+		int size = args.length > 3 ? Integer.parseInt(args[3]) : 1000;
+		double clear = benchmark(SSL_MODES.CLEAR, numMessages, size);
+		double encrypted = benchmark(sslMode, numMessages, size);
+		System.out.println(sslMode + "/" + SSL_MODES.CLEAR
+				+ " throughput ratio = " + Util.df(encrypted / clear));
+	}
+
 	/**
 	 * @param args
 	 */
 	public static void main(String[] args) {
+		if (args.length > 0 && args[0].equals("bench")) {
+			try {
+				benchmark(args);
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+			return;
+		}
 		NIOTransport<Integer> niot = null;
 		Util.assertAssertionsEnabled();
 		Integer myID;
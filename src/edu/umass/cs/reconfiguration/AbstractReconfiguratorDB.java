@@ -15,7 +15,6 @@
  * Initial developer(s): V. Arun */
 package edu.umass.cs.reconfiguration;
 
-import java.lang.reflect.InvocationTargetException;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -29,7 +28,6 @@ import org.json.JSONObject;
 import edu.umass.cs.gigapaxos.interfaces.Replicable;
 import edu.umass.cs.gigapaxos.interfaces.Request;
 import edu.umass.cs.nio.interfaces.IntegerPacketType;
-import edu.umass.cs.nio.interfaces.Stringifiable;
 import edu.umass.cs.reconfiguration.ReconfigurationConfig.RC;
 import edu.umass.cs.reconfiguration.interfaces.Reconfigurable;
 import edu.umass.cs.reconfiguration.interfaces.ReconfigurableRequest;
@@ -38,6 +36,7 @@ import edu.umass.cs.reconfiguration.interfaces.ReconfiguratorDB;
 import edu.umass.cs.reconfiguration.interfaces.ReplicableRequest;
 import edu.umass.cs.reconfiguration.interfaces.Repliconfigurable;
 import edu.umass.cs.reconfiguration.reconfigurationpackets.BasicReconfigurationPacket;
+import edu.umass.cs.reconfiguration.reconfigurationpackets.BatchedDemandReport;
 import edu.umass.cs.reconfiguration.reconfigurationpackets.DemandReport;
 import edu.umass.cs.reconfiguration.reconfigurationpackets.RCRecordRequest;
 import edu.umass.cs.reconfiguration.reconfigurationpackets.ReconfigurationPacket;
@@ -45,6 +44,7 @@ import edu.umass.cs.reconfiguration.reconfigurationpackets.RequestActiveReplicas
 import edu.umass.cs.reconfiguration.reconfigurationpackets.StopEpoch;
 import edu.umass.cs.reconfiguration.reconfigurationutils.ConsistentHashing;
 import edu.umass.cs.reconfiguration.reconfigurationutils.ConsistentReconfigurableNodeConfig;
+import edu.umass.cs.reconfiguration.reconfigurationutils.PacketHandlerTable;
 import edu.umass.cs.reconfiguration.reconfigurationutils.ReconfigurationRecord;
 import edu.umass.cs.reconfiguration.reconfigurationutils.ReconfigurationRecord.RCStates;
 import edu.umass.cs.reconfiguration.reconfigurationutils.RequestParseException;
@@ -118,6 +118,9 @@ public abstract class AbstractReconfiguratorDB<NodeIDType> implements
 	protected final ConsistentReconfigurableNodeConfig<NodeIDType> consistentNodeConfig;
 	protected boolean recovering = true;
 
+	// the table is cached by class, but looking it up allocates its key
+	private final PacketHandlerTable handlers;
+
 	private static final Logger log = (ReconfigurationConfig.getLogger());
 
 	/**
@@ -128,6 +131,8 @@ public abstract class AbstractReconfiguratorDB<NodeIDType> implements
 			ConsistentReconfigurableNodeConfig<NodeIDType> nc) {
 		this.myID = myID;
 		this.consistentNodeConfig = nc;
+		this.handlers = PacketHandlerTable.getTable(this.getClass(),
+				boolean.class);
 	}
 
 	/**
@@ -158,32 +163,14 @@ public abstract class AbstractReconfiguratorDB<NodeIDType> implements
 		if (this.uglyRecoveryHack(rcPacket, this.recovering))
 			handled = true;
 		else
-			handled = (Boolean) AbstractReconfiguratorDB.autoInvokeMethod(this,
-					rcPacket, doNotReplyToClient, this.consistentNodeConfig);
+			handled = (Boolean) this.autoInvokeMethod(rcPacket,
+					doNotReplyToClient);
 		return handled;
 	}
 
-	protected static final Object autoInvokeMethod(Object target,
-			BasicReconfigurationPacket<?> rcPacket, boolean recovery,
-			Stringifiable<?> unstringer) {
-		try {
-			return target
-					.getClass()
-					.getMethod(
-							ReconfigurationPacket.HANDLER_METHOD_PREFIX
-									+ ReconfigurationPacket.getPacketTypeClassName(rcPacket
-											.getType()),
-							ReconfigurationPacket.getPacketTypeClass(rcPacket
-									.getType()), boolean.class)
-					.invoke(target, rcPacket, recovery);
-		} catch (NoSuchMethodException nsme) {
-			nsme.printStackTrace();
-		} catch (InvocationTargetException ite) {
-			ite.printStackTrace();
-		} catch (IllegalAccessException iae) {
-			iae.printStackTrace();
-		}
-		return null;
+	private Object autoInvokeMethod(BasicReconfigurationPacket<?> rcPacket,
+			boolean recovery) {
+		return this.handlers.invoke(this, rcPacket, recovery);
 	}
 
 	/* We want NC complete RCRecordRequest to be non-blocking during recovery.
@@ -197,8 +184,7 @@ public abstract class AbstractReconfiguratorDB<NodeIDType> implements
 						RecordNames.RC_NODES.toString())) {
 			(new Thread(new Runnable() {
 				public void run() {
-					autoInvokeMethod(AbstractReconfiguratorDB.this, rcPacket,
-							recovering, consistentNodeConfig);
+					autoInvokeMethod(rcPacket, recovering);
 				}
 			})).start();
 			return true;
@@ -214,6 +200,17 @@ public abstract class AbstractReconfiguratorDB<NodeIDType> implements
 	public boolean handleDemandReport(DemandReport<NodeIDType> report, boolean recovery) {
 		return this.updateDemandStats(report);
 	}
+
+	/**
+	 * @param report
+	 * @param recovery
+	 * @return True if all demand reports in the batch are handled
+	 *         successfully.
+	 */
+	public boolean handleBatchedDemandReport(
+			BatchedDemandReport<NodeIDType> report, boolean recovery) {
+		return this.updateDemandStats(report);
+	}
 	
 	private ReconfiguratorCallback callback = null;
 	
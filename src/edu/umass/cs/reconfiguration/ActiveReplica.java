@@ -24,11 +24,15 @@ import java.net.UnknownHostException;
 import java.nio.ByteBuffer;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -65,6 +69,7 @@ import edu.umass.cs.nio.nioutils.RTTEstimator;
 import edu.umass.cs.protocoltask.ProtocolExecutor;
 import edu.umass.cs.protocoltask.ProtocolTask;
 import edu.umass.cs.reconfiguration.ReconfigurationConfig.RC;
+import edu.umass.cs.reconfiguration.http.HttpMetricsServer;
 import edu.umass.cs.reconfiguration.interfaces.ReconfigurableAppInfo;
 import edu.umass.cs.reconfiguration.interfaces.ReconfigurableNodeConfig;
 import edu.umass.cs.reconfiguration.interfaces.ReconfigurableRequest;
@@ -75,6 +80,7 @@ import edu.umass.cs.reconfiguration.reconfigurationpackets.AckStartEpoch;
 import edu.umass.cs.reconfiguration.reconfigurationpackets.AckStopEpoch;
 import edu.umass.cs.reconfiguration.reconfigurationpackets.ActiveReplicaError;
 import edu.umass.cs.reconfiguration.reconfigurationpackets.BasicReconfigurationPacket;
+import edu.umass.cs.reconfiguration.reconfigurationpackets.BatchedDemandReport;
 import edu.umass.cs.reconfiguration.reconfigurationpackets.DefaultAppRequest;
 import edu.umass.cs.reconfiguration.reconfigurationpackets.DemandReport;
 import edu.umass.cs.reconfiguration.reconfigurationpackets.DropEpochFinalState;
@@ -99,6 +105,8 @@ import edu.umass.cs.utils.Config;
 import edu.umass.cs.utils.DelayProfiler;
 import edu.umass.cs.utils.GCConcurrentHashMap;
 import edu.umass.cs.utils.GCConcurrentHashMapCallback;
+import edu.umass.cs.utils.Histogram;
+import edu.umass.cs.utils.Metrics;
 import edu.umass.cs.utils.Util;
 import edu.umass.cs.utils.UtilServer;
 
@@ -143,6 +151,11 @@ public class ActiveReplica<NodeIDType> implements ReconfiguratorCallback,
 	private final SSLMessenger<NodeIDType, ?> messenger;
 
 	private final AggregateDemandProfiler demandProfiler;
+	/* Names whose demand profiles are due to be reported at the next flush.
+	 * Coalescing here means that a name gets at most one demand report per
+	 * flush interval no matter how many requests it receives. */
+	private final Set<String> pendingDemandReports = ConcurrentHashMap
+			.newKeySet();
 	private final boolean noReporting;
 	private boolean recovering = true;
 
@@ -188,6 +201,8 @@ public class ActiveReplica<NodeIDType> implements ReconfiguratorCallback,
 				AbstractReconfiguratorDB.RecordNames.AR_RC_NODES.toString(),
 				this.appCoordinator.getARRCNodesAsString());
 
+		if (!this.noReporting)
+			this.initDemandReporter();
 		// initInstrumenter();
 	}
 
@@ -478,7 +493,7 @@ public class ActiveReplica<NodeIDType> implements ReconfiguratorCallback,
 		// else
 		// send demand report
 		this.updateDemandStats(request, senderAndRequest.csa.getAddress());
-		instrumentNanoApp(isCoordinated ? Instrument.replicable
+		instrumentNano(isCoordinated ? Instrument.replicable
 				: Instrument.local, senderAndRequest.recvTime);
 
 		long t = System.nanoTime();
@@ -510,7 +525,7 @@ public class ActiveReplica<NodeIDType> implements ReconfiguratorCallback,
 				e.printStackTrace();
 			}
 		}
-		instrumentNanoApp(Instrument.reply, t);
+		instrumentNano(Instrument.reply, t);
 		return senderAndRequest;
 	}
 
@@ -519,13 +534,16 @@ public class ActiveReplica<NodeIDType> implements ReconfiguratorCallback,
 
 	// to print instrumentation stats periodically
 	protected void initInstrumenter() {
-		if (Config.getGlobalBoolean(RC.ENABLE_INSTRUMENTATION))
+		if (Config.getGlobalBoolean(RC.ENABLE_INSTRUMENTATION)) {
+			Metrics.registerMBean();
 			this.protocolExecutor.scheduleWithFixedDelay(new Runnable() {
 				public void run() {
 					System.out.println(DelayProfiler.getStats()
-							+ AppInstrumenter.getStats());
+							+ AppInstrumenter.getStats() + "\n"
+							+ Metrics.getStats());
 				}
 			}, 0, 5, TimeUnit.SECONDS);
+		}
 	}
 
 	private static final boolean isCoordinated(Request request) {
@@ -644,7 +662,7 @@ public class ActiveReplica<NodeIDType> implements ReconfiguratorCallback,
 				Request request = this.appCoordinator.getRequest(Arrays
 						.copyOfRange(bytes, NIOHeader.BYTES, bytes.length),
 						NIOHeader.getNIOHeader(bytes));
-				instrumentNanoApp(Instrument.getRequest, t);
+				instrumentNano(Instrument.getRequest, t);
 				return request;
 			} catch (UnknownHostException e) {
 				e.printStackTrace();
@@ -657,7 +675,7 @@ public class ActiveReplica<NodeIDType> implements ReconfiguratorCallback,
 		instrumentNano(Instrument.restringification, t);
 
 		Request request = this.appCoordinator.getRequest(stringified);
-		instrumentNanoApp(Instrument.getRequest, t);
+		instrumentNano(Instrument.getRequest, t);
 		return request;
 	}
 
@@ -772,6 +790,27 @@ public class ActiveReplica<NodeIDType> implements ReconfiguratorCallback,
 		this.protocolExecutor.stop();
 		this.messenger.stop();
 		this.appCoordinator.stop();
+		if (this.httpServer != null)
+			this.httpServer.close();
+	}
+
+	private HttpMetricsServer httpServer = null;
+
+	/* Reconfigurators serve metrics from their HttpReconfigurator, so this is
+	 * started only for standalone active replicas. */
+	protected void initHTTPServer() {
+		if (!Config.getGlobalBoolean(RC.ENABLE_HTTP))
+			return;
+		InetSocketAddress me = this.messenger.getListeningSocketAddress();
+		try {
+			this.httpServer = new HttpMetricsServer(this, new InetSocketAddress(
+					me.getAddress(), ReconfigurationConfig.getHTTPPort(me
+							.getPort())));
+		} catch (Exception e) {
+			// metrics are optional, so just log and move on
+			log.log(Level.WARNING, "{0} unable to start metrics server: {1}",
+					new Object[] { this, e });
+		}
 	}
 
 	// /////////////// Start of protocol task handler
@@ -1094,7 +1133,7 @@ public class ActiveReplica<NodeIDType> implements ReconfiguratorCallback,
 		} catch (OverloadException re) {
 			PaxosPacketDemultiplexer.throttleExcessiveLoad();
 		}
-		instrumentNanoApp(Instrument.handleIncoming, t);
+		instrumentNano(Instrument.handleIncoming, t);
 		return handled;
 	}
 
@@ -1210,6 +1249,8 @@ public class ActiveReplica<NodeIDType> implements ReconfiguratorCallback,
 				100), reply(100);
 
 		private final int val;
+		private final Histogram latency = Metrics.histogram("activereplica."
+				+ this.name());
 
 		Instrument(int val) {
 			this.val = val;
@@ -1240,13 +1281,8 @@ public class ActiveReplica<NodeIDType> implements ReconfiguratorCallback,
 	}
 
 	private static final void instrumentNano(Instrument param, long t) {
-		if (instrument(param.val))
-			DelayProfiler.updateDelayNano(param.toString(), t);
-	}
-
-	private static final void instrumentNanoApp(Instrument param, long t) {
-		if (instrument(param.val))
-			DelayProfiler.updateDelayNano(appName + "." + param.toString(), t);
+		if (ENABLE_INSTRUMENTATION)
+			param.latency.recordNanosSince(t);
 	}
 
 	@SuppressWarnings("unused")
@@ -1269,31 +1305,62 @@ public class ActiveReplica<NodeIDType> implements ReconfiguratorCallback,
 		if (request instanceof ReconfigurableRequest
 				&& ((ReconfigurableRequest) request).isStop())
 			return; // no reporting on stop
-		if (this.demandProfiler.shouldSendDemandReport(request, sender))
-			report(this.demandProfiler.pluckDemandProfile(name));
-		else
-			report(this.demandProfiler.trim());
-		if (instrument(Instrument.updateDemandStats))
-			DelayProfiler.updateDelayNano("updatedDemandStats", t);
+		if (this.demandProfiler.shouldSendDemandReport(request, sender)
+				&& !this.pendingDemandReports.contains(name))
+			this.pendingDemandReports.add(name);
+		instrumentNano(Instrument.updateDemandStats, t);
+	}
+
+	private void initDemandReporter() {
+		long interval = Config.getGlobalInt(RC.DEMAND_REPORT_INTERVAL);
+		this.protocolExecutor.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				try {
+					flushDemandReports();
+				} catch (Exception e) {
+					// must not kill the periodic task
+					e.printStackTrace();
+				}
+			}
+		}, interval, interval, TimeUnit.MILLISECONDS);
+	}
+
+	/* Plucks the profiles of all names due for a report as well as any
+	 * profiles trimmed out of the profiler and sends them to reconfigurators,
+	 * grouping all reports headed to the same reconfigurator into a single
+	 * batched demand report. */
+	private void flushDemandReports() {
+		Map<NodeIDType, List<DemandReport<NodeIDType>>> batches = new HashMap<NodeIDType, List<DemandReport<NodeIDType>>>();
+		for (Iterator<String> iter = this.pendingDemandReports.iterator(); iter
+				.hasNext();) {
+			String name = iter.next();
+			iter.remove();
+			AbstractDemandProfile demand = this.demandProfiler
+					.pluckDemandProfile(name);
+			if (demand != null)
+				this.enqueueReport(demand, batches);
+		}
+		for (AbstractDemandProfile demand : this.demandProfiler.trim())
+			this.enqueueReport(demand, batches);
+
+		for (NodeIDType reportee : batches.keySet())
+			this.send(new GenericMessagingTask<NodeIDType, Object>(reportee,
+					new BatchedDemandReport<NodeIDType>(getMyID(), batches
+							.get(reportee))));
 	}
 
-	/* Report demand stats to reconfigurators. This method will necessarily
-	 * result in a stats message being sent out to reconfigurators. */
-	private void report(AbstractDemandProfile demand) {
-		try {
-			NodeIDType reportee = selectReconfigurator(demand.getName());
-			assert (reportee != null);
-			/* We don't strictly need the epoch number in demand reports, but it
-			 * is useful for debugging purposes. */
-			Integer epoch = this.appCoordinator.getEpoch(demand.getName());
-			GenericMessagingTask<NodeIDType, ?> mtask = new GenericMessagingTask<NodeIDType, Object>(
-					reportee, (new DemandReport<NodeIDType>(getMyID(),
-							demand.getName(), (epoch == null ? 0 : epoch),
-							demand)));
-			this.send(mtask);
-		} catch (Exception je) {
-			je.printStackTrace();
-		}
+	private void enqueueReport(AbstractDemandProfile demand,
+			Map<NodeIDType, List<DemandReport<NodeIDType>>> batches) {
+		NodeIDType reportee = selectReconfigurator(demand.getName());
+		assert (reportee != null);
+		/* We don't strictly need the epoch number in demand reports, but it is
+		 * useful for debugging purposes. */
+		Integer epoch = this.appCoordinator.getEpoch(demand.getName());
+		if (!batches.containsKey(reportee))
+			batches.put(reportee, new ArrayList<DemandReport<NodeIDType>>());
+		batches.get(reportee).add(
+				new DemandReport<NodeIDType>(getMyID(), demand.getName(),
+						(epoch == null ? 0 : epoch), demand));
 	}
 
 	/* Returns a random reconfigurator. Util.selectRandom is designed to return
@@ -1330,12 +1397,6 @@ public class ActiveReplica<NodeIDType> implements ReconfiguratorCallback,
 		}
 	}
 
-	private void report(Set<AbstractDemandProfile> demands) {
-		if (demands != null && !demands.isEmpty())
-			for (AbstractDemandProfile demand : demands)
-				this.report(demand);
-	}
-
 	private GenericMessagingTask<NodeIDType, ?> sendAckStopEpoch(
 			StopEpoch<NodeIDType> stopEpoch) {
 		// inform reconfigurator
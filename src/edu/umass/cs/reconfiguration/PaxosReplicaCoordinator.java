@@ -164,6 +164,30 @@ public class PaxosReplicaCoordinator<NodeIDType> extends
 		return proposee != null;
 	}
 
+	/**
+	 * Coordinates {@code requests} in paxosGroupID as one batched proposal
+	 * (or as few as batch size limits allow). None of the requests may be
+	 * stop requests.
+	 * 
+	 * @param paxosGroupID
+	 * @param requests
+	 * @param callback
+	 * @return True if successfully proposed to some epoch of paxosGroupID.
+	 */
+	public boolean coordinateBatch(String paxosGroupID, Request[] requests,
+			ExecutedCallback callback) {
+		String proposee = this.paxosManager.proposeBatch(paxosGroupID,
+				requests, callback);
+		log.log(Level.FINE, "{0} {1} batch of {2} requests to {3}:{4}",
+				new Object[] {
+						this,
+						(proposee != null ? "paxos-coordinated"
+								: "failed to paxos-coordinate"),
+						requests.length, proposee,
+						this.getReplicaGroup(paxosGroupID) });
+		return proposee != null;
+	}
+
 	/* This method always returns true as it will always succeed in either
 	 * creating the group with the requested epoch number or higher. In either
 	 * case, the caller should consider the operation a success. */
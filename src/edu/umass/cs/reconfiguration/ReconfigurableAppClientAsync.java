@@ -4,14 +4,19 @@ import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
@@ -60,6 +65,7 @@ import edu.umass.cs.reconfiguration.reconfigurationpackets.ReplicableClientReque
 import edu.umass.cs.reconfiguration.reconfigurationpackets.RequestActiveReplicas;
 import edu.umass.cs.reconfiguration.reconfigurationpackets.ServerReconfigurationPacket;
 import edu.umass.cs.reconfiguration.reconfigurationutils.AppInstrumenter;
+import edu.umass.cs.reconfiguration.reconfigurationutils.ConsistentHashing;
 import edu.umass.cs.reconfiguration.reconfigurationutils.RequestParseException;
 import edu.umass.cs.utils.Config;
 import edu.umass.cs.utils.GCConcurrentHashMap;
@@ -209,6 +215,10 @@ public abstract class ReconfigurableAppClientAsync<V> implements
 	// name->actives map
 	private final GCConcurrentHashMap<String, ActivesInfo> activeReplicas = new GCConcurrentHashMap<String, ActivesInfo>(
 			defaultGCCallback, MIN_REQUEST_ACTIVES_INTERVAL);
+	/* name->actives map for subscribed names. Entries are kept up to date by
+	 * reconfigurator pushes, so they never expire and are removed only upon
+	 * deletion or errors. */
+	private final ConcurrentHashMap<String, ActivesInfo> subscribedActives = new ConcurrentHashMap<String, ActivesInfo>();
 	// name->unsent app requests for which active replicas are not yet known
 	private final GCConcurrentHashMap<String, LinkedBlockingQueue<RequestAndCallback>> requestsPendingActives = new GCConcurrentHashMap<String, LinkedBlockingQueue<RequestAndCallback>>(
 			defaultGCCallback, getCRPTimeout(DEFAULT_GC_TIMEOUT)); // FIXME: long timeout version
@@ -262,10 +272,20 @@ public abstract class ReconfigurableAppClientAsync<V> implements
 		final Set<InetSocketAddress> actives;
 		// last queried time used to rate limit RequestActiveReplicas queries
 		final long createTime;
+		// epoch of actives, used to discard reordered pushes
+		final int epoch;
+		// last subscription time used to renew subscriptions
+		volatile long subscribeTime;
 
 		ActivesInfo(Set<InetSocketAddress> actives, long createTime) {
+			this(actives, createTime, -1);
+		}
+
+		ActivesInfo(Set<InetSocketAddress> actives, long createTime, int epoch) {
 			this.actives = actives;
 			this.createTime = createTime;
+			this.epoch = epoch;
+			this.subscribeTime = createTime;
 		}
 	}
 
@@ -594,6 +614,12 @@ public abstract class ReconfigurableAppClientAsync<V> implements
 									response.getSummary(),
 									((ClientReconfigurationPacket) response)
 											.getSender() });
+					// cache batched lookup results before invoking callback
+					if (response instanceof RequestActiveReplicas
+							&& ((RequestActiveReplicas) response).isBatched())
+						ReconfigurableAppClientAsync.this
+								.cacheBatchedActives((RequestActiveReplicas) response);
+
 					// call create/delete app callback
 					if ((callbackCRP = ReconfigurableAppClientAsync.this.callbacksCRP
 							.remove(getKey((ClientReconfigurationPacket) response))) != null
@@ -613,11 +639,17 @@ public abstract class ReconfigurableAppClientAsync<V> implements
 					// if name deleted, clear cached actives
 					if (response instanceof DeleteServiceName
 							&& !((DeleteServiceName) response).isFailed())
-						ReconfigurableAppClientAsync.this.activeReplicas
-								.remove(response.getServiceName());
+						ReconfigurableAppClientAsync.this
+								.clearActives(response.getServiceName());
 
+					// if pushed by a reconfigurator, just update the cache
+					if (response instanceof RequestActiveReplicas
+							&& ((RequestActiveReplicas) response).isPush())
+						ReconfigurableAppClientAsync.this
+								.updateSubscribedActives((RequestActiveReplicas) response);
 					// if RequestActiveReplicas, send or unpend pending requests
-					if (response instanceof RequestActiveReplicas)
+					else if (response instanceof RequestActiveReplicas
+							&& !((RequestActiveReplicas) response).isBatched())
 						ReconfigurableAppClientAsync.this
 								.sendRequestsPendingActives((RequestActiveReplicas) response);
 
@@ -690,8 +722,12 @@ public abstract class ReconfigurableAppClientAsync<V> implements
 						&& ReconfigurationPacket.PacketType.intToType
 								.containsKey(type = ByteBuffer
 										.wrap(bytes, 0, 4).getInt())) {
+					// batched create with name states as raw bytes
+					if (type == ReconfigurationPacket.PacketType.CREATE_SERVICE_NAME
+							.getInt() && !JSONPacket.couldBeJSON(bytes, 4))
+						return CreateServiceName.fromBytes(bytes, header);
 					// typical reconfiguration protocol packet
-					if (type != ReconfigurationPacket.PacketType.REPLICABLE_CLIENT_REQUEST
+					else if (type != ReconfigurationPacket.PacketType.REPLICABLE_CLIENT_REQUEST
 							.getInt())
 						if (JSONPacket.couldBeJSON(message = MessageExtractor
 								.decode(bytes, 4, bytes.length - 4)))
@@ -699,8 +735,7 @@ public abstract class ReconfigurableAppClientAsync<V> implements
 									.getReconfigurationPacketSuppressExceptions(
 											MessageExtractor
 													.stampAddressIntoJSONObject(
-															header.sndr,
-															header.rcvr,
+															header,
 															new JSONObject(
 																	message)),
 											unstringer);
@@ -728,8 +763,7 @@ public abstract class ReconfigurableAppClientAsync<V> implements
 							.getReconfigurationPacketSuppressExceptions(
 									MessageExtractor
 											.stampAddressIntoJSONObject(
-													header.sndr, header.rcvr,
-													json), unstringer);
+													header, json), unstringer);
 
 				// byte-parseable app packet
 				else if (ReconfigurableAppClientAsync.this instanceof AppRequestParserBytes) {
@@ -748,8 +782,8 @@ public abstract class ReconfigurableAppClientAsync<V> implements
 						&& ReconfigurableAppClientAsync.this.jsonPackets
 						&& (message = MessageExtractor.decode(bytes)) != null)
 					return getRequestFromJSON(MessageExtractor
-							.stampAddressIntoJSONObject(header.sndr,
-									header.rcvr, new JSONObject(message)));
+							.stampAddressIntoJSONObject(header,
+									new JSONObject(message)));
 
 				// default stringified request
 				else
@@ -781,12 +815,17 @@ public abstract class ReconfigurableAppClientAsync<V> implements
 			.getGlobalBoolean(PC.BYTEIFICATION);
 
 	private void cleanupActiveReplicasInfo(RequestAndCallback callback) {
-		ReconfigurableAppClientAsync.this.activeReplicas
-				.remove(callback.request.getServiceName());
+		ReconfigurableAppClientAsync.this.clearActives(callback.request
+				.getServiceName());
 		ReconfigurableAppClientAsync.this.mostRecentlyWrittenMap
 				.remove(callback.request.getServiceName());
 	}
 
+	private void clearActives(String name) {
+		this.activeReplicas.remove(name);
+		this.subscribedActives.remove(name);
+	}
+
 	private static final boolean READ_YOUR_WRITES = Config
 			.getGlobalBoolean(PC.READ_YOUR_WRITES);
 
@@ -1409,10 +1448,11 @@ public abstract class ReconfigurableAppClientAsync<V> implements
 		ActivesInfo activesInfo = null;
 		synchronized (this.activeReplicas) {
 			// lookup actives in the cache first
-			if ((activesInfo = this.activeReplicas
+			if (((activesInfo = this.getSubscribedActives(request
+					.getServiceName())) != null || (activesInfo = this.activeReplicas
 					.get(request.getServiceName())) != null
-					&& (actives = activesInfo.actives) != null
 					&& this.queriedActivesRecently(request.getServiceName()))
+					&& (actives = activesInfo.actives) != null)
 				return this.sendRequest(
 						request,
 						redirector != null ? redirector.getNearest(actives)
@@ -1447,18 +1487,46 @@ public abstract class ReconfigurableAppClientAsync<V> implements
 		return pending.add(rc);
 	}
 
+	/**
+	 * Returns cached actives for a subscribed name without ever blocking on a
+	 * query. A subscription older than {@link RC#ACTIVES_SUBSCRIPTION_LEASE}
+	 * is renewed in the background while the cached actives continue to be
+	 * used.
+	 */
+	private ActivesInfo getSubscribedActives(String name) throws IOException {
+		ActivesInfo activesInfo = this.subscribedActives.get(name);
+		if (activesInfo != null
+				&& System.currentTimeMillis() - activesInfo.subscribeTime > ACTIVES_SUBSCRIPTION_LEASE) {
+			// rate limit renewals to one per lease
+			activesInfo.subscribeTime = System.currentTimeMillis();
+			log.log(Level.FINE, "{0} renewing actives subscription for {1}",
+					new Object[] { this, name });
+			this.sendRequesNullCallback(new RequestActiveReplicas(name)
+					.setSubscribe());
+		}
+		return activesInfo;
+	}
+
+	private static final boolean SUBSCRIBE_ACTIVES = Config
+			.getGlobalBoolean(RC.CLIENT_SUBSCRIBE_ACTIVES);
+
+	private static final long ACTIVES_SUBSCRIPTION_LEASE = Config
+			.getGlobalLong(RC.ACTIVES_SUBSCRIPTION_LEASE);
+
 	private void queryForActives(Request request, boolean forceRefresh,
 			boolean anycast) throws IOException {
 		String name = anycast ? ALL_ACTIVES : request.getServiceName();
 		if (forceRefresh || !this.queriedActivesRecently(name)) {
 			if (forceRefresh) {
-				this.activeReplicas.remove(name);
+				this.clearActives(name);
 				this.mostRecentlyWrittenMap.remove(name);
 			}
 			ReconfigurationConfig.getLogger().log(Level.FINE,
 					"{0} requesting active replicas for {1}",
 					new Object[] { this, name });
-			this.sendRequesNullCallback(new RequestActiveReplicas(name));
+			RequestActiveReplicas query = new RequestActiveReplicas(name);
+			this.sendRequesNullCallback(SUBSCRIBE_ACTIVES && !anycast ? query
+					.setSubscribe() : query);
 			// this.lastQueriedActives.put(name, System.currentTimeMillis());
 			this.activeReplicas.put(name,
 					new ActivesInfo(null, System.currentTimeMillis()));
@@ -1486,15 +1554,32 @@ public abstract class ReconfigurableAppClientAsync<V> implements
 		Set<InetSocketAddress> actives = response.getActives();
 		if (actives != null && !actives.isEmpty()) {
 			synchronized (this.activeReplicas) {
-				this.activeReplicas.put(response.getServiceName(),
-						new ActivesInfo(actives, response.getCreateTime()));
+				ActivesInfo cached = this.subscribedActives.get(response
+						.getServiceName());
+				// a push may have overtaken the response, e.g., to a renewal
+				if (cached != null
+						&& cached.epoch > response.getActivesEpoch()) {
+					log.log(Level.FINE,
+							"{0} ignoring actives in stale response {1}",
+							new Object[] { this, response.getSummary() });
+					this.activeReplicas.put(response.getServiceName(), cached);
+				} else {
+					ActivesInfo activesInfo = new ActivesInfo(actives,
+							response.getCreateTime(),
+							response.getActivesEpoch());
+					this.activeReplicas.put(response.getServiceName(),
+							activesInfo);
+					if (response.isSubscribe())
+						this.subscribedActives.put(response.getServiceName(),
+								activesInfo);
+				}
 			}
 			if (this.mostRecentlyWrittenMap.contains(response.getServiceName())
 					&& !actives.contains(this.mostRecentlyWrittenMap
 							.get(response.getServiceName())))
 				this.mostRecentlyWrittenMap.remove(response.getServiceName());
 		} else {
-			this.activeReplicas.remove(response.getServiceName());
+			this.clearActives(response.getServiceName());
 			this.mostRecentlyWrittenMap.remove(response.getServiceName());
 		}
 
@@ -1635,6 +1720,255 @@ public abstract class ReconfigurableAppClientAsync<V> implements
 		}
 	}
 
+	private void cacheBatchedActives(RequestActiveReplicas response) {
+		if (response.getNameActives() == null)
+			return;
+		this.e2eRedirector.learnSample(response.getSender(),
+				System.currentTimeMillis() - response.getCreateTime());
+		synchronized (this.activeReplicas) {
+			for (Map.Entry<String, Set<InetSocketAddress>> entry : response
+					.getNameActives().entrySet()) {
+				if (entry.getValue() == null || entry.getValue().isEmpty())
+					continue;
+				ActivesInfo activesInfo = new ActivesInfo(entry.getValue(),
+						response.getCreateTime());
+				this.activeReplicas.put(entry.getKey(), activesInfo);
+				if (response.isSubscribe())
+					this.subscribedActives.putIfAbsent(entry.getKey(),
+							activesInfo);
+			}
+		}
+		log.log(Level.FINE, "{0} cached actives from batched lookup {1}",
+				new Object[] { this, response.getSummary() });
+	}
+
+	private static final int DEFAULT_PREFETCH_BATCH_SIZE = 1000;
+
+	/**
+	 * Warms the active replicas cache for {@code names} using one batched
+	 * lookup per reconfigurator group and up to {@code batchSize} names
+	 * instead of one {@link RequestActiveReplicas} round trip per name. Names
+	 * that could not be resolved are not cached and will be looked up on
+	 * demand as usual.
+	 * 
+	 * @param names
+	 * @param batchSize
+	 * @param timeout
+	 *            Overall timeout in milliseconds.
+	 * @param reconfigurators
+	 *            Reconfigurator IDs used to split {@code names} into
+	 *            reconfigurator groups.
+	 * @return Number of names whose active replicas were cached.
+	 * @throws IOException
+	 */
+	public int prefetchActives(Set<String> names, int batchSize,
+			long timeout, Set<String> reconfigurators) throws IOException {
+		if (names.isEmpty())
+			return 0;
+		List<RequestFuture<ClientReconfigurationPacket>> futures = new ArrayList<RequestFuture<ClientReconfigurationPacket>>();
+		for (RequestActiveReplicas lookup : ReconfigurationConfig
+				.makeRequestActiveReplicas(names, batchSize, reconfigurators))
+			futures.add(this.sendRequest(SUBSCRIBE_ACTIVES ? lookup
+					.setSubscribe() : lookup, defaultCRPCallback));
+
+		int cached = 0;
+		long deadline = System.currentTimeMillis() + timeout;
+		for (RequestFuture<ClientReconfigurationPacket> future : futures)
+			try {
+				ClientReconfigurationPacket response = future.get(
+						Math.max(deadline - System.currentTimeMillis(), 1),
+						TimeUnit.MILLISECONDS);
+				if (response instanceof RequestActiveReplicas
+						&& ((RequestActiveReplicas) response).getNameActives() != null)
+					cached += ((RequestActiveReplicas) response)
+							.getNameActives().size();
+			} catch (InterruptedException | ExecutionException
+					| TimeoutException e) {
+				log.log(Level.INFO,
+						"{0} incurred {1} while prefetching active replicas",
+						new Object[] { this, e });
+			}
+		return cached;
+	}
+
+	/**
+	 * Same as {@link #prefetchActives(Set, int, long, Set)} with the
+	 * reconfigurator IDs in the default configuration.
+	 * 
+	 * @param names
+	 * @param timeout
+	 *            Overall timeout in milliseconds.
+	 * @return Number of names whose active replicas were cached.
+	 * @throws IOException
+	 */
+	public int prefetchActives(Set<String> names, long timeout)
+			throws IOException {
+		return this.prefetchActives(names, DEFAULT_PREFETCH_BATCH_SIZE,
+				timeout, ReconfigurationConfig.getReconfiguratorIDs());
+	}
+
+	/**
+	 * Streams {@code nameStates} into batched creates of up to
+	 * {@code batchSize} names each belonging to a single reconfigurator group
+	 * so that no reconfigurator has to split them. At most {@code window}
+	 * batches are outstanding at a time and the iterator is not advanced
+	 * further until one of them completes, so arbitrarily many names can be
+	 * loaded with bounded memory at the client.
+	 * 
+	 * @param nameStates
+	 * @param batchSize
+	 *            Should not exceed {@link RC#MAX_BATCH_SIZE}.
+	 * @param window
+	 *            Maximum number of outstanding batched creates.
+	 * @param timeout
+	 *            Timeout in milliseconds for each batched create.
+	 * @param reconfigurators
+	 *            Reconfigurator IDs used to split names into reconfigurator
+	 *            groups.
+	 * @param progress
+	 *            If non-null, invoked with the response, or the failed request
+	 *            upon a timeout, of each batched create.
+	 * @return Number of names successfully created.
+	 * @throws IOException
+	 */
+	public int bulkCreate(Iterator<Map.Entry<String, String>> nameStates,
+			int batchSize, int window, long timeout,
+			Set<String> reconfigurators,
+			Callback<CreateServiceName, ?> progress) throws IOException {
+		ConsistentHashing<String> ch = new ConsistentHashing<String>(
+				reconfigurators);
+		// per reconfigurator group batches being filled
+		Map<String, Map<String, String>> batches = new HashMap<String, Map<String, String>>();
+		LinkedList<BulkCreateBatch> outstanding = new LinkedList<BulkCreateBatch>();
+		int[] counts = new int[2]; // created, failed
+		long t = System.currentTimeMillis();
+		while (nameStates.hasNext()) {
+			Map.Entry<String, String> nameState = nameStates.next();
+			String rc = ch.getReplicatedServersArray(nameState.getKey(), 1)
+					.get(0);
+			if (!batches.containsKey(rc))
+				batches.put(rc, new HashMap<String, String>());
+			Map<String, String> batch = batches.get(rc);
+			batch.put(nameState.getKey(), nameState.getValue());
+			if (batch.size() < batchSize)
+				continue;
+			// else send full batch, blocking if window is full
+			while (outstanding.size() >= window)
+				this.completeBulkCreateBatch(outstanding.removeFirst(),
+						timeout, counts, progress);
+			outstanding.add(new BulkCreateBatch(batch));
+			batches.remove(rc);
+		}
+		for (Map<String, String> batch : batches.values()) {
+			while (outstanding.size() >= window)
+				this.completeBulkCreateBatch(outstanding.removeFirst(),
+						timeout, counts, progress);
+			outstanding.add(new BulkCreateBatch(batch));
+		}
+		while (!outstanding.isEmpty())
+			this.completeBulkCreateBatch(outstanding.removeFirst(), timeout,
+					counts, progress);
+		log.log(Level.INFO,
+				"{0} bulk-created {1} names ({2} failed) in {3}ms",
+				new Object[] { this, counts[0], counts[1],
+						System.currentTimeMillis() - t });
+		return counts[0];
+	}
+
+	/**
+	 * Same as
+	 * {@link #bulkCreate(Iterator, int, int, long, Set, Callback)} with
+	 * default parameters and the reconfigurator IDs in the default
+	 * configuration.
+	 * 
+	 * @param nameStates
+	 * @param progress
+	 * @return Number of names successfully created.
+	 * @throws IOException
+	 */
+	public int bulkCreate(Iterator<Map.Entry<String, String>> nameStates,
+			Callback<CreateServiceName, ?> progress) throws IOException {
+		return this.bulkCreate(nameStates, DEFAULT_BULK_CREATE_BATCH_SIZE,
+				DEFAULT_BULK_CREATE_WINDOW, DEFAULT_BULK_CREATE_TIMEOUT,
+				ReconfigurationConfig.getReconfiguratorIDs(), progress);
+	}
+
+	private static final int DEFAULT_BULK_CREATE_BATCH_SIZE = 1000;
+	private static final int DEFAULT_BULK_CREATE_WINDOW = 8;
+	private static final long DEFAULT_BULK_CREATE_TIMEOUT = 30 * 1000;
+
+	private class BulkCreateBatch {
+		final CreateServiceName create;
+		final RequestFuture<ClientReconfigurationPacket> future;
+
+		BulkCreateBatch(Map<String, String> nameStates) throws IOException {
+			this.create = new CreateServiceName(nameStates);
+			this.future = ReconfigurableAppClientAsync.this.sendRequest(
+					this.create, defaultCRPCallback);
+		}
+	}
+
+	private void completeBulkCreateBatch(BulkCreateBatch batch, long timeout,
+			int[] counts, Callback<CreateServiceName, ?> progress) {
+		CreateServiceName response = null;
+		try {
+			response = (CreateServiceName) batch.future.get(timeout,
+					TimeUnit.MILLISECONDS);
+			if (response.isFailed()) {
+				counts[1] += batch.create.size();
+				log.log(Level.INFO, "{0} failed to bulk-create {1}: {2}",
+						new Object[] { this, batch.create.getSummary(),
+								response.getResponseMessage() });
+			} else
+				counts[0] += batch.create.size();
+		} catch (InterruptedException | ExecutionException
+				| TimeoutException e) {
+			counts[1] += batch.create.size();
+			log.log(Level.INFO,
+					"{0} incurred {1} while bulk-creating {2}",
+					new Object[] { this, e, batch.create.getSummary() });
+		}
+		log.log(Level.FINE, "{0} bulk-created {1} names so far ({2} failed)",
+				new Object[] { this, counts[0], counts[1] });
+		if (progress != null)
+			progress.processResponse(response != null ? response
+					: batch.create);
+	}
+
+	/* Pushed updates may be reordered with respect to each other or to query
+	 * responses, so an update is applied only if its epoch is not older than
+	 * that of the cached actives. An empty actives set means that the name
+	 * has been deleted. */
+	private void updateSubscribedActives(RequestActiveReplicas push) {
+		String name = push.getServiceName();
+		Set<InetSocketAddress> actives = push.getActives();
+		synchronized (this.activeReplicas) {
+			ActivesInfo cached = this.subscribedActives.get(name);
+			if (cached != null && cached.epoch > push.getActivesEpoch()) {
+				log.log(Level.FINE, "{0} ignoring stale push {1}",
+						new Object[] { this, push.getSummary() });
+				return;
+			}
+			if (actives == null || actives.isEmpty()) {
+				this.clearActives(name);
+				this.mostRecentlyWrittenMap.remove(name);
+				return;
+			}
+			ActivesInfo activesInfo = new ActivesInfo(actives,
+					System.currentTimeMillis(), push.getActivesEpoch());
+			// pushes do not renew the subscription lease
+			if (cached != null)
+				activesInfo.subscribeTime = cached.subscribeTime;
+			this.subscribedActives.put(name, activesInfo);
+			this.activeReplicas.put(name, activesInfo);
+		}
+		if (this.mostRecentlyWrittenMap.contains(name)
+				&& !actives.contains(this.mostRecentlyWrittenMap.get(name)))
+			this.mostRecentlyWrittenMap.remove(name);
+		log.log(Level.FINE, "{0} applied pushed actives {1}", new Object[] {
+				this, push.getSummary() });
+	}
+
 	// also update e2e redirector if we are actively probing anyway
 	private void updateE2ERedirector(EchoRequest response) {
 		if (response.isRequest())
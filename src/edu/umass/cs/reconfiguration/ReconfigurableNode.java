@@ -232,6 +232,10 @@ public abstract class ReconfigurableNode<NodeIDType> {
 		
 		if(Config.getGlobalBoolean(PC.ENABLE_HANDLE_MESSAGE_REPORT))
 			NIOInstrumenter.monitorHandleMessage();
+		AbstractPacketDemultiplexer.setVirtualThreads(Config
+				.getGlobalBoolean(PC.DEMULTIPLEXER_VIRTUAL_THREADS));
+		AbstractPacketDemultiplexer.setDefaultMaxConcurrencyPerType(Config
+				.getGlobalInt(PC.DEMULTIPLEXER_MAX_CONCURRENCY_PER_TYPE));
 
 		String err = null;
 		if (!nodeConfig.getActiveReplicas().contains(id)
@@ -278,6 +282,7 @@ public abstract class ReconfigurableNode<NodeIDType> {
 			// createAppCoordinator(),
 					app=createApp(args, nodeConfig), nodeConfig, messenger);
 			this.activeReplicas.add(activeReplica);
+			activeReplica.initHTTPServer();
 			// getPacketTypes includes app's packets
 			pd.setAppRequestParser(app).register(activeReplica.getPacketTypes(), activeReplica);
 		} else if (nodeConfig.getReconfigurators().contains(id)) {
@@ -19,6 +19,7 @@ import java.io.File;
 import java.lang.reflect.InvocationTargetException;
 import java.net.InetSocketAddress;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -40,6 +41,7 @@ import edu.umass.cs.nio.NIOTransport;
 import edu.umass.cs.nio.SSLDataProcessingWorker;
 import edu.umass.cs.nio.SSLDataProcessingWorker.SSL_MODES;
 import edu.umass.cs.reconfiguration.reconfigurationpackets.CreateServiceName;
+import edu.umass.cs.reconfiguration.reconfigurationpackets.RequestActiveReplicas;
 import edu.umass.cs.reconfiguration.reconfigurationpackets.RCRecordRequest;
 import edu.umass.cs.reconfiguration.reconfigurationutils.ConsistentHashing;
 import edu.umass.cs.reconfiguration.reconfigurationutils.ConsistentReconfigurableNodeConfig;
@@ -226,6 +228,21 @@ public class ReconfigurationConfig {
 		 */
 		COMMIT_WORKER_RESTART_PERIOD(2000),
 
+		/**
+		 * Upper bound on the retransmission timeout for coordinated requests
+		 * in the reconfiguration protocol. The timeout doubles with every
+		 * unsuccessful attempt starting from
+		 * {@link #COMMIT_WORKER_RESTART_PERIOD} up to this value.
+		 */
+		COMMIT_WORKER_MAX_RESTART_PERIOD(32000),
+
+		/**
+		 * If true, retransmissions of coordinated requests in the
+		 * reconfiguration protocol that are due at the same time are proposed
+		 * as one batch per reconfigurator group.
+		 */
+		COMMIT_WORKER_BATCHING(true),
+
 		/**
 		 * Default restart period for the stop epoch task. All other restart
 		 * periods are multiples of this time.
@@ -366,6 +383,81 @@ public class ReconfigurationConfig {
 		 * time to sanity check that its implementation meets the specification.
 		 */
 		TEST_DEMAND_PROFILE (true), 
+
+		/**
+		 * Interval (ms) at which an active replica flushes accumulated demand
+		 * reports to reconfigurators. All names due for a report within an
+		 * interval are coalesced and sent together to their respective
+		 * reconfigurators.
+		 */
+		DEMAND_REPORT_INTERVAL(100),
+
+		/**
+		 * Once the aggregate demand profiler at an active replica is full, a
+		 * previously untracked name gets a demand profile only if its estimated
+		 * request count in the profiler's count-min sketch is at least this
+		 * threshold. Names below the threshold are counted only in the sketch.
+		 */
+		DEMAND_PROFILE_ADMISSION_THRESHOLD(2),
+
+		/**
+		 * Number of counters per row of the count-min sketch used by the
+		 * aggregate demand profiler. Rounded up to a power of two.
+		 */
+		DEMAND_SKETCH_WIDTH(1 << 14),
+
+		/**
+		 * If true, clients subscribe to active replica changes when they
+		 * query for a name's active replicas, and reconfigurators push the
+		 * new epoch's active replicas to subscribed clients once a
+		 * reconfiguration completes. Subscribed names are cached by the
+		 * client until an update, a deletion, or an active replica error
+		 * evicts them.
+		 */
+		CLIENT_SUBSCRIBE_ACTIVES(false),
+
+		/**
+		 * Time in milliseconds after which a client renews its subscription
+		 * to a name's active replicas and after which a reconfigurator may
+		 * garbage collect subscriptions. Renewal happens in the background
+		 * and does not delay requests.
+		 */
+		ACTIVES_SUBSCRIPTION_LEASE(10 * 60 * 1000),
+
+		/**
+		 * Maximum number of name reconfigurations that a reconfigurator keeps
+		 * outstanding at a time while migrating names in order to add or
+		 * delete an active replica, previously hard-coded to 100. Each name
+		 * still incurs its own stop, fetch, and start round trips to active
+		 * replicas; the window only bounds how many names are in flight
+		 * concurrently.
+		 */
+		MAX_OUTSTANDING_RECONFIGURATIONS(100),
+
+		/**
+		 * Hash function, MD5 or MURMUR3, used to place nodes and names on
+		 * consistent hash rings. Must be the same at all servers and clients.
+		 * MD5 is the default for compatibility with existing deployments as
+		 * changing the function changes the reconfigurators responsible for
+		 * existing names.
+		 */
+		CONSISTENT_HASH_FUNCTION("MD5"),
+
+		/**
+		 * Number of points per active replica on the consistent hash ring
+		 * used to place newly created names. More virtual nodes even out the
+		 * load across a small number of active replicas. The reconfigurator
+		 * ring always has a single point per reconfigurator.
+		 */
+		CONSISTENT_HASH_VIRTUAL_NODES(1),
+
+		/**
+		 * If greater than 1, the initial active replicas of a created name
+		 * are chosen using consistent hashing with bounded loads, i.e., no
+		 * active replica gets more than this factor times the average number
+		 * of names known to the creating reconfigurator.
+		 */
+		ACTIVES_PLACEMENT_LOAD_BOUND(0.0),
 		
 		/**
 		 * HTTP server port offset relative to reconfigurator port.
@@ -809,6 +901,46 @@ public class ReconfigurationConfig {
 		return creates.toArray(new CreateServiceName[0]);
 	}
 
+	/**
+	 * @param names
+	 * @param batchSize
+	 * @return Array of batched RequestActiveReplicas objects each of which
+	 *         looks up up to batchSize names belonging to the same RC group.
+	 */
+	public static RequestActiveReplicas[] makeRequestActiveReplicas(
+			Set<String> names, int batchSize) {
+		return makeRequestActiveReplicas(names, batchSize,
+				ReconfigurationConfig.getReconfiguratorIDs());
+	}
+
+	/**
+	 * @param names
+	 * @param batchSize
+	 * @param reconfigurators
+	 * @return Array of batched RequestActiveReplicas objects each of which
+	 *         looks up up to batchSize names belonging to the same RC group.
+	 */
+	public static RequestActiveReplicas[] makeRequestActiveReplicas(
+			Set<String> names, int batchSize, Set<String> reconfigurators) {
+		Set<RequestActiveReplicas> lookups = new HashSet<RequestActiveReplicas>();
+		// without reconfigurator IDs, rely on forwarding by head name
+		for (Set<String> batch : reconfigurators.isEmpty() ? Collections
+				.singleton(names) : ConsistentReconfigurableNodeConfig
+				.splitIntoRCGroups(names, reconfigurators)) {
+			Set<String> namesCur = new HashSet<String>();
+			for (Iterator<String> nameIter = batch.iterator(); nameIter
+					.hasNext();) {
+				namesCur.add(nameIter.next());
+				// reached batchSize or last element of set
+				if (namesCur.size() == batchSize || !nameIter.hasNext()) {
+					lookups.add(new RequestActiveReplicas(namesCur));
+					namesCur = new HashSet<String>();
+				}
+			}
+		}
+		return lookups.toArray(new RequestActiveReplicas[0]);
+	}
+
 	/**
 	 * Command-line options
 	 */
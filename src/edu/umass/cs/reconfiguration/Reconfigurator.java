@@ -18,8 +18,12 @@ package edu.umass.cs.reconfiguration;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.security.cert.CertificateException;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
@@ -60,6 +64,7 @@ import edu.umass.cs.reconfiguration.interfaces.ReconfiguratorCallback;
 import edu.umass.cs.reconfiguration.interfaces.ReconfiguratorFunctions;
 import edu.umass.cs.reconfiguration.interfaces.ReconfiguratorRequest;
 import edu.umass.cs.reconfiguration.reconfigurationpackets.BasicReconfigurationPacket;
+import edu.umass.cs.reconfiguration.reconfigurationpackets.BatchedDemandReport;
 import edu.umass.cs.reconfiguration.reconfigurationpackets.ClientReconfigurationPacket;
 import edu.umass.cs.reconfiguration.reconfigurationpackets.CreateServiceName;
 import edu.umass.cs.reconfiguration.reconfigurationpackets.DeleteServiceName;
@@ -152,6 +157,11 @@ public class Reconfigurator<NodeIDType> implements
 		 * 
 		 */
 		delete,
+		/**
+		 * Names reconfigured per second in order to add or delete an active
+		 * replica.
+		 */
+		migration_rate,
 	};
 
 	/* Any id-based communication requires NodeConfig and Messenger. In general,
@@ -338,6 +348,68 @@ public class Reconfigurator<NodeIDType> implements
 		return null; // never any messaging or ptasks
 	}
 
+	/**
+	 * Batched counterpart of
+	 * {@link #handleDemandReport(DemandReport, ProtocolTask[])}. Incorporates
+	 * all demand reports in the batch first and then makes a single pass over
+	 * the names to check for reconfiguration triggers. Reports for names that
+	 * this reconfigurator is not responsible for are forwarded, batched per
+	 * reconfigurator.
+	 * 
+	 * @param batch
+	 * @param ptasks
+	 * @return MessagingTask for forwarding misdirected reports, typically
+	 *         null. No protocol tasks spawned.
+	 */
+	@SuppressWarnings("unchecked")
+	public GenericMessagingTask<NodeIDType, ?>[] handleBatchedDemandReport(
+			BatchedDemandReport<NodeIDType> batch,
+			ProtocolTask<NodeIDType, ReconfigurationPacket.PacketType, String>[] ptasks) {
+		ReconfigurationConfig.log.log(Level.FINEST, "{0} received {1} {2}",
+				new Object[] { this, batch.getType(), batch.getSummary() });
+		Map<NodeIDType, List<DemandReport<NodeIDType>>> misdirected = new HashMap<NodeIDType, List<DemandReport<NodeIDType>>>();
+		List<String> names = new ArrayList<String>();
+		for (DemandReport<NodeIDType> report : batch.getDemandReports()) {
+			Set<NodeIDType> reconfigurators = this.consistentNodeConfig
+					.getReplicatedReconfigurators(report.getServiceName());
+			if (!reconfigurators.contains(this.getMyID())) {
+				NodeIDType reportee = (NodeIDType) Util
+						.selectRandom(reconfigurators);
+				if (!misdirected.containsKey(reportee))
+					misdirected.put(reportee,
+							new ArrayList<DemandReport<NodeIDType>>());
+				misdirected.get(reportee).add(report);
+				continue;
+			}
+			this.updateDemandProfile(report); // no coordination
+			names.add(report.getServiceName());
+		}
+		// single policy pass over all incorporated names
+		for (String name : names) {
+			ReconfigurationRecord<NodeIDType> record = this.DB
+					.getReconfigurationRecord(name);
+			if (record != null)
+				// coordinate and commit reconfiguration intent
+				this.initiateReconfiguration(name, record,
+						shouldReconfigure(name), null, null, null, null, null,
+						null,
+						ReconfigurationConfig.ReconfigureUponActivesChange.DEFAULT);
+		}
+		trimAggregateDemandProfile();
+
+		if (misdirected.isEmpty())
+			return null;
+		@SuppressWarnings("unchecked")
+		GenericMessagingTask<NodeIDType, ?>[] mtasks = (GenericMessagingTask<NodeIDType, ?>[]) new GenericMessagingTask<?, ?>[misdirected
+				.size()];
+		int i = 0;
+		for (NodeIDType reportee : misdirected.keySet())
+			mtasks[i++] = new GenericMessagingTask<NodeIDType, BatchedDemandReport<NodeIDType>>(
+					reportee, new BatchedDemandReport<NodeIDType>(
+							batch.getInitiator(), misdirected.get(reportee)));
+		return mtasks;
+	}
+
 	private boolean isLegitimateCreateRequest(CreateServiceName create) {
 		if (!create.isBatched())
 			return true;
@@ -618,7 +690,7 @@ public class Reconfigurator<NodeIDType> implements
 			
 			this.initiateReconfiguration(create.getServiceName(), record, 
 					create.getInitGroup()!=null?getNodeIDsFromSocketAddresses(create.getInitGroup()):
-						this.consistentNodeConfig.getReplicatedActives(create.getServiceName()), 
+						this.consistentNodeConfig.placeReplicatedActives(create.getServiceName()), 
 						create.getCreator(), create.getMyReceiver(),
 						create.getForwader(), create.getInitialState(), 
 						create.getNameStates(), null, create.getReconfigureUponActivesChangePolicy());
@@ -916,13 +988,13 @@ public class Reconfigurator<NodeIDType> implements
 								+ request.getSender() : "" });
 		if (request.getServiceName().equals(ANYCAST_NAME)) {
 			// this.sendClientReconfigurationPacket
-			callback.processResponse(request.setActives(modifyPortsForSSL(
+			callback.processResponse(request.unsetSubscribe().setActives(modifyPortsForSSL(
 					this.consistentNodeConfig.getRandomActiveReplica(),
 					receivedOnSSLPort(request))));
 			return null;
 		} else if (request.getServiceName().equals(BROADCAST_NAME)) {
 			// this.sendClientReconfigurationPacket
-			callback.processResponse(request.setActives(modifyPortsForSSL(
+			callback.processResponse(request.unsetSubscribe().setActives(modifyPortsForSSL(
 					this.consistentNodeConfig.getActiveReplicaSocketAddresses(),
 					receivedOnSSLPort(request))));
 			return null;
@@ -945,6 +1017,12 @@ public class Reconfigurator<NodeIDType> implements
 				&& this.DB.handleIncoming(request, this))
 			return null;
 
+		if (request.isBatched()) {
+			callback.processResponse(this.getBatchedActiveReplicas(request)
+					.makeResponse());
+			return null;
+		}
+
 		// else at an appropriate replica
 		ReconfigurationRecord<NodeIDType> record = this.DB
 				.getReconfigurationRecord(request.getServiceName());
@@ -956,7 +1034,7 @@ public class Reconfigurator<NodeIDType> implements
 			// I am responsible but can't find actives for the name
 			String responseMessage = "No state found for name "
 					+ request.getServiceName();
-			request.setResponseMessage(responseMessage
+			request.unsetSubscribe().setResponseMessage(responseMessage
 					+ " probably because the name has not yet been created or is pending deletion");
 			// this.sendClientReconfigurationPacket
 			callback.processResponse(this
@@ -986,6 +1064,9 @@ public class Reconfigurator<NodeIDType> implements
 		// to support different client facing ports
 		request.setActives(modifyPortsForSSL(activeIPs,
 				receivedOnSSLPort(request)));
+		request.setActivesEpoch(record.getEpoch());
+		if (request.isSubscribe())
+			this.subscribeActives(request);
 		// this.sendClientReconfigurationPacket
 		callback.processResponse(request.makeResponse());
 		/* We message using sendActiveReplicasToClient above as opposed to
@@ -994,6 +1075,101 @@ public class Reconfigurator<NodeIDType> implements
 		return null;
 	}
 
+	/* Resolves all names in a batched lookup with a single bulk DB read.
+	 * Names with no record or that are pending deletion are simply omitted,
+	 * so the requester can fall back to individual lookups for them. */
+	private RequestActiveReplicas getBatchedActiveReplicas(
+			RequestActiveReplicas request) {
+		Map<String, ReconfigurationRecord<NodeIDType>> records = this.DB
+				.getReconfigurationRecords(request.getNames());
+		Map<String, Set<InetSocketAddress>> nameActives = new HashMap<String, Set<InetSocketAddress>>();
+		Boolean ssl = receivedOnSSLPort(request);
+		for (ReconfigurationRecord<NodeIDType> record : records.values()) {
+			if (record.getActiveReplicas() == null || record.isDeletePending())
+				continue;
+			Set<InetSocketAddress> activeIPs = new HashSet<InetSocketAddress>();
+			for (NodeIDType node : record.getActiveReplicas())
+				activeIPs.add(this.consistentNodeConfig
+						.getNodeSocketAddress(node));
+			nameActives.put(record.getName(),
+					modifyPortsForSSL(activeIPs, ssl));
+			if (request.isSubscribe())
+				this.subscribeActives(new RequestActiveReplicas(record
+						.getName(), request));
+		}
+		ReconfigurationConfig.log.log(Level.FINE,
+				"{0} found actives for {1}/{2} names in batched lookup {3}",
+				new Object[] { this, nameActives.size(),
+						request.getNames().size(), request.getSummary() });
+		return request.setNameActives(nameActives);
+	}
+
+	private static final int MAX_ACTIVES_SUBSCRIBERS_PER_NAME = 64;
+
+	/**
+	 * name->subscriber->subscribing request. Subscribers are keyed by the
+	 * creator address, so a client that subscribes again to the same name
+	 * replaces its earlier subscription. The subscribing request is retained
+	 * in order to route pushed updates exactly like the original response.
+	 * Every subscription or renewal refreshes the lease of the name's entry,
+	 * and subscribers are kept in access order so that the least recently
+	 * renewed one is dropped when there are too many.
+	 */
+	private final GCConcurrentHashMap<String, Map<InetSocketAddress, RequestActiveReplicas>> activesSubscriptions = new GCConcurrentHashMap<String, Map<InetSocketAddress, RequestActiveReplicas>>(
+			Config.getGlobalLong(RC.ACTIVES_SUBSCRIPTION_LEASE));
+
+	@SuppressWarnings("serial")
+	private void subscribeActives(RequestActiveReplicas request) {
+		// never serialized
+		Map<InetSocketAddress, RequestActiveReplicas> subscribers = new LinkedHashMap<InetSocketAddress, RequestActiveReplicas>(
+				16, 0.75f, true) {
+			protected boolean removeEldestEntry(
+					Map.Entry<InetSocketAddress, RequestActiveReplicas> eldest) {
+				return size() > MAX_ACTIVES_SUBSCRIBERS_PER_NAME;
+			}
+		};
+		// refreshes the put time of an existing entry too
+		Map<InetSocketAddress, RequestActiveReplicas> existing = this.activesSubscriptions
+				.putIfAbsent(request.getServiceName(), subscribers);
+		if (existing != null)
+			subscribers = existing;
+		synchronized (subscribers) {
+			subscribers.put(request.getCreator(), request);
+		}
+	}
+
+	/**
+	 * Pushes the active replicas of a just completed epoch to clients that
+	 * subscribed to {@code name} at this reconfigurator. A null
+	 * {@code actives} means that the name is being deleted, in which case
+	 * subscribers are sent an empty set and forgotten.
+	 */
+	private void pushActivesToSubscribers(String name, Set<NodeIDType> actives,
+			int epoch) {
+		Map<InetSocketAddress, RequestActiveReplicas> subscribers = actives == null ? this.activesSubscriptions
+				.remove(name) : this.activesSubscriptions.get(name);
+		if (subscribers == null)
+			return;
+		Set<InetSocketAddress> activeIPs = new HashSet<InetSocketAddress>();
+		if (actives != null)
+			for (NodeIDType node : actives)
+				activeIPs.add(this.consistentNodeConfig
+						.getNodeSocketAddress(node));
+		List<RequestActiveReplicas> subscriptions;
+		synchronized (subscribers) {
+			subscriptions = new ArrayList<RequestActiveReplicas>(
+					subscribers.values());
+		}
+		ReconfigurationConfig.log.log(Level.FINE,
+				"{0} pushing actives {1}:{2} for {3} to {4} subscribers",
+				new Object[] { this, activeIPs, epoch, name,
+						subscriptions.size() });
+		for (RequestActiveReplicas subscription : subscriptions)
+			this.sendClientReconfigurationPacket(new RequestActiveReplicas(
+					subscription, epoch, modifyPortsForSSL(activeIPs,
+							receivedOnSSLPort(subscription))));
+	}
+
 	private boolean amReceiver(ClientReconfigurationPacket response) {
 		InetSocketAddress incoming = response.getMyReceiver();
 		InetSocketAddress me = this.consistentNodeConfig.getNodeSocketAddress(this.getMyID());
@@ -1249,6 +1425,26 @@ public class Reconfigurator<NodeIDType> implements
 				// checkpoint and garbage collect
 				this.postCompleteNodeConfigChange(rcRecReq);
 
+			// push new actives or deletion to subscribed clients
+			if (rcRecReq.isReconfigurationComplete()
+					&& !rcRecReq.isNodeConfigChange()
+					&& !rcRecReq.isActiveNodeConfigChange()
+					&& !this.DB.isRCGroupName(rcRecReq.getServiceName())) {
+				this.pushActivesToSubscribers(rcRecReq.getServiceName(),
+						rcRecReq.startEpoch.getCurEpochGroup(),
+						rcRecReq.getEpochNumber());
+				this.consistentNodeConfig.updateActivesLoads(
+						rcRecReq.startEpoch.getPrevEpochGroup(),
+						rcRecReq.startEpoch.getCurEpochGroup(),
+						rcRecReq.startEpoch.isBatchedCreate() ? rcRecReq.startEpoch
+								.getNameStates().size() : 1);
+			} else if (rcRecReq.isDeleteIntent()) {
+				this.pushActivesToSubscribers(rcRecReq.getServiceName(),
+						null, rcRecReq.getEpochNumber());
+				this.consistentNodeConfig.updateActivesLoads(
+						rcRecReq.startEpoch.getPrevEpochGroup(), null, 1);
+			}
+
 			if (this.DB.outstandingContains(rcRecReq.getServiceName()))
 				this.DB.notifyOutstanding(rcRecReq.getServiceName());
 
@@ -1522,6 +1718,18 @@ public class Reconfigurator<NodeIDType> implements
 
 	private ClientReconfigurationPacket modifyPortsForSSLIfNeeded(
 			ClientReconfigurationPacket clientRCPacket) {
+		if (clientRCPacket.getRequestType() == ReconfigurationPacket.PacketType.REQUEST_ACTIVE_REPLICAS
+				&& ((RequestActiveReplicas) clientRCPacket).isBatched()) {
+			Map<String, Set<InetSocketAddress>> nameActives = ((RequestActiveReplicas) clientRCPacket)
+					.getNameActives();
+			if (nameActives != null
+					&& this.amReceiver(clientRCPacket))
+				for (Map.Entry<String, Set<InetSocketAddress>> entry : nameActives
+						.entrySet())
+					entry.setValue(modifyPortsForSSL(entry.getValue(),
+							receivedOnSSLPort(clientRCPacket)));
+			return clientRCPacket;
+		}
 		return clientRCPacket.getRequestType() == ReconfigurationPacket.PacketType.REQUEST_ACTIVE_REPLICAS
 				&& this.amReceiver(((RequestActiveReplicas) clientRCPacket)) ? (((RequestActiveReplicas) clientRCPacket)
 				.setActives(
@@ -1796,13 +2004,16 @@ public class Reconfigurator<NodeIDType> implements
 	 * refresh in the updateDemandProfile method if needed. */
 	private void trimAggregateDemandProfile() {
 		Set<AbstractDemandProfile> profiles = this.demandProfiler.trim();
-		for (AbstractDemandProfile profile : profiles) {
+		if (profiles.isEmpty())
+			return;
+		List<DemandReport<NodeIDType>> reports = new ArrayList<DemandReport<NodeIDType>>();
+		for (AbstractDemandProfile profile : profiles)
 			// initiator and epoch are irrelevant in this report
-			DemandReport<NodeIDType> report = new DemandReport<NodeIDType>(
-					this.getMyID(), profile.getName(), 0, profile);
-			// will update stats in DB
-			this.DB.execute(report);
-		}
+			reports.add(new DemandReport<NodeIDType>(this.getMyID(), profile
+					.getName(), 0, profile));
+		// will update stats in DB with a single batched write
+		this.DB.execute(new BatchedDemandReport<NodeIDType>(this.getMyID(),
+				reports));
 	}
 
 	// coordinate reconfiguration intent
@@ -2548,11 +2759,14 @@ public class Reconfigurator<NodeIDType> implements
 		boolean ancChanged = this.DB
 				.changeActiveDBNodeConfig(rcRecReq.startEpoch.getEpochNumber());
 
+		long initTime = System.currentTimeMillis();
+		int migrations = 0;
 		// handle deleted active replicas
 		Set<NodeIDType> deletedNodes = this.diff(record.getActiveReplicas(),
 				record.getNewActives());
 		for (NodeIDType active : deletedNodes)
-			this.deleteActiveReplica(active, rcRecReq.startEpoch.creator);
+			migrations += Math.max(0, this.deleteActiveReplica(active,
+					rcRecReq.startEpoch.creator));
 
 		try {
 			this.DB.waitOutstanding(1);
@@ -2572,7 +2786,8 @@ public class Reconfigurator<NodeIDType> implements
 			Set<NodeIDType> addedNodes = rcRecReq.startEpoch.newlyAddedNodes
 					.keySet();
 			for (NodeIDType active : addedNodes)
-				this.addActiveReplica(active, rcRecReq.startEpoch.creator);
+				migrations += Math.max(0, this.addActiveReplica(active,
+						rcRecReq.startEpoch.creator));
 
 			try {
 				this.DB.waitOutstanding(1);
@@ -2581,6 +2796,7 @@ public class Reconfigurator<NodeIDType> implements
 				return false;
 			}
 		}
+		this.updateMigrationRate(migrations, initTime);
 
 		// uncoordinated change locally
 		boolean executed = this.DB.execute(new RCRecordRequest<NodeIDType>(
@@ -3313,22 +3529,44 @@ public class Reconfigurator<NodeIDType> implements
 		return debug;
 	}
 
-	private static final int MAX_OUTSTANDING_RECONFIGURATIONS = 100;
+	/* The window of concurrently outstanding name reconfigurations while
+	 * adding or deleting an active replica. Each name still goes through the
+	 * stop, fetch final state, start, and drop phases in sequence, but the
+	 * phases of up to these many names overlap with each other. */
+	private static final int MAX_OUTSTANDING_RECONFIGURATIONS = Config
+			.getGlobalInt(RC.MAX_OUTSTANDING_RECONFIGURATIONS);
+
+	private void updateMigrationRate(int migrations, long initTime) {
+		if (migrations == 0)
+			return;
+		long delay = Math.max(1, System.currentTimeMillis() - initTime);
+		DelayProfiler.updateValue(ProfilerKeys.migration_rate.toString(),
+				migrations * 1000.0 / delay);
+		ReconfigurationConfig.log.log(Level.INFO,
+				"{0} completed {1} name reconfigurations in {2}ms ({3}/s) "
+						+ "with an outstanding window of {4}",
+				new Object[] { this, migrations, delay,
+						migrations * 1000 / delay,
+						MAX_OUTSTANDING_RECONFIGURATIONS });
+	}
 
 	/**
 	 * This method issues reconfigurations for records replicated on active in a
 	 * manner that limits the number of outstanding reconfigurations using the
 	 * {@link #outstandingReconfigurations} queue.
+	 * 
+	 * @return Number of reconfigurations initiated, or -1 if the records
+	 *         replicated on active could not be read.
 	 */
 	@SuppressWarnings({ "unchecked" })
-	private boolean deleteActiveReplica(NodeIDType active,
+	private int deleteActiveReplica(NodeIDType active,
 			InetSocketAddress creator) {
 		boolean initiated = this.DB.app.initiateReadActiveRecords(active);
 		if (!initiated) {
 			ReconfigurationConfig.log.log(Level.WARNING,
 					"{0} deleteActiveReplica {1} unable to initiate read active records",
 					new Object[] { this, active });
-			return false;
+			return -1;
 		}
 		int rcCount = 0;
 		// this.setOutstanding(active);
@@ -3342,7 +3580,7 @@ public class Reconfigurator<NodeIDType> implements
 				this.DB.waitOutstanding(MAX_OUTSTANDING_RECONFIGURATIONS);
 			} catch (InterruptedException e) {
 				e.printStackTrace();
-				return false;
+				return -1;
 			}
 			// reconfigure name so as to exclude active
 			Set<NodeIDType> newActives = new HashSet<NodeIDType>(
@@ -3372,10 +3610,14 @@ public class Reconfigurator<NodeIDType> implements
 				new Object[] { this, rcCount, active });
 		boolean closed = this.DB.app.closeReadActiveRecords();
 		// this.setNoOutstanding();
-		return initiated && closed;
+		return closed ? rcCount : -1;
 	}
 
-	private boolean addActiveReplica(NodeIDType active,
+	/**
+	 * @return Number of reconfigurations initiated, or -1 if the records
+	 *         replicated on active could not be read.
+	 */
+	private int addActiveReplica(NodeIDType active,
 			InetSocketAddress creator) {
 		ReconfigurationRecord<NodeIDType> record = null;
 
@@ -3384,7 +3626,7 @@ public class Reconfigurator<NodeIDType> implements
 			ReconfigurationConfig.log.log(Level.WARNING,
 					"{0} addActiveReplica {1} unable to initiate read active records",
 					new Object[] { this, active });
-			return false;
+			return -1;
 		}
 		int rcCount = 0;
 		Set<NodeIDType> newActives = null;
@@ -3439,7 +3681,7 @@ public class Reconfigurator<NodeIDType> implements
 							.log(Level.WARNING,
 									"{0} interrupted while waiting for {1} reconfiguration to complete",
 									new Object[] { this, record.getName() });
-					return false;
+					return -1;
 				}
 			}
 			else {
@@ -3466,7 +3708,7 @@ public class Reconfigurator<NodeIDType> implements
 				this.DB.waitOutstanding(MAX_OUTSTANDING_RECONFIGURATIONS);
 			} catch (InterruptedException e) {
 				e.printStackTrace();
-				return false;
+				return -1;
 			}
 
 			if(record.getReconfigureUponActivesChangePolicy()== ReconfigurationConfig.ReconfigureUponActivesChange.REPLICATE_ALL) {
@@ -3506,7 +3748,7 @@ public class Reconfigurator<NodeIDType> implements
 				new Object[] { this, rcCount, active });
 		boolean closed = this.DB.app.closeReadActiveRecords();
 
-		return initiatedCursor && closed;
+		return closed ? rcCount : -1;
 	}
 	
 	/**
@@ -19,6 +19,7 @@ package edu.umass.cs.reconfiguration;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -140,6 +141,34 @@ public class RepliconfigurableReconfiguratorDB<NodeIDType> extends
 		return super.coordinateRequest(rcGroupName, request, callback);
 	}
 
+	/**
+	 * Coordinates {@code requests} with one batched proposal per
+	 * reconfigurator group instead of a separate agreement round per request.
+	 * None of the requests may be stop requests.
+	 * 
+	 * @param requests
+	 * @param callback
+	 * @return True if all requests were proposed to their groups.
+	 */
+	public boolean coordinateRequests(Collection<? extends Request> requests,
+			ExecutedCallback callback) {
+		Map<String, ArrayList<Request>> groupBatches = new HashMap<String, ArrayList<Request>>();
+		for (Request request : requests) {
+			assert (!(request instanceof ReconfigurableRequest && ((ReconfigurableRequest) request)
+					.isStop()));
+			String rcGroupName = this.getRCGroupName(request.getServiceName());
+			if (!groupBatches.containsKey(rcGroupName))
+				groupBatches.put(rcGroupName, new ArrayList<Request>());
+			groupBatches.get(rcGroupName).add(request);
+		}
+		boolean coordinated = true;
+		for (String rcGroupName : groupBatches.keySet())
+			coordinated = this.coordinateBatch(rcGroupName, groupBatches
+					.get(rcGroupName).toArray(new Request[0]), callback)
+					&& coordinated;
+		return coordinated;
+	}
+
 	/**
 	 * @param request
 	 * @param callback
@@ -171,6 +200,19 @@ public class RepliconfigurableReconfiguratorDB<NodeIDType> extends
 		return this.app.getReconfigurationRecord(name);
 	}
 
+	/**
+	 * Uncoordinated bulk access to DB state like
+	 * {@link #getReconfigurationRecord(String)}.
+	 * 
+	 * @param names
+	 * @return Map of name to ReconfigurationRecord for names in
+	 *         {@code names} that have a record.
+	 */
+	public Map<String, ReconfigurationRecord<NodeIDType>> getReconfigurationRecords(
+			Set<String> names) {
+		return this.app.getReconfigurationRecords(names);
+	}
+
 	/*
 	 * Create one group for every set of contiguous nodes on the ring of which
 	 * this node is a part. The name of the group is the name of the first node
@@ -653,35 +695,44 @@ public class RepliconfigurableReconfiguratorDB<NodeIDType> extends
 	private Set<String> outstandingReconfigurations = new HashSet<String>();
 
 	protected boolean outstandingContains(String name) {
-		return this.outstandingReconfigurations.contains(name);
+		synchronized (this.outstandingReconfigurations) {
+			return this.outstandingReconfigurations.contains(name);
+		}
 	}
 
 	protected void addToOutstanding(String name) {
+		int size;
 		synchronized (this.outstandingReconfigurations) {
 			this.outstandingReconfigurations.add(name);
+			size = this.outstandingReconfigurations.size();
 		}
-		log.log(Level.INFO, "{0} has +outstanding = {1}", new Object[] { this,
-				this.outstandingReconfigurations });
+		// logging the whole set at high window sizes is quadratic
+		log.log(Level.FINE, "{0} has +outstanding {1}; |outstanding| = {2}",
+				new Object[] { this, name, size });
 	}
 
 	protected void waitOutstanding(int max) throws InterruptedException {
 		synchronized (this.outstandingReconfigurations) {
 			while (this.outstandingReconfigurations.size() >= max) {
-				log.log(Level.INFO,
-						"{0} waiting on reconfiguration of RC records: {1}",
-						new Object[] { this, this.outstandingReconfigurations });
+				log.log(Level.FINE,
+						"{0} waiting on reconfiguration of {1} records",
+						new Object[] { this,
+								this.outstandingReconfigurations.size() });
 				this.outstandingReconfigurations.wait();
 			}
 		}
 	}
 
 	protected void notifyOutstanding(String name) {
+		int size;
 		synchronized (this.outstandingReconfigurations) {
-			this.outstandingReconfigurations.remove(name);
-			this.outstandingReconfigurations.notify();
+			if (!this.outstandingReconfigurations.remove(name))
+				return;
+			size = this.outstandingReconfigurations.size();
+			this.outstandingReconfigurations.notifyAll();
 		}
-		log.log(Level.INFO, "{0} has -outstanding = {1}; removed {2}", new Object[] { this,
-				this.outstandingReconfigurations, name });
+		log.log(Level.FINE, "{0} has -outstanding {1}; |outstanding| = {2}",
+				new Object[] { this, name, size });
 	}
 
 }
@@ -44,6 +44,7 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
@@ -52,6 +53,8 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -71,6 +74,7 @@ import edu.umass.cs.nio.interfaces.IntegerPacketType;
 import edu.umass.cs.reconfiguration.ReconfigurationConfig.RC;
 import edu.umass.cs.reconfiguration.examples.AppRequest;
 import edu.umass.cs.reconfiguration.interfaces.ReconfiguratorDB;
+import edu.umass.cs.reconfiguration.reconfigurationpackets.BatchedDemandReport;
 import edu.umass.cs.reconfiguration.reconfigurationpackets.DemandReport;
 import edu.umass.cs.reconfiguration.reconfigurationutils.AbstractDemandProfile;
 import edu.umass.cs.reconfiguration.reconfigurationutils.ConsistentReconfigurableNodeConfig;
@@ -209,6 +213,22 @@ public class SQLReconfiguratorDB<NodeIDType> extends
 
 	private StringLocker stringLocker = new StringLocker();
 
+	/* Operations on a single record lock only that record's stripe (and the
+	 * group lock in shared mode), so operations on unrelated names proceed in
+	 * parallel. RC-group-wide operations like merge or batched creation take
+	 * the group lock exclusively to exclude all record operations. Reads of
+	 * records take no lock as DiskMap is safe for concurrent reads; records
+	 * stored in DiskMap are never mutated in place, so reads return copies
+	 * that writers modify and put back. Lock order is stringLocker, group
+	 * lock, stripe. */
+	private static final int NUM_RECORD_LOCK_STRIPES = 256;
+	private final ReentrantLock[] recordLocks = new ReentrantLock[NUM_RECORD_LOCK_STRIPES];
+	{
+		for (int i = 0; i < this.recordLocks.length; i++)
+			this.recordLocks[i] = new ReentrantLock();
+	}
+	private final ReentrantReadWriteLock groupLock = new ReentrantReadWriteLock();
+
 	private ScheduledExecutorService executor;
 	Future<?> checkpointServerFuture = null;
 
@@ -246,6 +266,13 @@ public class SQLReconfiguratorDB<NodeIDType> extends
 					throws IOException {
 				return SQLReconfiguratorDB.this.getReconfigurationRecordDB(key);
 			}
+
+			@Override
+			public Map<String, ReconfigurationRecord<NodeIDType>> restore(
+					Set<String> keys) throws IOException {
+				return SQLReconfiguratorDB.this
+						.getReconfigurationRecordsDB(keys);
+			}
 		}
 				: null;
 		initialize(true);
@@ -427,14 +454,84 @@ public class SQLReconfiguratorDB<NodeIDType> extends
 	/******************** Start of overridden methods *********************/
 
 	@Override
-	public synchronized ReconfigurationRecord<NodeIDType> getReconfigurationRecord(
+	public ReconfigurationRecord<NodeIDType> getReconfigurationRecord(
 			String name) {
 		if (USE_DISK_MAP)
-			return this.rcRecords.get(name);
+			return copy(this.rcRecords.get(name));
 		else
 			return this.getReconfigurationRecordDB(name);
 	}
 
+	@Override
+	public Map<String, ReconfigurationRecord<NodeIDType>> getReconfigurationRecords(
+			Set<String> names) {
+		if (USE_DISK_MAP) {
+			Map<String, ReconfigurationRecord<NodeIDType>> records = this.rcRecords
+					.getAll(names);
+			for (Map.Entry<String, ReconfigurationRecord<NodeIDType>> entry : records
+					.entrySet())
+				entry.setValue(copy(entry.getValue()));
+			return records;
+		} else
+			return this.getReconfigurationRecordsDB(names);
+	}
+
+	private static <NodeIDType> ReconfigurationRecord<NodeIDType> copy(
+			ReconfigurationRecord<NodeIDType> record) {
+		return record != null ? new ReconfigurationRecord<NodeIDType>(record)
+				: null;
+	}
+
+	// max bind variables per select in getReconfigurationRecordsDB
+	private static final int MAX_SELECT_IN_SIZE = 1000;
+
+	private Map<String, ReconfigurationRecord<NodeIDType>> getReconfigurationRecordsDB(
+			Set<String> names) {
+		long t0 = System.currentTimeMillis();
+		Map<String, ReconfigurationRecord<NodeIDType>> records = new HashMap<String, ReconfigurationRecord<NodeIDType>>();
+		PreparedStatement pstmt = null;
+		ResultSet recordRS = null;
+		Connection conn = null;
+		try {
+			conn = this.getDefaultConn();
+			Iterator<String> nameIter = names.iterator();
+			while (nameIter.hasNext()) {
+				List<String> chunk = new ArrayList<String>();
+				while (nameIter.hasNext() && chunk.size() < MAX_SELECT_IN_SIZE)
+					chunk.add(nameIter.next());
+				StringBuilder cmd = new StringBuilder("select "
+						+ Columns.SERVICE_NAME.toString() + ", "
+						+ Columns.STRINGIFIED_RECORD.toString() + " from "
+						+ getRCRecordTable() + " where "
+						+ Columns.SERVICE_NAME.toString() + " in (");
+				for (int i = 0; i < chunk.size(); i++)
+					cmd.append(i > 0 ? ",?" : "?");
+				pstmt = conn.prepareStatement(cmd.append(")").toString());
+				for (int i = 0; i < chunk.size(); i++)
+					pstmt.setString(i + 1, chunk.get(i));
+				recordRS = pstmt.executeQuery();
+				while (recordRS.next())
+					records.put(recordRS.getString(1),
+							new ReconfigurationRecord<NodeIDType>(
+									new JSONObject(recordRS.getString(2)),
+									this.consistentNodeConfig));
+				cleanup(pstmt, recordRS);
+				pstmt = null;
+				recordRS = null;
+			}
+		} catch (SQLException | JSONException e) {
+			log.severe((e instanceof SQLException ? "SQL" : "JSON")
+					+ "Exception while getting RC records for "
+					+ names.size() + " names:");
+			e.printStackTrace();
+		} finally {
+			cleanup(pstmt, recordRS);
+			cleanup(conn);
+		}
+		DelayProfiler.updateDelay("getrcrecords", t0);
+		return records;
+	}
+
 	private ReconfigurationRecord<NodeIDType> getReconfigurationRecordDB(
 			String name) {
 		long t0 = System.currentTimeMillis();
@@ -505,8 +602,91 @@ public class SQLReconfiguratorDB<NodeIDType> extends
 		return true;
 	}
 
+	/* Batched counterpart of updateDemandStats above. Rows are first
+	 * batch-updated and only names for which the update matched no row are
+	 * then batch-inserted, so historic stats need to be read only if they are
+	 * to be combined with the update. */
+	@Override
+	public synchronized boolean updateDemandStats(
+			BatchedDemandReport<NodeIDType> batch) {
+		List<DemandReport<NodeIDType>> reports = batch.getDemandReports();
+		String insertCmd = "insert into " + getDemandTable() + " ("
+				+ Columns.DEMAND_PROFILE.toString() + ", "
+				+ Columns.SERVICE_NAME.toString() + " ) values (?,?)";
+		String updateCmd = "update " + getDemandTable() + " set "
+				+ Columns.DEMAND_PROFILE.toString() + "=? where "
+				+ Columns.SERVICE_NAME.toString() + "=?";
+		Map<String, String> combined = new HashMap<String, String>();
+		for (DemandReport<NodeIDType> report : reports) {
+			JSONObject historic = shouldCombineStats() ? getDemandStatsJSON(report
+					.getServiceName()) : null;
+			combined.put(report.getServiceName(), (historic != null ? combineStats(
+					historic, report.getStats()) : report.getStats()).toString());
+		}
+
+		PreparedStatement updateCP = null, insertCP = null;
+		Connection conn = null;
+		String cmd = updateCmd;
+		boolean updated = false;
+		try {
+			conn = this.getDefaultConn();
+			conn.setAutoCommit(false);
+			updateCP = conn.prepareStatement(updateCmd);
+			List<String> toInsert = new ArrayList<String>();
+			List<String> names = new ArrayList<String>(combined.keySet());
+			for (int i = 0; i < names.size(); i++) {
+				this.setDemandStats(updateCP, combined.get(names.get(i)),
+						names.get(i));
+				if ((i + 1) % MAX_DB_BATCH_SIZE == 0 || (i + 1) == names.size()) {
+					int[] executed = updateCP.executeBatch();
+					updateCP.clearBatch();
+					// executed[j] corresponds to names[i+1-executed.length+j]
+					for (int j = 0; j < executed.length; j++)
+						if (executed[j] == 0)
+							toInsert.add(names.get(i + 1 - executed.length + j));
+				}
+			}
+			if (!toInsert.isEmpty()) {
+				cmd = insertCmd;
+				insertCP = conn.prepareStatement(insertCmd);
+				for (int i = 0; i < toInsert.size(); i++) {
+					this.setDemandStats(insertCP,
+							combined.get(toInsert.get(i)), toInsert.get(i));
+					if ((i + 1) % MAX_DB_BATCH_SIZE == 0
+							|| (i + 1) == toInsert.size()) {
+						insertCP.executeBatch();
+						insertCP.clearBatch();
+					}
+				}
+			}
+			conn.commit();
+			updated = true;
+			log.log(Level.FINE,
+					"{0} batch-updated demand stats for {1} names ({2} new)",
+					new Object[] { this, combined.size(), toInsert.size() });
+		} catch (SQLException sqle) {
+			log.severe("SQLException while batch-updating stats using " + cmd);
+			sqle.printStackTrace();
+		} finally {
+			cleanup(updateCP);
+			cleanup(insertCP);
+			cleanup(conn);
+		}
+		return updated;
+	}
+
+	private void setDemandStats(PreparedStatement pstmt, String stats,
+			String name) throws SQLException {
+		if (DEMAND_PROFILE_CLOB_OPTION)
+			pstmt.setClob(1, new StringReader(stats));
+		else
+			pstmt.setString(1, stats);
+		pstmt.setString(2, name);
+		pstmt.addBatch();
+	}
+
 	@Override
-	public synchronized boolean setState(String name, int epoch,
+	public boolean setState(String name, int epoch,
 			ReconfigurationRecord.RCStates state) {
 		return this.setStateMerge(name, epoch, state, null, null);
 	}
@@ -516,7 +696,18 @@ public class SQLReconfiguratorDB<NodeIDType> extends
 	 * READY usually to WAIT_ACK_STOP. */
 
 	@Override
-	public synchronized boolean setStateMerge(String name, int epoch,
+	public boolean setStateMerge(String name, int epoch,
+			ReconfigurationRecord.RCStates state, Set<NodeIDType> newActives,
+			Set<String> mergees) {
+		this.lockRecord(name);
+		try {
+			return this.setStateMergeLocked(name, epoch, state, newActives, mergees);
+		} finally {
+			this.unlockRecord(name);
+		}
+	}
+
+	private boolean setStateMergeLocked(String name, int epoch,
 			ReconfigurationRecord.RCStates state, Set<NodeIDType> newActives,
 			Set<String> mergees) {
 		ReconfigurationRecord<NodeIDType> record = this
@@ -601,7 +792,17 @@ public class SQLReconfiguratorDB<NodeIDType> extends
 	 * only be changed to WAIT_ACK_STOP. The epoch argument must also match the
 	 * current epoch number. */
 	@Override
-	public synchronized boolean setStateInitReconfiguration(String name,
+	public boolean setStateInitReconfiguration(String name,
+			int epoch, RCStates state, Set<NodeIDType> newActives) {
+		this.lockRecord(name);
+		try {
+			return this.setStateInitReconfigurationLocked(name, epoch, state, newActives);
+		} finally {
+			this.unlockRecord(name);
+		}
+	}
+
+	private boolean setStateInitReconfigurationLocked(String name,
 			int epoch, RCStates state, Set<NodeIDType> newActives) {
 		ReconfigurationRecord<NodeIDType> record = this
 				.getReconfigurationRecord(name);
@@ -635,20 +836,43 @@ public class SQLReconfiguratorDB<NodeIDType> extends
 	private static final boolean USE_DISK_MAP = Config
 			.getGlobalBoolean(RC.USE_DISK_MAP_RCDB);
 
-	private synchronized void putReconfigurationRecord(
+	private ReentrantLock getRecordLock(String name) {
+		int h = name.hashCode();
+		return this.recordLocks[(h ^ (h >>> 16)) & (NUM_RECORD_LOCK_STRIPES - 1)];
+	}
+
+	private void lockRecord(String name) {
+		this.groupLock.readLock().lock();
+		this.getRecordLock(name).lock();
+	}
+
+	private void unlockRecord(String name) {
+		this.getRecordLock(name).unlock();
+		this.groupLock.readLock().unlock();
+	}
+
+	private void lockGroup() {
+		this.groupLock.writeLock().lock();
+	}
+
+	private void unlockGroup() {
+		this.groupLock.writeLock().unlock();
+	}
+
+	private void putReconfigurationRecord(
 			ReconfigurationRecord<NodeIDType> rcRecord) {
 		if (USE_DISK_MAP)
-			this.rcRecords.put(rcRecord.getName(), rcRecord);
+			this.rcRecords.put(rcRecord.getName(), copy(rcRecord));
 		else
 			this.putReconfigurationRecordDB(rcRecord,
 					this.getRCGroupName(rcRecord.getName()));
 	}
 
-	private synchronized void putReconfigurationRecord(
+	private void putReconfigurationRecord(
 			ReconfigurationRecord<NodeIDType> rcRecord, String rcGroupName) {
 		if (USE_DISK_MAP) {
 			this.rcRecords.put(rcRecord.getName(),
-					rcRecord.setRCGroupName(rcGroupName));
+					copy(rcRecord.setRCGroupName(rcGroupName)));
 		} else
 			this.putReconfigurationRecordDB(rcRecord, rcGroupName);
 	}
@@ -726,10 +950,20 @@ public class SQLReconfiguratorDB<NodeIDType> extends
 	}
 
 	/* Should put RC records only for non-RC group names. */
-	private synchronized boolean putReconfigurationRecordIfNotName(
+	private boolean putReconfigurationRecordIfNotName(
 			ReconfigurationRecord<NodeIDType> record, String rcGroupName,
 			String mergee) {
+		this.lockRecord(record.getName());
+		try {
+			return this.putReconfigurationRecordIfNotNameLocked(record, rcGroupName, mergee);
+		} finally {
+			this.unlockRecord(record.getName());
+		}
+	}
 
+	private boolean putReconfigurationRecordIfNotNameLocked(
+			ReconfigurationRecord<NodeIDType> record, String rcGroupName,
+			String mergee) {
 		// if RC group record, it must match rcGroupName
 		if (this.isRCGroupName(record.getName())
 				&& !record.getName().equals(rcGroupName))
@@ -749,7 +983,17 @@ public class SQLReconfiguratorDB<NodeIDType> extends
 	}
 
 	@Override
-	public synchronized boolean deleteReconfigurationRecord(String name,
+	public boolean deleteReconfigurationRecord(String name,
+			int epoch) {
+		this.lockRecord(name);
+		try {
+			return this.deleteReconfigurationRecordLocked(name, epoch);
+		} finally {
+			this.unlockRecord(name);
+		}
+	}
+
+	private boolean deleteReconfigurationRecordLocked(String name,
 			int epoch) {
 		if (USE_DISK_MAP) {
 			ReconfigurationRecord<NodeIDType> record = this
@@ -786,7 +1030,17 @@ public class SQLReconfiguratorDB<NodeIDType> extends
 	}
 
 	@Override
-	public synchronized boolean markDeleteReconfigurationRecord(String name,
+	public boolean markDeleteReconfigurationRecord(String name,
+			int epoch) {
+		this.lockRecord(name);
+		try {
+			return this.markDeleteReconfigurationRecordLocked(name, epoch);
+		} finally {
+			this.unlockRecord(name);
+		}
+	}
+
+	private boolean markDeleteReconfigurationRecordLocked(String name,
 			int epoch) {
 		ReconfigurationRecord<NodeIDType> record = this
 				.getReconfigurationRecord(name);
@@ -810,7 +1064,17 @@ public class SQLReconfiguratorDB<NodeIDType> extends
 
 	// This also sets newActives
 	@Override
-	public synchronized ReconfigurationRecord<NodeIDType> createReconfigurationRecord(
+	public ReconfigurationRecord<NodeIDType> createReconfigurationRecord(
+			ReconfigurationRecord<NodeIDType> record) {
+		this.lockRecord(record.getName());
+		try {
+			return this.createReconfigurationRecordLocked(record);
+		} finally {
+			this.unlockRecord(record.getName());
+		}
+	}
+
+	private ReconfigurationRecord<NodeIDType> createReconfigurationRecordLocked(
 			ReconfigurationRecord<NodeIDType> record) {
 		if (this.getReconfigurationRecord(record.getName()) != null)
 			return null;
@@ -2472,16 +2736,17 @@ public class SQLReconfiguratorDB<NodeIDType> extends
 		return added;
 	}
 
-	/* The double synchronized is because we need to synchronize over "this" to
-	 * perform testAndSet checks over record, but we have to do that after,
-	 * never before, stringLocker lock. The stringLocker lock is so that we
-	 * don't have to lock all records in order to just synchronize a single
-	 * group's getState or updateState. */
+	/* The double locking is because we need the group lock to perform
+	 * testAndSet checks over record, but we have to do that after, never
+	 * before, stringLocker lock. The stringLocker lock is so that we don't
+	 * have to lock all records in order to just synchronize a single group's
+	 * getState or updateState. */
 	@Override
 	public boolean mergeState(String rcGroupName, int epoch, String mergee,
 			int mergeeEpoch, String state) {
 		synchronized (this.stringLocker.get(rcGroupName)) {
-			synchronized (this) {
+			this.lockGroup();
+			try {
 				ReconfigurationRecord<NodeIDType> record = this
 						.getReconfigurationRecord(rcGroupName);
 
@@ -2503,6 +2768,8 @@ public class SQLReconfiguratorDB<NodeIDType> extends
 					this.setPending(rcGroupName, false, true);
 				// paxos will still always see a true return value
 				return record.hasBeenMerged(mergee);
+			} finally {
+				this.unlockGroup();
 			}
 		}
 	}
@@ -2524,7 +2791,16 @@ public class SQLReconfiguratorDB<NodeIDType> extends
 	}
 
 	@Override
-	public synchronized void clearMerged(String rcGroupName, int epoch) {
+	public void clearMerged(String rcGroupName, int epoch) {
+		this.lockRecord(rcGroupName);
+		try {
+			this.clearMergedLocked(rcGroupName, epoch);
+		} finally {
+			this.unlockRecord(rcGroupName);
+		}
+	}
+
+	private void clearMergedLocked(String rcGroupName, int epoch) {
 		ReconfigurationRecord<NodeIDType> record = this
 				.getReconfigurationRecord(rcGroupName, epoch);
 		if (record == null)
@@ -2538,11 +2814,25 @@ public class SQLReconfiguratorDB<NodeIDType> extends
 		if (!ncRecord.getName().equals(
 				AbstractReconfiguratorDB.RecordNames.RC_NODES.toString()))
 			return;
-		this.putReconfigurationRecord(ncRecord);
+		this.lockRecord(ncRecord.getName());
+		try {
+			this.putReconfigurationRecord(ncRecord);
+		} finally {
+			this.unlockRecord(ncRecord.getName());
+		}
 	}
 
 	@Override
 	public boolean mergeIntent(String name, int epoch, String mergee) {
+		this.lockRecord(name);
+		try {
+			return this.mergeIntentLocked(name, epoch, mergee);
+		} finally {
+			this.unlockRecord(name);
+		}
+	}
+
+	private boolean mergeIntentLocked(String name, int epoch, String mergee) {
 		ReconfigurationRecord<NodeIDType> record = this
 				.getReconfigurationRecord(name);
 		boolean added = record.addToMerge(mergee);
@@ -2591,27 +2881,38 @@ public class SQLReconfiguratorDB<NodeIDType> extends
 	}
 
 	@Override
-	public synchronized boolean createReconfigurationRecords(
+	public boolean createReconfigurationRecords(
+			Map<String, String> nameStates, Set<NodeIDType> newActives, ReconfigurationConfig.ReconfigureUponActivesChange policy) {
+		this.lockGroup();
+		try {
+			return this.createReconfigurationRecordsLocked(nameStates, newActives, policy);
+		} finally {
+			this.unlockGroup();
+		}
+	}
+
+	private boolean createReconfigurationRecordsLocked(
 			Map<String, String> nameStates, Set<NodeIDType> newActives, ReconfigurationConfig.ReconfigureUponActivesChange policy) {
 		if (USE_DISK_MAP) {
-			boolean insertedAll = true;
 			Set<String> inserted = new HashSet<String>();
-			for (String name : nameStates.keySet())
+			for (String name : nameStates.keySet()) {
+				/* Existing records must neither be overwritten nor rolled
+				 * back. The group lock makes the check atomic. */
+				if (this.rcRecords.containsKey(name)) {
+					// rollback
+					for (String inName : inserted)
+						this.deleteReconfigurationRecord(inName, 0);
+					return false;
+				}
 				/* We just directly initialize with WAIT_ACK_STOP:-1 instead of
 				 * starting with READY:-1 and pretending to go through the whole
 				 * reconfiguration protocol sequence. */
-				if (insertedAll = insertedAll
-						&& (this.rcRecords.put(name,
-								new ReconfigurationRecord<NodeIDType>(name, -1,
-										newActives, policy).setState(name, -1,
-										RCStates.WAIT_ACK_STOP)) == null))
-					inserted.add(name);
-
-			if (!insertedAll)
-				// rollback
-				for (String name : nameStates.keySet())
-					this.deleteReconfigurationRecord(name, 0);
-			return insertedAll;
+				this.rcRecords.put(name, new ReconfigurationRecord<NodeIDType>(
+						name, -1, newActives, policy).setState(name, -1,
+						RCStates.WAIT_ACK_STOP));
+				inserted.add(name);
+			}
+			return true;
 		} else
 			return this.createReconfigurationRecordsDB(nameStates, newActives);
 	}
@@ -2655,8 +2956,7 @@ public class SQLReconfiguratorDB<NodeIDType> extends
 				insertRC.addBatch();
 				batch.add(name);
 				i++;
-				if ((i + 1) % MAX_DB_BATCH_SIZE == 0
-						|| (i + 1) == nameStates.size()) {
+				if (i % MAX_DB_BATCH_SIZE == 0 || i == nameStates.size()) {
 					int[] executed = insertRC.executeBatch();
 					conn.commit();
 					insertRC.clearBatch();
@@ -2667,7 +2967,7 @@ public class SQLReconfiguratorDB<NodeIDType> extends
 					if (insertedAll)
 						log.log(Level.FINE,
 								"{0} successfully logged the last {1} messages in {2} ms",
-								new Object[] { this, (i + 1),
+								new Object[] { this, i,
 										(System.currentTimeMillis() - t1) });
 					t1 = System.currentTimeMillis();
 				}
@@ -2704,14 +3004,20 @@ public class SQLReconfiguratorDB<NodeIDType> extends
 			RCStates state, Set<NodeIDType> newActives) {
 		if (USE_DISK_MAP) {
 			for (String name : nameStates.keySet()) {
-				ReconfigurationRecord<NodeIDType> record = this.rcRecords
-						.get(name);
-				assert (record != null && record.getUnclean() == 0);
-				/* setStateMerge will print INFO logs and invoke the setPending
-				 * DB call that is unnecessary overhead for batch creates. */
-				// this.setStateMerge(name, epoch, state, null);
-				record.setState(name, epoch, state).setActivesToNewActives();
-				this.putReconfigurationRecord(record);
+				this.lockRecord(name);
+				try {
+					ReconfigurationRecord<NodeIDType> record = this
+							.getReconfigurationRecord(name);
+					assert (record != null && record.getUnclean() == 0);
+					/* setStateMerge will print INFO logs and invoke the
+					 * setPending DB call that is unnecessary overhead for
+					 * batch creates. */
+					// this.setStateMerge(name, epoch, state, null);
+					record.setState(name, epoch, state).setActivesToNewActives();
+					this.putReconfigurationRecord(record);
+				} finally {
+					this.unlockRecord(name);
+				}
 			}
 			return true;
 		} else
@@ -2754,8 +3060,7 @@ public class SQLReconfiguratorDB<NodeIDType> extends
 				updateRC.setString(3, name);
 				updateRC.addBatch();
 				i++;
-				if ((i + 1) % MAX_DB_BATCH_SIZE == 0
-						|| (i + 1) == nameStates.size()) {
+				if (i % MAX_DB_BATCH_SIZE == 0 || i == nameStates.size()) {
 					int[] executed = updateRC.executeBatch();
 					conn.commit();
 					updateRC.clearBatch();
@@ -2764,7 +3069,7 @@ public class SQLReconfiguratorDB<NodeIDType> extends
 					if (updatedAll)
 						log.log(Level.FINE,
 								"{0} successfully logged the last {1} messages in {2} ms",
-								new Object[] { this, (i + 1),
+								new Object[] { this, i,
 										(System.currentTimeMillis() - t1) });
 					t1 = System.currentTimeMillis();
 				}
@@ -0,0 +1,221 @@
+package edu.umass.cs.reconfiguration.http;
+
+import static io.netty.handler.codec.http.HttpResponseStatus.NOT_FOUND;
+import static io.netty.handler.codec.http.HttpResponseStatus.OK;
+import static io.netty.handler.codec.http.HttpVersion.HTTP_1_1;
+import edu.umass.cs.gigapaxos.paxosutil.RequestTracer;
+import edu.umass.cs.reconfiguration.ReconfigurationConfig;
+import edu.umass.cs.utils.Metrics;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpRequestDecoder;
+import io.netty.handler.codec.http.HttpResponseEncoder;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.QueryStringDecoder;
+import io.netty.util.CharsetUtil;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * @author arun
+ *
+ *         An HTTP server for active replicas that serves {@link Metrics} in
+ *         the Prometheus text format at {@link #METRICS_PATH} and sampled
+ *         request traces recorded by {@link RequestTracer} at
+ *         {@link #TRACES_PATH}. Reconfigurators serve the same paths from
+ *         {@link HttpReconfigurator}.
+ *
+ *         Responses are rendered from the latest metrics snapshot, so scraping
+ *         never takes locks on request processing paths.
+ */
+public class HttpMetricsServer {
+
+	/**
+	 * The URI path at which metrics are served.
+	 */
+	public static final String METRICS_PATH = "/metrics";
+
+	/**
+	 * The URI path at which request traces are served.
+	 */
+	public static final String TRACES_PATH = "/traces";
+
+	/**
+	 * Content type of the Prometheus text exposition format.
+	 */
+	public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=UTF-8";
+
+	private static final Set<HttpMetricsServer> instances = new HashSet<HttpMetricsServer>();
+
+	private static final Logger log = ReconfigurationConfig.getLogger();
+
+	private final EventLoopGroup bossGroup;
+	private final EventLoopGroup workerGroup;
+
+	private final Channel channel;
+
+	private final String node;
+
+	/**
+	 * Binds and returns without waiting for the server to close.
+	 *
+	 * @param node
+	 * @param sockAddr
+	 * @throws InterruptedException
+	 */
+	public HttpMetricsServer(Object node, InetSocketAddress sockAddr)
+			throws InterruptedException {
+		this.node = node.toString();
+		bossGroup = new NioEventLoopGroup(1);
+		workerGroup = new NioEventLoopGroup(1);
+		try {
+			ServerBootstrap b = new ServerBootstrap();
+			b.group(bossGroup, workerGroup)
+					.channel(NioServerSocketChannel.class)
+					.childHandler(new ChannelInitializer<SocketChannel>() {
+						@Override
+						protected void initChannel(SocketChannel ch) {
+							ChannelPipeline p = ch.pipeline();
+							p.addLast(new HttpRequestDecoder());
+							p.addLast(new HttpObjectAggregator(65536));
+							p.addLast(new HttpResponseEncoder());
+							p.addLast(new HttpMetricsHandler());
+						}
+					});
+			channel = b.bind(sockAddr).sync().channel();
+		} catch (Exception e) {
+			bossGroup.shutdownGracefully();
+			workerGroup.shutdownGracefully();
+			throw e;
+		}
+		synchronized (instances) {
+			instances.add(this);
+		}
+		log.log(Level.INFO, "{0} ready", new Object[] { this });
+	}
+
+	public String toString() {
+		return this.node + ":HTTP:" + this.channel.localAddress().toString();
+	}
+
+	/**
+	 * @return Local socket address.
+	 */
+	public SocketAddress getListeningAddress() {
+		return this.channel.localAddress();
+	}
+
+	/**
+	 * Close server and workers gracefully.
+	 */
+	public void close() {
+		this.bossGroup.shutdownGracefully();
+		this.workerGroup.shutdownGracefully();
+		synchronized (instances) {
+			instances.remove(this);
+		}
+	}
+
+	/**
+	 * To close all instances.
+	 */
+	public static void closeAll() {
+		HttpMetricsServer[] servers;
+		synchronized (instances) {
+			servers = instances.toArray(new HttpMetricsServer[0]);
+		}
+		for (HttpMetricsServer server : servers)
+			try {
+				server.close();
+			} catch (Exception | Error e) {
+				// ignore and try to close rest
+			}
+	}
+
+	/**
+	 * @param uri
+	 * @return True if {@code uri} is a metrics or traces request.
+	 */
+	public static boolean isMetricsRequest(String uri) {
+		String path = new QueryStringDecoder(uri).path();
+		return path.equals(METRICS_PATH) || path.equals(TRACES_PATH);
+	}
+
+	/**
+	 * @param uri
+	 * @param keepAlive
+	 * @return Response with recorded traces if {@code uri} is a traces request
+	 *         and with the latest metrics snapshot otherwise.
+	 */
+	public static FullHttpResponse getMetricsResponse(String uri,
+			boolean keepAlive) {
+		boolean traces = new QueryStringDecoder(uri).path().equals(TRACES_PATH);
+		FullHttpResponse response = new DefaultFullHttpResponse(HTTP_1_1, OK,
+				Unpooled.copiedBuffer(traces ? RequestTracer.getTraces()
+						: Metrics.getPrometheusStats(), CharsetUtil.UTF_8));
+		response.headers().set(HttpHeaderNames.CONTENT_TYPE,
+				traces ? "text/plain; charset=UTF-8" : CONTENT_TYPE);
+		response.headers().setInt(HttpHeaderNames.CONTENT_LENGTH,
+				response.content().readableBytes());
+		if (keepAlive)
+			response.headers().set(HttpHeaderNames.CONNECTION,
+					HttpHeaderValues.KEEP_ALIVE);
+		return response;
+	}
+
+	static class HttpMetricsHandler extends
+			SimpleChannelInboundHandler<FullHttpRequest> {
+
+		@Override
+		protected void channelRead0(ChannelHandlerContext ctx,
+				FullHttpRequest request) {
+			boolean keepAlive = HttpUtil.isKeepAlive(request);
+			FullHttpResponse response;
+			if (isMetricsRequest(request.uri()))
+				response = getMetricsResponse(request.uri(), keepAlive);
+			else {
+				response = new DefaultFullHttpResponse(HTTP_1_1, NOT_FOUND,
+						Unpooled.copiedBuffer("Only " + METRICS_PATH + " and "
+								+ TRACES_PATH + " are served here\r\n",
+								CharsetUtil.UTF_8));
+				response.headers().set(HttpHeaderNames.CONTENT_TYPE,
+						"text/plain; charset=UTF-8");
+				response.headers().setInt(HttpHeaderNames.CONTENT_LENGTH,
+						response.content().readableBytes());
+			}
+			if (keepAlive)
+				ctx.writeAndFlush(response);
+			else
+				ctx.writeAndFlush(response).addListener(
+						ChannelFutureListener.CLOSE);
+		}
+
+		@Override
+		public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+			log.log(Level.FINE, "{0} closing channel after {1}", new Object[] {
+					HttpMetricsServer.class.getSimpleName(), cause });
+			ctx.close();
+		}
+	}
+}
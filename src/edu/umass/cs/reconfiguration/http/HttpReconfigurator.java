@@ -69,7 +69,9 @@ import edu.umass.cs.reconfiguration.reconfigurationpackets.RequestActiveReplicas
  * @author arun
  * 
  *         An HTTP front-end for a reconfigurator that supports the create,
- *         delete, and request active replicas operations.
+ *         delete, and request active replicas operations. Metrics and traces
+ *         are served at {@link HttpMetricsServer#METRICS_PATH} and
+ *         {@link HttpMetricsServer#TRACES_PATH} respectively.
  * 
  *         Requests are encoded in URIs using
  * 
@@ -431,6 +433,20 @@ public class HttpReconfigurator {
 
 		@Override
 		protected void channelRead0(ChannelHandlerContext ctx, Object msg) {
+			// metrics and traces are served without parsing a request
+			if (msg instanceof HttpRequest
+					&& HttpMetricsServer.isMetricsRequest(((HttpRequest) msg)
+							.uri())) {
+				String uri = ((HttpRequest) msg).uri();
+				boolean keepAlive = HttpUtil.isKeepAlive((HttpRequest) msg);
+				if (keepAlive)
+					ctx.write(HttpMetricsServer.getMetricsResponse(uri,
+							keepAlive));
+				else
+					ctx.write(HttpMetricsServer.getMetricsResponse(uri,
+							keepAlive)).addListener(ChannelFutureListener.CLOSE);
+				return;
+			}
 			if (msg instanceof HttpRequest) {
 				HttpRequest request = this.request = (HttpRequest) msg;
 				buf.setLength(0);
@@ -21,6 +21,7 @@ import java.net.InetSocketAddress;
 import java.util.Map;
 import java.util.Set;
 
+import edu.umass.cs.reconfiguration.reconfigurationpackets.BatchedDemandReport;
 import edu.umass.cs.reconfiguration.reconfigurationpackets.DemandReport;
 import edu.umass.cs.reconfiguration.reconfigurationutils.ReconfigurationRecord;
 import edu.umass.cs.reconfiguration.ReconfigurationConfig.ReconfigureUponActivesChange;
@@ -40,6 +41,16 @@ public interface ReconfiguratorDB<NodeIDType> {
 	public ReconfigurationRecord<NodeIDType> getReconfigurationRecord(
 			String name);
 
+	/**
+	 * Bulk version of {@link #getReconfigurationRecord(String)}.
+	 * 
+	 * @param names
+	 * @return Map of name to ReconfigurationRecord for names in
+	 *         {@code names} that have a record.
+	 */
+	public Map<String, ReconfigurationRecord<NodeIDType>> getReconfigurationRecords(
+			Set<String> names);
+
 	/**
 	 * @param record
 	 * @return ReconfigurationRecord created.
@@ -79,6 +90,15 @@ public interface ReconfiguratorDB<NodeIDType> {
 	 */
 	public boolean updateDemandStats(DemandReport<NodeIDType> report);
 
+	/**
+	 * Update demand statistics for all names in {@code batch}, ideally with a
+	 * single batched write.
+	 * 
+	 * @param batch
+	 * @return True if updated successfully.
+	 */
+	public boolean updateDemandStats(BatchedDemandReport<NodeIDType> batch);
+
 	/**
 	 * @param name
 	 * @return Demand statistics as JSON string.
@@ -0,0 +1,307 @@
+/*
+ * Copyright (c) 2015 University of Massachusetts
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * 
+ * Initial developer(s): V. Arun
+ */
+package edu.umass.cs.reconfiguration.reconfigurationpackets;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import edu.umass.cs.gigapaxos.PaxosConfig.PC;
+import edu.umass.cs.nio.interfaces.IntegerPacketType;
+import edu.umass.cs.nio.interfaces.Stringifiable;
+import edu.umass.cs.reconfiguration.interfaces.ReplicableRequest;
+import edu.umass.cs.utils.Config;
+
+/**
+ * @author arun
+ * @param <NodeIDType>
+ * 
+ *            Demand reports for many names in a single packet. The names,
+ *            epochs, and stats are packed into a binary payload in which each
+ *            stats key is written once per batch and referenced by index, and
+ *            numeric and string stats values are written in binary. With
+ *            byteification, {@link #toBytes()} sends the payload as raw bytes
+ *            after the packet type and initiator. The JSON form, used when
+ *            the batch is coordinated or byteification is disabled, carries
+ *            the same payload base64-encoded.
+ */
+public class BatchedDemandReport<NodeIDType> extends
+		BasicReconfigurationPacket<NodeIDType> implements ReplicableRequest {
+	private enum Keys {
+		BATCH
+	};
+
+	private static final boolean BYTEIFICATION = Config
+			.getGlobalBoolean(PC.BYTEIFICATION);
+
+	// stats value tags
+	private static final byte INT = 0;
+	private static final byte LONG = 1;
+	private static final byte DOUBLE = 2;
+	private static final byte STRING = 3;
+	// string value equal to the reported name
+	private static final byte NAME = 4;
+	// anything else as JSON text
+	private static final byte TEXT = 5;
+
+	private final String[] names;
+	private final int[] epochs;
+	private final JSONObject[] stats;
+
+	/**
+	 * @param initiator
+	 * @param reports
+	 *            Must be non-empty.
+	 */
+	public BatchedDemandReport(NodeIDType initiator,
+			Collection<DemandReport<NodeIDType>> reports) {
+		super(initiator, ReconfigurationPacket.PacketType.BATCHED_DEMAND_REPORT,
+				reports.iterator().next().getServiceName(), 0);
+		this.names = new String[reports.size()];
+		this.epochs = new int[reports.size()];
+		this.stats = new JSONObject[reports.size()];
+		int i = 0;
+		for (DemandReport<NodeIDType> report : reports) {
+			this.names[i] = report.getServiceName();
+			this.epochs[i] = report.getEpochNumber();
+			this.stats[i++] = report.getStats();
+		}
+	}
+
+	/**
+	 * @param json
+	 * @param unstringer
+	 * @throws JSONException
+	 */
+	public BatchedDemandReport(JSONObject json,
+			Stringifiable<NodeIDType> unstringer) throws JSONException {
+		super(json, unstringer);
+		byte[] payload = Base64.getDecoder().decode(
+				json.getString(Keys.BATCH.toString()));
+		try {
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+					payload));
+			int size = in.readInt();
+			this.names = new String[size];
+			this.epochs = new int[size];
+			this.stats = new JSONObject[size];
+			readPayload(in, this.names, this.epochs, this.stats);
+		} catch (IOException e) {
+			throw new JSONException(e);
+		}
+	}
+
+	private BatchedDemandReport(NodeIDType initiator, String[] names,
+			int[] epochs, JSONObject[] stats) {
+		super(initiator, ReconfigurationPacket.PacketType.BATCHED_DEMAND_REPORT,
+				names[0], 0);
+		this.names = names;
+		this.epochs = epochs;
+		this.stats = stats;
+	}
+
+	/**
+	 * @param bytes
+	 *            As produced by {@link #toBytes()} with byteification enabled.
+	 * @param unstringer
+	 * @return BatchedDemandReport decoded from {@code bytes}.
+	 * @throws JSONException
+	 */
+	public static <NodeIDType> BatchedDemandReport<NodeIDType> fromBytes(
+			byte[] bytes, Stringifiable<NodeIDType> unstringer)
+			throws JSONException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+				bytes));
+		try {
+			if (in.readInt() != ReconfigurationPacket.PacketType.BATCHED_DEMAND_REPORT
+					.getInt())
+				throw new JSONException("Not a batched demand report");
+			NodeIDType initiator = unstringer.valueOf(in.readUTF());
+			int size = in.readInt();
+			String[] names = new String[size];
+			int[] epochs = new int[size];
+			JSONObject[] stats = new JSONObject[size];
+			readPayload(in, names, epochs, stats);
+			return new BatchedDemandReport<NodeIDType>(initiator, names,
+					epochs, stats);
+		} catch (IOException e) {
+			throw new JSONException(e);
+		}
+	}
+
+	private static void readPayload(DataInputStream in, String[] names,
+			int[] epochs, JSONObject[] stats) throws IOException,
+			JSONException {
+		String[] keys = new String[in.readUnsignedShort()];
+		for (int k = 0; k < keys.length; k++)
+			keys[k] = in.readUTF();
+		for (int i = 0; i < names.length; i++) {
+			names[i] = in.readUTF();
+			epochs[i] = in.readInt();
+			stats[i] = new JSONObject();
+			for (int n = in.readUnsignedShort(); n > 0; n--) {
+				String key = keys[in.readUnsignedShort()];
+				byte tag = in.readByte();
+				if (tag == INT)
+					stats[i].put(key, in.readInt());
+				else if (tag == LONG)
+					stats[i].put(key, in.readLong());
+				else if (tag == DOUBLE)
+					stats[i].put(key, in.readDouble());
+				else if (tag == STRING)
+					stats[i].put(key, in.readUTF());
+				else if (tag == NAME)
+					stats[i].put(key, names[i]);
+				else
+					stats[i].put(key, new JSONArray(in.readUTF()).get(0));
+			}
+		}
+	}
+
+	private void writePayload(DataOutputStream out) throws IOException {
+		out.writeInt(this.names.length);
+		Map<String, Integer> keys = new HashMap<String, Integer>();
+		for (JSONObject json : this.stats)
+			for (Iterator<?> iter = json.keys(); iter.hasNext();) {
+				String key = (String) iter.next();
+				if (!keys.containsKey(key))
+					keys.put(key, keys.size());
+			}
+		String[] keyArray = new String[keys.size()];
+		for (Map.Entry<String, Integer> entry : keys.entrySet())
+			keyArray[entry.getValue()] = entry.getKey();
+		out.writeShort(keyArray.length);
+		for (String key : keyArray)
+			out.writeUTF(key);
+		for (int i = 0; i < this.names.length; i++) {
+			out.writeUTF(this.names[i]);
+			out.writeInt(this.epochs[i]);
+			out.writeShort(this.stats[i].length());
+			for (Iterator<?> iter = this.stats[i].keys(); iter.hasNext();) {
+				String key = (String) iter.next();
+				out.writeShort(keys.get(key));
+				Object value = this.stats[i].opt(key);
+				if (value instanceof Integer) {
+					out.writeByte(INT);
+					out.writeInt((Integer) value);
+				} else if (value instanceof Long) {
+					out.writeByte(LONG);
+					out.writeLong((Long) value);
+				} else if (value instanceof Double) {
+					out.writeByte(DOUBLE);
+					out.writeDouble((Double) value);
+				} else if (value instanceof String
+						&& value.equals(this.names[i]))
+					out.writeByte(NAME);
+				else if (value instanceof String) {
+					out.writeByte(STRING);
+					out.writeUTF((String) value);
+				} else {
+					out.writeByte(TEXT);
+					out.writeUTF(new JSONArray().put(value).toString());
+				}
+			}
+		}
+	}
+
+	public JSONObject toJSONObjectImpl() throws JSONException {
+		JSONObject json = super.toJSONObjectImpl();
+		try {
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			this.writePayload(new DataOutputStream(baos));
+			json.put(Keys.BATCH.toString(),
+					Base64.getEncoder().encodeToString(baos.toByteArray()));
+		} catch (IOException e) {
+			throw new JSONException(e);
+		}
+		return json;
+	}
+
+	@Override
+	public byte[] toBytes() {
+		if (!BYTEIFICATION)
+			return super.toBytes();
+		try {
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(baos);
+			out.writeInt(this.getType().getInt());
+			out.writeUTF(this.getInitiator().toString());
+			this.writePayload(out);
+			return baos.toByteArray();
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	/**
+	 * @return Number of names reported in this batch.
+	 */
+	public int size() {
+		return this.names.length;
+	}
+
+	/**
+	 * @return The batch unpacked into individual demand reports.
+	 */
+	public List<DemandReport<NodeIDType>> getDemandReports() {
+		List<DemandReport<NodeIDType>> reports = new ArrayList<DemandReport<NodeIDType>>();
+		for (int i = 0; i < this.names.length; i++)
+			reports.add(new DemandReport<NodeIDType>(this.getInitiator(),
+					this.names[i], this.epochs[i], this.stats[i]));
+		return reports;
+	}
+
+	@Override
+	public IntegerPacketType getRequestType() {
+		return ReconfigurationPacket.PacketType.BATCHED_DEMAND_REPORT;
+	}
+
+	@Override
+	public boolean needsCoordination() {
+		return false;
+	}
+
+	@Deprecated
+	@Override
+	public void setNeedsCoordination(boolean b) {
+		// do nothing
+	}
+
+	@Override
+	public long getRequestID() {
+		return 0;
+	}
+
+	public String getSummary() {
+		return super.getSummary() + ":|batched|=" + this.names.length;
+	}
+}
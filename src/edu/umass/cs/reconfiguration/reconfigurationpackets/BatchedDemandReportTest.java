@@ -0,0 +1,115 @@
+/* Copyright (c) 2015 University of Massachusetts
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ * Initial developer(s): V. Arun */
+package edu.umass.cs.reconfiguration.reconfigurationpackets;
+
+import edu.umass.cs.nio.nioutils.StringifiableDefault;
+import edu.umass.cs.utils.DefaultTest;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Serialization tests for {@link BatchedDemandReport}.
+ */
+public class BatchedDemandReportTest extends DefaultTest {
+
+    private static List<DemandReport<Integer>> getReports(int n)
+            throws JSONException {
+        List<DemandReport<Integer>> reports = new ArrayList<DemandReport<Integer>>();
+        for (int i = 0; i < n; i++) {
+            JSONObject stats = new JSONObject();
+            stats.put("NAME", "name\u00e9" + i);
+            stats.put("RATE", 0.5 * i);
+            stats.put("NREQS", i);
+            reports.add(new DemandReport<Integer>(4, "name\u00e9" + i, i,
+                    stats));
+        }
+        return reports;
+    }
+
+    /**
+     * A batch survives a JSON round trip with all names, epochs, and stats
+     * intact.
+     *
+     * @throws JSONException
+     */
+    @Test
+    public void testRoundTrip() throws JSONException {
+        List<DemandReport<Integer>> reports = getReports(100);
+        BatchedDemandReport<Integer> batch = new BatchedDemandReport<Integer>(
+                4, reports);
+        BatchedDemandReport<Integer> batch2 = new BatchedDemandReport<Integer>(
+                new JSONObject(batch.toString()),
+                new StringifiableDefault<Integer>(0));
+        Assert.assertEquals(reports.size(), batch2.size());
+        Assert.assertEquals(batch.toString(), batch2.toString());
+        List<DemandReport<Integer>> unpacked = batch2.getDemandReports();
+        for (int i = 0; i < reports.size(); i++) {
+            Assert.assertEquals(reports.get(i).getServiceName(), unpacked
+                    .get(i).getServiceName());
+            Assert.assertEquals(reports.get(i).getEpochNumber(), unpacked
+                    .get(i).getEpochNumber());
+            Assert.assertEquals(reports.get(i).getStats().toString(),
+                    unpacked.get(i).getStats().toString());
+        }
+    }
+
+    /**
+     * A batch survives a raw byte round trip, including stats values that
+     * have no binary tag of their own.
+     *
+     * @throws JSONException
+     */
+    @Test
+    public void testBytesRoundTrip() throws JSONException {
+        List<DemandReport<Integer>> reports = getReports(100);
+        reports.get(0).getStats().put("LONG", Long.MAX_VALUE)
+                .put("FLAG", true).put("NESTED", new JSONObject().put("a", 1));
+        BatchedDemandReport<Integer> batch = new BatchedDemandReport<Integer>(
+                4, reports);
+        byte[] bytes = batch.toBytes();
+        Assert.assertEquals(ReconfigurationPacket.PacketType.BATCHED_DEMAND_REPORT
+                .getInt(), ByteBuffer.wrap(bytes).getInt());
+        BatchedDemandReport<Integer> batch2 = BatchedDemandReport.fromBytes(
+                bytes, new StringifiableDefault<Integer>(0));
+        Assert.assertEquals(batch.toString(), batch2.toString());
+        Assert.assertEquals(4, (int) batch2.getInitiator());
+        Assert.assertEquals(reports.get(0).getStats().toString(), batch2
+                .getDemandReports().get(0).getStats().toString());
+    }
+
+    /**
+     * A batch is much smaller on the wire than the individual reports it
+     * replaces.
+     *
+     * @throws JSONException
+     */
+    @Test
+    public void testCompactness() throws JSONException {
+        List<DemandReport<Integer>> reports = getReports(1000);
+        int individual = 0;
+        for (DemandReport<Integer> report : reports)
+            individual += report.toBytes().length;
+        int batched = new BatchedDemandReport<Integer>(4, reports).toBytes().length;
+        Assert.assertTrue("individual=" + individual + "B batched=" + batched
+                + "B", batched < individual / 3);
+    }
+}
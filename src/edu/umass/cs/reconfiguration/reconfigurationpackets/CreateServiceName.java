@@ -15,20 +15,32 @@
  * Initial developer(s): V. Arun */
 package edu.umass.cs.reconfiguration.reconfigurationpackets;
 
+import edu.umass.cs.gigapaxos.PaxosConfig.PC;
+import edu.umass.cs.nio.AbstractJSONPacketDemultiplexer;
+import edu.umass.cs.nio.MessageNIOTransport;
 import edu.umass.cs.nio.interfaces.Stringifiable;
+import edu.umass.cs.nio.nioutils.NIOHeader;
 import edu.umass.cs.nio.nioutils.StringifiableDefault;
 import edu.umass.cs.reconfiguration.ReconfigurationConfig;
 import edu.umass.cs.reconfiguration.ReconfigurationConfig.ReconfigureUponActivesChange;
 import edu.umass.cs.reconfiguration.reconfigurationpackets.BatchedCreateServiceName.BatchKeys;
+import edu.umass.cs.utils.Config;
 import edu.umass.cs.utils.Util;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
 
@@ -279,11 +291,16 @@ public class CreateServiceName extends ClientReconfigurationPacket {
 	 */
 	public CreateServiceName(JSONObject json, Stringifiable<?> unstringer)
 			throws JSONException {
+		this(json, getNameStateMap(json));
+	}
+
+	private CreateServiceName(JSONObject json, Map<String, String> nameStates)
+			throws JSONException {
 		super(json, CreateServiceName.unstringer); // ignores unstringer
 		// may not be true for String packet demultiplexers
 		// assert (this.getSender() != null);
 		this.initialState = json.optString(Keys.STATE.toString(), null);
-		this.nameStates = getNameStateMap(json);
+		this.nameStates = nameStates;
 		JSONArray jsonArray = json.has(Keys.FAILED_CREATES.toString()) ? json
 				.getJSONArray(Keys.FAILED_CREATES.toString()) : null;
 		if (jsonArray != null && jsonArray.length() > 0) {
@@ -327,6 +344,90 @@ public class CreateServiceName extends ClientReconfigurationPacket {
 		return json;
 	}
 
+	private static final boolean BYTEIFICATION = Config
+			.getGlobalBoolean(PC.BYTEIFICATION);
+
+	/* A batched create carries its name states in binary ahead of the rest of
+	 * the packet in JSON, so that the receiver does not have to parse each
+	 * name and state as a JSON object. The format is [int type][int
+	 * n]{UTF name, int state length or -1 if null, UTF-8 state}*[JSON
+	 * without name states]. Unbatched creates use the default format. */
+	@Override
+	public byte[] toBytes() {
+		if (!BYTEIFICATION || !this.isBatched())
+			return super.toBytes();
+		try {
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(baos);
+			out.writeInt(this.getType().getInt());
+			out.writeInt(this.nameStates.size());
+			for (Map.Entry<String, String> nameState : this.nameStates
+					.entrySet()) {
+				out.writeUTF(nameState.getKey());
+				if (nameState.getValue() == null)
+					out.writeInt(-1);
+				else {
+					byte[] state = nameState.getValue().getBytes(
+							StandardCharsets.UTF_8);
+					out.writeInt(state.length);
+					out.write(state);
+				}
+			}
+			JSONObject json = this.toJSONObject();
+			json.remove(BatchKeys.NAME_STATE_ARRAY.toString());
+			out.write(json.toString().getBytes(
+					MessageNIOTransport.NIO_CHARSET_ENCODING));
+			return baos.toByteArray();
+		} catch (IOException | JSONException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	/**
+	 * Inverse of {@link #toBytes()} for batched creates. Should be used only
+	 * if the bytes following the type are not JSON.
+	 * 
+	 * @param bytes
+	 * @param header
+	 *            If non-null, stamped into the JSON part like for other
+	 *            received packets.
+	 * @return CreateServiceName parsed from {@code bytes}.
+	 * @throws IOException
+	 * @throws JSONException
+	 */
+	public static CreateServiceName fromBytes(byte[] bytes, NIOHeader header)
+			throws IOException, JSONException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+				bytes));
+		in.readInt(); // type
+		int n = in.readInt();
+		// keep the sender's order so that the head name stays the same
+		Map<String, String> nameStates = new LinkedHashMap<String, String>();
+		for (int i = 0; i < n; i++) {
+			String name = in.readUTF();
+			int length = in.readInt();
+			if (length > in.available())
+				throw new IOException("Truncated state of length " + length
+						+ " for " + name);
+			String state = null;
+			if (length >= 0) {
+				state = new String(bytes, bytes.length - in.available(),
+						length, StandardCharsets.UTF_8);
+				in.skipBytes(length);
+			}
+			nameStates.put(name, state);
+		}
+		int offset = bytes.length - in.available();
+		JSONObject json = header != null ? AbstractJSONPacketDemultiplexer
+				.processHeaderStatic(bytes, offset, header, true)
+				: new JSONObject(new String(bytes, offset, bytes.length
+						- offset, MessageNIOTransport.NIO_CHARSET_ENCODING));
+		if (json == null)
+			throw new JSONException("Unable to parse JSON part of batched create");
+		return new CreateServiceName(json, nameStates);
+	}
+
 	/**
 	 * @return True if this is a batched create request or response.
 	 */
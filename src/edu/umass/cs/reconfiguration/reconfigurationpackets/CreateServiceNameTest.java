@@ -73,6 +73,18 @@ public class CreateServiceNameTest {
 			assert (totalSize == numNames);
 			System.out.println(bcreate2.getSummary());
 
+			// batched creates carry name states in binary
+			CreateServiceName bcreate3 = CreateServiceName.fromBytes(
+					bcreate2.toBytes(), null);
+			assert (bcreate3.getNameStates().equals(nameStates));
+			CreateServiceName bcreate4 = new CreateServiceName(
+					bcreate2.toJSONObject());
+			assert (bcreate3.toString().equals(bcreate4.toString())) : "\n"
+					+ bcreate3 + " != \n" + bcreate4;
+			System.out.println("batched create of " + numNames + " names: "
+					+ bcreate2.toBytes().length + "B binary vs "
+					+ bcreate2.toString().length() + "B JSON");
+
 			CreateServiceName c1 = new CreateServiceName("somename",
 					"somestate", new HashSet<InetSocketAddress>(Arrays.asList(
 					new InetSocketAddress(InetAddress
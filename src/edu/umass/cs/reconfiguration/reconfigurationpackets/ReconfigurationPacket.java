@@ -136,6 +136,9 @@ public abstract class ReconfigurationPacket<NodeIDType> extends
 		
 		// client <-> active
 		REPLICABLE_CLIENT_REQUEST (242),
+
+		// active_replica -> reconfigurator
+		BATCHED_DEMAND_REPORT (243), // : batch of DEMAND_REPORTs
 		
 		NO_TYPE (999),
 		
@@ -187,6 +190,8 @@ public abstract class ReconfigurationPacket<NodeIDType> extends
 
 		typeMap.put(ReconfigurationPacket.PacketType.DEMAND_REPORT,
 				DemandReport.class);
+		typeMap.put(ReconfigurationPacket.PacketType.BATCHED_DEMAND_REPORT,
+				BatchedDemandReport.class);
 		typeMap.put(ReconfigurationPacket.PacketType.ACK_STOP_EPOCH,
 				AckStopEpoch.class);
 		typeMap.put(ReconfigurationPacket.PacketType.ACK_START_EPOCH,
@@ -20,7 +20,11 @@ package edu.umass.cs.reconfiguration.reconfigurationpackets;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Set;
 
 import org.json.JSONArray;
@@ -57,6 +61,31 @@ public class RequestActiveReplicas extends ClientReconfigurationPacket implement
 		 * 
 		 */
 		QID,
+
+		/**
+		 * Subscribe to active replica changes for this name.
+		 */
+		SUBSCRIBE,
+
+		/**
+		 * Unsolicited update pushed by a reconfigurator.
+		 */
+		PUSH,
+
+		/**
+		 * Epoch number of the returned active replica set.
+		 */
+		ACTIVES_EPOCH,
+
+		/**
+		 * Names in a batched lookup.
+		 */
+		NAMES,
+
+		/**
+		 * Name to active replica set map in a batched lookup response.
+		 */
+		NAME_ACTIVES,
 		
 	};
 
@@ -71,6 +100,15 @@ public class RequestActiveReplicas extends ClientReconfigurationPacket implement
 	// need this if we need to coordinate this request
 	private final long requestID;
 
+	private boolean subscribe = false;
+	private boolean push = false;
+	// -1 means unknown
+	private int activesEpoch = -1;
+
+	// non-null only for batched lookups
+	private final Set<String> names;
+	private Map<String, Set<InetSocketAddress>> nameActives = null;
+
 	/**
 	 * @param name
 	 */
@@ -89,6 +127,59 @@ public class RequestActiveReplicas extends ClientReconfigurationPacket implement
 				epochNumber);
 		this.actives = null;
 		this.requestID = (long)(Math.random()*Long.MAX_VALUE);
+		this.names = null;
+	}
+
+	/**
+	 * A batched lookup of the active replicas of all of {@code names}. The
+	 * request is routed by its head name, so {@code names} should all belong
+	 * to the same reconfigurator group; names with no record at the
+	 * responding reconfigurator are absent in the response.
+	 * 
+	 * @param names
+	 */
+	public RequestActiveReplicas(Set<String> names) {
+		super(null, ReconfigurationPacket.PacketType.REQUEST_ACTIVE_REPLICAS,
+				names.iterator().next(), 0);
+		this.requestID = (long) (Math.random() * Long.MAX_VALUE);
+		this.names = names;
+	}
+
+	/**
+	 * Unbatches a single name from a batched lookup while retaining the
+	 * routing information of {@code batch}.
+	 * 
+	 * @param name
+	 * @param batch
+	 */
+	public RequestActiveReplicas(String name, RequestActiveReplicas batch) {
+		super(name, batch);
+		this.requestID = batch.requestID;
+		this.subscribe = batch.subscribe;
+		this.names = null;
+	}
+
+	/**
+	 * Creates an unsolicited response to a previously received subscribing
+	 * request. The response is routed back exactly like the response to
+	 * {@code subscription}, i.e., directly or via the forwarding
+	 * reconfigurator.
+	 * 
+	 * @param subscription
+	 * @param activesEpoch
+	 * @param actives
+	 *            Empty if the name has been deleted.
+	 */
+	public RequestActiveReplicas(RequestActiveReplicas subscription,
+			int activesEpoch, Set<InetSocketAddress> actives) {
+		super(subscription.getServiceName(), subscription);
+		this.requestID = subscription.requestID;
+		this.names = null;
+		this.actives = actives;
+		this.activesEpoch = activesEpoch;
+		this.subscribe = true;
+		this.push = true;
+		this.makeResponse();
 	}
 
 	/**
@@ -112,6 +203,31 @@ public class RequestActiveReplicas extends ClientReconfigurationPacket implement
 						.valueOf(jsonArray.get(i).toString()));
 		}
 		this.requestID = json.getLong(Keys.QID.toString());
+		this.subscribe = json.optBoolean(Keys.SUBSCRIBE.toString());
+		this.push = json.optBoolean(Keys.PUSH.toString());
+		this.activesEpoch = json.optInt(Keys.ACTIVES_EPOCH.toString(), -1);
+
+		JSONArray nameArray = json.optJSONArray(Keys.NAMES.toString());
+		if (nameArray != null) {
+			this.names = new LinkedHashSet<String>();
+			for (int i = 0; i < nameArray.length(); i++)
+				this.names.add(nameArray.getString(i));
+		} else
+			this.names = null;
+		JSONObject nameActivesJSON = json.optJSONObject(Keys.NAME_ACTIVES
+				.toString());
+		if (nameActivesJSON != null) {
+			this.nameActives = new HashMap<String, Set<InetSocketAddress>>();
+			for (Iterator<?> iter = nameActivesJSON.keys(); iter.hasNext();) {
+				String name = (String) iter.next();
+				JSONArray activesArray = nameActivesJSON.getJSONArray(name);
+				Set<InetSocketAddress> nameActiveSet = new HashSet<InetSocketAddress>();
+				for (int i = 0; i < activesArray.length(); i++)
+					nameActiveSet.add(RequestActiveReplicas.unstringer
+							.valueOf(activesArray.get(i).toString()));
+				this.nameActives.put(name, nameActiveSet);
+			}
+		}
 	}
 
 	/**
@@ -128,6 +244,23 @@ public class RequestActiveReplicas extends ClientReconfigurationPacket implement
 			json.put(Keys.ACTIVE_REPLICAS.toString(), new JSONArray(
 					this.actives));
 		json.put(Keys.QID.toString(), this.requestID);
+		if (this.subscribe)
+			json.put(Keys.SUBSCRIBE.toString(), this.subscribe);
+		if (this.push)
+			json.put(Keys.PUSH.toString(), this.push);
+		if (this.activesEpoch >= 0)
+			json.put(Keys.ACTIVES_EPOCH.toString(), this.activesEpoch);
+		// names are not needed in the response
+		if (this.names != null && this.nameActives == null)
+			json.put(Keys.NAMES.toString(), new JSONArray(this.names));
+		if (this.nameActives != null) {
+			JSONObject nameActivesJSON = new JSONObject();
+			for (Map.Entry<String, Set<InetSocketAddress>> entry : this.nameActives
+					.entrySet())
+				nameActivesJSON.put(entry.getKey(),
+						new JSONArray(entry.getValue()));
+			json.put(Keys.NAME_ACTIVES.toString(), nameActivesJSON);
+		}
 		return json;
 	}
 
@@ -147,6 +280,96 @@ public class RequestActiveReplicas extends ClientReconfigurationPacket implement
 		return this.actives;
 	}
 
+	/**
+	 * @return True if this is a batched lookup.
+	 */
+	public boolean isBatched() {
+		return this.names != null || this.nameActives != null;
+	}
+
+	/**
+	 * @return Names in a batched lookup request.
+	 */
+	public Set<String> getNames() {
+		return this.names;
+	}
+
+	/**
+	 * @param nameActives
+	 * @return {@code this} with the batched lookup result set to
+	 *         {@code nameActives}.
+	 */
+	public RequestActiveReplicas setNameActives(
+			Map<String, Set<InetSocketAddress>> nameActives) {
+		this.nameActives = nameActives;
+		return this;
+	}
+
+	/**
+	 * @return Name to active replicas map in a batched lookup response.
+	 */
+	public Map<String, Set<InetSocketAddress>> getNameActives() {
+		return this.nameActives;
+	}
+
+	/**
+	 * @return Number of names in this request or response.
+	 */
+	public int size() {
+		return this.nameActives != null ? this.nameActives.size()
+				: this.names != null ? this.names.size() : 1;
+	}
+
+	/**
+	 * @param epoch
+	 * @return {@code this} with the epoch of the active replica set set to
+	 *         {@code epoch}.
+	 */
+	public RequestActiveReplicas setActivesEpoch(int epoch) {
+		this.activesEpoch = epoch;
+		return this;
+	}
+
+	/**
+	 * @return Epoch number of the active replica set or -1 if unknown.
+	 */
+	public int getActivesEpoch() {
+		return this.activesEpoch;
+	}
+
+	/**
+	 * @return {@code this} with subscribe=true
+	 */
+	public RequestActiveReplicas setSubscribe() {
+		this.subscribe = true;
+		return this;
+	}
+
+	/**
+	 * @return {@code this} with subscribe=false
+	 */
+	public RequestActiveReplicas unsetSubscribe() {
+		this.subscribe = false;
+		return this;
+	}
+
+	/**
+	 * @return True if the requester wants active replica changes pushed to
+	 *         it or, in a response, if the reconfigurator registered the
+	 *         subscription.
+	 */
+	public boolean isSubscribe() {
+		return this.subscribe;
+	}
+
+	/**
+	 * @return True if this is an unsolicited update pushed by a
+	 *         reconfigurator.
+	 */
+	public boolean isPush() {
+		return this.push;
+	}
+
 	public static void main(String[] args) {
 		Util.assertAssertionsEnabled();
 		String[] addrs = { "128.119.240.21" };
@@ -199,6 +422,10 @@ public class RequestActiveReplicas extends ClientReconfigurationPacket implement
 	}
 
 	public String getSummary() {
-		return super.getSummary() + this.actives + ":" + this.getHashRCs();
+		return super.getSummary()
+				+ (this.isBatched() ? "|batched|=" + this.size() : this.actives)
+				+ ":" + this.getHashRCs()
+				+ (this.activesEpoch >= 0 ? ":" + this.activesEpoch : "")
+				+ (this.push ? ":PUSH" : "");
 	}
 }
@@ -0,0 +1,127 @@
+package edu.umass.cs.reconfiguration.reconfigurationpackets;
+
+import edu.umass.cs.utils.DefaultTest;
+import org.json.JSONException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Tests for the subscription and batching fields of
+ * {@link RequestActiveReplicas}.
+ */
+public class RequestActiveReplicasTest extends DefaultTest {
+
+    private static final InetSocketAddress CLIENT = new InetSocketAddress(
+            InetAddress.getLoopbackAddress(), 1234);
+    private static final InetSocketAddress FORWARDER = new InetSocketAddress(
+            InetAddress.getLoopbackAddress(), 2100);
+
+    private static Set<InetSocketAddress> getActives(int n) {
+        Set<InetSocketAddress> actives = new HashSet<InetSocketAddress>();
+        for (int i = 0; i < n; i++)
+            actives.add(new InetSocketAddress(InetAddress
+                    .getLoopbackAddress(), 3000 + i));
+        return actives;
+    }
+
+    /**
+     * Subscribe flag and actives epoch survive a JSON round trip, and plain
+     * requests carry neither.
+     *
+     * @throws JSONException
+     */
+    @Test
+    public void testSubscribeRoundTrip() throws JSONException {
+        RequestActiveReplicas plain = new RequestActiveReplicas(CLIENT,
+                "name", 0);
+        RequestActiveReplicas decoded = new RequestActiveReplicas(
+                plain.toJSONObject());
+        Assert.assertFalse(decoded.isSubscribe());
+        Assert.assertFalse(decoded.isPush());
+        Assert.assertEquals(-1, decoded.getActivesEpoch());
+
+        RequestActiveReplicas subscribe = new RequestActiveReplicas(CLIENT,
+                "name", 0).setSubscribe().setActivesEpoch(7);
+        subscribe.setActives(getActives(3));
+        decoded = new RequestActiveReplicas(subscribe.toJSONObject());
+        Assert.assertTrue(decoded.isSubscribe());
+        Assert.assertFalse(decoded.isPush());
+        Assert.assertEquals(7, decoded.getActivesEpoch());
+        Assert.assertEquals(getActives(3), decoded.getActives());
+    }
+
+    /**
+     * A push created from a forwarded subscription is a response routed back
+     * via the same forwarder to the same creator.
+     *
+     * @throws JSONException
+     */
+    @Test
+    public void testPushRouting() throws JSONException {
+        RequestActiveReplicas subscription = (RequestActiveReplicas) new RequestActiveReplicas(
+                CLIENT, "name", 0).setSubscribe().setForwader(FORWARDER);
+        RequestActiveReplicas push = new RequestActiveReplicas(
+                new RequestActiveReplicas(subscription.toJSONObject()), 3,
+                getActives(2));
+        RequestActiveReplicas decoded = new RequestActiveReplicas(
+                push.toJSONObject());
+        Assert.assertTrue(decoded.isPush());
+        Assert.assertTrue(decoded.isSubscribe());
+        Assert.assertFalse(decoded.isRequest());
+        Assert.assertTrue(decoded.isRedirectedResponse());
+        Assert.assertEquals(3, decoded.getActivesEpoch());
+        Assert.assertEquals(CLIENT, decoded.getCreator());
+        Assert.assertEquals(FORWARDER, decoded.getForwader());
+        Assert.assertEquals("name", decoded.getServiceName());
+        Assert.assertEquals(subscription.getRequestID(),
+                decoded.getRequestID());
+        Assert.assertEquals(getActives(2), decoded.getActives());
+    }
+
+    /**
+     * A batched lookup carries its names as a request and its name to
+     * actives map as a response.
+     *
+     * @throws JSONException
+     */
+    @Test
+    public void testBatchedRoundTrip() throws JSONException {
+        Set<String> names = new HashSet<String>();
+        for (int i = 0; i < 100; i++)
+            names.add("name" + i);
+        RequestActiveReplicas request = new RequestActiveReplicas(names);
+        Assert.assertTrue(request.isBatched());
+        Assert.assertTrue(names.contains(request.getServiceName()));
+
+        RequestActiveReplicas decoded = new RequestActiveReplicas(
+                request.toJSONObject());
+        Assert.assertTrue(decoded.isBatched());
+        Assert.assertEquals(names, decoded.getNames());
+        Assert.assertNull(decoded.getNameActives());
+
+        Map<String, Set<InetSocketAddress>> nameActives = new HashMap<String, Set<InetSocketAddress>>();
+        for (String name : names)
+            if (!name.endsWith("7"))
+                nameActives.put(name, getActives(3));
+        decoded.setNameActives(nameActives).makeResponse();
+        RequestActiveReplicas response = new RequestActiveReplicas(
+                decoded.toJSONObject());
+        Assert.assertTrue(response.isBatched());
+        Assert.assertFalse(response.isRequest());
+        Assert.assertEquals(nameActives, response.getNameActives());
+        Assert.assertEquals(90, response.size());
+        Assert.assertEquals(request.getRequestID(), response.getRequestID());
+
+        RequestActiveReplicas single = new RequestActiveReplicas("name7",
+                request);
+        Assert.assertFalse(single.isBatched());
+        Assert.assertEquals("name7", single.getServiceName());
+    }
+}
@@ -17,7 +17,6 @@
  */
 package edu.umass.cs.reconfiguration.reconfigurationprotocoltasks;
 
-import java.lang.reflect.InvocationTargetException;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
@@ -32,6 +31,7 @@ import edu.umass.cs.protocoltask.ProtocolTask;
 import edu.umass.cs.reconfiguration.ActiveReplica;
 import edu.umass.cs.reconfiguration.reconfigurationpackets.BasicReconfigurationPacket;
 import edu.umass.cs.reconfiguration.reconfigurationpackets.ReconfigurationPacket;
+import edu.umass.cs.reconfiguration.reconfigurationutils.PacketHandlerTable;
 
 /**
 @author V. Arun
@@ -59,6 +59,7 @@ ProtocolTask<NodeIDType, ReconfigurationPacket.PacketType, String> {
 	private final NodeIDType myID;
 	private final Stringifiable<NodeIDType> unstringer;
 	private final ActiveReplica<NodeIDType> activeReplica;
+	private final PacketHandlerTable handlers;
 
 	/**
 	 * @param id
@@ -69,6 +70,8 @@ ProtocolTask<NodeIDType, ReconfigurationPacket.PacketType, String> {
 		this.myID = id;
 		this.activeReplica = ar;
 		this.unstringer = unstringer;
+		this.handlers = PacketHandlerTable.getTable(ar.getClass(),
+				ProtocolTask[].class);
 		this.key = refreshKey();
 	}
 
@@ -115,27 +118,11 @@ ProtocolTask<NodeIDType, ReconfigurationPacket.PacketType, String> {
 
 		ReconfigurationPacket.PacketType type = event.getType();
 		Object returnValue = null;
-		try {
-			if (ReconfigurationPacket.getPacketTypeClass(type) != null)
-				returnValue = this.activeReplica
-						.getClass()
-						.getMethod(
-								HANDLER_METHOD_PREFIX
-										+ ReconfigurationPacket
-												.getPacketTypeClassName(type),
-								ReconfigurationPacket.getPacketTypeClass(type),
-								ProtocolTask[].class)
-						.invoke(this.activeReplica,
-								(BasicReconfigurationPacket<?>) event, ptasks);
-			else
-				assert (false);
-		} catch(NoSuchMethodException nsme) {
-			nsme.printStackTrace();
-		} catch(InvocationTargetException ite) {
-			ite.printStackTrace();
-		} catch(IllegalAccessException iae) {
-			iae.printStackTrace();
-		}
+		if (ReconfigurationPacket.getPacketTypeClass(type) != null)
+			returnValue = this.handlers.invoke(this.activeReplica,
+					(BasicReconfigurationPacket<?>) event, ptasks);
+		else
+			assert (false);
 		return (GenericMessagingTask<NodeIDType, ?>[])returnValue;
 	}
 
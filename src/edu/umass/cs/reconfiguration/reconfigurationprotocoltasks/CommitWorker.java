@@ -45,18 +45,23 @@ import edu.umass.cs.utils.Util;
  */
 public class CommitWorker<NodeIDType> implements Runnable {
 
-	/** Map, not Set, only because otherwise we will get concurrent modification exception in the
-	 * case of a single reconfigurator replica group.
+	/* Attempt history of a pending request used for exponential backoff. */
+	private static class Attempts {
+		long last = 0;
+		int count = 0;
+	}
+
+	/** Concurrent map, not a synchronized set, only because otherwise we will
+	 * get concurrent modification exception in the case of a single
+	 * reconfigurator replica group.
 	 */
-	ConcurrentHashMap<RCRecordRequest<NodeIDType>,Boolean> pending = new ConcurrentHashMap<RCRecordRequest<NodeIDType>,Boolean>();
-	Map<RCRecordRequest<NodeIDType>, Long> lastAttempts = new ConcurrentHashMap<RCRecordRequest<NodeIDType>, Long>();
+	ConcurrentHashMap<RCRecordRequest<NodeIDType>, Attempts> pending = new ConcurrentHashMap<RCRecordRequest<NodeIDType>, Attempts>();
 	Set<RCRecordRequest<NodeIDType>> executed = new HashSet<RCRecordRequest<NodeIDType>>();
 	ConcurrentHashMap<String, Long> nonDefaultRestartPeriods = new ConcurrentHashMap<String, Long>();
 
 	public void run() {
 		while (!closed) {
-			this.coordinate();
-			waitUntilNotified(RESTART_PERIOD);
+			waitUntilNotified(this.coordinate());
 		}
 	}
 
@@ -80,7 +85,7 @@ public class CommitWorker<NodeIDType> implements Runnable {
 			log.log(Level.FINEST, "{0} enqueueing request {1}", new Object[] {
 					this, request.getSummary() });
 			assert(request!=null);
-			enqueued = this.pending.putIfAbsent(request, true)!=null;
+			enqueued = this.pending.putIfAbsent(request, new Attempts()) == null;
 		}
 		log.log(Util.oneIn(10) ? Level.INFO : Level.FINE,
 				"{0} pendingQSize = {1}; executedQSize = {2}\n {3}\n {4}",
@@ -119,8 +124,7 @@ public class CommitWorker<NodeIDType> implements Runnable {
 		boolean equalRemovedFromPending = this.pending.remove(request)!=null;
 		log.log(Level.FINEST, "{0} exact-matched and removed pending task {1}",
 				new Object[] { this, request.getSummary(Level.FINEST) });
-		this.lastAttempts.remove(request);
-		this.knockOffLower(request, this.pending.keySet(), true);
+		this.knockOffLower(request, this.pending.keySet());
 
 		if (equalRemovedFromPending)
 			return true;
@@ -132,7 +136,7 @@ public class CommitWorker<NodeIDType> implements Runnable {
 		this.addAssert(request, executed);
 
 		// knock off lower and enqueue if necessary
-		this.knockOffLower(request, this.executed, false);
+		this.knockOffLower(request, this.executed);
 		if (shouldEnqueueEarlyExecutedNotification(request))
 			this.executed.add(request);
 		return equalRemovedFromPending;
@@ -195,7 +199,7 @@ public class CommitWorker<NodeIDType> implements Runnable {
 
 	// knocks off elements in set strictly lower than request
 	private boolean knockOffLower(RCRecordRequest<NodeIDType> request,
-			Set<RCRecordRequest<NodeIDType>> set, boolean isPending) {
+			Set<RCRecordRequest<NodeIDType>> set) {
 		boolean lowerRemoved = false;
 		RCRecordRequest<NodeIDType> lower = null;
 		for (Iterator<RCRecordRequest<NodeIDType>> reqIter = set.iterator(); reqIter
@@ -205,8 +209,6 @@ public class CommitWorker<NodeIDType> implements Runnable {
 				log.log(Level.FINEST, "{0} knocked off lower request {1}",
 						new Object[] { this, lower.getSummary(Level.FINEST) });
 				reqIter.remove();
-				if (isPending)
-					this.lastAttempts.remove(request);
 			}
 		return lowerRemoved;
 	}
@@ -242,35 +244,64 @@ public class CommitWorker<NodeIDType> implements Runnable {
 	private void waitUntilNotified(long timeout) {
 		synchronized (this) {
 			try {
-				wait(timeout);
+				if (timeout > 0)
+					wait(timeout);
 			} catch (InterruptedException e) {
 				e.printStackTrace();
 			}
 		}
 	}
 
+	/* Coordinates all pending requests whose backoff has expired and returns
+	 * the time until the next one expires. */
 	private synchronized long coordinate() {
-		RCRecordRequest<NodeIDType> head = null;
-		long oldestAttempt = Long.MAX_VALUE;
-		for (Iterator<RCRecordRequest<NodeIDType>> reqIter = this.pending
-				.keySet().iterator(); reqIter.hasNext();) {
-			RCRecordRequest<NodeIDType> request = reqIter.next();
-			head = head == null ? request : head;
+		long now = System.currentTimeMillis();
+		long nextAttempt = now + RESTART_PERIOD;
+		Set<RCRecordRequest<NodeIDType>> due = new HashSet<RCRecordRequest<NodeIDType>>();
+		for (Iterator<Map.Entry<RCRecordRequest<NodeIDType>, Attempts>> entryIter = this.pending
+				.entrySet().iterator(); entryIter.hasNext();) {
+			Map.Entry<RCRecordRequest<NodeIDType>, Attempts> entry = entryIter
+					.next();
+			RCRecordRequest<NodeIDType> request = entry.getKey();
+			Attempts attempts = entry.getValue();
 			// try coordinate and set last attempted timestamp
-			if (repeatable(request)) {
-				Level level = request.isReconfigurationMerge() ? Level.FINEST
-						: Level.FINEST;
-				log.log(level, "{0} coordinating request {1}", new Object[] {
-						this, request.getSummary(level) });
+			if (repeatable(request, attempts, now)) {
+				log.log(Level.FINEST, "{0} coordinating request {1}",
+						new Object[] { this, request.getSummary(Level.FINEST) });
+				due.add(request);
+				attempts.last = now;
+				attempts.count++;
+			} else if (this.removable(request)) {
+				entryIter.remove();
+				continue;
+			}
+			nextAttempt = Math.min(nextAttempt,
+					this.getNextAttempt(request, attempts));
+		}
+		this.coordinate(due);
+		return Math.max(nextAttempt - System.currentTimeMillis(), 1);
+	}
 
+	/* Batching amortizes agreement rounds in the reconfigurator groups when
+	 * many records are being committed concurrently, e.g., during mass
+	 * reconfigurations. Requests are still executed individually and in
+	 * order within the batch, so obviation semantics are unchanged. */
+	@SuppressWarnings("unchecked")
+	private void coordinate(Set<RCRecordRequest<NodeIDType>> due) {
+		if (due.size() > 1 && BATCHING
+				&& this.coordinator instanceof RepliconfigurableReconfiguratorDB) {
+			log.log(Level.FINE, "{0} coordinating {1} requests in batches",
+					new Object[] { this, due.size() });
+			try {
+				((RepliconfigurableReconfiguratorDB<NodeIDType>) this.coordinator)
+						.coordinateRequests(due, callback);
+			} catch (Exception e) {
+				e.printStackTrace();
+				// continue
+			}
+		} else
+			for (RCRecordRequest<NodeIDType> request : due)
 				this.coordinate(request);
-				this.lastAttempts.put(request, System.currentTimeMillis());
-				oldestAttempt = Math.min(oldestAttempt,
-						this.getLastAttempt(request));
-			} else if (this.removable(request))
-				reqIter.remove();
-		}
-		return getWaitTime(oldestAttempt);
 	}
 
 	/**
@@ -289,11 +320,23 @@ public class CommitWorker<NodeIDType> implements Runnable {
 
 	private static final long MAX_PREV_DROP_COMMIT_ATTEMPT_TIME = 32 * WaitAckStopEpoch.RESTART_PERIOD;
 
-	private boolean repeatable(RCRecordRequest<NodeIDType> request) {
-		// else
-		return System.currentTimeMillis() - this.getLastAttempt(request) > (this.nonDefaultRestartPeriods
-				.containsKey(request.getServiceName()) ? this.nonDefaultRestartPeriods
-				.get(request.getServiceName()) : RESTART_PERIOD);
+	private boolean repeatable(RCRecordRequest<NodeIDType> request,
+			Attempts attempts, long now) {
+		return now >= this.getNextAttempt(request, attempts);
+	}
+
+	// exponential backoff starting from the restart period
+	private long getNextAttempt(RCRecordRequest<NodeIDType> request,
+			Attempts attempts) {
+		if (attempts.count == 0)
+			return attempts.last;
+		Long period = this.nonDefaultRestartPeriods.get(request
+				.getServiceName());
+		period = period != null ? period : RESTART_PERIOD;
+		return attempts.last
+				+ Math.max(period, Math.min(
+						period << Math.min(attempts.count - 1, 16),
+						MAX_RESTART_PERIOD));
 	}
 
 	private boolean removable(RCRecordRequest<NodeIDType> request) {
@@ -305,16 +348,6 @@ public class CommitWorker<NodeIDType> implements Runnable {
 		return false;
 	}
 
-	private long getWaitTime(long oldestAttempt) {
-		return Math.max(RESTART_PERIOD
-				- (System.currentTimeMillis() - oldestAttempt), 0);
-	}
-
-	private long getLastAttempt(RCRecordRequest<NodeIDType> request) {
-		Long last = this.lastAttempts.get(request);
-		return last != null ? last : 0;
-	}
-
 	private String getSetSummary(Set<RCRecordRequest<NodeIDType>> set) {
 		String s = "[";
 		for (RCRecordRequest<NodeIDType> request : set)
@@ -340,6 +373,10 @@ public class CommitWorker<NodeIDType> implements Runnable {
 
 	private final long RESTART_PERIOD = Config
 			.getGlobalLong(ReconfigurationConfig.RC.COMMIT_WORKER_RESTART_PERIOD);
+	private final long MAX_RESTART_PERIOD = Config
+			.getGlobalLong(ReconfigurationConfig.RC.COMMIT_WORKER_MAX_RESTART_PERIOD);
+	private static final boolean BATCHING = Config
+			.getGlobalBoolean(ReconfigurationConfig.RC.COMMIT_WORKER_BATCHING);
 
 	private final AbstractReplicaCoordinator<?> coordinator;
 	private final ReconfiguratorCallback callback;
@@ -365,7 +402,7 @@ public class CommitWorker<NodeIDType> implements Runnable {
 	}
 
 	/**
-	 * @return The re-attempt wait interval.
+	 * @return The initial re-attempt wait interval.
 	 */
 	public long getPeriod() {
 		return RESTART_PERIOD;
@@ -15,7 +15,6 @@
  * Initial developer(s): V. Arun */
 package edu.umass.cs.reconfiguration.reconfigurationprotocoltasks;
 
-import java.lang.reflect.InvocationTargetException;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
@@ -29,6 +28,7 @@ import edu.umass.cs.reconfiguration.Reconfigurator;
 import edu.umass.cs.reconfiguration.interfaces.ReconfiguratorRequest;
 import edu.umass.cs.reconfiguration.reconfigurationpackets.BasicReconfigurationPacket;
 import edu.umass.cs.reconfiguration.reconfigurationpackets.ReconfigurationPacket;
+import edu.umass.cs.reconfiguration.reconfigurationutils.PacketHandlerTable;
 
 /**
  * @author V. Arun
@@ -41,6 +41,7 @@ public class ReconfiguratorProtocolTask<NodeIDType> implements
 	private static final ReconfigurationPacket.PacketType[] localTypes = {
 			// active -> reconfigurator
 			ReconfigurationPacket.PacketType.DEMAND_REPORT,
+			ReconfigurationPacket.PacketType.BATCHED_DEMAND_REPORT,
 
 			// client -> reconfigurator
 			ReconfigurationPacket.PacketType.CREATE_SERVICE_NAME,
@@ -66,6 +67,8 @@ public class ReconfiguratorProtocolTask<NodeIDType> implements
 	private final String key;
 	private final NodeIDType myID;
 	private final Object reconfigurator;
+	private final PacketHandlerTable handlers;
+	private final PacketHandlerTable callbackHandlers;
 
 	/**
 	 * @param id
@@ -75,6 +78,10 @@ public class ReconfiguratorProtocolTask<NodeIDType> implements
 			Reconfigurator<NodeIDType> reconfigurator) {
 		this.myID = id;
 		this.reconfigurator = reconfigurator;
+		this.handlers = PacketHandlerTable.getTable(reconfigurator.getClass(),
+				ProtocolTask[].class);
+		this.callbackHandlers = PacketHandlerTable.getTable(
+				reconfigurator.getClass(), ProtocolTask[].class, Callback.class);
 		this.key = refreshKey();
 	}
 
@@ -117,8 +124,9 @@ public class ReconfiguratorProtocolTask<NodeIDType> implements
 			ProtocolEvent<ReconfigurationPacket.PacketType, String> event,
 			ProtocolTask<NodeIDType, ReconfigurationPacket.PacketType, String>[] ptasks) {
 
-		return (GenericMessagingTask<NodeIDType, ?>[]) (autoInvokeMethod(
-				this.reconfigurator, event, ptasks));
+		return (GenericMessagingTask<NodeIDType, ?>[]) (this.handlers.invoke(
+				this.reconfigurator, (BasicReconfigurationPacket<?>) event,
+				ptasks));
 	}
 
 	/**
@@ -132,25 +140,9 @@ public class ReconfiguratorProtocolTask<NodeIDType> implements
 			ProtocolEvent<ReconfigurationPacket.PacketType, String> event,
 			ProtocolTask<NodeIDType, ReconfigurationPacket.PacketType, String>[] ptasks,
 			Callback<Request,ReconfiguratorRequest> callback) {
-		ReconfigurationPacket.PacketType type = event.getType();
-		try {
-			return (GenericMessagingTask<NodeIDType, ?>[]) (this.reconfigurator
-					.getClass()
-					.getMethod(
-							HANDLER_METHOD_PREFIX
-									+ ReconfigurationPacket
-											.getPacketTypeClassName(type),
-							ReconfigurationPacket.getPacketTypeClass(type),
-							ProtocolTask[].class, Callback.class)
-					.invoke(this.reconfigurator,
-							(BasicReconfigurationPacket<?>) event, ptasks,
-							callback));
-		} catch (NoSuchMethodException | InvocationTargetException
-				| IllegalAccessException e) {
-			e.printStackTrace();
-		}
-		return null;
-
+		return (GenericMessagingTask<NodeIDType, ?>[]) (this.callbackHandlers
+				.invoke(this.reconfigurator,
+						(BasicReconfigurationPacket<?>) event, ptasks, callback));
 	}
 
 	/**
@@ -162,26 +154,16 @@ public class ReconfiguratorProtocolTask<NodeIDType> implements
 	public static Object autoInvokeMethod(Object target,
 			ProtocolEvent<ReconfigurationPacket.PacketType, String> event,
 			ProtocolTask<?, ReconfigurationPacket.PacketType, String>[] ptasks) {
-		ReconfigurationPacket.PacketType type = event.getType();
-		try {
-			return target
-					.getClass()
-					.getMethod(
-							HANDLER_METHOD_PREFIX
-									+ ReconfigurationPacket
-											.getPacketTypeClassName(type),
-							ReconfigurationPacket.getPacketTypeClass(type),
-							ProtocolTask[].class)
-					.invoke(target, (BasicReconfigurationPacket<?>) event,
-							ptasks);
-		} catch (NoSuchMethodException nsme) {
-			nsme.printStackTrace();
-		} catch (InvocationTargetException ite) {
-			ite.printStackTrace();
-		} catch (IllegalAccessException iae) {
-			iae.printStackTrace();
-		}
-		return null;
+		return TABLES.get(target.getClass()).invoke(target,
+				(BasicReconfigurationPacket<?>) event, ptasks);
 	}
 
+	// caches tables for the static invocation without allocating a lookup key
+	private static final ClassValue<PacketHandlerTable> TABLES = new ClassValue<PacketHandlerTable>() {
+		@Override
+		protected PacketHandlerTable computeValue(Class<?> type) {
+			return PacketHandlerTable.getTable(type, ProtocolTask[].class);
+		}
+	};
+
 }
@@ -18,40 +18,80 @@
 package edu.umass.cs.reconfiguration.reconfigurationutils;
 
 import java.net.InetAddress;
-import java.util.HashMap;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
-import java.util.Iterator;
-import java.util.Map.Entry;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
 
 import edu.umass.cs.gigapaxos.interfaces.Request;
+import edu.umass.cs.reconfiguration.ReconfigurationConfig.RC;
 import edu.umass.cs.reconfiguration.interfaces.ReconfigurableAppInfo;
+import edu.umass.cs.utils.Config;
 
 /**
  * @author V. Arun
  * 
  *         A utility class for maintaining demand profiles, specifically
  *         geo-distribution of demand in order to send it to reconfigurators.
+ *         <p>
+ * 
+ *         Profiles are kept in a concurrent map and each profile is mutated
+ *         only while holding its own monitor, so requests for different names
+ *         never contend with each other. Every name is also counted in a
+ *         {@link CountMinSketch} whose estimates are used to decide which
+ *         names are admitted once the map is full, which names are evicted by
+ *         {@link #trim()}, and which names are the current heavy hitters.
  */
 public class AggregateDemandProfiler {
 	private static final int DEFAULT_MAX_SIZE = 100000;
 	private static final int DEFAULT_PLUCK_SIZE = 100;
+	/**
+	 * Eviction picks the coldest {@link #DEFAULT_PLUCK_SIZE} names out of a
+	 * sample of this many times as many names.
+	 */
+	private static final int EVICTION_SAMPLE_FACTOR = 4;
 
 	private ReconfigurableAppInfo nodeConfig;
-	private final HashMap<String, AbstractDemandProfile> map = new HashMap<String, AbstractDemandProfile>();
+	private final ConcurrentHashMap<String, AbstractDemandProfile> map = new ConcurrentHashMap<String, AbstractDemandProfile>();
+	private final CountMinSketch sketch = new CountMinSketch(
+			Config.getGlobalInt(RC.DEMAND_SKETCH_WIDTH));
+	private final int admissionThreshold = Config
+			.getGlobalInt(RC.DEMAND_PROFILE_ADMISSION_THRESHOLD);
+	private final int maxSize;
 
 	/**
 	 * @param nodeConfig
 	 */
 	public AggregateDemandProfiler(ReconfigurableAppInfo nodeConfig) {
+		this(nodeConfig, DEFAULT_MAX_SIZE);
+	}
+
+	/**
+	 * @param nodeConfig
+	 * @param maxSize
+	 *            Number of demand profiles beyond which {@link #trim()} will
+	 *            pluck profiles out.
+	 */
+	public AggregateDemandProfiler(ReconfigurableAppInfo nodeConfig,
+			int maxSize) {
 		this.nodeConfig = nodeConfig;
+		this.maxSize = maxSize;
 	}
 
 	/**
          * 
          */
 	public AggregateDemandProfiler() {
-		this.nodeConfig = null;
+		this(null);
 	}
 
 	/**
@@ -59,36 +99,43 @@ public class AggregateDemandProfiler {
 	 * @param sender
 	 * @return AbstractDemandProfile after registering {@code request}.
 	 */
-	public synchronized boolean shouldSendDemandReport(
-			Request request, InetAddress sender) {
+	public boolean shouldSendDemandReport(Request request, InetAddress sender) {
 		String name = request.getServiceName();
-		AbstractDemandProfile demand = this.getDemandProfile(name);
-		if (demand == null)
-			demand = AbstractDemandProfile.createDemandProfile(name); // reflection
-		boolean shouldReport = demand.shouldReportDemandStats(request, sender, nodeConfig);
-		this.map.put(name, demand);
-		return shouldReport;
-	}
-
-	private synchronized AbstractDemandProfile getDemandProfile(String name) {
-		AbstractDemandProfile demand = this.map.get(name);
-		return demand;
+		int count = this.sketch.increment(name);
+		while (true) {
+			AbstractDemandProfile demand = this.map.get(name);
+			if (demand == null) {
+				// only reasonably popular names once full
+				if (this.map.size() >= this.maxSize
+						&& count < this.admissionThreshold)
+					return false;
+				AbstractDemandProfile created = AbstractDemandProfile
+						.createDemandProfile(name); // reflection
+				if ((demand = this.map.putIfAbsent(name, created)) == null)
+					demand = created;
+			}
+			synchronized (demand) {
+				// retry if concurrently plucked or evicted
+				if (this.map.get(name) == demand)
+					return demand.shouldReportDemandStats(request, sender,
+							nodeConfig);
+			}
+		}
 	}
 
 	/**
 	 * @param name
 	 * @return True if map contains name.
 	 */
-	public synchronized boolean contains(String name) {
+	public boolean contains(String name) {
 		return this.map.containsKey(name);
 	}
 
 	/**
 	 * @param profile
 	 */
-	public synchronized void putIfEmpty(AbstractDemandProfile profile) {
-		if (!this.map.containsKey(profile.getName()))
-			this.map.put(profile.getName(), profile);
+	public void putIfEmpty(AbstractDemandProfile profile) {
+		this.map.putIfAbsent(profile.getName(), profile);
 	}
 
 	/**
@@ -97,12 +144,13 @@ public class AggregateDemandProfiler {
 	 * @return True if Reconfigurator should initiate a reconfiguration to the
 	 *         IP addresses returned.
 	 */
-	public synchronized Set<String> reconfigure(String name,
-			Set<String> curActives) {
-		AbstractDemandProfile demand = this.getDemandProfile(name);
+	public Set<String> reconfigure(String name, Set<String> curActives) {
+		AbstractDemandProfile demand = this.map.get(name);
 		if (demand == null)
 			return null;
-		return demand.reconfigure(curActives, nodeConfig);
+		synchronized (demand) {
+			return demand.reconfigure(curActives, nodeConfig);
+		}
 	}
 
 	/**
@@ -112,71 +160,169 @@ public class AggregateDemandProfiler {
 	 * @return List of IP addresses to which the replicas have been
 	 *         reconfigured. The testAndSet ensures atomicity.
 	 */
-	public synchronized Set<String> testAndSetReconfigured(
-			String name, Set<String> curActives, ReconfigurableAppInfo appInfo) {
-		AbstractDemandProfile demand = this.getDemandProfile(name);
-		Set<String> newActives = null;
-		if (demand == null
-				|| (newActives = demand.reconfigure(curActives,
-						appInfo)) == null)
+	public Set<String> testAndSetReconfigured(String name,
+			Set<String> curActives, ReconfigurableAppInfo appInfo) {
+		AbstractDemandProfile demand = this.map.get(name);
+		if (demand == null)
 			return curActives;
-		// else should reconfigure
-		demand.justReconfigured();
-		return newActives;
+		synchronized (demand) {
+			Set<String> newActives = demand.reconfigure(curActives, appInfo);
+			if (newActives == null)
+				return curActives;
+			// else should reconfigure
+			demand.justReconfigured();
+			return newActives;
+		}
 	}
 
 	/**
-	 * If aggregate size becomes more than DEFAULT_MAX_SIZE, this method will
-	 * pluck DEFAULT_PLUCK_SIZE out so that an active replica can report it to
+	 * If aggregate size becomes more than the maximum size, this method will
+	 * pluck DEFAULT_PLUCK_SIZE, or as many as needed to get back below the
+	 * maximum size, out so that an active replica can report it to
 	 * reconfigurators. This design allows an active replica to simply use
 	 * transmission to reconfigurators as an alternative to persistently storing
-	 * this information locally.
+	 * this information locally. The plucked profiles are the coldest ones,
+	 * according to the sketch, among a sample of the profiles.
+	 * 
+	 * This method also ages the sketch, so it is expected to be invoked
+	 * periodically.
 	 * 
 	 * @return Set of demand profiles to be shipped to reconfigurator(s).
 	 */
-	public synchronized Set<AbstractDemandProfile> trim() {
+	public Set<AbstractDemandProfile> trim() {
+		this.sketch.age();
 		Set<AbstractDemandProfile> plucked = new HashSet<AbstractDemandProfile>();
-		if (this.map.size() >= DEFAULT_MAX_SIZE) {
-			int count = 0;
-			for (Iterator<Entry<String, AbstractDemandProfile>> iter = this.map
-					.entrySet().iterator(); iter.hasNext(); /* nothing */) {
-				Entry<String, AbstractDemandProfile> entry = iter.next();
-				plucked.add(entry.getValue());
-				iter.remove();
-				if (count++ >= DEFAULT_PLUCK_SIZE)
-					break;
+		int size = this.map.size();
+		if (size < this.maxSize)
+			return plucked;
+		int pluckSize = Math.max(DEFAULT_PLUCK_SIZE, size - this.maxSize + 1);
+		for (String name : this.select(pluckSize, (int) Math.min(
+				Integer.MAX_VALUE, (long) pluckSize * EVICTION_SAMPLE_FACTOR),
+				false)) {
+			AbstractDemandProfile demand = this.map.get(name);
+			if (demand == null)
+				continue;
+			synchronized (demand) {
+				if (this.map.remove(name, demand))
+					plucked.add(demand);
 			}
 		}
 		return plucked;
 	}
 
+	/**
+	 * @param k
+	 * @return Up to {@code k} currently profiled names with the highest
+	 *         estimated recent demand, hottest first.
+	 */
+	public List<String> getHeavyHitters(int k) {
+		return this.select(k, Integer.MAX_VALUE, true);
+	}
+
 	/**
 	 * @param name
-	 * @return Plucked demand profile.
+	 * @return Estimated recent number of requests for {@code name}.
+	 */
+	public int getEstimatedDemand(String name) {
+		return this.sketch.estimate(name);
+	}
+
+	/**
+	 * @return Number of names currently profiled.
 	 */
-	public synchronized AbstractDemandProfile pluckDemandProfile(String name) {
+	public int size() {
+		return this.map.size();
+	}
+
+	/* Keeps the best k of the sampled names in a bounded heap whose head is
+	 * the worst of them, so selecting a few names out of many does not sort
+	 * all of them. A sample smaller than the map is drawn uniformly at random
+	 * so that successive calls consider different names. */
+	private List<String> select(int k, int sampleSize, final boolean hottest) {
+		List<String> names = new ArrayList<String>();
+		if (k <= 0)
+			return names;
+		PriorityQueue<Map.Entry<String, Integer>> heap = new PriorityQueue<Map.Entry<String, Integer>>(
+				Math.min(k, sampleSize) + 1,
+				new Comparator<Map.Entry<String, Integer>>() {
+					@Override
+					public int compare(Map.Entry<String, Integer> o1,
+							Map.Entry<String, Integer> o2) {
+						int cmp = Integer.compare(o1.getValue(),
+								o2.getValue());
+						return hottest ? cmp : -cmp;
+					}
+				});
+		for (String name : this.sample(sampleSize)) {
+			heap.offer(new AbstractMap.SimpleImmutableEntry<String, Integer>(
+					name, this.sketch.estimate(name)));
+			if (heap.size() > k)
+				heap.poll();
+		}
+		while (!heap.isEmpty())
+			names.add(heap.poll().getKey());
+		Collections.reverse(names);
+		return names;
+	}
+
+	// reservoir sample, so only the sampled names are estimated
+	private Collection<String> sample(int sampleSize) {
+		if (sampleSize >= this.map.size())
+			return this.map.keySet();
+		List<String> sample = new ArrayList<String>(sampleSize);
+		Random random = ThreadLocalRandom.current();
+		int seen = 0;
+		for (String name : this.map.keySet()) {
+			if (seen++ < sampleSize)
+				sample.add(name);
+			else {
+				int slot = random.nextInt(seen);
+				if (slot < sampleSize)
+					sample.set(slot, name);
+			}
+		}
+		return sample;
+	}
+
+	/**
+	 * @param name
+	 * @return Plucked demand profile, or null if {@code name} is not being
+	 *         profiled.
+	 */
+	public AbstractDemandProfile pluckDemandProfile(String name) {
 		AbstractDemandProfile demand = this.map.get(name);
-		// replaced clone() with un-stringification instead
-		AbstractDemandProfile copy = AbstractDemandProfile
-				.createDemandProfile(demand.getDemandStats()); // demand.clone();
-		//demand.reset();
-		// replaced reset() with reflective call instead
-		this.map.put(name, AbstractDemandProfile.createDemandProfile(name));
-		return copy;
+		if (demand == null)
+			return null;
+		synchronized (demand) {
+			// replaced clone() with un-stringification instead
+			AbstractDemandProfile copy = AbstractDemandProfile
+					.createDemandProfile(demand.getDemandStats()); // demand.clone();
+			// demand.reset();
+			// replaced reset() with reflective call instead
+			this.map.replace(name, demand,
+					AbstractDemandProfile.createDemandProfile(name));
+			return copy;
+		}
 	}
 
 	/**
 	 * @param update
 	 * @return Combined demand profile.
 	 */
-	public synchronized AbstractDemandProfile combine(
-			AbstractDemandProfile update) {
-		AbstractDemandProfile existing = this.map.get(update.getName());
-		if (existing != null)
-			existing.combine(update);
-		else
-			existing = update;
-		this.map.put(update.getName(), existing);
-		return existing;
+	public AbstractDemandProfile combine(AbstractDemandProfile update) {
+		String name = update.getName();
+		this.sketch.increment(name);
+		while (true) {
+			AbstractDemandProfile existing = this.map.putIfAbsent(name,
+					update);
+			if (existing == null)
+				return update;
+			synchronized (existing) {
+				if (this.map.get(name) == existing) {
+					existing.combine(update);
+					return existing;
+				}
+			}
+		}
 	}
 }
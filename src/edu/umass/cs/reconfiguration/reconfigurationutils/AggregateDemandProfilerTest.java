@@ -0,0 +1,114 @@
+package edu.umass.cs.reconfiguration.reconfigurationutils;
+
+import edu.umass.cs.utils.DefaultTest;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Sketch-based ranking and eviction tests for
+ * {@link AggregateDemandProfiler}.
+ */
+public class AggregateDemandProfilerTest extends DefaultTest {
+
+    private static void report(AggregateDemandProfiler profiler, String name,
+                               int times) {
+        for (int i = 0; i < times; i++)
+            profiler.combine(new DemandProfile(name));
+    }
+
+    /**
+     * The sketch never under-counts in the absence of concurrency.
+     */
+    @Test
+    public void testSketchDoesNotUndercount() {
+        CountMinSketch sketch = new CountMinSketch(64);
+        for (int i = 0; i < 1000; i++)
+            for (int j = 0; j <= i % 10; j++)
+                sketch.increment("name" + i);
+        for (int i = 0; i < 1000; i++)
+            Assert.assertTrue(sketch.estimate("name" + i) >= i % 10 + 1);
+    }
+
+    /**
+     * Heavy hitters are returned hottest first.
+     */
+    @Test
+    public void testHeavyHitters() {
+        AggregateDemandProfiler profiler = new AggregateDemandProfiler();
+        for (int i = 0; i < 50; i++)
+            report(profiler, "name" + i, 1);
+        report(profiler, "hot", 100);
+        report(profiler, "warm", 50);
+        report(profiler, "tepid", 20);
+        Assert.assertEquals(Arrays.asList("hot", "warm", "tepid"),
+                profiler.getHeavyHitters(3));
+    }
+
+    /**
+     * Trimming a full profiler evicts cold names and keeps hot ones.
+     */
+    @Test
+    public void testTrimEvictsColdest() {
+        AggregateDemandProfiler profiler = new AggregateDemandProfiler(null,
+                10);
+        Assert.assertTrue(profiler.trim().isEmpty());
+        for (int i = 0; i < 5; i++)
+            report(profiler, "hot" + i, 100);
+        for (int i = 0; i < 100; i++)
+            report(profiler, "cold" + i, 1);
+        Set<String> evicted = new HashSet<String>();
+        for (AbstractDemandProfile profile : profiler.trim())
+            evicted.add(profile.getName());
+        Assert.assertFalse(evicted.isEmpty());
+        for (int i = 0; i < 5; i++) {
+            Assert.assertFalse(evicted.contains("hot" + i));
+            Assert.assertTrue(profiler.contains("hot" + i));
+        }
+        for (String name : evicted)
+            Assert.assertFalse(profiler.contains(name));
+    }
+
+    /**
+     * Trimming brings a profiler that has grown well past its maximum size
+     * back below it in one call.
+     */
+    @Test
+    public void testTrimBoundsSize() {
+        AggregateDemandProfiler profiler = new AggregateDemandProfiler(null,
+                100);
+        report(profiler, "hot", 100);
+        for (int i = 0; i < 1000; i++)
+            report(profiler, "warm" + i, 2);
+        Assert.assertEquals(1001, profiler.size());
+        Assert.assertEquals(902, profiler.trim().size());
+        Assert.assertTrue(profiler.size() < 100);
+        Assert.assertTrue(profiler.contains("hot"));
+        Assert.assertTrue(profiler.trim().isEmpty());
+    }
+
+    /**
+     * Eviction samples names at random, so every cold name is eventually
+     * considered rather than only a fixed prefix of the map.
+     */
+    @Test
+    public void testTrimSamplesWholeMap() {
+        AggregateDemandProfiler profiler = new AggregateDemandProfiler(null,
+                1000);
+        // cold names interleaved with warm ones across the map
+        for (int i = 0; i < 1010; i++)
+            report(profiler, "name" + i, i % 101 == 0 ? 1 : 2);
+        Set<String> evictedCold = new HashSet<String>();
+        for (int round = 0; round < 50 && evictedCold.size() < 10; round++)
+            for (AbstractDemandProfile profile : profiler.trim())
+                if (Integer.parseInt(profile.getName().substring(4)) % 101 == 0)
+                    evictedCold.add(profile.getName());
+                else
+                    // refill so that the profiler stays full
+                    report(profiler, profile.getName(), 1);
+        Assert.assertEquals(10, evictedCold.size());
+    }
+}
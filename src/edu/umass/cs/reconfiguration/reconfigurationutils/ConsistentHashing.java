@@ -17,15 +17,21 @@
  */
 package edu.umass.cs.reconfiguration.reconfigurationutils;
 
+import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Set;
-import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import edu.umass.cs.gigapaxos.PaxosConfig;
 import edu.umass.cs.reconfiguration.ReconfigurationConfig;
@@ -40,6 +46,14 @@ import edu.umass.cs.utils.Util;
  * A utility class with mostly static methods to help with consistent hashing
  * related functions.
  * 
+ * The ring is an immutable sorted array of points that is replaced as a whole
+ * upon {@link #refresh(Set)}, so lookups are lock-free. Rings have a single
+ * point per server unless constructed with virtual nodes, which only rings
+ * whose placements are recorded, like that of active replicas, can use as
+ * reconfigurator group splits and merges assume a single point per
+ * reconfigurator. With a single point and MD5, the placement is identical to
+ * that of the original ring.
+ * 
  * It is okay to suppress warnings about unchecked types of serversArray objects
  * as they have to be of type NodeIDType.
  */
@@ -49,25 +63,106 @@ public class ConsistentHashing<NodeIDType> {
 		PaxosConfig.load(ReconfigurationConfig.RC.class);
 	}
 	private static final int DEFAULT_NUM_REPLICAS = Config.getGlobalInt(RC.DEFAULT_NUM_REPLICAS);
-	
-	private static MessageDigest md;
-	static {
-		try {
-			md = MessageDigest.getInstance("MD5");
-		} catch (NoSuchAlgorithmException e) {
-			e.printStackTrace();
+
+	/**
+	 * Hash functions for placing servers and names on the ring. All nodes
+	 * and clients must use the same function.
+	 */
+	public static enum HashFunction {
+		/**
+		 * Folded MD5 digest. Backwards compatible but slower and with a
+		 * narrow range of values, so it is not suitable for virtual nodes.
+		 */
+		MD5,
+		/**
+		 * 32-bit murmur3, a fast non-cryptographic hash.
+		 */
+		MURMUR3,
+	};
+
+	/**
+	 * Default hash function for all rings.
+	 */
+	public static final HashFunction DEFAULT_HASH_FUNCTION = HashFunction
+			.valueOf(Config.getGlobalString(RC.CONSISTENT_HASH_FUNCTION)
+					.toUpperCase());
+
+	// MessageDigest is not thread safe
+	private static final ThreadLocal<MessageDigest> md = new ThreadLocal<MessageDigest>() {
+		@Override
+		protected MessageDigest initialValue() {
+			try {
+				return MessageDigest.getInstance("MD5");
+			} catch (NoSuchAlgorithmException e) {
+				throw new RuntimeException(e);
+			}
+		}
+	};
+
+	/* Immutable snapshot of the ring. owners[i] owns the arc ending at
+	 * points[i], and primaries maps each server to the index of its first
+	 * point. numReplicas is part of the snapshot so that it changes
+	 * atomically with the servers. */
+	private static class Ring<NodeIDType> {
+		final int[] points;
+		final Object[] owners;
+		final Map<Object, Integer> primaries = new HashMap<Object, Integer>();
+		final int numServers;
+		final int numReplicas;
+
+		Ring(TreeMap<Integer, NodeIDType> points,
+				Map<NodeIDType, Integer> primaries, int numReplicas) {
+			this.points = new int[points.size()];
+			this.owners = new Object[points.size()];
+			int i = 0;
+			for (Map.Entry<Integer, NodeIDType> entry : points.entrySet()) {
+				this.points[i] = entry.getKey();
+				this.owners[i] = entry.getValue();
+				if (entry.getKey().equals(primaries.get(entry.getValue())))
+					this.primaries.put(entry.getValue(), i);
+				i++;
+			}
+			this.numServers = new HashSet<Object>(Arrays.asList(this.owners))
+					.size();
+			this.numReplicas = numReplicas;
+		}
+
+		/* The replica group of a name is that of the server owning the
+		 * name's position, i.e., the servers following that server's first
+		 * point. With a single virtual node, this is simply the servers
+		 * following the name's position. Either way, the group of a name is
+		 * the group of its first node, as RC group naming assumes. */
+		int startOf(int hash) {
+			int i = this.indexOf(hash);
+			Integer primary = this.primaries.get(this.owners[i]);
+			return primary != null ? primary : i;
+		}
+
+		// index of the first point >= hash, wrapping around
+		int indexOf(int hash) {
+			int i = Arrays.binarySearch(this.points, hash);
+			if (i < 0)
+				i = -i - 1;
+			return i == this.points.length ? 0 : i;
 		}
 	}
-	
-	private boolean replicateAll = false;
-	private int numReplicas=DEFAULT_NUM_REPLICAS;
-	private SortedMap<Integer, NodeIDType> servers = new TreeMap<Integer, NodeIDType>();
+
+	private final boolean replicateAll;
+	private final HashFunction hashFunction;
+	private final int virtualNodes;
+	private volatile Ring<NodeIDType> ring;
+
+	/* Bounded-load placement state. Loads are the number of names whose
+	 * replica groups include a server as known to this instance. */
+	private final double loadBound;
+	private final ConcurrentHashMap<NodeIDType, AtomicInteger> loads = new ConcurrentHashMap<NodeIDType, AtomicInteger>();
+	private final AtomicLong totalLoad = new AtomicLong(0);
 
 	/**
 	 * @param servers
 	 */
 	public ConsistentHashing(NodeIDType[] servers) {
-		this.refresh(servers, DEFAULT_NUM_REPLICAS);
+		this(servers, DEFAULT_NUM_REPLICAS);
 	}
 
 	/**
@@ -75,22 +170,46 @@ public class ConsistentHashing<NodeIDType> {
 	 * @param numReplicas
 	 */
 	public ConsistentHashing(NodeIDType[] servers, int numReplicas) {
-		this.refresh(servers, numReplicas);
+		this(new HashSet<NodeIDType>(Arrays.asList(servers)), numReplicas,
+				false, DEFAULT_HASH_FUNCTION, 1, 0);
 	}
 
 	/**
 	 * @param servers
 	 */
 	public ConsistentHashing(Set<NodeIDType> servers) {
-		this.refresh(servers, DEFAULT_NUM_REPLICAS);
+		this(servers, false);
 	}
+
 	/**
 	 * @param servers
 	 * @param replicateAll
 	 */
 	public ConsistentHashing(Set<NodeIDType> servers, boolean replicateAll) {
+		this(servers, DEFAULT_NUM_REPLICAS, replicateAll,
+				DEFAULT_HASH_FUNCTION, 1, 0);
+	}
+
+	/**
+	 * @param servers
+	 * @param numReplicas
+	 * @param replicateAll
+	 * @param hashFunction
+	 * @param virtualNodes
+	 *            Number of points on the ring per unit of server weight.
+	 * @param loadBound
+	 *            Bounded-load factor for
+	 *            {@link #placeReplicatedServers(String)}; disabled if not
+	 *            greater than 1.
+	 */
+	public ConsistentHashing(Set<NodeIDType> servers, int numReplicas,
+			boolean replicateAll, HashFunction hashFunction,
+			int virtualNodes, double loadBound) {
 		this.replicateAll = replicateAll;
-		this.refresh(servers, DEFAULT_NUM_REPLICAS);
+		this.hashFunction = hashFunction;
+		this.virtualNodes = Math.max(1, virtualNodes);
+		this.loadBound = loadBound;
+		this.refresh(servers, numReplicas);
 	}
 
 	/**
@@ -98,16 +217,15 @@ public class ConsistentHashing<NodeIDType> {
 	 * @param numReplicas
 	 */
 	public void refresh(NodeIDType[] servers, int numReplicas) {
-		this.servers = new TreeMap<Integer, NodeIDType>();
-		for (NodeIDType server : servers)
-			this.servers.put(hash(server.toString()), server);
-		this.numReplicas = (replicateAll ? this.servers.size() : numReplicas);
+		this.refresh(new HashSet<NodeIDType>(Arrays.asList(servers)),
+				numReplicas);
 	}
+
 	/**
 	 * @param servers
 	 */
 	public void refresh(Set<NodeIDType> servers) {
-		refresh(servers, this.numReplicas);
+		refresh(servers, this.ring.numReplicas);
 	}
 
 	/**
@@ -115,14 +233,48 @@ public class ConsistentHashing<NodeIDType> {
 	 * @param numReplicas
 	 */
 	public void refresh(Set<NodeIDType> servers, int numReplicas) {
-		this.servers = new TreeMap<Integer, NodeIDType>();
+		Map<NodeIDType, Integer> weights = new HashMap<NodeIDType, Integer>();
 		for (NodeIDType server : servers)
-			this.servers.put(hash(server.toString()), server);
-		this.numReplicas = (replicateAll ? this.servers.size() : numReplicas);
+			weights.put(server, 1);
+		this.refresh(weights, numReplicas);
+	}
 
+	/**
+	 * Servers with weight w get w times as many virtual nodes, and therefore
+	 * roughly w times as many names, as servers with weight 1.
+	 * 
+	 * @param weights
+	 * @param numReplicas
+	 */
+	public void refresh(Map<NodeIDType, Integer> weights, int numReplicas) {
+		TreeMap<Integer, NodeIDType> points = new TreeMap<Integer, NodeIDType>();
+		for (NodeIDType server : weights.keySet())
+			for (int i = 1; i < Math.max(1, weights.get(server))
+					* this.virtualNodes; i++)
+				putPoint(points, hash(server + "#" + i), server);
+		/* Each server's first point is the one of the one-point ring and
+		 * takes precedence over colliding virtual nodes, so a server is always
+		 * the first node for its own ID. */
+		Map<NodeIDType, Integer> primaries = new HashMap<NodeIDType, Integer>();
+		for (NodeIDType server : weights.keySet())
+			primaries.put(server, hash(server.toString()));
+		for (NodeIDType server : weights.keySet())
+			points.remove(primaries.get(server));
+		for (NodeIDType server : weights.keySet())
+			putPoint(points, primaries.get(server), server);
+		// swap atomically
+		this.ring = new Ring<NodeIDType>(points, primaries,
+				(replicateAll ? weights.size() : numReplicas));
 	}
 
-	
+	// resolve collisions independently of iteration order
+	private static <NodeIDType> void putPoint(
+			TreeMap<Integer, NodeIDType> points, int point, NodeIDType server) {
+		NodeIDType prev = points.get(point);
+		if (prev == null
+				|| server.toString().compareTo(prev.toString()) < 0)
+			points.put(point, server);
+	}
 
 	/**
 	 * @param name
@@ -130,7 +282,9 @@ public class ConsistentHashing<NodeIDType> {
 	 * this name hashes.
 	 */
 	public Set<NodeIDType> getReplicatedServers(String name) {
-		return this.getReplicatedServers(name, this.replicateAll ? this.servers.size() : this.numReplicas);
+		Ring<NodeIDType> ring = this.ring;
+		return this.getReplicatedServers(ring, name,
+				this.replicateAll ? ring.numServers : ring.numReplicas);
 	}
 	
 	/**
@@ -139,63 +293,234 @@ public class ConsistentHashing<NodeIDType> {
 	 * this name hashes returned as an array.
 	 */
 	public ArrayList<NodeIDType> getReplicatedServersArray(String name) {
-		return this.getReplicatedServersArray(name, this.replicateAll ? this.servers.size() : this.numReplicas);
+		Ring<NodeIDType> ring = this.ring;
+		return this.getReplicatedServersArray(ring, name,
+				this.replicateAll ? ring.numServers : ring.numReplicas);
 	}
 
 	/**
 	 * @param name
 	 * @param k
-	 * @return {@code k} consecutive servers on the consistent hash ring to which
-	 * this name hashes returned as an array.
+	 * @return {@code k} (or all if fewer) distinct consecutive servers on the
+	 *         consistent hash ring to which this name hashes returned as an
+	 *         array.
 	 */
 	public ArrayList<NodeIDType> getReplicatedServersArray(String name, int k) {
-		int hash = hash(name);
-		SortedMap<Integer, NodeIDType> tailMap = this.servers.tailMap(hash);
-		Iterator<Integer> iterator = tailMap.keySet().iterator();
-		ArrayList<NodeIDType> replicas = new ArrayList<NodeIDType>();
-		for (int i = 0; i < k; i++) {
-			if (!iterator.hasNext())
-				iterator = this.servers.keySet().iterator();
-			replicas.add(this.servers.get(iterator.next()));
-		}
+		return this.getReplicatedServersArray(this.ring, name, k);
+	}
 
+	@SuppressWarnings("unchecked")
+	private ArrayList<NodeIDType> getReplicatedServersArray(
+			Ring<NodeIDType> ring, String name, int k) {
+		k = Math.min(k, ring.numServers);
+		ArrayList<NodeIDType> replicas = new ArrayList<NodeIDType>(k);
+		if (k <= 0)
+			return replicas;
+		for (int i = ring.startOf(hash(name)), j = 0; replicas.size() < k
+				&& j < ring.points.length; i = (i + 1) % ring.points.length, j++)
+			if (!replicas.contains(ring.owners[i]))
+				replicas.add((NodeIDType) ring.owners[i]);
 		return replicas;
 	}
 
+	@SuppressWarnings("unchecked")
 	protected NodeIDType getNode(String name) {
-		int hash = hash(name);
-		if (!this.servers.containsKey(hash)) {
-			SortedMap<Integer, NodeIDType> tailMap = this.servers.tailMap(hash);
-			hash = tailMap.isEmpty() ? this.servers.firstKey() : tailMap
-					.firstKey();
+		Ring<NodeIDType> ring = this.ring;
+		return ring.points.length > 0 ? (NodeIDType) ring.owners[ring
+				.indexOf(hash(name))] : null;
+	}
+
+	private Set<NodeIDType> getReplicatedServers(Ring<NodeIDType> ring,
+			String name, int k) {
+		return new HashSet<NodeIDType>(this.getReplicatedServersArray(ring,
+				name, k));
+	}
+
+	/**
+	 * Consistent hashing with bounded loads: walks the ring from the name's
+	 * position like {@link #getReplicatedServers(String)} but skips servers
+	 * whose load is already at least {@link RC#ACTIVES_PLACEMENT_LOAD_BOUND}
+	 * times the average. Unlike plain lookups, the result depends on the loads
+	 * known to this instance, so it is meant only for choosing an initial
+	 * placement that is then agreed upon and recorded, not for recomputing it.
+	 * 
+	 * @param name
+	 * @return Servers on which to place {@code name}.
+	 */
+	@SuppressWarnings("unchecked")
+	public Set<NodeIDType> placeReplicatedServers(String name) {
+		Ring<NodeIDType> ring = this.ring;
+		int k = this.replicateAll ? ring.numServers : Math.min(
+				ring.numReplicas, ring.numServers);
+		if (this.loadBound <= 1 || k >= ring.numServers)
+			return this.getReplicatedServers(ring, name, k);
+
+		long capacity = (long) Math.ceil(this.loadBound
+				* (this.totalLoad.get() + k) / ring.numServers);
+		Set<NodeIDType> replicas = new LinkedHashSet<NodeIDType>();
+		Set<NodeIDType> overloaded = new LinkedHashSet<NodeIDType>();
+		for (int i = ring.indexOf(hash(name)), j = 0; replicas.size() < k
+				&& j < ring.points.length; i = (i + 1) % ring.points.length, j++) {
+			NodeIDType server = (NodeIDType) ring.owners[i];
+			if (replicas.contains(server) || overloaded.contains(server))
+				continue;
+			if (this.getLoad(server) < capacity)
+				replicas.add(server);
+			else
+				overloaded.add(server);
 		}
-		return this.servers.get(hash);
+		// possible only with a bound close to 1
+		for (NodeIDType server : overloaded)
+			if (replicas.size() < k)
+				replicas.add(server);
+		return new HashSet<NodeIDType>(replicas);
 	}
-	
-	private Set<NodeIDType> getReplicatedServers(String name, int k) {
-		return new HashSet<NodeIDType>(this.getReplicatedServersArray(name, k));
+
+	/**
+	 * Updates the loads used by {@link #placeReplicatedServers(String)} when
+	 * {@code count} names move from {@code prev} to {@code cur}. Either may be
+	 * null.
+	 * 
+	 * @param prev
+	 * @param cur
+	 * @param count
+	 */
+	public void updateLoads(Set<NodeIDType> prev, Set<NodeIDType> cur,
+			int count) {
+		if (this.loadBound <= 1)
+			return;
+		if (prev != null)
+			for (NodeIDType server : prev)
+				this.addLoad(server, -count);
+		if (cur != null)
+			for (NodeIDType server : cur)
+				this.addLoad(server, count);
+	}
+
+	private void addLoad(NodeIDType server, int delta) {
+		AtomicInteger load = this.loads.get(server);
+		if (load == null) {
+			this.loads.putIfAbsent(server, new AtomicInteger(0));
+			load = this.loads.get(server);
+		}
+		// loads learned after startup may go transiently negative
+		load.addAndGet(delta);
+		this.totalLoad.addAndGet(delta);
 	}
 
+	/**
+	 * @param server
+	 * @return Load of {@code server} as used for bounded-load placement.
+	 */
+	public int getLoad(NodeIDType server) {
+		AtomicInteger load = this.loads.get(server);
+		return load != null ? load.get() : 0;
+	}
 
-	private synchronized int hash(String name) {
-		return hashStatic(name) ;//% (this.servers.size()>0 ? this.servers.size() : Integer.MAX_VALUE);
+	private int hash(String name) {
+		return hashStatic(name, this.hashFunction);
 	}
-	
+
 	/*
 	 * Bad idea to use hashCode here because we need this hash to be consistent
-	 * across platforms. Needs to be synchronized as md is not thread safe.
+	 * across platforms.
 	 */
-	private synchronized static int hashStatic(String name) {
-		byte[] digest = md.digest(name.getBytes());
+	private static int hashStatic(String name, HashFunction hashFunction) {
+		byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+		if (hashFunction == HashFunction.MURMUR3)
+			return murmur3(bytes, 0) & Integer.MAX_VALUE;
+		// else MD5
+		byte[] digest = md.get().digest(bytes);
 		int hash = 0;
 		for (int i = 0; i < digest.length; i++)
 			hash = (hash ^ (digest[i] << (i % 4)));
-		md.reset();
 		return Math.abs(hash);
 	}
+
+	/**
+	 * 32-bit murmur3 (x86 variant).
+	 * 
+	 * @param data
+	 * @param seed
+	 * @return Hash of {@code data}.
+	 */
+	static int murmur3(byte[] data, int seed) {
+		final int c1 = 0xcc9e2d51, c2 = 0x1b873593;
+		int h = seed, i = 0;
+		for (; i + 4 <= data.length; i += 4) {
+			int k = (data[i] & 0xff) | ((data[i + 1] & 0xff) << 8)
+					| ((data[i + 2] & 0xff) << 16) | (data[i + 3] << 24);
+			k *= c1;
+			k = Integer.rotateLeft(k, 15);
+			k *= c2;
+			h ^= k;
+			h = Integer.rotateLeft(h, 13);
+			h = h * 5 + 0xe6546b64;
+		}
+		// the tail of up to 3 bytes
+		int tail = data.length & 3;
+		if (tail > 0) {
+			int k = 0;
+			if (tail == 3)
+				k ^= (data[i + 2] & 0xff) << 16;
+			if (tail >= 2)
+				k ^= (data[i + 1] & 0xff) << 8;
+			k ^= (data[i] & 0xff);
+			k *= c1;
+			k = Integer.rotateLeft(k, 15);
+			k *= c2;
+			h ^= k;
+		}
+		h ^= data.length;
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return h;
+	}
+
 	// only for testing
+	@SuppressWarnings("unchecked")
 	private Collection<NodeIDType> getServers() {
-		return this.servers.values();
+		Collection<NodeIDType> servers = new ArrayList<NodeIDType>();
+		for (Object owner : this.ring.owners)
+			servers.add((NodeIDType) owner);
+		return servers;
+	}
+
+	/*
+	 * Lookup throughput and load imbalance, i.e., max/average names per
+	 * server, for numNames names with numReplicas replicas each.
+	 */
+	private static String benchmark(Set<String> servers,
+			HashFunction hashFunction, int virtualNodes, int numNames,
+			int numReplicas, boolean bounded) {
+		ConsistentHashing<String> ch = new ConsistentHashing<String>(servers,
+				numReplicas, false, hashFunction, virtualNodes, bounded ? 1.25
+						: 0);
+		Map<String, Integer> counts = new HashMap<String, Integer>();
+		for (String server : servers)
+			counts.put(server, 0);
+		long t = System.nanoTime();
+		for (int i = 0; i < numNames; i++) {
+			Set<String> replicas = bounded ? ch
+					.placeReplicatedServers("name" + i) : ch
+					.getReplicatedServers("name" + i);
+			if (bounded)
+				ch.updateLoads(null, replicas, 1);
+			for (String server : replicas)
+				counts.put(server, counts.get(server) + 1);
+		}
+		long delay = Math.max(1, System.nanoTime() - t);
+		int max = 0;
+		for (int count : counts.values())
+			max = Math.max(max, count);
+		return "servers=" + servers.size() + " vnodes=" + virtualNodes
+				+ (bounded ? " bounded" : "") + " hash=" + hashFunction
+				+ ": " + Util.df(numNames * 1000.0 * 1000 * 1000 / delay)
+				+ " lookups/s, max/avg load = "
+				+ Util.df(max * servers.size() * 1.0 / (numNames * numReplicas));
 	}
 
 	 /**
@@ -230,7 +555,17 @@ public class ConsistentHashing<NodeIDType> {
 		ConsistentHashing<String> CHI1 = new ConsistentHashing<String>(IDs1);
 		System.out.println("ring ordering = " + CHI1.getServers());
 
-		for(int i=0; i<1000; i++)
-			System.out.println(hashStatic("random"+i));
+		// benchmark with 1M names
+		int numNames = args.length > 0 ? Integer.valueOf(args[0]) : 1000 * 1000;
+		Set<String> servers = new HashSet<String>();
+		for (int i = 0; i < 10; i++)
+			servers.add("AR" + i);
+		System.out.println(benchmark(servers, HashFunction.MD5, 1, numNames,
+				3, false));
+		for (int vnodes : new int[] { 1, 16, 128 })
+			System.out.println(benchmark(servers, HashFunction.MURMUR3,
+					vnodes, numNames, 3, false));
+		System.out.println(benchmark(servers, HashFunction.MURMUR3, 1,
+				numNames, 3, true));
 	}
 }
@@ -0,0 +1,149 @@
+package edu.umass.cs.reconfiguration.reconfigurationutils;
+
+import edu.umass.cs.reconfiguration.reconfigurationutils.ConsistentHashing.HashFunction;
+import edu.umass.cs.utils.DefaultTest;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Placement tests for {@link ConsistentHashing}.
+ */
+public class ConsistentHashingTest extends DefaultTest {
+
+    private static Set<String> getServers(int n) {
+        Set<String> servers = new HashSet<String>();
+        for (int i = 0; i < n; i++)
+            servers.add("AR" + i);
+        return servers;
+    }
+
+    private static Map<String, Integer> getCounts(
+            ConsistentHashing<String> ch, Set<String> servers, int numNames,
+            boolean place) {
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        for (String server : servers)
+            counts.put(server, 0);
+        for (int i = 0; i < numNames; i++) {
+            Set<String> replicas = place ? ch.placeReplicatedServers("name"
+                    + i) : ch.getReplicatedServers("name" + i);
+            if (place)
+                ch.updateLoads(null, replicas, 1);
+            for (String server : replicas)
+                counts.put(server, counts.get(server) + 1);
+        }
+        return counts;
+    }
+
+    private static double getImbalance(Map<String, Integer> counts) {
+        int max = 0, total = 0;
+        for (int count : counts.values()) {
+            max = Math.max(max, count);
+            total += count;
+        }
+        return max * counts.size() * 1.0 / total;
+    }
+
+    /**
+     * Reference values of 32-bit murmur3 with seed 0.
+     */
+    @Test
+    public void testMurmur3() {
+        Assert.assertEquals(0, ConsistentHashing.murmur3(new byte[0], 0));
+        Assert.assertEquals(0x248bfa47, ConsistentHashing.murmur3(
+                "hello".getBytes(StandardCharsets.UTF_8), 0));
+        Assert.assertEquals(0x2e4ff723, ConsistentHashing.murmur3(
+                "The quick brown fox jumps over the lazy dog"
+                        .getBytes(StandardCharsets.UTF_8), 0));
+    }
+
+    /**
+     * With a single virtual node, each server is the first node for its own
+     * name, as with the original one-point-per-server ring.
+     */
+    @Test
+    public void testSingleVirtualNode() {
+        Set<String> servers = getServers(8);
+        ConsistentHashing<String> ch = new ConsistentHashing<String>(servers,
+                3, false, HashFunction.MD5, 1, 0);
+        for (String server : servers)
+            Assert.assertEquals(server, ch.getNode(server));
+    }
+
+    /**
+     * Replicas are distinct, independent of the order of servers, and the
+     * same as those of the first replica's own ID.
+     */
+    @Test
+    public void testDistinctReplicas() {
+        Set<String> servers = getServers(5);
+        List<String> reversed = new ArrayList<String>(servers);
+        Collections.reverse(reversed);
+        ConsistentHashing<String> ch1 = new ConsistentHashing<String>(
+                servers, 3, false, HashFunction.MURMUR3, 16, 0);
+        ConsistentHashing<String> ch2 = new ConsistentHashing<String>(
+                new LinkedHashSet<String>(reversed), 3, false,
+                HashFunction.MURMUR3, 16, 0);
+        for (int i = 0; i < 1000; i++) {
+            List<String> replicas = ch1.getReplicatedServersArray("name" + i);
+            Assert.assertEquals(3, new HashSet<String>(replicas).size());
+            Assert.assertEquals(replicas,
+                    ch2.getReplicatedServersArray("name" + i));
+            Assert.assertEquals(replicas.get(0), ch1.getNode("name" + i));
+            Assert.assertEquals(replicas,
+                    ch1.getReplicatedServersArray(replicas.get(0)));
+        }
+        Assert.assertEquals(5, ch1.getReplicatedServersArray("name", 10)
+                .size());
+        ch1.refresh(getServers(2));
+        Assert.assertEquals(2, ch1.getReplicatedServers("name").size());
+    }
+
+    /**
+     * Virtual nodes even out the load across a few servers, and weights skew
+     * it proportionally.
+     */
+    @Test
+    public void testVirtualNodesAndWeights() {
+        Set<String> servers = getServers(4);
+        ConsistentHashing<String> ch = new ConsistentHashing<String>(servers,
+                1, false, HashFunction.MURMUR3, 256, 0);
+        Assert.assertTrue(getImbalance(getCounts(ch, servers, 100000,
+                false)) < 1.15);
+
+        Map<String, Integer> weights = new HashMap<String, Integer>();
+        for (String server : servers)
+            weights.put(server, 1);
+        weights.put("AR0", 2);
+        ch.refresh(weights, 1);
+        Map<String, Integer> counts = getCounts(ch, servers, 100000, false);
+        double ratio = counts.get("AR0") * 1.0 / counts.get("AR1");
+        Assert.assertTrue(ratio > 1.6 && ratio < 2.4);
+    }
+
+    /**
+     * Bounded-load placement keeps every server within the bound.
+     */
+    @Test
+    public void testBoundedLoads() {
+        Set<String> servers = getServers(5);
+        ConsistentHashing<String> ch = new ConsistentHashing<String>(servers,
+                2, false, HashFunction.MURMUR3, 1, 1.1);
+        Map<String, Integer> counts = getCounts(ch, servers, 50000, true);
+        Assert.assertTrue(getImbalance(counts) <= 1.1 + 0.01);
+        for (String server : servers)
+            Assert.assertEquals((int) counts.get(server), ch.getLoad(server));
+        for (int i = 0; i < 10; i++)
+            Assert.assertEquals(2, ch.placeReplicatedServers("name" + i)
+                    .size());
+    }
+}
@@ -92,9 +92,15 @@ public class ConsistentReconfigurableNodeConfig<NodeIDType> extends
 		this.reconfigurators = this.nodeConfig.getReconfigurators();
 		this.CH_RC = new ConsistentHashing<NodeIDType>(this.reconfigurators);
 		/* The true flag means replicate_all, i.e., number of active replicas
-		 * chosen initially will be the set of all active replicas at that time. */
+		 * chosen initially will be the set of all active replicas at that time.
+		 * Only the actives ring uses virtual nodes and bounded loads as the
+		 * actives of a name are recorded upon placement. */
 		this.CH_AR = new ConsistentHashing<NodeIDType>(this.activeReplicas,
-				Config.getGlobalBoolean(RC.REPLICATE_ALL));
+				Config.getGlobalInt(RC.DEFAULT_NUM_REPLICAS),
+				Config.getGlobalBoolean(RC.REPLICATE_ALL),
+				ConsistentHashing.DEFAULT_HASH_FUNCTION,
+				Config.getGlobalInt(RC.CONSISTENT_HASH_VIRTUAL_NODES),
+				Config.getGlobalDouble(RC.ACTIVES_PLACEMENT_LOAD_BOUND));
 	}
 
 	@Override
@@ -254,6 +260,30 @@ public class ConsistentReconfigurableNodeConfig<NodeIDType> extends
 		return this.CH_AR.getReplicatedServers(name);
 	}
 
+	/**
+	 * @param name
+	 * @return Set of active replica nodes on which to initially place
+	 *         {@code name}, bounding the load on any one active if
+	 *         {@link RC#ACTIVES_PLACEMENT_LOAD_BOUND} is enabled.
+	 */
+	public Set<NodeIDType> placeReplicatedActives(String name) {
+		this.refreshActives();
+		return this.CH_AR.placeReplicatedServers(name);
+	}
+
+	/**
+	 * Informs bounded-load placement that {@code count} names moved from
+	 * {@code prev} to {@code cur} active replicas.
+	 * 
+	 * @param prev
+	 * @param cur
+	 * @param count
+	 */
+	public void updateActivesLoads(Set<NodeIDType> prev, Set<NodeIDType> cur,
+			int count) {
+		this.CH_AR.updateLoads(prev, cur, count);
+	}
+
 	/**
 	 * @param name
 	 * @return Set of active replica IPs to which {@code name} hashes on the
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2015 University of Massachusetts
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * 
+ * Initial developer(s): V. Arun
+ */
+package edu.umass.cs.reconfiguration.reconfigurationutils;
+
+/**
+ * @author arun
+ * 
+ *         A count-min sketch over service names. Increments are plain
+ *         (unsynchronized) array updates, so concurrent increments to the same
+ *         counter can occasionally be lost. That is fine for our purpose of
+ *         ranking names by approximate popularity, and it keeps the cost of an
+ *         increment to a handful of array writes with no locking or CAS.
+ *         <p>
+ * 
+ *         Counters are periodically halved via {@link #age()} so that the
+ *         estimates reflect recent rather than all-time demand.
+ */
+public class CountMinSketch {
+	private static final int DEPTH = 4;
+	private static final int MAX_COUNT = Integer.MAX_VALUE >> 1;
+	/**
+	 * Counters are halved after this many times as many increments as the
+	 * width of the sketch.
+	 */
+	public static final int AGING_FACTOR = 8;
+
+	private final int[] counters;
+	private final int mask;
+	private final int width;
+	// racy, only used to decide when to age
+	private int additions = 0;
+
+	/**
+	 * @param width
+	 *            Number of counters per row, rounded up to a power of two.
+	 */
+	public CountMinSketch(int width) {
+		int w = Integer.highestOneBit(Math.max(width, 16) - 1) << 1;
+		this.width = w;
+		this.mask = w - 1;
+		this.counters = new int[DEPTH * w];
+	}
+
+	private static int spread(int h) {
+		h ^= (h >>> 16);
+		h *= 0x85ebca6b;
+		h ^= (h >>> 13);
+		h *= 0xc2b2ae35;
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * @param name
+	 * @return Estimated count for {@code name} after incrementing it.
+	 */
+	public int increment(String name) {
+		int h1 = spread(name.hashCode());
+		int h2 = (h1 >>> 16) | 1;
+		int min = Integer.MAX_VALUE;
+		for (int i = 0; i < DEPTH; i++) {
+			int index = i * this.width + ((h1 + i * h2) & this.mask);
+			int count = this.counters[index];
+			if (count < MAX_COUNT)
+				this.counters[index] = ++count;
+			if (count < min)
+				min = count;
+		}
+		this.additions++;
+		return min;
+	}
+
+	/**
+	 * @param name
+	 * @return Estimated count for {@code name}. The estimate never
+	 *         under-counts except for lost concurrent increments.
+	 */
+	public int estimate(String name) {
+		int h1 = spread(name.hashCode());
+		int h2 = (h1 >>> 16) | 1;
+		int min = Integer.MAX_VALUE;
+		for (int i = 0; i < DEPTH; i++) {
+			int count = this.counters[i * this.width
+					+ ((h1 + i * h2) & this.mask)];
+			if (count < min)
+				min = count;
+		}
+		return min;
+	}
+
+	/**
+	 * Halves all counters if at least {@link #AGING_FACTOR} times as many
+	 * increments as the number of counters per row have happened since the
+	 * last aging.
+	 * 
+	 * @return True if counters were halved.
+	 */
+	public boolean age() {
+		if (this.additions < AGING_FACTOR * this.width)
+			return false;
+		this.additions = 0;
+		for (int i = 0; i < this.counters.length; i++)
+			this.counters[i] >>>= 1;
+		return true;
+	}
+}
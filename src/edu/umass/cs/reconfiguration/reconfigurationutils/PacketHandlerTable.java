@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2015 University of Massachusetts
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * 
+ * Initial developer(s): V. Arun
+ */
+package edu.umass.cs.reconfiguration.reconfigurationutils;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+
+import edu.umass.cs.reconfiguration.ReconfigurationConfig;
+import edu.umass.cs.reconfiguration.reconfigurationpackets.BasicReconfigurationPacket;
+import edu.umass.cs.reconfiguration.reconfigurationpackets.ReconfigurationPacket;
+
+/**
+ * @author arun
+ * 
+ *         Dispatch table from {@link ReconfigurationPacket.PacketType} to the
+ *         handler method named
+ *         {@link ReconfigurationPacket#HANDLER_METHOD_PREFIX} followed by the
+ *         packet's class name, e.g., handleDemandReport(DemandReport, ...), of
+ *         a target class. The handlers are looked up by reflection once per
+ *         target class and handler signature and invoked thereafter as
+ *         {@link MethodHandle}s, so per-event dispatch involves no reflective
+ *         lookup or varargs array allocation. Overridden handlers in subclasses
+ *         are dispatched virtually as with {@link Method#invoke}.
+ */
+public class PacketHandlerTable {
+
+	private static final ConcurrentHashMap<Object, PacketHandlerTable> tables = new ConcurrentHashMap<Object, PacketHandlerTable>();
+
+	private final Class<?> target;
+	private final Class<?>[] extraParams;
+	private final EnumMap<ReconfigurationPacket.PacketType, MethodHandle> handlers = new EnumMap<ReconfigurationPacket.PacketType, MethodHandle>(
+			ReconfigurationPacket.PacketType.class);
+
+	private PacketHandlerTable(Class<?> target, Class<?>... extraParams) {
+		this.target = target;
+		this.extraParams = extraParams;
+		MethodType generic = MethodType.genericMethodType(2 + extraParams.length);
+		MethodHandles.Lookup lookup = MethodHandles.lookup();
+		for (ReconfigurationPacket.PacketType type : ReconfigurationPacket.PacketType
+				.values()) {
+			Class<?> packetClass = ReconfigurationPacket.getPacketTypeClass(type);
+			if (packetClass == null)
+				continue;
+			Class<?>[] params = new Class<?>[1 + extraParams.length];
+			params[0] = packetClass;
+			System.arraycopy(extraParams, 0, params, 1, extraParams.length);
+			Method method = null;
+			try {
+				method = target.getMethod(ReconfigurationPacket.HANDLER_METHOD_PREFIX
+						+ ReconfigurationPacket.getPacketTypeClassName(type),
+						params);
+			} catch (NoSuchMethodException nsme) {
+				// not all types are handled by all targets
+				continue;
+			}
+			try {
+				if (!Modifier.isPublic(method.getDeclaringClass()
+						.getModifiers()))
+					method.setAccessible(true);
+				this.handlers.put(type, lookup.unreflect(method).asType(generic));
+			} catch (IllegalAccessException | RuntimeException e) {
+				ReconfigurationConfig.getLogger().log(Level.SEVERE,
+						"{0} unable to create handle for {1}: {2}",
+						new Object[] { this, method, e });
+			}
+		}
+	}
+
+	/**
+	 * @param target
+	 *            The class of the object on which handlers will be invoked.
+	 * @param extraParams
+	 *            The handler parameter types following the packet.
+	 * @return The table shared by all callers with the same class and
+	 *         signature.
+	 */
+	public static PacketHandlerTable getTable(Class<?> target,
+			Class<?>... extraParams) {
+		Object key = Arrays.asList(target, Arrays.asList(extraParams));
+		PacketHandlerTable table = tables.get(key);
+		if (table == null) {
+			tables.putIfAbsent(key, new PacketHandlerTable(target, extraParams));
+			table = tables.get(key);
+		}
+		return table;
+	}
+
+	/**
+	 * @param type
+	 * @return True if {@code type} has a handler.
+	 */
+	public boolean hasHandler(ReconfigurationPacket.PacketType type) {
+		return this.handlers.containsKey(type);
+	}
+
+	private MethodHandle getHandler(BasicReconfigurationPacket<?> packet) {
+		MethodHandle handler = this.handlers.get(packet.getType());
+		if (handler == null)
+			ReconfigurationConfig.getLogger().log(Level.SEVERE,
+					"{0} has no handler for {1}",
+					new Object[] { this, packet.getType() });
+		return handler;
+	}
+
+	/* Like Method.invoke, exceptions thrown by the handler are printed and
+	 * swallowed so that a bad packet does not kill the calling thread. */
+
+	/**
+	 * Invokes the handler with one extra argument.
+	 * 
+	 * @param obj
+	 * @param packet
+	 * @param arg
+	 * @return Value returned by the handler or null if no handler exists or
+	 *         the handler threw an exception.
+	 */
+	public Object invoke(Object obj, BasicReconfigurationPacket<?> packet,
+			Object arg) {
+		assert (this.extraParams.length == 1) : this;
+		MethodHandle handler = this.getHandler(packet);
+		try {
+			return handler != null ? (Object) handler.invokeExact(obj,
+					(Object) packet, arg) : null;
+		} catch (Throwable t) {
+			t.printStackTrace();
+		}
+		return null;
+	}
+
+	/**
+	 * Invokes the handler with two extra arguments.
+	 * 
+	 * @param obj
+	 * @param packet
+	 * @param arg1
+	 * @param arg2
+	 * @return Value returned by the handler or null if no handler exists or
+	 *         the handler threw an exception.
+	 */
+	public Object invoke(Object obj, BasicReconfigurationPacket<?> packet,
+			Object arg1, Object arg2) {
+		assert (this.extraParams.length == 2) : this;
+		MethodHandle handler = this.getHandler(packet);
+		try {
+			return handler != null ? (Object) handler.invokeExact(obj,
+					(Object) packet, arg1, arg2) : null;
+		} catch (Throwable t) {
+			t.printStackTrace();
+		}
+		return null;
+	}
+
+	public String toString() {
+		return this.getClass().getSimpleName() + "[" + this.target.getSimpleName()
+				+ Arrays.asList(this.extraParams) + "]";
+	}
+}
@@ -15,6 +15,7 @@
  * Initial developer(s): V. Arun */
 package edu.umass.cs.reconfiguration.reconfigurationutils;
 
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
 import java.util.logging.Level;
@@ -33,6 +34,8 @@ import edu.umass.cs.nio.JSONPacket;
 import edu.umass.cs.nio.MessageNIOTransport;
 import edu.umass.cs.nio.interfaces.Stringifiable;
 import edu.umass.cs.nio.nioutils.NIOHeader;
+import edu.umass.cs.reconfiguration.reconfigurationpackets.BatchedDemandReport;
+import edu.umass.cs.reconfiguration.reconfigurationpackets.CreateServiceName;
 import edu.umass.cs.reconfiguration.reconfigurationpackets.ReconfigurationPacket;
 import edu.umass.cs.reconfiguration.reconfigurationpackets.ReconfigurationPacket.PacketType;
 import edu.umass.cs.utils.Config;
@@ -98,6 +101,26 @@ public class ReconfigurationPacketDemultiplexer extends
 		ByteBuffer bbuf = ByteBuffer.wrap(message);
 		ReconfigurationPacket.PacketType rcType = null;
 		JSONObject json = null;
+		// batched demand reports are sent as raw bytes
+		if (BYTEIFICATION
+				&& bbuf.getInt(0) == PacketType.BATCHED_DEMAND_REPORT.getInt()
+				&& !JSONPacket.couldBeJSON(message, Integer.BYTES))
+			try {
+				return BatchedDemandReport.fromBytes(message, this.unstringer);
+			} catch (JSONException e) {
+				e.printStackTrace();
+				return null;
+			}
+		// batched creates carry their name states as raw bytes
+		if (BYTEIFICATION
+				&& bbuf.getInt(0) == PacketType.CREATE_SERVICE_NAME.getInt()
+				&& !JSONPacket.couldBeJSON(message, Integer.BYTES))
+			try {
+				return CreateServiceName.fromBytes(message, header);
+			} catch (IOException | JSONException e) {
+				e.printStackTrace();
+				return null;
+			}
 		// try to get reconfiguration packet JSON first
 		if ((BYTEIFICATION
 				&& (rcType = ReconfigurationPacket.PacketType.intToType
@@ -167,7 +190,7 @@ public class ReconfigurationPacketDemultiplexer extends
 		// else prefix msg with addresses
 		byte[] stamped = new byte[NIOHeader.BYTES + msg.length];
 		ByteBuffer bbuf = ByteBuffer.wrap(stamped);
-		bbuf.put(header.toBytes());
+		header.putBytes(bbuf);
 		bbuf.put(msg);
 		return new JSONMessenger.JSONObjectWrapper(stamped);
 	}
@@ -153,6 +153,31 @@ public class ReconfigurationRecord<NodeIDType> extends JSONObject {
 		this.policy = policy;
 	}
 
+	/**
+	 * Copy constructor. Mutable sets and maps are copied, so the copy can be
+	 * modified without affecting {@code record}.
+	 *
+	 * @param record
+	 */
+	public ReconfigurationRecord(ReconfigurationRecord<NodeIDType> record) {
+		this.name = record.name;
+		this.epoch = record.epoch;
+		this.actives = copy(record.actives);
+		this.state = record.state;
+		this.newActives = copy(record.newActives);
+		this.merged = copy(record.merged);
+		this.toMerge = copy(record.toMerge);
+		this.rcEpochs = new HashMap<NodeIDType, Integer>(record.rcEpochs);
+		this.deleteTime = record.deleteTime;
+		this.numPossiblyUncleanReconfigurations = record.numPossiblyUncleanReconfigurations;
+		this.rcGroupName = record.rcGroupName;
+		this.policy = record.policy;
+	}
+
+	private static <T> Set<T> copy(Set<T> set) {
+		return set != null ? new HashSet<T>(set) : null;
+	}
+
 	/**
 	 * @return JSON serialization of this object.
 	 * @throws JSONException
@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2015 University of Massachusetts
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * 
+ * Initial developer(s): V. Arun
+ */
+package edu.umass.cs.reconfiguration.testing;
+
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+
+import org.json.JSONObject;
+
+import edu.umass.cs.nio.GenericMessagingTask;
+import edu.umass.cs.protocoltask.ProtocolTask;
+import edu.umass.cs.reconfiguration.reconfigurationpackets.BasicReconfigurationPacket;
+import edu.umass.cs.reconfiguration.reconfigurationpackets.DemandReport;
+import edu.umass.cs.reconfiguration.reconfigurationpackets.EchoRequest;
+import edu.umass.cs.reconfiguration.reconfigurationpackets.ReconfigurationPacket;
+import edu.umass.cs.reconfiguration.reconfigurationpackets.RequestActiveReplicas;
+import edu.umass.cs.reconfiguration.reconfigurationutils.PacketHandlerTable;
+import edu.umass.cs.utils.Util;
+
+/**
+ * @author arun
+ * 
+ *         Measures the rate at which reconfiguration packets can be dispatched
+ *         to handle* methods, comparing the per-event reflective lookup and
+ *         invocation that protocol tasks used earlier with the
+ *         {@link PacketHandlerTable} now used by
+ *         {@code ActiveReplicaProtocolTask} and
+ *         {@code ReconfiguratorProtocolTask}. The handlers themselves are
+ *         trivial so that the numbers reflect dispatch overhead only.
+ * 
+ *         Usage: ProtocolTaskDispatchBenchmark [numEvents]
+ */
+public class ProtocolTaskDispatchBenchmark {
+
+	/**
+	 * Stand-in for a reconfigurator with trivial handlers.
+	 */
+	public static class Handlers {
+		private long count = 0;
+
+		/**
+		 * @param report
+		 * @param ptasks
+		 * @return null
+		 */
+		public GenericMessagingTask<Integer, ?>[] handleDemandReport(
+				DemandReport<Integer> report, ProtocolTask<?, ?, ?>[] ptasks) {
+			this.count++;
+			return null;
+		}
+
+		/**
+		 * @param echo
+		 * @param ptasks
+		 * @return null
+		 */
+		public GenericMessagingTask<Integer, ?>[] handleEchoRequest(
+				EchoRequest echo, ProtocolTask<?, ?, ?>[] ptasks) {
+			this.count++;
+			return null;
+		}
+
+		/**
+		 * @param request
+		 * @param ptasks
+		 * @return null
+		 */
+		public GenericMessagingTask<Integer, ?>[] handleRequestActiveReplicas(
+				RequestActiveReplicas request, ProtocolTask<?, ?, ?>[] ptasks) {
+			this.count++;
+			return null;
+		}
+	}
+
+	// the dispatch code previously in the protocol tasks' handleEvent
+	private static Object reflectiveInvoke(Object target,
+			BasicReconfigurationPacket<?> packet, ProtocolTask<?, ?, ?>[] ptasks)
+			throws Exception {
+		ReconfigurationPacket.PacketType type = packet.getType();
+		Method method = target.getClass().getMethod(
+				ReconfigurationPacket.HANDLER_METHOD_PREFIX
+						+ ReconfigurationPacket.getPacketTypeClassName(type),
+				ReconfigurationPacket.getPacketTypeClass(type),
+				ProtocolTask[].class);
+		return method.invoke(target, packet, ptasks);
+	}
+
+	private static double run(boolean reflective, Handlers target,
+			BasicReconfigurationPacket<?>[] packets, int numEvents)
+			throws Exception {
+		PacketHandlerTable table = PacketHandlerTable.getTable(
+				target.getClass(), ProtocolTask[].class);
+		ProtocolTask<?, ?, ?>[] ptasks = new ProtocolTask<?, ?, ?>[1];
+		long t = System.nanoTime();
+		for (int i = 0; i < numEvents; i++) {
+			BasicReconfigurationPacket<?> packet = packets[i % packets.length];
+			if (reflective)
+				reflectiveInvoke(target, packet, ptasks);
+			else
+				table.invoke(target, packet, ptasks);
+		}
+		return numEvents * 1000.0 * 1000 * 1000 / (System.nanoTime() - t);
+	}
+
+	/**
+	 * @param args
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception {
+		int numEvents = args.length > 0 ? Integer.valueOf(args[0]) : 2000000;
+		BasicReconfigurationPacket<?>[] packets = {
+				new DemandReport<Integer>(0, "name0", 0, new JSONObject()),
+				new EchoRequest(new InetSocketAddress("localhost", 2000)),
+				new RequestActiveReplicas("name1") };
+		Handlers target = new Handlers();
+
+		for (int i = 0; i < 3; i++) {
+			// first iterations are warmup
+			double before = run(true, target, packets, numEvents);
+			double after = run(false, target, packets, numEvents);
+			if (i == 2)
+				System.out.println("reflective=" + Util.df(before)
+						+ "/s; methodHandles=" + Util.df(after) + "/s; speedup="
+						+ Util.df(after / before) + "x (" + target.count
+						+ " events)");
+		}
+	}
+}
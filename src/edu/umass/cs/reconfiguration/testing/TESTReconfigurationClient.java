@@ -4,11 +4,13 @@ import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -26,6 +28,7 @@ import edu.umass.cs.gigapaxos.interfaces.Request;
 import edu.umass.cs.gigapaxos.interfaces.RequestCallback;
 import edu.umass.cs.gigapaxos.paxosutil.RateLimiter;
 import edu.umass.cs.nio.interfaces.IntegerPacketType;
+import edu.umass.cs.reconfiguration.ActiveReplica;
 import edu.umass.cs.reconfiguration.ReconfigurableAppClientAsync;
 import edu.umass.cs.reconfiguration.ReconfigurationConfig;
 import edu.umass.cs.reconfiguration.ReconfigurationConfig.RC;
@@ -61,7 +64,7 @@ public class TESTReconfigurationClient extends DefaultTest {
 	private static final int REPEAT = 10;
 
 	private static enum ProfilerKeys {
-		reconfiguration_rate, request_actives, app_request, create, delete
+		reconfiguration_rate, request_actives, app_request, create, delete, bulk_create_rate, migration_rate
 	};
 
 	private static Set<TESTReconfigurationClient> allInstances = new HashSet<TESTReconfigurationClient>();
@@ -419,6 +422,48 @@ public class TESTReconfigurationClient extends DefaultTest {
 		return success[0];
 	}
 
+	/**
+	 * @param name
+	 * @param timeout
+	 * @return The current active replicas of {@code name} or null if the
+	 *         request failed or timed out.
+	 * @throws IOException
+	 */
+	private Set<InetSocketAddress> getActives(String name, Long timeout)
+			throws IOException {
+		AtomicReference<Set<InetSocketAddress>> actives = new AtomicReference<Set<InetSocketAddress>>();
+		boolean[] responded = new boolean[1];
+		Object monitor = new Object();
+		getRandomClient().sendRequest(new RequestActiveReplicas(name),
+				new RequestCallback() {
+					@Override
+					public void handleResponse(Request response) {
+						if (response instanceof RequestActiveReplicas
+								&& !((RequestActiveReplicas) response)
+										.isFailed())
+							actives.set(((RequestActiveReplicas) response)
+									.getActives());
+						synchronized (monitor) {
+							responded[0] = true;
+							monitor.notify();
+						}
+					}
+				});
+		long t = System.currentTimeMillis();
+		synchronized (monitor) {
+			while (!responded[0]
+					&& System.currentTimeMillis() - t < (timeout != null ? timeout
+							: DEFAULT_RTX_TIMEOUT))
+				try {
+					monitor.wait(DEFAULT_TIMEOUT);
+				} catch (InterruptedException e) {
+					e.printStackTrace();
+					break;
+				}
+		}
+		return actives.get();
+	}
+
 	private boolean testBatchCreate(String[] names, int batchSize)
 			throws IOException {
 		Map<String, String> nameStates = new HashMap<String, String>();
@@ -951,6 +996,67 @@ public class TESTReconfigurationClient extends DefaultTest {
 		;
 	}
 
+	/**
+	 * Batched prefetching of active replicas caches all existing names.
+	 * 
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	@Test
+	public void test05_PrefetchActives() throws IOException,
+			InterruptedException {
+		String[] names = generateRandomNames(Config
+				.getGlobalInt(TRC.TEST_NUM_APP_NAMES));
+		boolean test = testBatchCreate(names,
+				Config.getGlobalInt(TRC.TEST_BATCH_SIZE))
+				&& testExists(names);
+		int prefetched = getRandomClient().prefetchActives(
+				new HashSet<String>(Arrays.asList(names)),
+				Config.getGlobalInt(TRC.TEST_BATCH_SIZE), 8000,
+				this.reconfigurators);
+		log.log(Level.INFO, "{0}: prefetched actives for {1}/{2} names",
+				new Object[] { testName.getMethodName(), prefetched,
+						names.length });
+		test = test && prefetched == names.length
+				&& testAppRequests(names, 1) && testDeletes(names)
+				&& testNotExists(names);
+		Assert.assertEquals(test, true);
+	}
+
+	/**
+	 * Streaming bulk creation pipelines per-group batches of names with their
+	 * initial states and reports the creation throughput.
+	 * 
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	@Test
+	public void test06_BulkCreate() throws IOException, InterruptedException {
+		String[] names = generateRandomNames(Math
+				.max(Config
+						.getGlobalInt(TRC.TEST_RECONFIGURATION_THROUGHPUT_NUM_APP_NAMES),
+						Config.getGlobalInt(TRC.TEST_NUM_APP_NAMES)));
+		Map<String, String> nameStates = new HashMap<String, String>();
+		for (String name : names)
+			nameStates.put(name, "initial_state_" + name);
+		long t = System.currentTimeMillis();
+		int created = getRandomClient().bulkCreate(
+				nameStates.entrySet().iterator(),
+				Config.getGlobalInt(TRC.TEST_BATCH_SIZE), 4, 8000,
+				this.reconfigurators, null);
+		long elapsed = Math.max(1, System.currentTimeMillis() - t);
+		DelayProfiler.updateValue(ProfilerKeys.bulk_create_rate.toString(),
+				(created * 1000.0) / elapsed);
+		log.log(Level.INFO,
+				"{0}: bulk created {1}/{2} names in {3}ms ({4} names/s)",
+				new Object[] { testName.getMethodName(), created,
+						names.length, elapsed,
+						Util.df((created * 1000.0) / elapsed) });
+		Assert.assertEquals(created == names.length && testExists(names)
+				&& testAppRequests(names, 1) && testDeletes(names)
+				&& testNotExists(names), true);
+	}
+
 	/**
 	 * Deletion of a non-existent active replica succeeds.
 	 * 
@@ -1002,17 +1108,54 @@ public class TESTReconfigurationClient extends DefaultTest {
 	@Test
 	public void test21_DeleteActiveReplica() throws IOException,
 			InterruptedException {
-		String[] names = null;
-		boolean test = testCreates(names = generateRandomNames(Config
-				.getGlobalInt(TRC.TEST_NUM_APP_NAMES)));
+		String[] names = generateRandomNames(Math
+				.max(Config
+						.getGlobalInt(TRC.TEST_RECONFIGURATION_THROUGHPUT_NUM_APP_NAMES),
+						Config.getGlobalInt(TRC.TEST_NUM_APP_NAMES)));
+		boolean test = testBatchCreate(names,
+				Config.getGlobalInt(TRC.TEST_BATCH_SIZE))
+				&& testExists(names);
 		Map<String, InetSocketAddress> actives = TESTReconfigurationConfig
 				.getLocalActives();
 		Map<String, InetSocketAddress> deletes = new HashMap<String, InetSocketAddress>();
 		deletes.put(actives.keySet().iterator().next(),
 				actives.get(actives.keySet().iterator().next()));
+
+		/* Only names currently replicated at the deleted active need to be
+		 * migrated, so count those before the node config change. Actives
+		 * are returned as client-facing addresses. */
+		InetSocketAddress deleted = deletes.values().iterator().next();
+		Set<InetSocketAddress> deletedClientFacing = new HashSet<InetSocketAddress>(
+				Arrays.asList(
+						new InetSocketAddress(deleted.getAddress(),
+								ActiveReplica.getClientFacingClearPort(deleted
+										.getPort())),
+						new InetSocketAddress(deleted.getAddress(),
+								ActiveReplica.getClientFacingSSLPort(deleted
+										.getPort()))));
+		int migrations = 0;
+		for (String name : names) {
+			Set<InetSocketAddress> nameActives = test ? this.getActives(name,
+					null) : null;
+			if (nameActives != null
+					&& !Collections.disjoint(nameActives, deletedClientFacing))
+				migrations++;
+		}
+		long t = System.currentTimeMillis();
 		test = test
-				&& this.testReconfigureActives(null, deletes.keySet(), null)
-				&& this.testDeletes(names);
+				&& this.testReconfigureActives(null, deletes.keySet(), null);
+		if (test && migrations > 0) {
+			// the response is sent only after all migrations complete
+			long elapsed = Math.max(1, System.currentTimeMillis() - t);
+			DelayProfiler.updateValue(ProfilerKeys.migration_rate.toString(),
+					(migrations * 1000.0) / elapsed);
+			log.log(Level.INFO,
+					"{0}: migrated {1}/{2} names in {3}ms ({4} names/s)",
+					new Object[] { testName.getMethodName(), migrations,
+							names.length, elapsed,
+							Util.df((migrations * 1000.0) / elapsed) });
+		}
+		test = test && this.testDeletes(names);
 		if (test)
 			// store this for subsequent addition
 			justDeletedActives.putAll(deletes);
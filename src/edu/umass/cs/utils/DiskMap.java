@@ -125,6 +125,7 @@ public abstract class DiskMap<K, V> implements ConcurrentMap<K, V>,
 
 	private final long capacityEstimate;
 	private long idleThreshold = 30000;
+	private EvictionPolicy<K> evictionPolicy = null;
 	private long pauseThreadPeriod = 30000;
 	private long lastGCAttempt = 0;
 	private boolean ongoingGC = false;
@@ -145,6 +146,42 @@ public abstract class DiskMap<K, V> implements ConcurrentMap<K, V>,
 		this.idleThreshold = idleTime;
 	}
 	
+	/**
+	 * Use {@code policy} to pick the entries to pause when over capacity
+	 * instead of the least recently accessed ones. Entries already in memory
+	 * are admitted to {@code policy} in iteration order.
+	 * 
+	 * @param policy
+	 *            Null reverts to the default behavior.
+	 */
+	@SuppressWarnings("unchecked")
+	public synchronized void setEvictionPolicy(EvictionPolicy<K> policy) {
+		if (policy != null)
+			for (Object key : this.map.keySet().toArray())
+				policy.admitted((K) key);
+		this.evictionPolicy = policy;
+	}
+
+	private void admitted(K key) {
+		EvictionPolicy<K> policy = this.evictionPolicy;
+		if (policy != null)
+			policy.admitted(key);
+	}
+
+	@SuppressWarnings("unchecked")
+	private void referenced(Object key) {
+		EvictionPolicy<K> policy = this.evictionPolicy;
+		if (policy != null)
+			policy.referenced((K) key);
+	}
+
+	@SuppressWarnings("unchecked")
+	private void removed(Object key) {
+		EvictionPolicy<K> policy = this.evictionPolicy;
+		if (policy != null)
+			policy.removed((K) key);
+	}
+
 	/**
 	 * Set the cleanCache option to true, which means that puts will be
 	 * immediately committed, i.e., the in-memory cache is always consistent
@@ -275,6 +312,27 @@ public abstract class DiskMap<K, V> implements ConcurrentMap<K, V>,
 	 */
 	abstract public V restore(K key) throws IOException;
 
+	/**
+	 * Bulk version of {@link #restore(Object)} used by {@link #getAll(Set)}.
+	 * The default implementation restores keys one at a time, so
+	 * implementations backed by a store that supports bulk reads should
+	 * override it.
+	 * 
+	 * @param keys
+	 * @return Map of restored key,value pairs. Keys with no persisted value
+	 *         are absent.
+	 * @throws IOException
+	 */
+	public Map<K, V> restore(Set<K> keys) throws IOException {
+		Map<K, V> restored = new HashMap<K, V>();
+		for (K key : keys) {
+			V value = this.restore(key);
+			if (value != null)
+				restored.put(key, value);
+		}
+		return restored;
+	}
+
 	@Override
 	public int size() {
 		return this.map.size();
@@ -305,6 +363,8 @@ public abstract class DiskMap<K, V> implements ConcurrentMap<K, V>,
 		V value = this.map.get(key);
 		if (value == null)
 			value = this.getOrRestore(key);
+		else
+			this.referenced(key);
 		if (!(value instanceof Pausable))
 			this.markActive(key);
 		if (this.shouldGC(true))
@@ -312,6 +372,63 @@ public abstract class DiskMap<K, V> implements ConcurrentMap<K, V>,
 		return value;
 	}
 
+	/**
+	 * Bulk version of {@link #get(Object)}. Keys not in memory are restored
+	 * together with a single {@link #restore(Set)} call instead of one
+	 * {@link #restore(Object)} per key.
+	 * 
+	 * @param keys
+	 * @return Map of key,value pairs for keys in {@code keys} that have a
+	 *         value.
+	 */
+	public Map<K, V> getAll(Set<K> keys) {
+		Map<K, V> values = new HashMap<K, V>();
+		Set<K> misses = new HashSet<K>();
+		for (K key : keys) {
+			V value = this.map.get(key);
+			if (value != null) {
+				values.put(key, value);
+				this.referenced(key);
+			} else
+				misses.add(key);
+		}
+		if (!misses.isEmpty() && this.isGCEnabled())
+			synchronized (this) {
+				// recheck memory and pauseQ under the lock
+				for (Iterator<K> iter = misses.iterator(); iter.hasNext();) {
+					K key = iter.next();
+					V value = this.map.get(key);
+					if (value == null
+							&& (value = this.pauseQ.remove(key)) != null) {
+						this.map.put(key, value);
+						this.admitted(key);
+					}
+					if (value != null) {
+						values.put(key, value);
+						iter.remove();
+					}
+				}
+				try {
+					Map<K, V> restored = misses.isEmpty() ? null : this
+							.restore(misses);
+					if (restored != null) {
+						this.map.putAll(restored);
+						values.putAll(restored);
+						for (K key : restored.keySet())
+							this.admitted(key);
+					}
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		for (K key : values.keySet())
+			if (!(values.get(key) instanceof Pausable))
+				this.markActive(key);
+		if (this.shouldGC(true))
+			this.initOnetimeGC();
+		return values;
+	}
+
 	private boolean isSingleLinkedHashMap() {
 		return USE_LINKED_HASH_MAP && !this.externalMap;
 	}
@@ -344,6 +461,7 @@ public abstract class DiskMap<K, V> implements ConcurrentMap<K, V>,
 		synchronized (this) {
 			prev = this.getOrRestore(key);
 			this.map.put(key, value);
+			this.admitted(key);
 			recordPut(key);
 			if (this.cleanCache)
 				this.putCommit(key, value);
@@ -434,6 +552,7 @@ public abstract class DiskMap<K, V> implements ConcurrentMap<K, V>,
 		// need to remove soft copies *after* commit
 		this.map.remove(key);
 		this.pauseQ.remove(key);
+		this.removed(key);
 		this.recordRemove(key);
 		return value;
 	}
@@ -485,14 +604,19 @@ public abstract class DiskMap<K, V> implements ConcurrentMap<K, V>,
 
 	@Override
 	public synchronized void putAll(Map<? extends K, ? extends V> m) {
-		for (K key : m.keySet())
+		for (K key : m.keySet()) {
 			this.map.put(key, m.get(key));
+			this.admitted(key);
+		}
 	}
 
 	@Override
 	public void clear() {
 		if (this.stats != null)
 			this.stats.clear();
+		if (this.evictionPolicy != null)
+			for (Object key : this.map.keySet().toArray())
+				this.removed(key);
 		this.map.clear();
 	}
 
@@ -524,8 +648,10 @@ public abstract class DiskMap<K, V> implements ConcurrentMap<K, V>,
 	}
 
 	protected synchronized void hintRestore(K key, V value) {
-		if (!this.map.containsKey(key) && !this.pauseQ.containsKey(key))
+		if (!this.map.containsKey(key) && !this.pauseQ.containsKey(key)) {
 			this.map.put(key, value);
+			this.admitted(key);
+		}
 	}
 	
 	private boolean isGCEnabled() {
@@ -545,6 +671,7 @@ public abstract class DiskMap<K, V> implements ConcurrentMap<K, V>,
 				synchronized (this) {
 					this.map.put((K) key, value);
 					this.pauseQ.remove(key);
+					this.admitted((K) key);
 				}
 			} catch (ClassCastException e) {
 				// do nothing
@@ -553,8 +680,10 @@ public abstract class DiskMap<K, V> implements ConcurrentMap<K, V>,
 			// try restore from disk
 			try {
 				synchronized (this) {
-					if ((value = this.restore((K) key)) != null)
+					if ((value = this.restore((K) key)) != null) {
 						this.map.put((K) key, value);
+						this.admitted((K) key);
+					}
 				}
 			} catch (IOException e) {
 				e.printStackTrace();
@@ -590,12 +719,30 @@ public abstract class DiskMap<K, V> implements ConcurrentMap<K, V>,
 				else
 					value = this.map.remove(key);
 				this.pauseQ.put(key, value);
+				this.removed(key);
 				return true;
 			}
 		}
 		return false;
 	}
 
+	/* Enqueues for pausing the eviction policy's victims, as many as
+	 * enqueuePause would force, irrespective of whether they are pausable. */
+	private void enqueueVictims() {
+		EvictionPolicy<K> policy = this.evictionPolicy;
+		for (int i = policy.size(); i >= 0
+				&& this.pauseQ.size() < Math.max(this.capacityEstimate
+						/ FORCE_PAUSE_FACTOR, 1); i--) {
+			K key = policy.victim();
+			if (key == null)
+				break;
+			V value = this.map.remove(key);
+			if (value != null)
+				this.pauseQ.put(key, value);
+			policy.removed(key);
+		}
+	}
+
 	private boolean shouldGC(boolean strict) {
 		// avoid unnecessary synchronization
 		if(this.ongoingGC) return false;
@@ -632,8 +779,13 @@ public abstract class DiskMap<K, V> implements ConcurrentMap<K, V>,
 		long t = System.currentTimeMillis();
 		/* stats is directly traversed only if it is a LinkedHashMap, otherwise
 		 * we iterate over the underlying in-memory map and use stats to get
-		 * last active times instead. */
-		if (this.stats != null && this.stats instanceof LinkedHashMap) {
+		 * last active times instead. An eviction policy if set overrides
+		 * both. */
+		if (this.evictionPolicy != null) {
+			synchronized (this) {
+				this.enqueueVictims();
+			}
+		} else if (this.stats != null && this.stats instanceof LinkedHashMap) {
 			while (this.map.size() >= this.capacityEstimate
 					&& this.pauseQ.isEmpty()) {
 				// need to check for concurrent modification
@@ -732,6 +884,8 @@ public abstract class DiskMap<K, V> implements ConcurrentMap<K, V>,
 						if (!this.concurrentPuts.contains(key))
 							// remove in case intervening gets restored key
 							this.map.remove(key, pausedValue);
+						if (!this.map.containsKey(key))
+							this.removed(key);
 
 						// concurrent removes should be (re-)removed
 						if (this.concurrentRemoves.contains(key)
@@ -1,6 +1,7 @@
 package edu.umass.cs.utils;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Map;
 import java.util.Set;
 
@@ -29,4 +30,36 @@ public interface Diskable<K, V> {
 	 * @throws IOException
 	 */
 	public V restore(K key) throws IOException;
+
+	/**
+	 * Compact binary form of keys and values used by {@link MappedDiskable}
+	 * instead of Java serialization.
+	 * 
+	 * @param <K>
+	 * @param <V>
+	 */
+	public static interface Serializer<K, V> {
+		/**
+		 * @param key
+		 * @return Bytes uniquely identifying {@code key}.
+		 */
+		public byte[] keyToBytes(K key);
+
+		/**
+		 * @param value
+		 * @return Serialized {@code value}.
+		 */
+		public byte[] valueToBytes(V value);
+
+		/**
+		 * @param buf
+		 *            Positioned at the start of exactly the bytes returned by
+		 *            {@link #valueToBytes(Object)}. The buffer may be a view of
+		 *            a memory-mapped file, so the returned value must not
+		 *            retain it.
+		 * @return Deserialized value.
+		 * @throws IOException
+		 */
+		public V bytesToValue(ByteBuffer buf) throws IOException;
+	}
 }
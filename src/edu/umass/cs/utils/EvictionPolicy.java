@@ -0,0 +1,334 @@
+/* Copyright (c) 2015 University of Massachusetts
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * Initial developer(s): V. Arun */
+package edu.umass.cs.utils;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @author arun
+ *
+ * @param <K>
+ *
+ *            An approximately-LRU policy to pick which in-memory entries to
+ *            pause to disk when a map like {@link DiskMap} or the paxos
+ *            instance map is over capacity. Entries that are long idle per
+ *            {@link Pausable} are paused anyway; the policy only decides which
+ *            of the remaining entries to pause when that is not enough.
+ *
+ *            {@link #referenced(Object)} is called on every access and is
+ *            lock-free: it just sets a bit or bumps a small counter in the
+ *            entry's node. The other methods are called only upon admission,
+ *            removal, or by the pausing thread and are synchronized.
+ */
+public interface EvictionPolicy<K> {
+
+	/**
+	 * {@code key} was just inserted into memory, either created or unpaused.
+	 *
+	 * @param key
+	 */
+	public void admitted(K key);
+
+	/**
+	 * {@code key} was accessed while in memory. Must not block.
+	 *
+	 * @param key
+	 */
+	public void referenced(K key);
+
+	/**
+	 * {@code key} was removed from memory, either paused or deleted.
+	 *
+	 * @param key
+	 */
+	public void removed(K key);
+
+	/**
+	 * The caller is expected to try to pause the returned key and call
+	 * {@link #removed(Object)} if it succeeds. If it does not, the key remains
+	 * tracked and will be considered again later, so repeated calls make
+	 * progress.
+	 *
+	 * @return The next entry to pause or null if none.
+	 */
+	public K victim();
+
+	/**
+	 * @return Number of entries tracked.
+	 */
+	public int size();
+
+	/**
+	 * The supported policies.
+	 */
+	public static enum Type {
+		/**
+		 * No policy: pause long idle entries and, if that is not enough,
+		 * entries in iteration order irrespective of their recency.
+		 */
+		SWEEP,
+
+		/**
+		 * Second-chance FIFO with one reference bit per entry.
+		 */
+		CLOCK,
+
+		/**
+		 * Scan-resistant S3-FIFO: a small probationary FIFO, a main FIFO, and
+		 * a ghost FIFO of keys recently evicted from the small one.
+		 */
+		S3FIFO;
+
+		/**
+		 * @return A new policy instance or null for {@link #SWEEP}.
+		 */
+		public <K> EvictionPolicy<K> newInstance() {
+			switch (this) {
+			case CLOCK:
+				return new Clock<K>();
+			case S3FIFO:
+				return new S3FIFO<K>();
+			default:
+				return null;
+			}
+		}
+	}
+
+	/**
+	 * Node in an intrusive doubly linked FIFO. Only {@link #freq} is accessed
+	 * without the policy lock.
+	 *
+	 * @param <K>
+	 */
+	static class Node<K> {
+		final K key;
+		volatile int freq = 0;
+		Node<K> prev = null, next = null;
+		Queue<K> queue = null;
+
+		Node(K key) {
+			this.key = key;
+		}
+	}
+
+	/**
+	 * FIFO of {@link Node}s supporting O(1) removal from the middle.
+	 *
+	 * @param <K>
+	 */
+	static class Queue<K> {
+		private Node<K> head = null, tail = null;
+		private int size = 0;
+
+		void addLast(Node<K> node) {
+			node.queue = this;
+			node.prev = this.tail;
+			node.next = null;
+			if (this.tail != null)
+				this.tail.next = node;
+			else
+				this.head = node;
+			this.tail = node;
+			this.size++;
+		}
+
+		void remove(Node<K> node) {
+			assert (node.queue == this);
+			if (node.prev != null)
+				node.prev.next = node.next;
+			else
+				this.head = node.next;
+			if (node.next != null)
+				node.next.prev = node.prev;
+			else
+				this.tail = node.prev;
+			node.prev = node.next = null;
+			node.queue = null;
+			this.size--;
+		}
+
+		Node<K> pollFirst() {
+			Node<K> node = this.head;
+			if (node != null)
+				this.remove(node);
+			return node;
+		}
+
+		int size() {
+			return this.size;
+		}
+	}
+
+	/**
+	 * CLOCK as a second-chance FIFO: the victim is the oldest entry whose
+	 * reference bit is clear; entries passed over have their bit cleared and
+	 * move to the tail.
+	 *
+	 * @param <K>
+	 */
+	public static class Clock<K> implements EvictionPolicy<K> {
+		private final ConcurrentHashMap<K, Node<K>> nodes = new ConcurrentHashMap<K, Node<K>>();
+		private final Queue<K> ring = new Queue<K>();
+
+		@Override
+		public synchronized void admitted(K key) {
+			if (this.nodes.containsKey(key))
+				return;
+			Node<K> node = new Node<K>(key);
+			this.nodes.put(key, node);
+			this.ring.addLast(node);
+		}
+
+		@Override
+		public void referenced(K key) {
+			Node<K> node = this.nodes.get(key);
+			if (node != null && node.freq == 0)
+				node.freq = 1;
+		}
+
+		@Override
+		public synchronized void removed(K key) {
+			Node<K> node = this.nodes.remove(key);
+			if (node != null)
+				this.ring.remove(node);
+		}
+
+		@Override
+		public synchronized K victim() {
+			// at most two revolutions as the first clears all bits
+			for (int i = 2 * this.ring.size(); i >= 0; i--) {
+				Node<K> node = this.ring.pollFirst();
+				if (node == null)
+					return null;
+				this.ring.addLast(node);
+				if (node.freq == 0)
+					return node.key;
+				node.freq = 0;
+			}
+			return null;
+		}
+
+		@Override
+		public int size() {
+			return this.nodes.size();
+		}
+
+		public String toString() {
+			return this.getClass().getSimpleName() + ":" + this.size();
+		}
+	}
+
+	/**
+	 * S3-FIFO (Yang et al., SOSP'23). New entries are admitted to a small FIFO
+	 * holding ~10% of the entries; those not referenced again by the time they
+	 * reach its head are evicted, so one-off accesses like a sweep over many
+	 * groups do not displace the working set. Entries referenced while in the
+	 * small FIFO, or re-admitted soon after eviction from it as remembered by
+	 * the ghost FIFO, go to the main FIFO, which is a CLOCK with a 2-bit
+	 * frequency counter.
+	 *
+	 * @param <K>
+	 */
+	public static class S3FIFO<K> implements EvictionPolicy<K> {
+		private static final int MAX_FREQ = 3;
+		private static final int SMALL_PERCENT = 10;
+
+		private final ConcurrentHashMap<K, Node<K>> nodes = new ConcurrentHashMap<K, Node<K>>();
+		private final Queue<K> small = new Queue<K>();
+		private final Queue<K> main = new Queue<K>();
+		private final LinkedHashSet<K> ghost = new LinkedHashSet<K>();
+
+		@Override
+		public synchronized void admitted(K key) {
+			if (this.nodes.containsKey(key))
+				return;
+			Node<K> node = new Node<K>(key);
+			this.nodes.put(key, node);
+			if (this.ghost.remove(key))
+				this.main.addLast(node);
+			else
+				this.small.addLast(node);
+		}
+
+		@Override
+		public void referenced(K key) {
+			Node<K> node = this.nodes.get(key);
+			// racy increments are fine as freq is just a hint
+			if (node != null && node.freq < MAX_FREQ)
+				node.freq++;
+		}
+
+		@Override
+		public synchronized void removed(K key) {
+			Node<K> node = this.nodes.remove(key);
+			if (node == null)
+				return;
+			if (node.queue == this.small)
+				this.remember(key);
+			node.queue.remove(node);
+		}
+
+		private void remember(K key) {
+			this.ghost.add(key);
+			if (this.ghost.size() > Math.max(this.nodes.size(), 1)) {
+				Iterator<K> iter = this.ghost.iterator();
+				iter.next();
+				iter.remove();
+			}
+		}
+
+		@Override
+		public synchronized K victim() {
+			// each entry is moved or decremented at most MAX_FREQ+1 times
+			for (int i = (MAX_FREQ + 2) * this.nodes.size(); i >= 0; i--) {
+				if (this.small.size() > 0
+						&& (this.small.size() * 100 >= this.nodes.size()
+								* SMALL_PERCENT || this.main.size() == 0)) {
+					Node<K> node = this.small.pollFirst();
+					if (node.freq > 0) {
+						// promote
+						node.freq = 0;
+						this.main.addLast(node);
+						continue;
+					}
+					this.small.addLast(node);
+					return node.key;
+				}
+				Node<K> node = this.main.pollFirst();
+				if (node == null)
+					return null;
+				this.main.addLast(node);
+				if (node.freq == 0)
+					return node.key;
+				node.freq--;
+			}
+			return null;
+		}
+
+		@Override
+		public int size() {
+			return this.nodes.size();
+		}
+
+		public String toString() {
+			return this.getClass().getSimpleName() + ":" + this.size() + "["
+					+ this.small.size() + "+" + this.main.size() + "+"
+					+ this.ghost.size() + "]";
+		}
+	}
+}
@@ -0,0 +1,201 @@
+/* Copyright (c) 2015 University of Massachusetts
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License. */
+package edu.umass.cs.utils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Result;
+import org.junit.runner.notification.Failure;
+
+/**
+ * Test class for {@link EvictionPolicy}.
+ */
+public class EvictionPolicyTest extends DefaultTest {
+
+	private static final int NUM_KEYS = 10000, CAPACITY = 1000,
+			NUM_ACCESSES = 200000;
+
+	/* Zipfian accesses over NUM_KEYS keys interleaved with a scan over as
+	 * many one-off keys, which an LRU-like policy would let flush out the
+	 * popular keys. */
+	private static String[] workload(long seed) {
+		double[] cdf = new double[NUM_KEYS];
+		double sum = 0;
+		for (int i = 0; i < NUM_KEYS; i++)
+			cdf[i] = (sum += 1.0 / Math.pow(i + 1, 1.1));
+		Random r = new Random(seed);
+		String[] accesses = new String[NUM_ACCESSES];
+		int scanned = 0;
+		for (int i = 0; i < NUM_ACCESSES; i++) {
+			if (i % 2 == 0 && i > NUM_ACCESSES / 4 && i < NUM_ACCESSES / 2)
+				accesses[i] = "scan" + (scanned++);
+			else {
+				int index = Arrays.binarySearch(cdf, r.nextDouble()
+						* sum);
+				accesses[i] = "key" + (index >= 0 ? index : -index - 1);
+			}
+		}
+		return accesses;
+	}
+
+	// null policy evicts random entries like the SWEEP option
+	private static double hitRatio(EvictionPolicy<String> policy,
+			String[] accesses) {
+		Set<String> cache = new HashSet<String>();
+		ArrayList<String> list = new ArrayList<String>();
+		Random r = new Random(0);
+		int hits = 0;
+		for (String key : accesses) {
+			if (cache.contains(key)) {
+				hits++;
+				if (policy != null)
+					policy.referenced(key);
+				continue;
+			}
+			if (cache.size() >= CAPACITY) {
+				String victim = null;
+				if (policy != null)
+					policy.removed(victim = policy.victim());
+				else {
+					int index = r.nextInt(list.size());
+					victim = list.get(index);
+					list.set(index, list.get(list.size() - 1));
+					list.remove(list.size() - 1);
+				}
+				Assert.assertTrue(victim, cache.remove(victim));
+			}
+			cache.add(key);
+			if (policy == null)
+				list.add(key);
+			if (policy != null)
+				policy.admitted(key);
+		}
+		if (policy != null)
+			Assert.assertEquals(cache.size(), policy.size());
+		return hits * 1.0 / accesses.length;
+	}
+
+	/**
+	 * Both policies beat pausing in iteration order under a skewed workload
+	 * with a scan, and S3-FIFO beats CLOCK as it is scan-resistant, each by
+	 * a few percentage points of hit ratio (0.630, 0.672, and 0.716
+	 * respectively with this seed).
+	 */
+	@Test
+	public void test01_HitRatio() {
+		String[] accesses = workload(0);
+		double sweep = hitRatio(EvictionPolicy.Type.SWEEP.<String> newInstance(),
+				accesses);
+		double clock = hitRatio(
+				EvictionPolicy.Type.CLOCK.<String> newInstance(), accesses);
+		double s3fifo = hitRatio(
+				EvictionPolicy.Type.S3FIFO.<String> newInstance(), accesses);
+		String ratios = String.format("sweep=%.3f clock=%.3f s3fifo=%.3f",
+				sweep, clock, s3fifo);
+		Assert.assertTrue(ratios, sweep > 0.5);
+		Assert.assertTrue(ratios, clock > sweep + 0.02);
+		Assert.assertTrue(ratios, s3fifo > clock + 0.02);
+	}
+
+	/**
+	 * A victim that the caller fails to pause is not returned again until the
+	 * other unreferenced entries have been.
+	 */
+	@Test
+	public void test02_VictimProgress() {
+		for (EvictionPolicy.Type type : new EvictionPolicy.Type[] {
+				EvictionPolicy.Type.CLOCK, EvictionPolicy.Type.S3FIFO }) {
+			EvictionPolicy<String> policy = type.newInstance();
+			for (int i = 0; i < 10; i++)
+				policy.admitted("key" + i);
+			policy.referenced("key0");
+			Set<String> victims = new HashSet<String>();
+			for (int i = 1; i < 10; i++)
+				victims.add(policy.victim());
+			Assert.assertEquals(type + ":" + victims, 9, victims.size());
+			Assert.assertFalse(victims.contains("key0"));
+			for (int i = 0; i < 10; i++)
+				policy.removed("key" + i);
+			Assert.assertEquals(0, policy.size());
+			Assert.assertNull(policy.victim());
+		}
+	}
+
+	/**
+	 * {@link DiskMap} with a policy keeps repeatedly accessed keys in memory
+	 * while one-off keys are put.
+	 */
+	@Test
+	public void test03_DiskMap() {
+		final Map<String, String> disk = new HashMap<String, String>();
+		int capacity = 100;
+		DiskMap<String, String> dmap = new DiskMap<String, String>(capacity) {
+			@Override
+			public Set<String> commit(Map<String, String> toCommit)
+					throws IOException {
+				synchronized (disk) {
+					disk.putAll(toCommit);
+				}
+				return toCommit.keySet();
+			}
+
+			@Override
+			public String restore(String key) throws IOException {
+				synchronized (disk) {
+					return disk.remove(key);
+				}
+			}
+		};
+		dmap.setEvictionPolicy(EvictionPolicy.Type.S3FIFO
+				.<String> newInstance());
+		int hot = capacity / 2;
+		for (int i = 0; i < hot; i++)
+			dmap.put("hot" + i, "value" + i);
+		for (int j = 0; j < 100; j++) {
+			for (int i = 0; i < hot; i++)
+				Assert.assertEquals("value" + i, dmap.get("hot" + i));
+			for (int i = 0; i < 10; i++)
+				dmap.put("cold" + j + ":" + i, "value");
+		}
+		int inMemory = 0;
+		for (int i = 0; i < hot; i++)
+			if (dmap.keySet().contains("hot" + i))
+				inMemory++;
+		Assert.assertTrue(inMemory + "/" + hot + " hot keys in memory",
+				inMemory >= hot * 9 / 10);
+		for (int j = 0; j < 100; j++)
+			Assert.assertEquals("value", dmap.get("cold" + j + ":0"));
+		dmap.close();
+	}
+
+	/**
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		Util.assertAssertionsEnabled();
+		Result result = JUnitCore.runClasses(EvictionPolicyTest.class);
+		for (Failure failure : result.getFailures())
+			System.out.println(failure.toString());
+	}
+}
@@ -16,12 +16,19 @@
 
 package edu.umass.cs.utils;
 
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
-import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiFunction;
 
+import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.JUnitCore;
 import org.junit.runner.Result;
@@ -32,16 +39,43 @@ import org.junit.runner.notification.Failure;
  * @param <K>
  * @param <V>
  *
+ *            A {@link ConcurrentHashMap} whose entries are removed, with an
+ *            optional callback, if they are not refreshed by a put within the
+ *            GC timeout.
+ *
+ *            <p>
+ *            Puts and removes take no map-wide lock. The put time of each key
+ *            is kept in a second concurrent map and the key itself in the
+ *            bucket of a timer wheel covering its put time; both are updated
+ *            under the same per-key lock as the entry, and a key is moved out
+ *            of its old bucket when refreshed or removed. An expiry pass
+ *            drops whole buckets older than the timeout and only inspects
+ *            individual keys in the boundary bucket. At most one pass runs at
+ *            a time, and callbacks are invoked outside any map lock.
+ *
+ *            <p>
+ *            Only {@link #put(Object, Object)},
+ *            {@link #putIfAbsent(Object, Object)}, {@link #putAll(Map)}, and
+ *            the {@code remove} methods maintain put times. Entries inserted
+ *            by other methods such as {@code compute}, {@code merge}, or
+ *            {@code replace} are not garbage collected.
  */
 public class GCConcurrentHashMap<K, V> extends ConcurrentHashMap<K, V> {
 
 	private static final int DEFAULT_GC_TIMEOUT = 10000;
 	private static final int DEFAULT_GC_THRESHOLD_SIZE = 1024 * 64;
-	private int gcThresholdSize = DEFAULT_GC_THRESHOLD_SIZE;
+	// number of wheel buckets spanning the initial GC timeout
+	private static final int BUCKETS_PER_TIMEOUT = 16;
+	private volatile int gcThresholdSize = DEFAULT_GC_THRESHOLD_SIZE;
 
-	private final LinkedHashMap<K, Long> putTimes = new LinkedHashMap<K, Long>();
+	private final ConcurrentHashMap<K, Long> putTimes = new ConcurrentHashMap<K, Long>();
+	private final ConcurrentSkipListMap<Long, Bucket<K>> wheel = new ConcurrentSkipListMap<Long, Bucket<K>>();
+	// the most recently scheduled bucket
+	private volatile Bucket<K> current = new Bucket<K>(-1);
+	private final long bucketWidth; // milliseconds
+	private final AtomicBoolean collecting = new AtomicBoolean(false);
 	private final GCConcurrentHashMapCallback callback;
-	private long gcTimeout; // milliseconds
+	private volatile long gcTimeout; // milliseconds
 
 	/**
 	 * @param callback
@@ -53,6 +87,7 @@ public class GCConcurrentHashMap<K, V> extends ConcurrentHashMap<K, V> {
 		this.callback = callback;
 		this.gcTimeout = gcTimeout;
 		this.minGCInterval = this.gcTimeout;
+		this.bucketWidth = Math.max(1, gcTimeout / BUCKETS_PER_TIMEOUT);
 	}
 	
 	/**
@@ -66,27 +101,136 @@ public class GCConcurrentHashMap<K, V> extends ConcurrentHashMap<K, V> {
 	 */
 	private static final long serialVersionUID = 183021919212L;
 
-	public synchronized V put(K key, V value) {
-		this.putGC(key);
-		V old = super.put(key, value);
-		return old;
+	/**
+	 * Keys put within the same {@link #bucketWidth} milliseconds.
+	 */
+	private static final class Bucket<K> {
+		final long id;
+		final Set<K> keys = ConcurrentHashMap.<K> newKeySet();
+		volatile boolean expired = false;
+
+		Bucket(long id) {
+			this.id = id;
+		}
+	}
+
+	/**
+	 * Installs the value and its put time under the entry's lock.
+	 */
+	private class Putter implements BiFunction<K, V, V> {
+		final V value;
+		final boolean ifAbsent;
+		V old = null;
+
+		Putter(V value, boolean ifAbsent) {
+			this.value = value;
+			this.ifAbsent = ifAbsent;
+		}
+
+		@Override
+		public V apply(K key, V old) {
+			long now = System.currentTimeMillis();
+			Long prev = putTimes.put(key, now);
+			if (prev == null || prev / bucketWidth != now / bucketWidth) {
+				unschedule(key, prev);
+				schedule(key, now);
+			}
+			this.old = old;
+			return this.ifAbsent && old != null ? old : this.value;
+		}
+	}
+
+	/**
+	 * Removes the entry and its put time under the entry's lock if the value,
+	 * when specified, matches and the put time is no later than
+	 * {@code putBefore}.
+	 */
+	private class Remover implements BiFunction<K, V, V> {
+		final Object value;
+		final long putBefore;
+		V old = null;
+
+		Remover(Object value, long putBefore) {
+			this.value = value;
+			this.putBefore = putBefore;
+		}
+
+		@Override
+		public V apply(K key, V cur) {
+			if (this.value != null && !this.value.equals(cur))
+				return cur;
+			Long time = null;
+			if (this.putBefore < Long.MAX_VALUE
+					&& (time = putTimes.get(key)) != null
+					&& time > this.putBefore)
+				return cur;
+			unschedule(key, putTimes.remove(key));
+			this.old = cur;
+			return null;
+		}
+	}
+
+	private void schedule(K key, long time) {
+		long id = time / this.bucketWidth;
+		for (Bucket<K> bucket = null; bucket == null;) {
+			if ((bucket = this.getBucket(id)) == null) {
+				Bucket<K> prev = this.wheel.putIfAbsent(id,
+						bucket = new Bucket<K>(id));
+				if (prev != null)
+					bucket = prev;
+			}
+			if (this.current != bucket)
+				this.current = bucket;
+			bucket.keys.add(key);
+			// retry if the bucket was concurrently expired
+			if (bucket.expired)
+				bucket = null;
+		}
+	}
+
+	private void unschedule(K key, Long time) {
+		Bucket<K> bucket = null;
+		if (time != null
+				&& (bucket = this.getBucket(time / this.bucketWidth)) != null)
+			bucket.keys.remove(key);
+	}
+
+	private Bucket<K> getBucket(long id) {
+		Bucket<K> bucket = this.current;
+		return bucket.id == id && !bucket.expired ? bucket : this.wheel
+				.get(id);
+	}
+
+	public V put(K key, V value) {
+		return this.put(key, value, false);
+	}
+
+	/**
+	 * Refreshes the put time of {@code key} even if it is present.
+	 */
+	public V putIfAbsent(K key, V value) {
+		return this.put(key, value, true);
 	}
 
-	public synchronized V putIfAbsent(K key, V value) {
-		this.putGC(key);
-		return super.putIfAbsent(key, value);
+	private V put(K key, V value, boolean ifAbsent) {
+		if (value == null)
+			throw new NullPointerException();
+		Putter putter = new Putter(value, ifAbsent);
+		super.compute(key, putter);
+		this.putGC();
+		return putter.old;
 	}
 
-	public synchronized void putAll(Map<? extends K, ? extends V> map) {
-		for (K key : map.keySet())
-			this.putGC(key);
-		super.putAll(map);
+	public void putAll(Map<? extends K, ? extends V> map) {
+		for (Map.Entry<? extends K, ? extends V> entry : map.entrySet())
+			this.put(entry.getKey(), entry.getValue());
 	}
 
-	public synchronized V remove(Object key) {
-		V value = super.remove(key);
-		this.putTimes.remove(key);
-		return value;
+	@SuppressWarnings("unchecked")
+	public V remove(Object key) {
+		Remover remover = new Remover(null, Long.MAX_VALUE);
+		super.computeIfPresent((K) key, remover);
+		return remover.old;
 	}
 
 	/**
@@ -106,58 +250,76 @@ public class GCConcurrentHashMap<K, V> extends ConcurrentHashMap<K, V> {
 		return this;
 	}
 
-	public synchronized boolean remove(Object key, Object value) {
-		if (super.remove(key, value)) {
-			this.putTimes.remove(key);
-			return true;
-		}
-		return false;
+	@SuppressWarnings("unchecked")
+	public boolean remove(Object key, Object value) {
+		if (value == null)
+			return false;
+		Remover remover = new Remover(value, Long.MAX_VALUE);
+		super.computeIfPresent((K) key, remover);
+		return remover.old != null;
 	}
 
-	private synchronized void putGC(K key) {
-		this.putTimes.put(key, System.currentTimeMillis());
-		if (this.size() > gcThresholdSize || Util.oneIn(1000))
+	private void putGC() {
+		if (this.size() > gcThresholdSize
+				|| ThreadLocalRandom.current().nextInt(1000) == 0)
 			GC();
 	}
 
-	private int numGC = 0;
-	private int numGCAttempts = 0;
-	private long lastGCTime = 0;
+	private volatile int numGC = 0;
+	private volatile int numGCAttempts = 0;
+	private volatile long lastGCTime = 0;
 	private long minGCInterval = DEFAULT_GC_TIMEOUT;
 
 	/**
 	 * @param timeout
 	 */
-	public synchronized void tryGC(long timeout) {
+	public void tryGC(long timeout) {
 		this.GC(timeout);
 	}
 
-	private synchronized void GC() {
+	private void GC() {
 		this.GC(this.gcTimeout);
 	}
 
-	private synchronized void GC(long timeout) {
-		if (System.currentTimeMillis() - this.lastGCTime < this.minGCInterval)
+	private void GC(long timeout) {
+		if (System.currentTimeMillis() - this.lastGCTime < this.minGCInterval
+				|| !this.collecting.compareAndSet(false, true))
 			return;
-		else
+		try {
 			this.lastGCTime = System.currentTimeMillis();
+			numGCAttempts++;
+			if (this.expire(this.lastGCTime - timeout))
+				numGC++;
+		} finally {
+			this.collecting.set(false);
+		}
+	}
+
+	// only one thread at a time
+	private boolean expire(long putBefore) {
 		boolean removed = false;
-		numGCAttempts++;
-		for (Iterator<K> iterK = this.putTimes.keySet().iterator(); iterK
-				.hasNext();) {
-			K key = iterK.next();
-			Long time = this.putTimes.get(key);
-			if (time != null && (System.currentTimeMillis() - time > timeout)) {
-				iterK.remove();
-				V value = this.remove(key);
-				if (value != null && this.callback!=null)
-					this.callback.callbackGC(key, value);
-				removed = true;
-			} else
-				break;
+		long boundary = putBefore / this.bucketWidth;
+		for (Bucket<K> bucket : this.wheel.headMap(boundary, true).values()) {
+			// the boundary bucket may hold unexpired keys
+			if (bucket.id < boundary) {
+				bucket.expired = true;
+				this.wheel.remove(bucket.id, bucket);
+			}
+			for (K key : bucket.keys) {
+				Remover remover = new Remover(null, putBefore - 1);
+				super.computeIfPresent(key, remover);
+				if (remover.old != null) {
+					if (this.callback != null)
+						this.callback.callbackGC(key, remover.old);
+					removed = true;
+				}
+				// in case the entry was removed bypassing this class
+				else if (!this.containsKey(key)
+						&& this.putTimes.remove(key) != null)
+					bucket.keys.remove(key);
+			}
 		}
-		if (removed)
-			numGC++;
+		return removed;
 	}
 
 	/**
@@ -208,6 +370,142 @@ public class GCConcurrentHashMap<K, V> extends ConcurrentHashMap<K, V> {
 						+ i;
 			assert (map1 != null && map2 != null);
 		}
+
+		/**
+		 * Rethrows the first failure, if any, recorded by a worker thread, as
+		 * assertions failing in threads other than the test thread are
+		 * otherwise only printed.
+		 */
+		private static void rethrow(Queue<Throwable> failures) {
+			Throwable e = failures.peek();
+			if (e instanceof Error)
+				throw (Error) e;
+			if (e instanceof RuntimeException)
+				throw (RuntimeException) e;
+			if (e != null)
+				throw new AssertionError(e);
+		}
+
+		/**
+		 * Each of {@code numThreads} threads puts {@code n} of its own keys
+		 * into {@code map}, removing each key once {@code outstanding} more
+		 * have been put after it.
+		 *
+		 * @return put+remove pairs per microsecond
+		 */
+		private static double putRemoveRate(final Map<Long, Long> map,
+				int numThreads, final int n, final int outstanding)
+				throws InterruptedException {
+			final Queue<Throwable> failures = new ConcurrentLinkedQueue<Throwable>();
+			Thread[] threads = new Thread[numThreads];
+			for (int i = 0; i < numThreads; i++) {
+				final long base = (long) i * n;
+				threads[i] = new Thread() {
+					public void run() {
+						try {
+							for (long j = base; j < base + n; j++) {
+								map.put(j, j);
+								if (j - base >= outstanding)
+									Assert.assertEquals(j - outstanding,
+											(long) map.remove(j - outstanding));
+							}
+						} catch (Throwable e) {
+							failures.add(e);
+						}
+					}
+				};
+			}
+			long t = System.nanoTime();
+			for (Thread thread : threads)
+				thread.start();
+			for (Thread thread : threads)
+				thread.join();
+			t = System.nanoTime() - t;
+			rethrow(failures);
+			Assert.assertEquals(numThreads * outstanding, map.size());
+			return numThreads * n * 1000.0 / t;
+		}
+
+		/**
+		 * Many threads concurrently putting and removing their own keys as
+		 * with outstanding request maps under client load. The baseline is
+		 * the same map behind a single map-wide lock, as puts and removes
+		 * used to be, so that only the removed lock differs. The ratio
+		 * depends on the number of cores and is printed, not asserted.
+		 *
+		 * @throws InterruptedException
+		 */
+		@Test
+		public void testConcurrentPutRemove() throws InterruptedException {
+			final int numThreads = Math.max(8, Runtime.getRuntime()
+					.availableProcessors()), n = 250 * 1000, outstanding = 1000;
+			double locked = 0, unlocked = 0;
+			// first round warms up both
+			for (int round = 0; round < 2; round++) {
+				locked = putRemoveRate(Collections
+						.synchronizedMap(new GCConcurrentHashMap<Long, Long>(
+								60 * 1000)), numThreads, n, outstanding);
+				unlocked = putRemoveRate(new GCConcurrentHashMap<Long, Long>(
+						60 * 1000), numThreads, n, outstanding);
+			}
+			System.out.println(GCConcurrentHashMap.class.getSimpleName()
+					+ " put+remove rate with " + numThreads + " threads on "
+					+ Runtime.getRuntime().availableProcessors()
+					+ " cores = " + Util.df(unlocked)
+					+ "M/s; with map-wide lock = " + Util.df(locked)
+					+ "M/s; ratio = " + Util.df(unlocked / locked));
+		}
+
+		/**
+		 * Entries not refreshed within the timeout are removed with a
+		 * callback; refreshed entries are retained.
+		 *
+		 * @throws InterruptedException
+		 */
+		@Test
+		public void testExpiry() throws InterruptedException {
+			final Set<Object> expired = Collections
+					.newSetFromMap(new ConcurrentHashMap<Object, Boolean>());
+			final Queue<Throwable> failures = new ConcurrentLinkedQueue<Throwable>();
+			final GCConcurrentHashMap<Integer, Integer> map = new GCConcurrentHashMap<Integer, Integer>(
+					new GCConcurrentHashMapCallback() {
+						@Override
+						public void callbackGC(Object key, Object value) {
+							// may be invoked by a putting worker thread
+							if (!key.equals(value))
+								failures.add(new AssertionError(key + " != "
+										+ value));
+							expired.add(key);
+						}
+					}, 100);
+			Thread[] threads = new Thread[4];
+			for (int i = 0; i < threads.length; i++) {
+				final int base = i * 1000;
+				(threads[i] = new Thread() {
+					public void run() {
+						try {
+							for (int j = base; j < base + 1000; j++)
+								map.putIfAbsent(j, j);
+						} catch (Throwable e) {
+							failures.add(e);
+						}
+					}
+				}).start();
+			}
+			for (Thread thread : threads)
+				thread.join();
+			rethrow(failures);
+			map.remove(0);
+			Thread.sleep(150);
+			map.put(1, 1);
+			map.tryGC(100);
+			Assert.assertEquals(1, map.size());
+			Assert.assertTrue(map.containsKey(1));
+			Assert.assertEquals(threads.length * 1000 - 2, expired.size());
+			Assert.assertFalse(expired.contains(0));
+			Assert.assertFalse(expired.contains(1));
+			rethrow(failures);
+		}
 	}
 
 	/**
@@ -0,0 +1,270 @@
+/* Copyright (c) 2015 University of Massachusetts
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License. */
+package edu.umass.cs.utils;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * @author arun
+ *
+ *         A lock-free log-linear histogram of non-negative long values in the
+ *         style of HdrHistogram. Each power-of-two range is split into
+ *         {@link #SUB_BUCKETS} linear sub-buckets, so any recorded value is
+ *         reported within a relative error of 1/{@link #SUB_BUCKETS}.
+ *
+ *         <p>
+ *         Recording threads are spread by thread ID across a fixed number of
+ *         striped recorders that are updated with atomic adds, so recording
+ *         takes no locks and threads rarely contend on the same cache lines.
+ *         The memory used is bounded irrespective of how many, possibly
+ *         short-lived, threads record values. Readers sum the stripes, which
+ *         may miss a concurrent recording but never block writers.
+ */
+public class Histogram {
+
+	private static final int SUB_BUCKET_BITS = 5;
+	/**
+	 * Number of linear sub-buckets per power of two.
+	 */
+	public static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	// values up to 2^44 (~4.9 hours in nanoseconds) are distinguished
+	private static final int MAX_VALUE_BITS = 44;
+	private static final long MAX_VALUE = (1L << MAX_VALUE_BITS) - 1;
+	private static final int NUM_BUCKETS = (MAX_VALUE_BITS - SUB_BUCKET_BITS + 1)
+			* SUB_BUCKETS;
+
+	// sum and max are stored after the bucket counts
+	private static final int SUM = NUM_BUCKETS;
+	private static final int MAX = NUM_BUCKETS + 1;
+
+	/**
+	 * Number of striped recorders, a power of two no smaller than the number
+	 * of processors and at most 64.
+	 */
+	static final int STRIPES = Math.min(64, Integer.highestOneBit(Math.max(1,
+			Runtime.getRuntime().availableProcessors()) * 2 - 1));
+
+	private final String name;
+	// stripes are created upon first use
+	private final AtomicReferenceArray<AtomicLongArray> recorders = new AtomicReferenceArray<AtomicLongArray>(
+			STRIPES);
+
+	/**
+	 * @param name
+	 */
+	public Histogram(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * @return Name.
+	 */
+	public String getName() {
+		return this.name;
+	}
+
+	/**
+	 * Records {@code value}. Negative values are recorded as 0.
+	 *
+	 * @param value
+	 */
+	public void record(long value) {
+		value = Math.max(0, Math.min(value, MAX_VALUE));
+		AtomicLongArray counts = this.getRecorder();
+		counts.incrementAndGet(getIndex(value));
+		counts.addAndGet(SUM, value);
+		for (long max = counts.get(MAX); value > max
+				&& !counts.compareAndSet(MAX, max, value); max = counts
+				.get(MAX))
+			;
+	}
+
+	private AtomicLongArray getRecorder() {
+		// spread sequential thread IDs across stripes
+		int stripe = (int) ((Thread.currentThread().getId() * 0x9E3779B97F4A7C15L) >>> 58)
+				& (STRIPES - 1);
+		AtomicLongArray counts = this.recorders.get(stripe);
+		if (counts == null
+				&& !this.recorders.compareAndSet(stripe, null,
+						counts = new AtomicLongArray(NUM_BUCKETS + 2)))
+			counts = this.recorders.get(stripe);
+		return counts;
+	}
+
+	/**
+	 * Records the nanoseconds elapsed since {@code startNanos}.
+	 *
+	 * @param startNanos
+	 *            An earlier value of {@link System#nanoTime()}.
+	 */
+	public void recordNanosSince(long startNanos) {
+		this.record(System.nanoTime() - startNanos);
+	}
+
+	/**
+	 * Records the time elapsed since {@code startMillis} in nanoseconds.
+	 *
+	 * @param startMillis
+	 *            An earlier value of {@link System#currentTimeMillis()}.
+	 */
+	public void recordMillisSince(long startMillis) {
+		this.record((System.currentTimeMillis() - startMillis) * 1000 * 1000);
+	}
+
+	/**
+	 * @return A consistent-enough copy of the counts recorded so far with the
+	 *         count, sum, and max in the last three entries.
+	 */
+	long[] getCounts() {
+		long[] counts = new long[NUM_BUCKETS + 3];
+		for (int j = 0; j < STRIPES; j++) {
+			AtomicLongArray recorded = this.recorders.get(j);
+			if (recorded == null)
+				continue;
+			for (int i = 0; i < NUM_BUCKETS; i++)
+				counts[i] += recorded.get(i);
+			counts[NUM_BUCKETS + 1] += recorded.get(SUM);
+			counts[NUM_BUCKETS + 2] = Math.max(counts[NUM_BUCKETS + 2],
+					recorded.get(MAX));
+		}
+		for (int i = 0; i < NUM_BUCKETS; i++)
+			counts[NUM_BUCKETS] += counts[i];
+		return counts;
+	}
+
+	/**
+	 * @param counts
+	 *            As returned by {@link #getCounts()} or a difference of two
+	 *            such.
+	 * @return Total count.
+	 */
+	static long getCount(long[] counts) {
+		return counts[NUM_BUCKETS];
+	}
+
+	/**
+	 * @param counts
+	 * @return Sum of recorded values.
+	 */
+	static long getSum(long[] counts) {
+		return counts[NUM_BUCKETS + 1];
+	}
+
+	/**
+	 * @param counts
+	 * @return Maximum recorded value.
+	 */
+	static long getMax(long[] counts) {
+		return counts[NUM_BUCKETS + 2];
+	}
+
+	/**
+	 * @param counts
+	 * @param percentile
+	 *            Between 0 and 100.
+	 * @return A value within the relative error of the histogram such that
+	 *         {@code percentile} percent of recorded values are at most that
+	 *         value; 0 if nothing was recorded.
+	 */
+	static long getPercentile(long[] counts, double percentile) {
+		long total = getCount(counts);
+		if (total == 0)
+			return 0;
+		long rank = Math.max(1,
+				(long) Math.ceil(Math.min(percentile, 100) / 100 * total));
+		long cumulative = 0;
+		for (int i = 0; i < NUM_BUCKETS; i++)
+			if ((cumulative += counts[i]) >= rank)
+				return Math.min(getHighestEquivalentValue(i), getMax(counts));
+		return getMax(counts);
+	}
+
+	/**
+	 * @param percentile
+	 * @return {@link #getPercentile(long[], double)} over all values recorded
+	 *         so far.
+	 */
+	public long getPercentile(double percentile) {
+		return getPercentile(this.getCounts(), percentile);
+	}
+
+	/**
+	 * @return Number of values recorded so far.
+	 */
+	public long getCount() {
+		return getCount(this.getCounts());
+	}
+
+	/**
+	 * @param scale
+	 *            Recorded values are divided by this before being reported,
+	 *            e.g., 1e6 to report nanoseconds in milliseconds.
+	 * @return The full distribution of values recorded so far with one line
+	 *         per nonempty bucket giving the highest value in the bucket, the
+	 *         fraction of values at most that value, and their count, in the
+	 *         style of HdrHistogram's percentile output.
+	 */
+	public String getDistribution(double scale) {
+		long[] counts = this.getCounts();
+		long total = getCount(counts);
+		StringBuilder sb = new StringBuilder(String.format(
+				"%14s %12s %12s\n\n", "Value", "Percentile", "TotalCount"));
+		long cumulative = 0;
+		for (int i = 0; i < NUM_BUCKETS; i++)
+			if (counts[i] > 0)
+				sb.append(String.format("%14.3f %12.6f %12d\n",
+						Math.min(getHighestEquivalentValue(i), getMax(counts))
+								/ scale, (double) (cumulative += counts[i])
+								/ total, cumulative));
+		sb.append(String.format("#[Mean = %.3f, Max = %.3f, Total count = %d]\n",
+				total > 0 ? getSum(counts) / scale / total : 0, getMax(counts)
+						/ scale, total));
+		return sb.toString();
+	}
+
+	/**
+	 * @param cur
+	 * @param prev
+	 * @return Counts recorded between {@code prev} and {@code cur}; the max is
+	 *         that of {@code cur}.
+	 */
+	static long[] subtract(long[] cur, long[] prev) {
+		long[] diff = new long[cur.length];
+		for (int i = 0; i < cur.length; i++)
+			diff[i] = cur[i] - (prev != null ? prev[i] : 0);
+		diff[NUM_BUCKETS + 2] = cur[NUM_BUCKETS + 2];
+		return diff;
+	}
+
+	static int getIndex(long value) {
+		if (value < SUB_BUCKETS)
+			return (int) value;
+		int msb = 63 - Long.numberOfLeadingZeros(value);
+		int bucket = msb - SUB_BUCKET_BITS + 1;
+		int subBucket = (int) (value >>> (msb - SUB_BUCKET_BITS)) - SUB_BUCKETS;
+		return bucket * SUB_BUCKETS + subBucket;
+	}
+
+	static long getLowestEquivalentValue(int index) {
+		int bucket = index / SUB_BUCKETS, subBucket = index % SUB_BUCKETS;
+		return bucket == 0 ? subBucket : (long) (SUB_BUCKETS + subBucket) << (bucket - 1);
+	}
+
+	static long getHighestEquivalentValue(int index) {
+		int bucket = index / SUB_BUCKETS;
+		return getLowestEquivalentValue(index)
+				+ (bucket == 0 ? 0 : (1L << (bucket - 1)) - 1);
+	}
+}
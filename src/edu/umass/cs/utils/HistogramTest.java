@@ -0,0 +1,203 @@
+/* Copyright (c) 2015 University of Massachusetts
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License. */
+package edu.umass.cs.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * Tests for {@link Histogram} bucketing and percentiles and for
+ * {@link Metrics} snapshots.
+ */
+public class HistogramTest extends DefaultTest {
+
+    /**
+     * Every value falls in a bucket whose range contains it and whose width
+     * is within the relative error of the histogram.
+     */
+    @Test
+    public void testBuckets() {
+        Random r = new Random(0);
+        for (int i = 0; i < 100000; i++) {
+            long value = i < 1000 ? i : (r.nextLong() >>> (20 + r.nextInt(24)));
+            int index = Histogram.getIndex(value);
+            long low = Histogram.getLowestEquivalentValue(index);
+            long high = Histogram.getHighestEquivalentValue(index);
+            Assert.assertTrue(value + " not in [" + low + ", " + high + "]",
+                    low <= value && value <= high);
+            Assert.assertTrue(high - low <= low / Histogram.SUB_BUCKETS);
+        }
+    }
+
+    /**
+     * Percentiles of uniformly recorded values are within the relative error
+     * of the histogram.
+     */
+    @Test
+    public void testPercentiles() {
+        Histogram histogram = new Histogram("test");
+        Assert.assertEquals(0, histogram.getPercentile(50));
+        for (long i = 1; i <= 100000; i++)
+            histogram.record(i * 1000);
+        Assert.assertEquals(100000, histogram.getCount());
+        assertWithin(50000 * 1000, histogram.getPercentile(50));
+        assertWithin(99000 * 1000, histogram.getPercentile(99));
+        assertWithin(99900 * 1000, histogram.getPercentile(99.9));
+        Assert.assertEquals(100000 * 1000, histogram.getPercentile(100));
+    }
+
+    /**
+     * The distribution has one line per nonempty bucket ending at the
+     * maximum with all values counted.
+     */
+    @Test
+    public void testDistribution() {
+        Histogram histogram = new Histogram("test");
+        for (long i = 1; i <= 1000; i++)
+            histogram.record(i * 1000 * 1000);
+        String[] lines = histogram.getDistribution(1000 * 1000).split("\n");
+        String last = lines[lines.length - 2].trim();
+        Assert.assertTrue(last, last.matches("1000\\.000 +1\\.000000 +1000"));
+        Assert.assertEquals(
+                "#[Mean = 500.500, Max = 1000.000, Total count = 1000]",
+                lines[lines.length - 1]);
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        Assert.assertTrue(expected + " != " + actual,
+                Math.abs(expected - actual) <= expected / Histogram.SUB_BUCKETS);
+    }
+
+    /**
+     * Values recorded concurrently by many threads are all counted once the
+     * threads finish.
+     *
+     * @throws InterruptedException
+     */
+    @Test
+    public void testConcurrentRecording() throws InterruptedException {
+        final Histogram histogram = new Histogram("test");
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++)
+            (threads[i] = new Thread() {
+                public void run() {
+                    for (int j = 0; j < 100000; j++)
+                        histogram.record(j);
+                }
+            }).start();
+        for (Thread thread : threads)
+            thread.join();
+        Assert.assertEquals(threads.length * 100000, histogram.getCount());
+        Assert.assertEquals(99999, histogram.getPercentile(100));
+    }
+
+    /**
+     * Values recorded by many short-lived threads, e.g., one per request, are
+     * all counted in a bounded number of stripes.
+     *
+     * @throws InterruptedException
+     */
+    @Test
+    public void testShortLivedThreads() throws InterruptedException {
+        final Histogram histogram = new Histogram("test");
+        for (int i = 0; i < 1000; i++) {
+            final long value = i;
+            Thread thread = new Thread() {
+                public void run() {
+                    histogram.record(value);
+                }
+            };
+            thread.start();
+            thread.join();
+        }
+        Assert.assertEquals(1000, histogram.getCount());
+        Assert.assertEquals(999 * 1000 / 2,
+                Histogram.getSum(histogram.getCounts()));
+        Assert.assertTrue(Histogram.STRIPES <= 64);
+    }
+
+    /**
+     * Snapshots report cumulative counts, interval percentiles, and gauges.
+     *
+     * @throws InterruptedException
+     */
+    @Test
+    public void testSnapshot() throws InterruptedException {
+        Metrics.setSnapshotInterval(0);
+        Histogram histogram = Metrics.histogram("HistogramTest.latency");
+        Assert.assertSame(histogram,
+                Metrics.histogram("HistogramTest.latency"));
+        Metrics.counter("HistogramTest.count").add(5);
+        Metrics.gauge(Metrics.getName("HistogramTest.depth", 0),
+                new Metrics.Gauge() {
+                    public long getValue() {
+                        return 42;
+                    }
+                });
+        for (int i = 0; i < 100; i++)
+            histogram.record(1000 * 1000);
+        Metrics.getSnapshot();
+        Thread.sleep(10);
+        for (int i = 0; i < 100; i++)
+            histogram.record(10 * 1000 * 1000);
+
+        Metrics.Snapshot snapshot = Metrics.getSnapshot();
+        Metrics.HistogramStats stats = snapshot.histograms
+                .get("HistogramTest.latency");
+        Assert.assertEquals(200, stats.count);
+        assertWithin(10 * 1000 * 1000, stats.p50);
+        Assert.assertTrue(stats.rate > 0);
+        Assert.assertEquals(5, (long) snapshot.counters
+                .get("HistogramTest.count"));
+        Assert.assertEquals(42, (long) snapshot.gauges.get(Metrics.getName(
+                "HistogramTest.depth", 0)));
+        Assert.assertTrue(Metrics.getStats().contains("HistogramTest.latency"));
+
+        Metrics.unregister(Metrics.getName("HistogramTest.depth", 0));
+        Assert.assertFalse(Metrics.getSnapshot().gauges.containsKey(Metrics
+                .getName("HistogramTest.depth", 0)));
+    }
+
+    /**
+     * Prometheus text has sanitized names, node labels, and summaries in
+     * seconds.
+     */
+    @Test
+    public void testPrometheus() {
+        Metrics.setSnapshotInterval(0);
+        Metrics.histogram(Metrics.getName("HistogramTest.rtt", "AR0"))
+                .record(2 * 1000 * 1000);
+        Metrics.counter(Metrics.getName("HistogramTest.bytes", "AR0")).add(7);
+        Metrics.gauge(Metrics.getName("HistogramTest.queue", "AR\"0"),
+                new Metrics.Gauge() {
+                    public long getValue() {
+                        return 3;
+                    }
+                });
+        String text = Metrics.getPrometheusStats();
+        Assert.assertTrue(text,
+                text.contains("# TYPE HistogramTest_rtt_seconds summary\n"));
+        Assert.assertTrue(text, text.contains(
+                "HistogramTest_rtt_seconds{node=\"AR0\",quantile=\"0.99\"} 0.002"));
+        Assert.assertTrue(text,
+                text.contains("HistogramTest_rtt_seconds_count{node=\"AR0\"} 1\n"));
+        Assert.assertTrue(text,
+                text.contains("HistogramTest_bytes_total{node=\"AR0\"} 7\n"));
+        Assert.assertTrue(text,
+                text.contains("HistogramTest_queue{node=\"AR\\\"0\"} 3\n"));
+        Metrics.unregister(Metrics.getName("HistogramTest.queue", "AR\"0"));
+    }
+}
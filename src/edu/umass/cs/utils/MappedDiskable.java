@@ -0,0 +1,524 @@
+/* Copyright (c) 2015 University of Massachusetts
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * Initial developer(s): V. Arun */
+
+package edu.umass.cs.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * @author arun
+ *
+ * @param <K>
+ * @param <V>
+ *
+ *            A built-in {@link Diskable} backend for {@link DiskMap} that
+ *            stores entries in two tiers instead of database rows. Committed
+ *            entries are first appended to an off-heap hot tier, a direct
+ *            buffer of fixed size, so pausing an entry just moves it out of
+ *            the Java heap. When the hot tier fills up, its live entries are
+ *            appended to the cold tier, a sequence of memory-mapped segment
+ *            files in {@code dir}. Removals append a tombstone.
+ *
+ *            <p>
+ *            Entries are located through an open-addressing index from the
+ *            hash of the serialized key to the entry's tier and offset, so the
+ *            index holds no per-key objects on the heap, and restoring an
+ *            entry is a single read from a direct or mapped buffer. Keys and
+ *            values are converted to bytes by a {@link Diskable.Serializer}.
+ *
+ *            <p>
+ *            Once the cold tier is mostly superseded entries, it is compacted
+ *            by copying live entries to new segments and deleting the old
+ *            ones. Upon creation, the index is rebuilt by scanning any
+ *            existing segments in {@code dir}, so entries that reached the
+ *            cold tier survive a restart. Like {@link DiskMap} itself, this
+ *            class does not guarantee durability under crashes: entries still
+ *            in the hot tier are only written to the cold tier by a spill,
+ *            {@link #close()}, or {@link #compact()}, and mapped segments are
+ *            forced to disk only upon {@link #close()}.
+ */
+public class MappedDiskable<K, V> implements Diskable<K, V> {
+
+	private static final String SEGMENT_PREFIX = "segment.";
+
+	/* Each record is the key length plus one, so that the zeroes after the
+	 * last record in a segment mark its end, the value length or TOMBSTONE,
+	 * the key bytes, and the value bytes. */
+	private static final int HEADER = 8;
+	private static final int TOMBSTONE = -1;
+
+	// cold locations are the segment number and offset
+	private static final long HOT = Long.MIN_VALUE;
+	private static final long EMPTY = -1;
+
+	// compact when at most this fraction of cold bytes is live
+	private static final int COMPACTION_FACTOR = 2;
+	private static final float INDEX_LOAD_FACTOR = 0.75f;
+
+	private static final Logger log = Logger.getLogger(MappedDiskable.class
+			.getName());
+
+	private final File dir;
+	private final Serializer<K, V> serializer;
+	private final int segmentSize;
+
+	private final ByteBuffer hot;
+
+	private final TreeMap<Integer, MappedByteBuffer> segments = new TreeMap<Integer, MappedByteBuffer>();
+	private int tail = -1; // current cold segment number
+	private int tailPosition = 0;
+
+	private int[] hashes;
+	private long[] locations;
+	private int numKeys = 0;
+
+	private long coldBytes = 0;
+	private long liveColdBytes = 0;
+
+	private long numRestores = 0, numHotRestores = 0, numSpills = 0,
+			numCompactions = 0;
+	private boolean closed = false;
+
+	/**
+	 * @param dir
+	 *            Directory for the cold tier's segment files. Existing
+	 *            segments are read back.
+	 * @param serializer
+	 * @param hotBytes
+	 *            Size of the off-heap hot tier.
+	 * @param segmentBytes
+	 *            Size of each cold segment file. Larger entries get their own
+	 *            segment.
+	 * @throws IOException
+	 */
+	public MappedDiskable(String dir, Serializer<K, V> serializer,
+			int hotBytes, int segmentBytes) throws IOException {
+		this.dir = new File(dir);
+		this.serializer = serializer;
+		this.segmentSize = segmentBytes;
+		this.hot = ByteBuffer.allocateDirect(hotBytes);
+		this.initIndex(1024);
+		if (!this.dir.exists() && !this.dir.mkdirs())
+			throw new IOException("Unable to create directory " + this.dir);
+		this.recover();
+	}
+
+	@Override
+	public synchronized Set<K> commit(Map<K, V> toCommit) throws IOException {
+		if (this.closed)
+			throw new IOException(this + " is closed");
+		for (Map.Entry<K, V> entry : toCommit.entrySet())
+			// DiskMap commits a null value upon a remove
+			if (entry.getValue() == null)
+				this.delete(this.serializer.keyToBytes(entry.getKey()));
+			else
+				this.put(this.serializer.keyToBytes(entry.getKey()),
+						this.serializer.valueToBytes(entry.getValue()));
+		return new HashSet<K>(toCommit.keySet());
+	}
+
+	@Override
+	public synchronized V restore(K key) throws IOException {
+		if (this.closed)
+			return null;
+		byte[] keyBytes = this.serializer.keyToBytes(key);
+		int i = this.find(keyBytes, hash(keyBytes));
+		if (i < 0)
+			return null;
+		this.numRestores++;
+		if ((this.locations[i] & HOT) != 0)
+			this.numHotRestores++;
+		ByteBuffer buf = this.getBuffer(this.locations[i]).duplicate();
+		int offset = getOffset(this.locations[i]);
+		int valueOffset = offset + HEADER + buf.getInt(offset) - 1;
+		buf.limit(valueOffset + buf.getInt(offset + 4)).position(valueOffset);
+		return this.serializer.bytesToValue(buf.slice());
+	}
+
+	/**
+	 * Copies all live entries in the cold tier to new segments and deletes
+	 * the old ones after first spilling the hot tier.
+	 *
+	 * @throws IOException
+	 */
+	public synchronized void compact() throws IOException {
+		this.spill();
+		long t = System.currentTimeMillis();
+		Set<Integer> old = new HashSet<Integer>(this.segments.keySet());
+		this.newSegment(this.segmentSize);
+		this.coldBytes = this.liveColdBytes = 0;
+		for (int i = 0; i < this.locations.length; i++)
+			if (this.locations[i] != EMPTY)
+				this.locations[i] = this.copyToCold(
+						this.getBuffer(this.locations[i]),
+						getOffset(this.locations[i]), true);
+		for (int segment : old) {
+			this.segments.remove(segment);
+			// the mapping itself goes away when garbage collected
+			if (!getSegmentFile(segment).delete())
+				log.log(Level.WARNING, "{0} unable to delete {1}",
+						new Object[] { this, getSegmentFile(segment) });
+		}
+		this.numCompactions++;
+		log.log(Level.FINE, "{0} compacted {1} segments in {2}ms: {3}",
+				new Object[] { this, old.size(),
+						System.currentTimeMillis() - t, this.getStats() });
+	}
+
+	/**
+	 * Removes all entries and deletes all segment files.
+	 */
+	public synchronized void clear() {
+		for (int segment : this.segments.keySet())
+			if (!getSegmentFile(segment).delete())
+				log.log(Level.WARNING, "{0} unable to delete {1}",
+						new Object[] { this, getSegmentFile(segment) });
+		this.segments.clear();
+		this.tail = -1;
+		this.hot.clear();
+		this.initIndex(1024);
+		this.numKeys = 0;
+		this.coldBytes = this.liveColdBytes = 0;
+	}
+
+	/**
+	 * Spills the hot tier and forces all segments to disk. Subsequent commits
+	 * will fail and restores will return null.
+	 *
+	 * @throws IOException
+	 */
+	public synchronized void close() throws IOException {
+		if (this.closed)
+			return;
+		this.spill();
+		for (MappedByteBuffer segment : this.segments.values())
+			segment.force();
+		this.closed = true;
+	}
+
+	/**
+	 * @return Counts of keys, bytes in each tier, and restores.
+	 */
+	public synchronized String getStats() {
+		return "[keys=" + this.numKeys + ", hotBytes=" + this.hot.position()
+				+ ", coldBytes=" + this.coldBytes + ", liveColdBytes="
+				+ this.liveColdBytes + ", segments=" + this.segments.size()
+				+ ", restores=" + this.numRestores + ", hotRestores="
+				+ this.numHotRestores + ", spills=" + this.numSpills
+				+ ", compactions=" + this.numCompactions + "]";
+	}
+
+	public String toString() {
+		return this.getClass().getSimpleName() + ":" + this.dir.getName();
+	}
+
+	/**
+	 * @return Number of keys with a value.
+	 */
+	public synchronized int size() {
+		return this.numKeys;
+	}
+
+	private void put(byte[] key, byte[] value) throws IOException {
+		long location = this.append(key, value);
+		int h = hash(key), i = this.find(key, h);
+		if (i >= 0) {
+			this.release(this.locations[i]);
+			this.locations[i] = location;
+		} else
+			this.insert(~i, h, location);
+		if ((location & HOT) == 0)
+			this.liveColdBytes += getSize(key, value);
+		this.maybeCompact();
+	}
+
+	private void delete(byte[] key) throws IOException {
+		int i = this.find(key, hash(key));
+		if (i < 0)
+			return;
+		this.release(this.locations[i]);
+		this.remove(i);
+		this.append(key, null);
+		this.maybeCompact();
+	}
+
+	// the superseded record is no longer live
+	private void release(long location) {
+		if ((location & HOT) == 0)
+			this.liveColdBytes -= getSize(this.getBuffer(location),
+					getOffset(location));
+	}
+
+	private void maybeCompact() throws IOException {
+		if (this.coldBytes > this.segmentSize
+				&& this.coldBytes > COMPACTION_FACTOR * this.liveColdBytes)
+			this.compact();
+	}
+
+	private long append(byte[] key, byte[] value) throws IOException {
+		int size = getSize(key, value);
+		if (size > this.hot.capacity())
+			return this.appendCold(key, value);
+		if (size > this.hot.remaining())
+			this.spill();
+		int offset = this.hot.position();
+		put(this.hot, key, value);
+		return HOT | offset;
+	}
+
+	private long appendCold(byte[] key, byte[] value) throws IOException {
+		int size = getSize(key, value);
+		MappedByteBuffer segment = this.getTail(size);
+		int offset = segment.position();
+		put(segment, key, value);
+		this.coldBytes += size;
+		return getLocation(this.tail, offset);
+	}
+
+	/* Copies the record at offset in buf to the cold tier, and returns its
+	 * cold location, only if it is live, i.e., the index points to it, or is a
+	 * tombstone for a key that has not been put since. */
+	private long copyToCold(ByteBuffer buf, int offset, boolean live)
+			throws IOException {
+		int size = getSize(buf, offset);
+		MappedByteBuffer segment = this.getTail(size);
+		int coldOffset = segment.position();
+		ByteBuffer record = buf.duplicate();
+		record.limit(offset + size).position(offset);
+		segment.put(record);
+		this.coldBytes += size;
+		if (live)
+			this.liveColdBytes += size;
+		return getLocation(this.tail, coldOffset);
+	}
+
+	// moves live records and tombstones from the hot to the cold tier
+	private void spill() throws IOException {
+		if (this.hot.position() == 0)
+			return;
+		for (int offset = 0; offset < this.hot.position(); offset += getSize(
+				this.hot, offset)) {
+			byte[] key = getKey(this.hot, offset);
+			int i = this.find(key, hash(key));
+			if (i >= 0 && this.locations[i] == (HOT | offset))
+				this.locations[i] = this.copyToCold(this.hot, offset, true);
+			else if (i < 0 && this.hot.getInt(offset + 4) == TOMBSTONE)
+				this.copyToCold(this.hot, offset, false);
+		}
+		this.hot.clear();
+		this.numSpills++;
+	}
+
+	private MappedByteBuffer getTail(int size) throws IOException {
+		MappedByteBuffer segment = this.tail >= 0 ? this.segments
+				.get(this.tail) : null;
+		// leave room for the zero header marking the end
+		if (segment == null || segment.remaining() < size + HEADER)
+			segment = this.newSegment(Math.max(this.segmentSize, size + HEADER));
+		return segment;
+	}
+
+	private MappedByteBuffer newSegment(int size) throws IOException {
+		int segment = this.segments.isEmpty() ? 0
+				: this.segments.lastKey() + 1;
+		MappedByteBuffer buf = map(getSegmentFile(segment), size);
+		this.segments.put(segment, buf);
+		this.tail = segment;
+		return buf;
+	}
+
+	private File getSegmentFile(int segment) {
+		return new File(this.dir, SEGMENT_PREFIX + segment);
+	}
+
+	private static MappedByteBuffer map(File file, long size)
+			throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+				FileChannel channel = raf.getChannel()) {
+			// the mapping remains valid after the channel is closed
+			return channel.map(FileChannel.MapMode.READ_WRITE, 0,
+					Math.max(size, raf.length()));
+		}
+	}
+
+	// rebuilds the index from existing segments, later records winning
+	private void recover() throws IOException {
+		File[] files = this.dir.listFiles();
+		if (files != null)
+			for (File file : files)
+				if (file.getName().startsWith(SEGMENT_PREFIX))
+					this.segments.put(Integer.valueOf(file.getName()
+							.substring(SEGMENT_PREFIX.length())),
+							map(file, 0));
+		for (Map.Entry<Integer, MappedByteBuffer> entry : this.segments
+				.entrySet()) {
+			MappedByteBuffer buf = entry.getValue();
+			int offset = 0;
+			while (offset + HEADER <= buf.limit() && buf.getInt(offset) > 0) {
+				byte[] key = getKey(buf, offset);
+				int size = getSize(buf, offset), h = hash(key), i = this.find(
+						key, h);
+				if (i >= 0)
+					this.release(this.locations[i]);
+				if (buf.getInt(offset + 4) == TOMBSTONE) {
+					if (i >= 0)
+						this.remove(i);
+				} else {
+					long location = getLocation(entry.getKey(), offset);
+					if (i >= 0)
+						this.locations[i] = location;
+					else
+						this.insert(~i, h, location);
+					this.liveColdBytes += size;
+				}
+				this.coldBytes += size;
+				offset += size;
+			}
+			buf.position(offset);
+			this.tail = entry.getKey();
+		}
+		if (!this.segments.isEmpty())
+			log.log(Level.INFO, "{0} recovered {1}", new Object[] { this,
+					this.getStats() });
+	}
+
+	private ByteBuffer getBuffer(long location) {
+		return (location & HOT) != 0 ? this.hot : this.segments
+				.get((int) (location >>> 32));
+	}
+
+	private static int getOffset(long location) {
+		return (int) location;
+	}
+
+	private static long getLocation(int segment, int offset) {
+		return ((long) segment << 32) | (offset & 0xffffffffL);
+	}
+
+	private static int getSize(byte[] key, byte[] value) {
+		return HEADER + key.length + (value != null ? value.length : 0);
+	}
+
+	private static int getSize(ByteBuffer buf, int offset) {
+		return HEADER + buf.getInt(offset) - 1
+				+ Math.max(0, buf.getInt(offset + 4));
+	}
+
+	private static void put(ByteBuffer buf, byte[] key, byte[] value) {
+		buf.putInt(key.length + 1).putInt(
+				value != null ? value.length : TOMBSTONE).put(key);
+		if (value != null)
+			buf.put(value);
+	}
+
+	private static byte[] getKey(ByteBuffer buf, int offset) {
+		byte[] key = new byte[buf.getInt(offset) - 1];
+		ByteBuffer dup = buf.duplicate();
+		dup.position(offset + HEADER);
+		dup.get(key);
+		return key;
+	}
+
+	private boolean keyEquals(long location, byte[] key) {
+		ByteBuffer buf = this.getBuffer(location);
+		int offset = getOffset(location);
+		if (buf.getInt(offset) - 1 != key.length)
+			return false;
+		for (int j = 0; j < key.length; j++)
+			if (buf.get(offset + HEADER + j) != key[j])
+				return false;
+		return true;
+	}
+
+	/* Open-addressing index with linear probing. */
+
+	private void initIndex(int capacity) {
+		this.hashes = new int[capacity];
+		this.locations = new long[capacity];
+		Arrays.fill(this.locations, EMPTY);
+	}
+
+	private static int hash(byte[] key) {
+		int h = Arrays.hashCode(key);
+		// spread as in ConcurrentHashMap so that the low bits vary
+		h ^= (h >>> 16);
+		h *= 0x85ebca6b;
+		return h ^ (h >>> 13);
+	}
+
+	/**
+	 * @return Slot containing key if present, else the bitwise complement of
+	 *         the empty slot where it would be inserted.
+	 */
+	private int find(byte[] key, int h) {
+		int mask = this.locations.length - 1;
+		for (int i = h & mask;; i = (i + 1) & mask) {
+			if (this.locations[i] == EMPTY)
+				return ~i;
+			if (this.hashes[i] == h && this.keyEquals(this.locations[i], key))
+				return i;
+		}
+	}
+
+	private void insert(int i, int h, long location) {
+		this.hashes[i] = h;
+		this.locations[i] = location;
+		if (++this.numKeys > this.locations.length * INDEX_LOAD_FACTOR) {
+			int[] oldHashes = this.hashes;
+			long[] oldLocations = this.locations;
+			this.initIndex(oldLocations.length * 2);
+			int mask = this.locations.length - 1;
+			for (int j = 0; j < oldLocations.length; j++)
+				if (oldLocations[j] != EMPTY) {
+					int k = oldHashes[j] & mask;
+					while (this.locations[k] != EMPTY)
+						k = (k + 1) & mask;
+					this.hashes[k] = oldHashes[j];
+					this.locations[k] = oldLocations[j];
+				}
+		}
+	}
+
+	// backward shift deletion so that probe sequences remain unbroken
+	private void remove(int i) {
+		int mask = this.locations.length - 1;
+		for (int j = (i + 1) & mask; this.locations[j] != EMPTY; j = (j + 1)
+				& mask) {
+			int home = this.hashes[j] & mask;
+			// move j into the hole at i if its home is not in (i, j]
+			if (((j - home) & mask) >= ((j - i) & mask)) {
+				this.hashes[i] = this.hashes[j];
+				this.locations[i] = this.locations[j];
+				i = j;
+			}
+		}
+		this.locations[i] = EMPTY;
+		this.numKeys--;
+	}
+}
@@ -0,0 +1,208 @@
+package edu.umass.cs.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Result;
+import org.junit.runner.notification.Failure;
+
+/**
+ * Test class for {@link MappedDiskable}.
+ */
+public class MappedDiskableTest extends DefaultTest {
+
+	private static final Diskable.Serializer<String, String> SERIALIZER = new Diskable.Serializer<String, String>() {
+		@Override
+		public byte[] keyToBytes(String key) {
+			return key.getBytes(StandardCharsets.UTF_8);
+		}
+
+		@Override
+		public byte[] valueToBytes(String value) {
+			return value.getBytes(StandardCharsets.UTF_8);
+		}
+
+		@Override
+		public String bytesToValue(ByteBuffer buf) {
+			byte[] bytes = new byte[buf.remaining()];
+			buf.get(bytes);
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+	};
+
+	private static final int HOT_BYTES = 4096, SEGMENT_BYTES = 16 * 1024;
+
+	private File dir;
+
+	/**
+	 * @throws IOException
+	 */
+	@Before
+	public void makeDir() throws IOException {
+		this.dir = Files.createTempDirectory(
+				MappedDiskable.class.getSimpleName()).toFile();
+	}
+
+	/**
+	 *
+	 */
+	@After
+	public void removeDir() {
+		Util.recursiveRemove(this.dir);
+	}
+
+	private MappedDiskable<String, String> open() throws IOException {
+		return new MappedDiskable<String, String>(this.dir.getPath(),
+				SERIALIZER, HOT_BYTES, SEGMENT_BYTES);
+	}
+
+	private static Map<String, String> singleton(String key, String value) {
+		Map<String, String> map = new HashMap<String, String>();
+		map.put(key, value);
+		return map;
+	}
+
+	/**
+	 * Entries are restorable from both tiers, removes hide older values, and
+	 * entries that reached the cold tier survive a reopen.
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void test01_CommitRestore() throws IOException {
+		MappedDiskable<String, String> store = this.open();
+		int n = 1000;
+		for (int i = 0; i < n; i++)
+			store.commit(singleton("key" + i, "value" + i));
+		// overwrite and remove some
+		for (int i = 0; i < n; i += 10)
+			store.commit(singleton("key" + i, "newvalue" + i));
+		for (int i = 5; i < n; i += 10)
+			store.commit(singleton("key" + i, null));
+		Assert.assertEquals(n - n / 10, store.size());
+		for (int i = 0; i < n; i++)
+			Assert.assertEquals(i % 10 == 0 ? "newvalue" + i
+					: i % 10 == 5 ? null : "value" + i, store.restore("key"
+					+ i));
+		System.out.println(store.getStats());
+		store.close();
+
+		store = this.open();
+		Assert.assertEquals(n - n / 10, store.size());
+		for (int i = 0; i < n; i++)
+			Assert.assertEquals(i % 10 == 0 ? "newvalue" + i
+					: i % 10 == 5 ? null : "value" + i, store.restore("key"
+					+ i));
+		store.close();
+	}
+
+	/**
+	 * Repeatedly overwriting a small set of keys keeps the cold tier bounded
+	 * by compaction.
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void test02_Compaction() throws IOException {
+		MappedDiskable<String, String> store = this.open();
+		int n = 100;
+		for (int j = 0; j < 200; j++)
+			for (int i = 0; i < n; i++)
+				store.commit(singleton("key" + i, "value" + i + ":" + j));
+		// also an entry larger than the hot tier and a segment
+		char[] large = new char[SEGMENT_BYTES * 2];
+		Arrays.fill(large, 'x');
+		store.commit(singleton("large", new String(large)));
+		store.compact();
+		System.out.println(store.getStats());
+		long fileBytes = 0;
+		for (File file : this.dir.listFiles())
+			fileBytes += file.length();
+		Assert.assertTrue(fileBytes + " bytes", fileBytes < 5 * SEGMENT_BYTES);
+		store.close();
+
+		store = this.open();
+		for (int i = 0; i < n; i++)
+			Assert.assertEquals("value" + i + ":199", store.restore("key" + i));
+		Assert.assertEquals(new String(large), store.restore("large"));
+		store.close();
+	}
+
+	/**
+	 * {@link DiskMap} pausing to and unpausing from {@link MappedDiskable}.
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void test03_DiskMap() throws IOException {
+		final MappedDiskable<String, String> store = this.open();
+		int capacity = 100, n = 10000;
+		DiskMap<String, String> dmap = new DiskMap<String, String>(capacity) {
+			@Override
+			public Set<String> commit(Map<String, String> toCommit)
+					throws IOException {
+				return store.commit(toCommit);
+			}
+
+			@Override
+			public String restore(String key) throws IOException {
+				return store.restore(key);
+			}
+		};
+		for (int i = 0; i < n; i++)
+			dmap.put("key" + i, "value" + i);
+		Assert.assertTrue(dmap.size() + "", dmap.size() < n);
+		for (int i = 0; i < n; i++)
+			Assert.assertEquals("value" + i, dmap.get("key" + i));
+		dmap.remove("key0");
+		Assert.assertNull(store.restore("key0"));
+		dmap.close();
+		store.close();
+	}
+
+	/**
+	 * Clearing removes entries in both tiers along with the segment files.
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void test04_Clear() throws IOException {
+		MappedDiskable<String, String> store = this.open();
+		int n = 1000;
+		for (int i = 0; i < n; i++)
+			store.commit(singleton("key" + i, "value" + i));
+		store.clear();
+		Assert.assertEquals(0, store.size());
+		Assert.assertNull(store.restore("key0"));
+		Assert.assertNull(store.restore("key" + (n - 1)));
+		store.commit(singleton("key0", "newvalue"));
+		store.close();
+
+		store = this.open();
+		Assert.assertEquals(1, store.size());
+		Assert.assertEquals("newvalue", store.restore("key0"));
+		store.close();
+	}
+
+	/**
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		Util.assertAssertionsEnabled();
+		Result result = JUnitCore.runClasses(MappedDiskableTest.class);
+		for (Failure failure : result.getFailures())
+			System.out.println(failure.toString());
+	}
+}
@@ -0,0 +1,550 @@
+/* Copyright (c) 2015 University of Massachusetts
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License. */
+package edu.umass.cs.utils;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+/**
+ * @author arun
+ *
+ *         A registry of latency histograms, counters, and gauges meant to
+ *         replace {@link DelayProfiler}'s moving averages on hot paths. Metrics
+ *         are registered once and the returned objects are held in static
+ *         fields, so recording involves no map lookups or boxing.
+ *
+ *         <p>
+ *         Metrics are pulled as a {@link Snapshot} that is recomputed at most
+ *         once every {@link #getSnapshotInterval()} milliseconds. Percentiles
+ *         and rates in a snapshot are over the interval since the previous
+ *         snapshot, while counts and sums are cumulative. The latest snapshot
+ *         is exposed as a text dump via {@link #getStats()}, in the Prometheus
+ *         text format via {@link #getPrometheusStats()}, and via JMX under
+ *         {@link #OBJECT_NAME}. Gauges are read while computing a snapshot, so
+ *         they must not take locks that are held on hot paths.
+ *
+ *         <p>
+ *         Node-specific metrics, e.g., queue depths of one of several nodes in
+ *         the same JVM, are registered with names qualified using
+ *         {@link #getName(String, Object)}.
+ */
+public class Metrics {
+
+	/**
+	 * A value sampled at snapshot time, e.g., a queue depth.
+	 */
+	public static interface Gauge {
+		/**
+		 * @return Current value.
+		 */
+		public long getValue();
+	}
+
+	/**
+	 * A monotonically increasing count.
+	 */
+	public static class Counter {
+		private final LongAdder count = new LongAdder();
+
+		/**
+		 * Increments by 1.
+		 */
+		public void incr() {
+			this.count.increment();
+		}
+
+		/**
+		 * @param n
+		 */
+		public void add(long n) {
+			this.count.add(n);
+		}
+
+		/**
+		 * @return Current count.
+		 */
+		public long get() {
+			return this.count.sum();
+		}
+	}
+
+	/**
+	 * Statistics of one histogram in a snapshot. Times are in nanoseconds.
+	 */
+	public static class HistogramStats {
+		/**
+		 * Cumulative number of recorded values.
+		 */
+		public final long count;
+		/**
+		 * Cumulative sum of recorded values.
+		 */
+		public final long sum;
+		/**
+		 * Recorded values per second over the last interval.
+		 */
+		public final double rate;
+		/**
+		 * Percentiles over the last interval, or cumulative ones if nothing
+		 * was recorded in the interval.
+		 */
+		public final long p50, p99, p999, max;
+
+		HistogramStats(long[] cumulative, long[] interval, double rate) {
+			this.count = Histogram.getCount(cumulative);
+			this.sum = Histogram.getSum(cumulative);
+			this.rate = rate;
+			long[] counts = Histogram.getCount(interval) > 0 ? interval
+					: cumulative;
+			this.p50 = Histogram.getPercentile(counts, 50);
+			this.p99 = Histogram.getPercentile(counts, 99);
+			this.p999 = Histogram.getPercentile(counts, 99.9);
+			this.max = Histogram.getMax(counts);
+		}
+
+		public String toString() {
+			return "[n=" + count + ", rate=" + Util.df(rate) + "/s, p50="
+					+ toMillis(p50) + "ms, p99=" + toMillis(p99)
+					+ "ms, p999=" + toMillis(p999) + "ms, max="
+					+ toMillis(max) + "ms]";
+		}
+	}
+
+	/**
+	 * An immutable view of all metrics at a point in time.
+	 */
+	public static class Snapshot {
+		/**
+		 * Time of the snapshot.
+		 */
+		public final long time;
+		/**
+		 * Histogram statistics by name.
+		 */
+		public final SortedMap<String, HistogramStats> histograms;
+		/**
+		 * Counter values by name.
+		 */
+		public final SortedMap<String, Long> counters;
+		/**
+		 * Counter increments per second over the last interval by name.
+		 */
+		public final SortedMap<String, Double> rates;
+		/**
+		 * Gauge values by name.
+		 */
+		public final SortedMap<String, Long> gauges;
+
+		Snapshot(long time, SortedMap<String, HistogramStats> histograms,
+				SortedMap<String, Long> counters,
+				SortedMap<String, Double> rates, SortedMap<String, Long> gauges) {
+			this.time = time;
+			this.histograms = Collections.unmodifiableSortedMap(histograms);
+			this.counters = Collections.unmodifiableSortedMap(counters);
+			this.rates = Collections.unmodifiableSortedMap(rates);
+			this.gauges = Collections.unmodifiableSortedMap(gauges);
+		}
+
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			for (String name : this.histograms.keySet())
+				sb.append(name).append(":").append(this.histograms.get(name))
+						.append("\n");
+			for (String name : this.counters.keySet())
+				sb.append(name).append(":[n=")
+						.append(this.counters.get(name)).append(", rate=")
+						.append(Util.df(this.rates.get(name)))
+						.append("/s]\n");
+			for (String name : this.gauges.keySet())
+				sb.append(name).append(":").append(this.gauges.get(name))
+						.append("\n");
+			return sb.toString();
+		}
+
+		/**
+		 * @return This snapshot in the Prometheus text exposition format.
+		 *         Histograms are exported as summaries in seconds, counters
+		 *         with a _total suffix, and node-qualified names as labels.
+		 */
+		public String toPrometheus() {
+			StringBuilder sb = new StringBuilder();
+			Set<String> typed = new HashSet<String>();
+			for (String name : this.histograms.keySet()) {
+				HistogramStats stats = this.histograms.get(name);
+				String metric = getPrometheusName(name) + "_seconds";
+				String labels = getPrometheusLabels(name);
+				appendType(sb, typed, metric, "summary");
+				appendQuantile(sb, metric, labels, "0.5", stats.p50);
+				appendQuantile(sb, metric, labels, "0.99", stats.p99);
+				appendQuantile(sb, metric, labels, "0.999", stats.p999);
+				sb.append(metric).append("_sum").append(toLabels(labels))
+						.append(" ").append(toSeconds(stats.sum)).append("\n");
+				sb.append(metric).append("_count").append(toLabels(labels))
+						.append(" ").append(stats.count).append("\n");
+			}
+			for (String name : this.counters.keySet()) {
+				String metric = getPrometheusName(name);
+				if (!metric.endsWith("_total"))
+					metric += "_total";
+				appendType(sb, typed, metric, "counter");
+				sb.append(metric).append(toLabels(getPrometheusLabels(name)))
+						.append(" ").append(this.counters.get(name))
+						.append("\n");
+			}
+			for (String name : this.gauges.keySet()) {
+				String metric = getPrometheusName(name);
+				appendType(sb, typed, metric, "gauge");
+				sb.append(metric).append(toLabels(getPrometheusLabels(name)))
+						.append(" ").append(this.gauges.get(name)).append("\n");
+			}
+			return sb.toString();
+		}
+	}
+
+	private static void appendType(StringBuilder sb, Set<String> typed,
+			String metric, String type) {
+		if (typed.add(metric))
+			sb.append("# TYPE ").append(metric).append(" ").append(type)
+					.append("\n");
+	}
+
+	private static void appendQuantile(StringBuilder sb, String metric,
+			String labels, String quantile, long nanos) {
+		sb.append(metric)
+				.append("{")
+				.append(labels.isEmpty() ? "" : labels + ",")
+				.append("quantile=\"").append(quantile).append("\"} ")
+				.append(toSeconds(nanos)).append("\n");
+	}
+
+	private static String toLabels(String labels) {
+		return labels.isEmpty() ? "" : "{" + labels + "}";
+	}
+
+	private static String toSeconds(long nanos) {
+		return Double.toString(nanos / 1000.0 / 1000 / 1000);
+	}
+
+	// name up to any '{' with characters other than [a-zA-Z0-9_:] replaced
+	private static String getPrometheusName(String name) {
+		int brace = name.indexOf('{');
+		String metric = (brace >= 0 ? name.substring(0, brace) : name)
+				.replaceAll("[^a-zA-Z0-9_:]", "_");
+		return metric.isEmpty() || Character.isDigit(metric.charAt(0)) ? "_"
+				+ metric : metric;
+	}
+
+	// {k1=v1,k2=v2} to k1="v1",k2="v2"
+	private static String getPrometheusLabels(String name) {
+		int brace = name.indexOf('{');
+		if (brace < 0 || !name.endsWith("}"))
+			return "";
+		StringBuilder labels = new StringBuilder();
+		for (String label : name.substring(brace + 1, name.length() - 1)
+				.split(",")) {
+			int eq = label.indexOf('=');
+			if (eq <= 0)
+				continue;
+			labels.append(labels.length() > 0 ? "," : "")
+					.append(label.substring(0, eq).trim()
+							.replaceAll("[^a-zA-Z0-9_]", "_"))
+					.append("=\"")
+					.append(label.substring(eq + 1).replace("\\", "\\\\")
+							.replace("\"", "\\\"").replace("\n", "\\n"))
+					.append("\"");
+		}
+		return labels.toString();
+	}
+
+	/**
+	 * JMX interface to the latest snapshot.
+	 */
+	public static interface MetricsMBean {
+		/**
+		 * @return Text dump of the latest snapshot.
+		 */
+		public String getStats();
+
+		/**
+		 * @return Names of all registered metrics.
+		 */
+		public String[] getNames();
+
+		/**
+		 * @param name
+		 * @param percentile
+		 *            50, 99, or 99.9.
+		 * @return Percentile in milliseconds of the named histogram.
+		 */
+		public double getPercentile(String name, double percentile);
+
+		/**
+		 * @param name
+		 * @return Rate per second of the named histogram or counter.
+		 */
+		public double getRate(String name);
+
+		/**
+		 * @param name
+		 * @return Cumulative count of the named histogram or counter, or the
+		 *         value of the named gauge.
+		 */
+		public long getValue(String name);
+	}
+
+	/**
+	 * JMX object name of the metrics MBean.
+	 */
+	public static final String OBJECT_NAME = Metrics.class.getPackage()
+			.getName() + ":type=" + Metrics.class.getSimpleName();
+
+	private static final ConcurrentSkipListMap<String, Histogram> histograms = new ConcurrentSkipListMap<String, Histogram>();
+	private static final ConcurrentSkipListMap<String, Counter> counters = new ConcurrentSkipListMap<String, Counter>();
+	private static final ConcurrentSkipListMap<String, Gauge> gauges = new ConcurrentSkipListMap<String, Gauge>();
+
+	// previous cumulative values to compute interval statistics
+	private static Map<String, long[]> prevHistogramCounts = new HashMap<String, long[]>();
+	private static Map<String, Long> prevCounters = new HashMap<String, Long>();
+
+	private static long snapshotInterval = 5000;
+	private static Snapshot snapshot = null;
+	private static boolean mbeanRegistered = false;
+
+	private static final Logger log = Logger.getLogger(Metrics.class
+			.getName());
+
+	/**
+	 * @param name
+	 * @return The histogram registered under {@code name}, registering it if
+	 *         necessary.
+	 */
+	public static Histogram histogram(String name) {
+		Histogram histogram = histograms.get(name);
+		if (histogram == null) {
+			histograms.putIfAbsent(name, new Histogram(name));
+			histogram = histograms.get(name);
+		}
+		return histogram;
+	}
+
+	/**
+	 * @param name
+	 * @return The counter registered under {@code name}, registering it if
+	 *         necessary.
+	 */
+	public static Counter counter(String name) {
+		Counter counter = counters.get(name);
+		if (counter == null) {
+			counters.putIfAbsent(name, new Counter());
+			counter = counters.get(name);
+		}
+		return counter;
+	}
+
+	/**
+	 * Registers {@code gauge} under {@code name} replacing any existing gauge
+	 * with that name.
+	 *
+	 * @param name
+	 * @param gauge
+	 */
+	public static void gauge(String name, Gauge gauge) {
+		gauges.put(name, gauge);
+	}
+
+	/**
+	 * Unregisters any metric named {@code name}, e.g., a node-specific gauge
+	 * when the node is closed.
+	 *
+	 * @param name
+	 */
+	public static void unregister(String name) {
+		histograms.remove(name);
+		counters.remove(name);
+		gauges.remove(name);
+	}
+
+	/**
+	 * @param name
+	 * @param node
+	 * @return {@code name} qualified by {@code node}.
+	 */
+	public static String getName(String name, Object node) {
+		return name + "{node=" + node + "}";
+	}
+
+	/**
+	 * @param interval
+	 *            Minimum interval in milliseconds between recomputed
+	 *            snapshots.
+	 */
+	public static void setSnapshotInterval(long interval) {
+		snapshotInterval = interval;
+	}
+
+	/**
+	 * @return Minimum interval in milliseconds between recomputed snapshots.
+	 */
+	public static long getSnapshotInterval() {
+		return snapshotInterval;
+	}
+
+	/**
+	 * @return The latest snapshot, recomputed if it is older than the
+	 *         snapshot interval. Only pulls synchronize here; recording never
+	 *         does.
+	 */
+	public static synchronized Snapshot getSnapshot() {
+		long now = System.currentTimeMillis();
+		if (snapshot == null || now - snapshot.time >= snapshotInterval)
+			snapshot = takeSnapshot(now);
+		return snapshot;
+	}
+
+	private static Snapshot takeSnapshot(long now) {
+		double elapsed = snapshot != null ? Math.max(now - snapshot.time, 1)
+				/ 1000.0 : Double.NaN;
+
+		SortedMap<String, HistogramStats> histogramStats = new TreeMap<String, HistogramStats>();
+		Map<String, long[]> histogramCounts = new HashMap<String, long[]>();
+		for (Histogram histogram : histograms.values()) {
+			long[] cumulative = histogram.getCounts();
+			long[] interval = Histogram.subtract(cumulative,
+					prevHistogramCounts.get(histogram.getName()));
+			histogramCounts.put(histogram.getName(), cumulative);
+			histogramStats.put(histogram.getName(), new HistogramStats(
+					cumulative, interval, Double.isNaN(elapsed) ? 0
+							: Histogram.getCount(interval) / elapsed));
+		}
+		prevHistogramCounts = histogramCounts;
+
+		SortedMap<String, Long> counterValues = new TreeMap<String, Long>();
+		SortedMap<String, Double> rates = new TreeMap<String, Double>();
+		for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+			long value = entry.getValue().get();
+			Long prev = prevCounters.get(entry.getKey());
+			counterValues.put(entry.getKey(), value);
+			rates.put(entry.getKey(), Double.isNaN(elapsed) ? 0
+					: (value - (prev != null ? prev : 0)) / elapsed);
+		}
+		prevCounters = counterValues;
+
+		SortedMap<String, Long> gaugeValues = new TreeMap<String, Long>();
+		for (Map.Entry<String, Gauge> entry : gauges.entrySet())
+			try {
+				gaugeValues.put(entry.getKey(), entry.getValue().getValue());
+			} catch (Exception e) {
+				log.log(Level.FINE, "Gauge {0} threw {1}", new Object[] {
+						entry.getKey(), e });
+			}
+
+		return new Snapshot(now, histogramStats, counterValues, rates,
+				gaugeValues);
+	}
+
+	/**
+	 * @return Text dump of the latest snapshot.
+	 */
+	public static String getStats() {
+		return getSnapshot().toString();
+	}
+
+	/**
+	 * @return The latest snapshot in the Prometheus text exposition format.
+	 */
+	public static String getPrometheusStats() {
+		return getSnapshot().toPrometheus();
+	}
+
+	/**
+	 * Registers the metrics MBean with the platform MBean server if not
+	 * already registered.
+	 */
+	public static synchronized void registerMBean() {
+		if (mbeanRegistered)
+			return;
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(
+					new StandardMBean(new MetricsMBeanImpl(),
+							MetricsMBean.class), new ObjectName(OBJECT_NAME));
+			mbeanRegistered = true;
+		} catch (Exception e) {
+			log.log(Level.WARNING, "Unable to register {0}: {1}",
+					new Object[] { OBJECT_NAME, e });
+		}
+	}
+
+	private static class MetricsMBeanImpl implements MetricsMBean {
+
+		@Override
+		public String getStats() {
+			return Metrics.getStats();
+		}
+
+		@Override
+		public String[] getNames() {
+			TreeMap<String, Object> names = new TreeMap<String, Object>();
+			names.putAll(histograms);
+			names.putAll(counters);
+			names.putAll(gauges);
+			return names.keySet().toArray(new String[0]);
+		}
+
+		@Override
+		public double getPercentile(String name, double percentile) {
+			HistogramStats stats = getSnapshot().histograms.get(name);
+			if (stats == null)
+				return Double.NaN;
+			return toMillis(percentile >= 99.9 ? stats.p999
+					: percentile >= 99 ? stats.p99 : stats.p50);
+		}
+
+		@Override
+		public double getRate(String name) {
+			Snapshot snapshot = getSnapshot();
+			return snapshot.histograms.containsKey(name) ? snapshot.histograms
+					.get(name).rate
+					: snapshot.rates.containsKey(name) ? snapshot.rates
+							.get(name) : Double.NaN;
+		}
+
+		@Override
+		public long getValue(String name) {
+			Snapshot snapshot = getSnapshot();
+			return snapshot.histograms.containsKey(name) ? snapshot.histograms
+					.get(name).count
+					: snapshot.counters.containsKey(name) ? snapshot.counters
+							.get(name)
+							: snapshot.gauges.containsKey(name) ? snapshot.gauges
+									.get(name) : -1;
+		}
+	}
+
+	private static double toMillis(long nanos) {
+		return Math.round(nanos / 1000.0) / 1000.0;
+	}
+}
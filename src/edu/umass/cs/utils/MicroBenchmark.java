@@ -0,0 +1,289 @@
+/* Copyright (c) 2015 University of Massachusetts
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License. */
+package edu.umass.cs.utils;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * @author arun
+ *
+ *         A minimal throughput microbenchmark harness for benchmarking
+ *         components in isolation. Each {@link Benchmark} is warmed up for a
+ *         number of timed iterations and then measured for a number of timed
+ *         iterations. Results are reported as a JSON array in the same shape
+ *         as JMH's JSON output (benchmark, mode, primaryMetric with score,
+ *         scoreError, scoreUnit, and rawData), so that they can be tracked
+ *         across releases with the same tooling.
+ */
+public class MicroBenchmark {
+
+	/**
+	 * A benchmarked operation. {@link #run(int)} is invoked repeatedly with
+	 * an increasing invocation count, and its return value is consumed so
+	 * that the JIT can not eliminate the operation as dead code.
+	 */
+	public static abstract class Benchmark {
+		private final String name;
+
+		/**
+		 * @param name
+		 */
+		public Benchmark(String name) {
+			this.name = name;
+		}
+
+		/**
+		 * Invoked once before warmup.
+		 *
+		 * @throws Exception
+		 */
+		protected void setup() throws Exception {
+		}
+
+		/**
+		 * @param i
+		 *            Invocation count starting from 0.
+		 * @return Any result of the operation.
+		 * @throws Exception
+		 */
+		protected abstract Object run(int i) throws Exception;
+
+		/**
+		 * Invoked once after measurement.
+		 *
+		 * @throws Exception
+		 */
+		protected void teardown() throws Exception {
+		}
+
+		/**
+		 * @return Name of this benchmark.
+		 */
+		public String getName() {
+			return this.name;
+		}
+	}
+
+	private static enum Keys {
+		benchmark, mode, threads, warmupIterations, warmupTime, measurementIterations, measurementTime, primaryMetric, score, scoreError, scoreUnit, rawData, secondaryMetrics, nsPerOp
+	};
+
+	// checking the clock after every invocation would dominate fast operations
+	private static final int OPS_PER_CLOCK_CHECK = 16;
+
+	// confidence level of the reported score error, as used by JMH
+	private static final double CONFIDENCE = 0.999;
+
+	private final int warmupIterations;
+	private final int measurementIterations;
+	private final long iterationTime;
+
+	private volatile int sink = 0;
+
+	/**
+	 * @param warmupIterations
+	 * @param measurementIterations
+	 * @param iterationTime
+	 *            Duration of each iteration in milliseconds.
+	 */
+	public MicroBenchmark(int warmupIterations, int measurementIterations,
+			long iterationTime) {
+		this.warmupIterations = warmupIterations;
+		this.measurementIterations = Math.max(1, measurementIterations);
+		this.iterationTime = iterationTime;
+	}
+
+	/**
+	 * @param benchmark
+	 * @return Result in JMH's JSON format.
+	 * @throws Exception
+	 */
+	public JSONObject run(Benchmark benchmark) throws Exception {
+		benchmark.setup();
+		double[] scores = new double[this.measurementIterations];
+		long totalOps = 0, totalNanos = 0;
+		try {
+			int invocations = 0;
+			for (int i = 0; i < this.warmupIterations; i++)
+				invocations += this.iterate(benchmark, invocations)[0];
+			System.gc();
+			for (int i = 0; i < this.measurementIterations; i++) {
+				long[] opsNanos = this.iterate(benchmark, invocations);
+				invocations += opsNanos[0];
+				totalOps += opsNanos[0];
+				totalNanos += opsNanos[1];
+				scores[i] = opsNanos[0] * 1000.0 * 1000 * 1000 / opsNanos[1];
+			}
+		} finally {
+			benchmark.teardown();
+		}
+		return this.toJSON(benchmark, scores, totalOps, totalNanos);
+	}
+
+	/**
+	 * Runs all benchmarks whose name matches {@code regex}, printing a one
+	 * line summary of each.
+	 *
+	 * @param benchmarks
+	 * @param regex
+	 *            If null, all benchmarks are run.
+	 * @return Results of all run benchmarks in JMH's JSON format.
+	 * @throws Exception
+	 */
+	public JSONArray runAll(List<Benchmark> benchmarks, String regex)
+			throws Exception {
+		JSONArray results = new JSONArray();
+		for (Benchmark benchmark : benchmarks) {
+			if (regex != null && !benchmark.getName().matches(regex))
+				continue;
+			JSONObject result = this.run(benchmark);
+			JSONObject metric = result.getJSONObject(Keys.primaryMetric
+					.toString());
+			System.out.println(String.format("%-48s %14.1f +- %10.1f ops/s %12.1f ns/op",
+					benchmark.getName(),
+					metric.getDouble(Keys.score.toString()),
+					metric.getDouble(Keys.scoreError.toString()),
+					result.getDouble(Keys.nsPerOp.toString())));
+			results.put(result);
+		}
+		return results;
+	}
+
+	/**
+	 * @param results
+	 * @param filename
+	 *            If null, the results are printed to standard output.
+	 * @throws IOException
+	 * @throws JSONException
+	 */
+	public static void write(JSONArray results, String filename)
+			throws IOException, JSONException {
+		if (filename == null) {
+			System.out.println(results.toString(2));
+			return;
+		}
+		FileWriter writer = new FileWriter(filename);
+		try {
+			writer.write(results.toString(2));
+		} finally {
+			writer.close();
+		}
+	}
+
+	// returns number of invocations and elapsed nanoseconds
+	private long[] iterate(Benchmark benchmark, int start) throws Exception {
+		int sum = 0, ops = 0;
+		long t = System.nanoTime(), deadline = t + this.iterationTime * 1000
+				* 1000, now = t;
+		while (now < deadline) {
+			for (int j = 0; j < OPS_PER_CLOCK_CHECK; j++) {
+				Object result = benchmark.run(start + ops++);
+				sum += (result != null ? result.hashCode() : 0);
+			}
+			now = System.nanoTime();
+		}
+		this.sink += sum;
+		return new long[] { ops, now - t };
+	}
+
+	/**
+	 * @param confidence
+	 * @param df
+	 *            Degrees of freedom.
+	 * @return Quantile t of the Student t distribution with {@code df}
+	 *         degrees of freedom such that P(|T| < t) = {@code confidence},
+	 *         e.g., 8.610 for a 99.9% interval with 4 degrees of freedom.
+	 */
+	static double studentT(double confidence, int df) {
+		double lo = 0, hi = 1;
+		while (studentTInterval(hi, df) < confidence)
+			hi *= 2;
+		// bisection as the interval probability is monotonic in t
+		for (int i = 0; i < 100 && hi - lo > 1e-9 * hi; i++) {
+			double mid = (lo + hi) / 2;
+			if (studentTInterval(mid, df) < confidence)
+				lo = mid;
+			else
+				hi = mid;
+		}
+		return (lo + hi) / 2;
+	}
+
+	/* P(|T| < t) for integral degrees of freedom in closed form, refer
+	 * Abramowitz and Stegun 26.7.3 and 26.7.4. */
+	private static double studentTInterval(double t, int df) {
+		double theta = Math.atan(t / Math.sqrt(df));
+		double cos2 = Math.cos(theta) * Math.cos(theta);
+		double sum = 1, term = 1;
+		if (df % 2 == 0) {
+			for (int j = 2; j <= df - 2; j += 2)
+				sum += (term *= cos2 * (j - 1) / j);
+			return Math.sin(theta) * sum;
+		}
+		// else odd
+		if (df == 1)
+			return 2 * theta / Math.PI;
+		for (int j = 3; j <= df - 2; j += 2)
+			sum += (term *= cos2 * (j - 1) / j);
+		return 2 / Math.PI
+				* (theta + Math.sin(theta) * Math.cos(theta) * sum);
+	}
+
+	private JSONObject toJSON(Benchmark benchmark, double[] scores,
+			long totalOps, long totalNanos) throws JSONException {
+		double mean = 0, variance = 0;
+		for (double score : scores)
+			mean += score / scores.length;
+		for (double score : scores)
+			variance += (score - mean) * (score - mean)
+					/ Math.max(scores.length - 1, 1);
+		double error = scores.length > 1 ? studentT(CONFIDENCE,
+				scores.length - 1)
+				* Math.sqrt(variance) / Math.sqrt(scores.length) : Double.NaN;
+
+		JSONArray rawData = new JSONArray();
+		JSONArray fork = new JSONArray();
+		for (double score : scores)
+			fork.put(score);
+		rawData.put(fork);
+
+		JSONObject primary = new JSONObject();
+		primary.put(Keys.score.toString(), mean);
+		primary.put(Keys.scoreError.toString(),
+				Double.isNaN(error) ? "NaN" : error);
+		primary.put(Keys.scoreUnit.toString(), "ops/s");
+		primary.put(Keys.rawData.toString(), rawData);
+
+		JSONObject result = new JSONObject();
+		result.put(Keys.benchmark.toString(), benchmark.getName());
+		result.put(Keys.mode.toString(), "thrpt");
+		result.put(Keys.threads.toString(), 1);
+		result.put(Keys.warmupIterations.toString(), this.warmupIterations);
+		result.put(Keys.warmupTime.toString(), this.iterationTime + " ms");
+		result.put(Keys.measurementIterations.toString(),
+				this.measurementIterations);
+		result.put(Keys.measurementTime.toString(), this.iterationTime + " ms");
+		result.put(Keys.primaryMetric.toString(), primary);
+		result.put(Keys.secondaryMetrics.toString(), new JSONObject());
+		result.put(Keys.nsPerOp.toString(), totalOps > 0 ? totalNanos * 1.0
+				/ totalOps : -1);
+		return result;
+	}
+}
@@ -196,6 +196,14 @@ public class MultiArrayMap<K, V extends Keyable<K>> implements Iterable<V>,
 		return this.size + this.hMap.size();
 	}
 
+	/**
+	 * @return The size read without synchronization, so it may be stale but
+	 *         never blocks or is blocked by concurrent updates.
+	 */
+	public int sizeEstimate() {
+		return this.size + this.hMap.size();
+	}
+
 	/**
 	 * @return The hashmap size.
 	 */